@@ -1,6 +1,6 @@
 #!/usr/bin/env sh
 
-GEONAMES="allCountries.txt"
+GEONAMES="allCountries.zip"
 INDEXDIR="./IndexDirectory"
 
 if [ -d "$INDEXDIR" ]; then
@@ -11,17 +11,23 @@ fi
 if [ ! -f "$GEONAMES" ]; then
   echo "Downloading GeoNames Gazetteer"
   curl http://download.geonames.org/export/dump/allCountries.zip -o allCountries.zip
-  unzip allCountries.zip
-  rm allCountries.zip
 fi
 
+# Code tables used to resolve each place's admin1/admin2 divisions.
+for TABLE in admin1CodesASCII.txt admin2Codes.txt; do
+  if [ ! -f "$TABLE" ]; then
+    echo "Downloading $TABLE"
+    curl http://download.geonames.org/export/dump/$TABLE -o $TABLE
+  fi
+done
+
 mvn clean compile
 
 export MAVEN_OPTS="-Xmx2g"
 
-mvn exec:java  -Dexec.mainClass="com.berico.clavin.resolver.impl.lucene.GeonamesIndexBuilder" -Dexec.args="$INDEXDIR $GEONAMES"
+mvn exec:java  -Dexec.mainClass="com.berico.clavin.resolver.impl.lucene.GeonamesIndexBuilder" -Dexec.args="$INDEXDIR $GEONAMES --admin1-codes admin1CodesASCII.txt --admin2-codes admin2Codes.txt"
 
-# Remove the allCountries.txt if the indexing 
+# Remove the allCountries.zip if the indexing 
 #rc=$?
 #if [[ $rc == 0 ]] ; then
 #  rm $GEONAMES
@@ -0,0 +1,29 @@
+#!/usr/bin/env sh
+
+# Builds the GeoNames index with the standard and slim schemas, then
+# compares their size and search latency.  Pass a file of names (one per
+# line) to search for, or the report uses a short built-in list.
+
+GEONAMES="allCountries.zip"
+NAMES="$1"
+
+if [ ! -f "$GEONAMES" ]; then
+  echo "Downloading GeoNames Gazetteer"
+  curl http://download.geonames.org/export/dump/allCountries.zip -o allCountries.zip
+fi
+
+mvn clean compile
+
+export MAVEN_OPTS="-Xmx2g"
+
+for SCHEMA in standard slim; do
+  if [ ! -d "./IndexDirectory-$SCHEMA" ]; then
+    mvn exec:java -Dexec.mainClass="com.berico.clavin.resolver.impl.lucene.GeonamesIndexBuilder" -Dexec.args="./IndexDirectory-$SCHEMA $GEONAMES --schema $SCHEMA"
+  fi
+done
+
+if [ -n "$NAMES" ]; then
+  NAMES="--names $NAMES"
+fi
+
+mvn exec:java -Dexec.mainClass="com.berico.clavin.resolver.impl.lucene.IndexSchemaReport" -Dexec.args="./IndexDirectory-standard ./IndexDirectory-slim $NAMES"
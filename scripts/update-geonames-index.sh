@@ -0,0 +1,42 @@
+#!/usr/bin/env sh
+
+# Applies the GeoNames daily diffs for the supplied dates (YYYY-MM-DD) to
+# an existing index, e.g.: ./update-geonames-index.sh 2013-06-01 2013-06-02
+
+INDEXDIR="./IndexDirectory"
+DIFFS=""
+
+if [ ! -d "$INDEXDIR" ]; then
+  echo "No index to update; run build-geonames-index.sh first."
+  exit 1
+fi
+
+for DATE in "$@"; do
+  for KIND in modifications deletes; do
+    FILE="$KIND-$DATE.txt"
+    if [ ! -f "$FILE" ]; then
+      echo "Downloading $FILE"
+      curl http://download.geonames.org/export/dump/$FILE -o $FILE
+    fi
+    DIFFS="$DIFFS $FILE"
+  done
+done
+
+for TABLE in admin1CodesASCII.txt admin2Codes.txt; do
+  if [ ! -f "$TABLE" ]; then
+    echo "Downloading $TABLE"
+    curl http://download.geonames.org/export/dump/$TABLE -o $TABLE
+  fi
+done
+
+NAMES=""
+
+if [ -f "alternateNamesV2.zip" ]; then
+  NAMES="--alternate-names alternateNamesV2.zip"
+fi
+
+mvn clean compile
+
+export MAVEN_OPTS="-Xmx2g"
+
+mvn exec:java  -Dexec.mainClass="com.berico.clavin.resolver.impl.lucene.GeonamesIndexUpdater" -Dexec.args="$INDEXDIR $DIFFS --admin1-codes admin1CodesASCII.txt --admin2-codes admin2Codes.txt $NAMES"
@@ -212,7 +212,7 @@ public class GeoParserFactory {
 		// Instantiate the Index and other Lucene components.
 		LuceneComponentsFactory factory = new LuceneComponentsFactory(pathToLuceneIndex);
 		
-		factory.initializeSearcher();
+		factory.initializeSearcher(options);
 		
 		LuceneComponents lucene = factory.getComponents();
 		
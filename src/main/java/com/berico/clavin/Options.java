@@ -72,6 +72,21 @@ public class Options extends HashMap<String, String> {
 		return Integer.parseInt(value);
 	}
 	
+	/**
+	 * Get the value of a double property.
+	 * @param key Name of the property.
+	 * @param defaultValue Default value if it does not exist.
+	 * @return Value or default if the property doesn't exist.
+	 */
+	public double getDouble(String key, double defaultValue){
+		
+		String value = this.get(key);
+		
+		if (value == null) return defaultValue;
+		
+		return Double.parseDouble(value);
+	}
+	
 	/**
 	 * Get the value of an boolean property.
 	 * @param key Name of the property.
@@ -39,6 +39,12 @@ import com.berico.clavin.gazetteer.LatLon;
  */
 public interface CoordinateOccurrence<T> {
 	
+	/**
+	 * Value returned by getPrecisionInKm() when the precision
+	 * of the coordinate is not known.
+	 */
+	double UNKNOWN_PRECISION = -1;
+	
 	/**
 	 * Get the starting position of the extracted coordinate
 	 * in the document. 
@@ -73,4 +79,11 @@ public interface CoordinateOccurrence<T> {
 	 * @return Lat/Lon representation of the location.
 	 */
 	LatLon convertToLatLon() throws Exception;
+	
+	/**
+	 * Get the precision implied by the way the coordinate was written
+	 * (for instance, the number of decimal places), as a distance.
+	 * @return Precision in kilometers, or UNKNOWN_PRECISION.
+	 */
+	double getPrecisionInKm();
 }
\ No newline at end of file
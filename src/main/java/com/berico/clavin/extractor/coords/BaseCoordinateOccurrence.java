@@ -40,6 +40,7 @@ public abstract class BaseCoordinateOccurrence<T> implements CoordinateOccurrenc
 	protected long position;
 	protected String text;
 	protected T value;
+	protected double precisionInKm = UNKNOWN_PRECISION;
 	
 	/**
 	 * For serialization purposes only.
@@ -89,6 +90,25 @@ public abstract class BaseCoordinateOccurrence<T> implements CoordinateOccurrenc
 		return value;
 	}
 	
+	/**
+	 * Get the precision implied by the way the coordinate was written.
+	 * @return Precision in kilometers, or UNKNOWN_PRECISION.
+	 */
+	@Override
+	public double getPrecisionInKm() {
+		
+		return precisionInKm;
+	}
+	
+	/**
+	 * Set the precision implied by the way the coordinate was written.
+	 * @param precisionInKm Precision in kilometers.
+	 */
+	public void setPrecisionInKm(double precisionInKm) {
+		
+		this.precisionInKm = precisionInKm;
+	}
+	
 	@Override
 	public int hashCode() {
 		final int prime = 31;
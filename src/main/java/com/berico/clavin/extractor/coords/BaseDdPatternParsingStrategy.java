@@ -91,7 +91,12 @@ public abstract class BaseDdPatternParsingStrategy
 		
 		LatLon latlon = new LatLon(latitude, longitude);
 		
-		return new LatLonOccurrence(startPosition, matchedString, latlon);
+		// The coordinate is only as precise as the coarser of its two parts.
+		double precision = Math.max(
+				getPrecisionInKm(parts.decimalLatitude, 1d),
+				getPrecisionInKm(parts.decimalLongitude, 1d));
+		
+		return new LatLonOccurrence(startPosition, matchedString, latlon, precision);
 	}
 	
 	/**
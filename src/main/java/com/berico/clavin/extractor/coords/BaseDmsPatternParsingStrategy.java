@@ -99,7 +99,12 @@ public abstract class BaseDmsPatternParsingStrategy
 		
 		LatLon latlon = new LatLon(latitude, longitude);
 		
-		return new LatLonOccurrence(startPosition, matchedString, latlon);
+		// The coordinate is only as precise as the coarser of its two parts.
+		double precision = Math.max(
+				getPrecisionInKm(parts.latitudeMinutes, parts.latitudeSeconds),
+				getPrecisionInKm(parts.longitudeMinutes, parts.longitudeSeconds));
+		
+		return new LatLonOccurrence(startPosition, matchedString, latlon, precision);
 	}
 	
 	/**
@@ -127,6 +132,21 @@ public abstract class BaseDmsPatternParsingStrategy
 		return hemi * (deg + min / 60.0 + sec / 3600.0);
 	}
 	
+	/**
+	 * Determine the precision of a latitude or longitude from the smallest
+	 * unit that was written; seconds if present, otherwise minutes.
+	 * @param minutes Minutes latitude or longitude.
+	 * @param seconds Seconds latitude or longitude (may be null).
+	 * @return Precision in kilometers.
+	 */
+	static double getPrecisionInKm(String minutes, String seconds){
+		
+		if (seconds == null || seconds.isEmpty())
+			return getPrecisionInKm(minutes, 1d / 60d);
+		
+		return getPrecisionInKm(seconds, 1d / 3600d);
+	}
+	
 	/**
 	 * Container for the String parts we ask derived classes to generate
 	 * so we can convert the coordinate to a LatLon.
@@ -46,6 +46,9 @@ public abstract class BaseRegexPatternParsingStrategy
 	private static final Logger logger = 
 			LoggerFactory.getLogger(BaseRegexPatternParsingStrategy.class);
 	
+	// Length of one degree of latitude (and of longitude at the equator).
+	public static final double KM_PER_DEGREE = 111.195d;
+	
 	protected Pattern PATTERN = null;
 	
 	/**
@@ -120,4 +123,27 @@ public abstract class BaseRegexPatternParsingStrategy
 		
 		return doubleValue;
 	}
+	
+	/**
+	 * Determine how precise a written value is, which is half of the
+	 * smallest unit it was written in (e.g. "38.95" is precise to +/- 0.005).
+	 * @param value String representation of the value.
+	 * @param unitInDegrees Size of one whole unit of the value in degrees
+	 * (1 for degrees, 1/60 for minutes, 1/3600 for seconds).
+	 * @return Precision of the value in kilometers.
+	 */
+	protected static double getPrecisionInKm(String value, double unitInDegrees){
+		
+		int fractionDigits = 0;
+		
+		if (value != null){
+			
+			int decimal = value.indexOf('.');
+			
+			if (decimal >= 0)
+				fractionDigits = value.length() - decimal - 1;
+		}
+		
+		return 0.5d * unitInDegrees * Math.pow(10, -fractionDigits) * KM_PER_DEGREE;
+	}
 }
@@ -110,11 +110,11 @@ public class DmsPatternParsingStrategy extends BaseDmsPatternParsingStrategy {
 				
 				latDeg = matches.group(1);
 				latMin = matches.group(2);
-				latSec = (matches.group(3) != null)? matches.group(3) : "0";
+				latSec = matches.group(3);
 				latHemi = matches.group(4);
 				lonDeg = matches.group(5);
 				lonMin = matches.group(6);
-				lonSec = (matches.group(7) != null)? matches.group(7) : "0";
+				lonSec = matches.group(7);
 				lonHemi = matches.group(8);
 			}
 			else {
@@ -49,6 +49,18 @@ public class LatLonOccurrence extends BaseCoordinateOccurrence<LatLon> {
 	public LatLonOccurrence(long position, String text, LatLon value) { 
 		super(position, text, value);
 	}
+	
+	/**
+	 * Initialize with context and the precision implied by the extracted text.
+	 * @param position Position in document.
+	 * @param text Extracted coordinate text.
+	 * @param value LatLon value of the coordinate.
+	 * @param precisionInKm Precision of the coordinate in kilometers.
+	 */
+	public LatLonOccurrence(long position, String text, LatLon value, double precisionInKm) { 
+		super(position, text, value);
+		this.precisionInKm = precisionInKm;
+	}
 
 	/**
 	 * Get the underlying coordinate system.
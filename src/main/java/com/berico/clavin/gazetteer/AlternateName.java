@@ -0,0 +1,175 @@
+package com.berico.clavin.gazetteer;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * AlternateName.java
+ * 
+ *###################################################################*/
+
+/**
+ * A name of a Place tagged with the language (or kind of name) it's in,
+ * as found in the GeoNames alternate names table.  The flags mark the names
+ * GeoNames considers preferred, short, colloquial or historic.
+ */
+public class AlternateName {
+
+	protected String name;
+	
+	// ISO-639 language code (e.g. "de", "zh-CN"), or empty if unknown.
+	protected String language;
+	
+	protected boolean preferred = false;
+	
+	protected boolean shortName = false;
+	
+	protected boolean colloquial = false;
+	
+	protected boolean historic = false;
+	
+	/**
+	 * For serialization purposes.
+	 */
+	public AlternateName(){}
+	
+	/**
+	 * Instantiate the name with its language.
+	 * @param name The name.
+	 * @param language Language of the name (empty if unknown).
+	 */
+	public AlternateName(String name, String language){
+		
+		this.name = name;
+		this.language = language;
+	}
+
+	/**
+	 * Get the name.
+	 * @return Name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Set the name.
+	 * @param name Name
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Get the language of the name.
+	 * @return Language code, or empty if unknown.
+	 */
+	public String getLanguage() {
+		return language;
+	}
+
+	/**
+	 * Set the language of the name.
+	 * @param language Language code (empty if unknown).
+	 */
+	public void setLanguage(String language) {
+		this.language = language;
+	}
+	
+	/**
+	 * Is the name tagged with a language?
+	 * @return True if the language is known.
+	 */
+	public boolean hasLanguage() {
+		return language != null && language.length() > 0;
+	}
+
+	/**
+	 * Is this the official/preferred name in its language?
+	 * @return True if preferred.
+	 */
+	public boolean isPreferred() {
+		return preferred;
+	}
+
+	/**
+	 * Set whether this is the preferred name in its language.
+	 * @param preferred True if preferred.
+	 */
+	public void setPreferred(boolean preferred) {
+		this.preferred = preferred;
+	}
+
+	/**
+	 * Is this a short name (e.g. "California" for "State of California")?
+	 * @return True if short.
+	 */
+	public boolean isShortName() {
+		return shortName;
+	}
+
+	/**
+	 * Set whether this is a short name.
+	 * @param shortName True if short.
+	 */
+	public void setShortName(boolean shortName) {
+		this.shortName = shortName;
+	}
+
+	/**
+	 * Is this a colloquial or slang name (e.g. "Big Apple")?
+	 * @return True if colloquial.
+	 */
+	public boolean isColloquial() {
+		return colloquial;
+	}
+
+	/**
+	 * Set whether this is a colloquial name.
+	 * @param colloquial True if colloquial.
+	 */
+	public void setColloquial(boolean colloquial) {
+		this.colloquial = colloquial;
+	}
+
+	/**
+	 * Is this a historic name (no longer used)?
+	 * @return True if historic.
+	 */
+	public boolean isHistoric() {
+		return historic;
+	}
+
+	/**
+	 * Set whether this is a historic name.
+	 * @param historic True if historic.
+	 */
+	public void setHistoric(boolean historic) {
+		this.historic = historic;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("AlternateName [name=%s, language=%s]", name, language);
+	}
+}
@@ -34,11 +34,21 @@ package com.berico.clavin.gazetteer;
  * be administrative (state, country) or geographic (continent) in nature. 
  * 
  * The assumption is that this Place is also in the Gazetteer.
+ * 
+ * The id is the gazetteer's code for the place (e.g. the admin1 code "VA");
+ * when the hierarchy has been resolved, the reference also carries the
+ * numeric id of the Place itself, so references can be compared without
+ * looking anything up.
  */
 public class PlaceReference {
 
+	// value of the place id when the reference hasn't been resolved.
+	public static final int UNRESOLVED = -1;
+	
 	protected String id;
 	
+	protected int placeId = UNRESOLVED;
+	
 	protected String name;
 	
 	protected boolean isAdministrativeParent = false;
@@ -89,6 +99,30 @@ public class PlaceReference {
 		this.id = id;
 	}
 
+	/**
+	 * Get the id of the referenced Place in the gazetteer (see {@link Place#getId()}).
+	 * @return Place id, or UNRESOLVED if the reference hasn't been resolved.
+	 */
+	public int getPlaceId() {
+		return placeId;
+	}
+
+	/**
+	 * Set the id of the referenced Place in the gazetteer.
+	 * @param placeId Place id (UNRESOLVED if unknown).
+	 */
+	public void setPlaceId(int placeId) {
+		this.placeId = placeId;
+	}
+	
+	/**
+	 * Has the reference been resolved to a Place in the gazetteer?
+	 * @return True if the place id is known.
+	 */
+	public boolean isResolved() {
+		return placeId != UNRESOLVED;
+	}
+
 	/**
 	 * Get the name of the place.
 	 * @return Name of the place this reference represents.
@@ -125,8 +159,8 @@ public class PlaceReference {
 	@Override
 	public String toString() {
 		return String.format(
-			"PlaceReference [id=%s, name=%s, isAdminParent=%s]", 
-			id, name, isAdministrativeParent);
+			"PlaceReference [id=%s, placeId=%s, name=%s, isAdminParent=%s]", 
+			id, placeId, name, isAdministrativeParent);
 	}
 
 	@Override
@@ -40,7 +40,25 @@ import com.berico.clavin.resolver.ResolvedCoordinate;
  */
 public interface CoordinateIndex {
 	
+	/**
+	 * Find the candidates for a single coordinate.
+	 * @param coordinate Coordinate found in the document.
+	 * @param options Options to help configure the index.
+	 * @return Candidates near the coordinate.
+	 * @throws Exception
+	 */
 	List<ResolvedCoordinate> search(
 			CoordinateOccurrence<?> coordinate, Options options) throws Exception;
 	
+	/**
+	 * Find the candidates for a batch of coordinates.  Implementations are free
+	 * to share work between coordinates that are near each other.
+	 * @param coordinates Coordinates found in the document.
+	 * @param options Options to help configure the index.
+	 * @return One list of candidates per coordinate, in the order the 
+	 * coordinates were provided.
+	 * @throws Exception
+	 */
+	List<List<ResolvedCoordinate>> searchAll(
+			List<CoordinateOccurrence<?>> coordinates, Options options) throws Exception;
 }
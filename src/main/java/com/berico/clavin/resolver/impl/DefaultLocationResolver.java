@@ -2,7 +2,12 @@ package com.berico.clavin.resolver.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,10 +16,12 @@ import com.berico.clavin.Options;
 import com.berico.clavin.extractor.CoordinateOccurrence;
 import com.berico.clavin.extractor.ExtractionContext;
 import com.berico.clavin.extractor.LocationOccurrence;
+import com.berico.clavin.gazetteer.LatLon;
 import com.berico.clavin.resolver.LocationResolver;
 import com.berico.clavin.resolver.ResolutionContext;
 import com.berico.clavin.resolver.ResolvedCoordinate;
 import com.berico.clavin.resolver.ResolvedLocation;
+import com.berico.clavin.util.DamerauLevenshtein;
 
 /*#####################################################################
  * 
@@ -53,11 +60,22 @@ import com.berico.clavin.resolver.ResolvedLocation;
  *   3.  Select (filter) Location Candidates
  *   4.  Select (filter) Coordinate Candidates
  *   5.  Reduce (last pass filter) Location and Coordinate Candidates.
- *  
+ * 
  * This process is intentionally parallelizable:  1 -> 3 -> 5 <- 4 <- 2
+ * 
+ * Coordinates repeated in a document are resolved once: they are grouped
+ * by their position rounded to about a meter, the first occurrence of each
+ * group stands in for the rest through steps 2 and 4, and its selection is
+ * then copied to every occurrence in the group.  Repeated names are only
+ * grouped the same way (by their normalized text) for location selection
+ * strategies that opt in by implementing the
+ * {@link RepeatedLocationSelectionStrategy}, which are told how often
+ * each name occurred.  Other strategies see every occurrence, as they
+ * always have.  Each occurrence a selection is copied to gets its own
+ * confidence, from its own text.
  */
 public class DefaultLocationResolver implements LocationResolver {
-
+	
 	private static final Logger logger = LoggerFactory.getLogger(DefaultLocationResolver.class);
 	
 	LocationNameIndex locationNameIndex;
@@ -67,6 +85,47 @@ public class DefaultLocationResolver implements LocationResolver {
 	ResolutionResultsReductionStrategy reductionStrategy;
 	Options defaultOps = new Options();
 	
+	/**
+	 * Whether to resolve repeated coordinates once, and repeated names once
+	 * for location selection strategies that can count them.
+	 */
+	public static final boolean DEFAULT_COALESCE_OCCURRENCES = true;
+	public static final String KEY_DEFAULT_COALESCE_OCCURRENCES = "resolver.coalesceOccurrences";
+	
+	/**
+	 * Coordinates are grouped by their position rounded to this many
+	 * decimal degrees (1e-5 degrees is about a meter).
+	 */
+	static final double COORDINATE_GROUP_PRECISION = 1e-5;
+	
+	/**
+	 * Puts the selections back in the order the locations occurred.
+	 */
+	static final Comparator<ResolvedLocation> LOCATIONS_BY_POSITION = new Comparator<ResolvedLocation>(){
+		
+		@Override
+		public int compare(ResolvedLocation a, ResolvedLocation b) {
+			
+			long difference = a.getLocation().getPosition() - b.getLocation().getPosition();
+			
+			return (difference < 0)? -1 : ((difference == 0)? 0 : 1);
+		}
+	};
+	
+	/**
+	 * Puts the selections back in the order the coordinates occurred.
+	 */
+	static final Comparator<ResolvedCoordinate> COORDINATES_BY_POSITION = new Comparator<ResolvedCoordinate>(){
+		
+		@Override
+		public int compare(ResolvedCoordinate a, ResolvedCoordinate b) {
+			
+			long difference = a.getOccurrence().getPosition() - b.getOccurrence().getPosition();
+			
+			return (difference < 0)? -1 : ((difference == 0)? 0 : 1);
+		}
+	};
+	
 	/**
 	 * Provide the 5 workflow steps necessary to perform resolution.
 	 * @param locationNameIndex Index of location names
@@ -88,7 +147,7 @@ public class DefaultLocationResolver implements LocationResolver {
 		this.coordinateSelectionStrategy = coordinateSelectionStrategy;
 		this.reductionStrategy = reductionStrategy;
 	}
-
+	
 	/**
 	 * Provided an ExtractionContext (Locations and Coordinates), return 
 	 * a list of Resolved Locations and Coordinates (ResolutionContext).
@@ -100,7 +159,7 @@ public class DefaultLocationResolver implements LocationResolver {
 		
 		return resolveLocations(context, defaultOps);
 	}
-
+	
 	/**
 	 * Provided an ExtractionContext (Locations and Coordinates), return 
 	 * a list of Resolved Locations and Coordinates (ResolutionContext).
@@ -115,13 +174,31 @@ public class DefaultLocationResolver implements LocationResolver {
 		
 		logger.debug("Beginning resolution step.");
 		
+		options = (options == null)? defaultOps : options;
+		
+		boolean coalesce = options.getBoolean(
+			KEY_DEFAULT_COALESCE_OCCURRENCES, DEFAULT_COALESCE_OCCURRENCES);
+		
+		// names are only grouped for strategies that can count them
+		boolean coalesceLocations = 
+			coalesce && locationSelectionStrategy instanceof RepeatedLocationSelectionStrategy;
+		
+		// the first occurrence of each group, and the group
+		Map<LocationOccurrence, List<LocationOccurrence>> locationGroups = 
+			coalesceLocations? groupLocations(context.getLocations()) : null;
+		
+		Map<CoordinateOccurrence<?>, List<CoordinateOccurrence<?>>> coordinateGroups = 
+			coalesce? groupCoordinates(context.getCoordinates()) : null;
+		
 		ArrayList<List<ResolvedLocation>> locationCandidates = 
-				findLocationCandidates(context.getLocations(), options);
+				findLocationCandidates(
+					coalesceLocations? locationGroups.keySet() : context.getLocations(), options);
 		
 		logger.debug("Found {} location candidate lists.", locationCandidates.size());
 		
 		ArrayList<List<ResolvedCoordinate>> coordinateCandidates =
-				findCoordinateCandidates(context.getCoordinates(), options);
+				findCoordinateCandidates(
+					coalesce? coordinateGroups.keySet() : context.getCoordinates(), options);
 		
 		logger.debug("Found {} coordinate candidate lists.", coordinateCandidates.size());
 		
@@ -131,12 +208,31 @@ public class DefaultLocationResolver implements LocationResolver {
 		
 		logger.debug("Selected {} coordinates.", resolvedCoordinates.size());
 		
-		List<ResolvedLocation> resolvedLocations = 
+		List<ResolvedLocation> resolvedLocations = coalesceLocations?
+			((RepeatedLocationSelectionStrategy) locationSelectionStrategy).select(
+					locationCandidates, getMultiplicity(locationCandidates, locationGroups), 
+					context.getCoordinates(), options) :
 			locationSelectionStrategy.select(
 					locationCandidates, context.getCoordinates(), options);
 		
 		logger.debug("Selected {} locations.", resolvedLocations.size());
 		
+		if (coalesceLocations) {
+			
+			logger.debug("Resolved {} locations as {} names.", 
+				context.getLocations().size(), locationGroups.size());
+			
+			resolvedLocations = expandLocations(resolvedLocations, locationGroups);
+		}
+		
+		if (coalesce) {
+			
+			logger.debug("Resolved {} coordinates as {} positions.", 
+				context.getCoordinates().size(), coordinateGroups.size());
+			
+			resolvedCoordinates = expandCoordinates(resolvedCoordinates, coordinateGroups);
+		}
+		
 		return reductionStrategy.reduce(context, resolvedLocations, resolvedCoordinates);
 	}
 	
@@ -167,7 +263,7 @@ public class DefaultLocationResolver implements LocationResolver {
 		
 		return candidates;
 	}
-
+	
 	/**
 	 * Find potential coordinate candidates from the extracted coordinates.
 	 * 
@@ -183,9 +279,13 @@ public class DefaultLocationResolver implements LocationResolver {
 		ArrayList<List<ResolvedCoordinate>> candidates =
 				new ArrayList<List<ResolvedCoordinate>>();
 		
-		for (CoordinateOccurrence<?> coordinate : coordinates){
-			
-			List<ResolvedCoordinate> searchResults = coordinateIndex.search(coordinate, options);
+		// Search all of the coordinates at once so the index can share work
+		// between coordinates that are near each other.
+		List<List<ResolvedCoordinate>> allSearchResults = 
+			coordinateIndex.searchAll(
+				new ArrayList<CoordinateOccurrence<?>>(coordinates), options);
+		
+		for (List<ResolvedCoordinate> searchResults : allSearchResults){
 			
 			// We absolutely do not want empty lists since they will
 			// screw up the optimization step!
@@ -194,4 +294,257 @@ public class DefaultLocationResolver implements LocationResolver {
 		
 		return candidates;
 	}
+	
+	/**
+	 * Group the location occurrences with the same normalized text.
+	 * @param locations Location Occurrences found in text.
+	 * @return Groups of occurrences, keyed by their first occurrence (in order).
+	 */
+	protected Map<LocationOccurrence, List<LocationOccurrence>> groupLocations(
+			Collection<LocationOccurrence> locations){
+		
+		Map<String, List<LocationOccurrence>> byName = new HashMap<String, List<LocationOccurrence>>();
+		
+		Map<LocationOccurrence, List<LocationOccurrence>> groups = 
+			new LinkedHashMap<LocationOccurrence, List<LocationOccurrence>>();
+		
+		for (LocationOccurrence location : locations){
+			
+			String key = normalize(location.getText());
+			
+			List<LocationOccurrence> group = byName.get(key);
+			
+			if (group == null){
+				
+				group = new ArrayList<LocationOccurrence>();
+				
+				byName.put(key, group);
+				
+				groups.put(location, group);
+			}
+			
+			group.add(location);
+		}
+		
+		return groups;
+	}
+	
+	/**
+	 * Group the coordinate occurrences at (about) the same position.
+	 * Coordinates that can't be converted to a Lat/Lon are left on their own.
+	 * @param coordinates Coordinate Occurrences found in text.
+	 * @return Groups of occurrences, keyed by their first occurrence (in order).
+	 */
+	protected Map<CoordinateOccurrence<?>, List<CoordinateOccurrence<?>>> groupCoordinates(
+			Collection<CoordinateOccurrence<?>> coordinates){
+		
+		Map<String, List<CoordinateOccurrence<?>>> byPosition = 
+			new HashMap<String, List<CoordinateOccurrence<?>>>();
+		
+		Map<CoordinateOccurrence<?>, List<CoordinateOccurrence<?>>> groups = 
+			new LinkedHashMap<CoordinateOccurrence<?>, List<CoordinateOccurrence<?>>>();
+		
+		for (CoordinateOccurrence<?> coordinate : coordinates){
+			
+			String key = getPositionKey(coordinate);
+			
+			List<CoordinateOccurrence<?>> group = (key == null)? null : byPosition.get(key);
+			
+			if (group == null){
+				
+				group = new ArrayList<CoordinateOccurrence<?>>();
+				
+				if (key != null) byPosition.put(key, group);
+				
+				groups.put(coordinate, group);
+			}
+			
+			group.add(coordinate);
+		}
+		
+		return groups;
+	}
+	
+	/**
+	 * Copy the selection made for the first occurrence of each group to
+	 * the rest of the group.
+	 * @param resolvedLocations Locations selected for the first occurrences.
+	 * @param groups Groups of occurrences, keyed by their first occurrence.
+	 * @return Locations selected for every occurrence (in the order they
+	 * occurred, if any were copied).
+	 */
+	static List<ResolvedLocation> expandLocations(
+			List<ResolvedLocation> resolvedLocations, 
+			Map<LocationOccurrence, List<LocationOccurrence>> groups){
+		
+		List<ResolvedLocation> expanded = new ArrayList<ResolvedLocation>();
+		
+		for (ResolvedLocation resolved : resolvedLocations){
+			
+			List<LocationOccurrence> group = groups.get(resolved.getLocation());
+			
+			if (group == null){
+				
+				expanded.add(resolved);
+				
+				continue;
+			}
+			
+			for (LocationOccurrence occurrence : group){
+				
+				expanded.add((occurrence == resolved.getLocation())? resolved : 
+					new ResolvedLocation(
+						resolved.getMatchedName(), resolved.getPlace(), occurrence, 
+						resolved.isFuzzy(), getConfidence(occurrence, resolved)));
+			}
+		}
+		
+		// the sort is stable, so occurrences at the same position keep their order
+		if (expanded.size() > resolvedLocations.size()) Collections.sort(expanded, LOCATIONS_BY_POSITION);
+		
+		return expanded;
+	}
+	
+	/**
+	 * Get the confidence of a selection copied to another occurrence of the
+	 * name: the (case-insensitive) edit distance between the occurrence's own
+	 * text and the matched name, as the name index measures it.
+	 * @param occurrence Occurrence the selection is copied to.
+	 * @param resolved Selection made for the first occurrence.
+	 * @return Confidence of the match for the occurrence.
+	 */
+	static float getConfidence(LocationOccurrence occurrence, ResolvedLocation resolved){
+		
+		if (resolved.getMatchedName() == null) return resolved.getConfidence();
+		
+		return DamerauLevenshtein.damerauLevenshteinDistanceCaseInsensitive(
+			occurrence.getText(), resolved.getMatchedName());
+	}
+	
+	/**
+	 * Copy the selection made for the first occurrence of each group to
+	 * the rest of the group.
+	 * @param resolvedCoordinates Coordinates selected for the first occurrences.
+	 * @param groups Groups of occurrences, keyed by their first occurrence.
+	 * @return Coordinates selected for every occurrence (in the order they
+	 * occurred, if any were copied).
+	 */
+	static List<ResolvedCoordinate> expandCoordinates(
+			List<ResolvedCoordinate> resolvedCoordinates, 
+			Map<CoordinateOccurrence<?>, List<CoordinateOccurrence<?>>> groups){
+		
+		List<ResolvedCoordinate> expanded = new ArrayList<ResolvedCoordinate>();
+		
+		for (ResolvedCoordinate resolved : resolvedCoordinates){
+			
+			List<CoordinateOccurrence<?>> group = groups.get(resolved.getOccurrence());
+			
+			if (group == null){
+				
+				expanded.add(resolved);
+				
+				continue;
+			}
+			
+			for (CoordinateOccurrence<?> occurrence : group){
+				
+				expanded.add((occurrence == resolved.getOccurrence())? resolved : 
+					new ResolvedCoordinate(
+						occurrence, resolved.getKnownLocation(), resolved.getVectorFromKnownLocation()));
+			}
+		}
+		
+		if (expanded.size() > resolvedCoordinates.size()) Collections.sort(expanded, COORDINATES_BY_POSITION);
+		
+		return expanded;
+	}
+	
+	/**
+	 * Normalize the text of a location occurrence for grouping: lower case,
+	 * with runs of whitespace collapsed ("  New   York " and "new york" are
+	 * the same name).
+	 * @param text Text of the occurrence.
+	 * @return Normalized text.
+	 */
+	static String normalize(String text){
+		
+		StringBuilder normalized = new StringBuilder(text.length());
+		
+		boolean inWhitespace = true;
+		
+		for (int i = 0; i < text.length(); i++){
+			
+			char c = text.charAt(i);
+			
+			if (Character.isWhitespace(c)){
+				
+				inWhitespace = true;
+				
+				continue;
+			}
+			
+			if (inWhitespace && normalized.length() > 0) normalized.append(' ');
+			
+			inWhitespace = false;
+			
+			normalized.append(Character.toLowerCase(c));
+		}
+		
+		return normalized.toString();
+	}
+	
+	/**
+	 * Get the key grouping a coordinate with the others at (about) the same
+	 * position.
+	 * @param coordinate Coordinate Occurrence.
+	 * @return Key, or null if the coordinate can't be converted to a Lat/Lon.
+	 */
+	static String getPositionKey(CoordinateOccurrence<?> coordinate){
+		
+		try {
+			
+			LatLon latLon = coordinate.convertToLatLon();
+			
+			if (latLon == null || latLon.isNull()) return null;
+			
+			return Math.round(latLon.getLatitude() / COORDINATE_GROUP_PRECISION) + ":" + 
+				Math.round(latLon.getLongitude() / COORDINATE_GROUP_PRECISION);
+		}
+		catch (Exception e){
+			
+			return null;
+		}
+	}
+	
+	/**
+	 * Get the number of times the name of each candidate list occurred.
+	 * @param locationCandidates Candidates of the first occurrence of each name.
+	 * @param groups Groups of occurrences, keyed by their first occurrence.
+	 * @return Number of occurrences of each list's name.
+	 */
+	static int[] getMultiplicity(
+			List<List<ResolvedLocation>> locationCandidates,
+			Map<LocationOccurrence, List<LocationOccurrence>> groups){
+		
+		int[] multiplicity = new int[locationCandidates.size()];
+		
+		for (int i = 0; i < multiplicity.length; i++){
+			
+			List<LocationOccurrence> group = groups.get(locationCandidates.get(i).get(0).getLocation());
+			
+			multiplicity[i] = (group == null)? 1 : group.size();
+		}
+		
+		return multiplicity;
+	}
+	
+	/**
+	 * Set whether to resolve repeated names and coordinates once on the Options object
+	 * @param options Options to set on.
+	 * @param coalesceOccurrences True to group repeated occurrences.
+	 */
+	public static void configureCoalesceOccurrences(Options options, boolean coalesceOccurrences){
+		
+		options.put(KEY_DEFAULT_COALESCE_OCCURRENCES, Boolean.toString(coalesceOccurrences));
+	}
 }
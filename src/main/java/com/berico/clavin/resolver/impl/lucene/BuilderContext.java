@@ -1,5 +1,8 @@
 package com.berico.clavin.resolver.impl.lucene;
 
+import java.util.List;
+
+import com.berico.clavin.gazetteer.AlternateName;
 import com.berico.clavin.gazetteer.Place;
 
 /*#####################################################################
@@ -37,11 +40,41 @@ import com.berico.clavin.gazetteer.Place;
 public interface BuilderContext {
 	
 	/**
-	 * Add a Place to the index.
+	 * Add a Place to the index.  This may be called from several threads
+	 * at once.
 	 * @param place
 	 */
 	void add(Place place);
 	
+	/**
+	 * Add a Place to the index along with its language-tagged names.  This
+	 * may be called from several threads at once.
+	 * @param place Place to add.
+	 * @param alternateNames Language-tagged names of the Place.
+	 */
+	void add(Place place, List<AlternateName> alternateNames);
+	
+	/**
+	 * Replace the Place with the same id in the index (adding it if
+	 * it isn't there).
+	 * @param place Updated Place.
+	 */
+	void update(Place place);
+	
+	/**
+	 * Replace the Place with the same id in the index (adding it if
+	 * it isn't there), along with its language-tagged names.
+	 * @param place Updated Place.
+	 * @param alternateNames Language-tagged names of the Place.
+	 */
+	void update(Place place, List<AlternateName> alternateNames);
+	
+	/**
+	 * Remove the Place with the supplied id from the index.
+	 * @param placeId Id of the Place.
+	 */
+	void delete(int placeId);
+	
 	/**
 	 * Get the total number of records processed.
 	 * @return Total records processed.
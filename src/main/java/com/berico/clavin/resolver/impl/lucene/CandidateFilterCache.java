@@ -0,0 +1,173 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldCacheRangeFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * CandidateFilterCache.java
+ * 
+ *###################################################################*/
+
+/**
+ * Builds and caches Lucene filters restricting candidates to certain kinds
+ * of places (by FeatureClass, FeatureCode and minimum population).
+ *
+ * Each distinct combination of restrictions gets a single
+ * {@link CachingWrapperFilter}, which holds on to one bitset per index
+ * segment.  Once a segment has been seen, applying the same restriction
+ * again costs nothing more than intersecting that bitset with the query.
+ *
+ * Filtering on FeatureClass and FeatureCode requires an index built with the
+ * {@link FieldConstants#FEATURE_CLASS} and {@link FieldConstants#FEATURE_CODE}
+ * fields.
+ */
+public class CandidateFilterCache {
+
+	ConcurrentHashMap<String, Filter> filters = new ConcurrentHashMap<String, Filter>();
+
+	/**
+	 * Get the (cached) filter for the set of restrictions.  A place passes if
+	 * its FeatureClass or FeatureCode is in the supplied sets (when either set
+	 * is not empty), and its population is at least the minimum.
+	 * @param featureClasses Allowed Feature Classes (empty for all).
+	 * @param featureCodes Allowed Feature Codes (empty for all).
+	 * @param minPopulation Minimum population (0 or less for any).
+	 * @return Filter, or null if there are no restrictions.
+	 */
+	public Filter getFilter(
+			Collection<FeatureClass> featureClasses,
+			Collection<FeatureCode> featureCodes,
+			long minPopulation){
+
+		if (featureClasses.isEmpty() && featureCodes.isEmpty() && minPopulation <= 0)
+			return null;
+
+		String key = getKey(featureClasses, featureCodes, minPopulation);
+
+		Filter filter = filters.get(key);
+
+		if (filter == null){
+
+			filter = new CachingWrapperFilter(
+				createFilter(featureClasses, featureCodes, minPopulation));
+
+			// Another thread may have beaten us to it; keep theirs so there's
+			// only ever one set of bitsets per restriction.
+			Filter existing = filters.putIfAbsent(key, filter);
+
+			if (existing != null) filter = existing;
+		}
+
+		return filter;
+	}
+
+	/**
+	 * Create the (uncached) filter for the set of restrictions.
+	 * @param featureClasses Allowed Feature Classes (empty for all).
+	 * @param featureCodes Allowed Feature Codes (empty for all).
+	 * @param minPopulation Minimum population (0 or less for any).
+	 * @return Filter
+	 */
+	protected Filter createFilter(
+			Collection<FeatureClass> featureClasses,
+			Collection<FeatureCode> featureCodes,
+			long minPopulation){
+
+		BooleanQuery restrictions = new BooleanQuery();
+
+		if (!featureClasses.isEmpty() || !featureCodes.isEmpty()){
+
+			BooleanQuery featureTypes = new BooleanQuery();
+
+			for (FeatureClass featureClass : featureClasses){
+
+				featureTypes.add(new TermQuery(
+					new Term(FieldConstants.FEATURE_CLASS, featureClass.name())),
+					Occur.SHOULD);
+			}
+
+			for (FeatureCode featureCode : featureCodes){
+
+				featureTypes.add(new TermQuery(
+					new Term(FieldConstants.FEATURE_CODE, featureCode.name())),
+					Occur.SHOULD);
+			}
+
+			restrictions.add(featureTypes, Occur.MUST);
+		}
+
+		if (minPopulation > 0){
+
+			// Population is stored as a NumericDocValuesField, which the
+			// FieldCache reads directly.
+			restrictions.add(new ConstantScoreQuery(
+				FieldCacheRangeFilter.newLongRange(
+					FieldConstants.POPULATION, minPopulation, null, true, true)),
+				Occur.MUST);
+		}
+
+		return new QueryWrapperFilter(restrictions);
+	}
+
+	/**
+	 * Build a key that is the same for equivalent sets of restrictions,
+	 * regardless of the order they were supplied in.
+	 * @param featureClasses Allowed Feature Classes.
+	 * @param featureCodes Allowed Feature Codes.
+	 * @param minPopulation Minimum population.
+	 * @return Cache key.
+	 */
+	static String getKey(
+			Collection<FeatureClass> featureClasses,
+			Collection<FeatureCode> featureCodes,
+			long minPopulation){
+
+		TreeSet<String> classes = new TreeSet<String>();
+
+		for (FeatureClass featureClass : featureClasses) classes.add(featureClass.name());
+
+		TreeSet<String> codes = new TreeSet<String>();
+
+		for (FeatureCode featureCode : featureCodes) codes.add(featureCode.name());
+
+		return String.format("classes=%s;codes=%s;minPopulation=%s",
+			classes, codes, (minPopulation > 0)? minPopulation : 0);
+	}
+}
@@ -34,9 +34,16 @@ package com.berico.clavin.resolver.impl.lucene;
 public class FieldConstants {
 
 	public static final String NAME = "indexName";
+	// Names in a specific language are also indexed in NAME + "_" + language
+	// (see LuceneUtils.getLanguageNameField).
+	public static final String EXACT_NAME = "exactName";
+	// Whole names (normalized by LuceneUtils.normalizeName), one term per
+	// name, indexed by the slim schema for exact matching; likewise per language.
 	public static final String POPULATION = "population";
 	public static final String PLACE = "place";
 	public static final String PLACE_ID = "placeId";
 	public static final String GEOMETRY = "geometry";
+	public static final String FEATURE_CLASS = "featureClass";
+	public static final String FEATURE_CODE = "featureCode";
 	
 }
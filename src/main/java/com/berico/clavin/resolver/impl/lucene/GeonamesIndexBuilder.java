@@ -2,13 +2,29 @@ package com.berico.clavin.resolver.impl.lucene;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
+import com.berico.clavin.gazetteer.AlternateName;
 import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.util.ExternalLineSorter;
+import com.berico.clavin.util.GeonamesAdminCodes;
+import com.berico.clavin.util.GeonamesAlternateNames;
+import com.berico.clavin.util.GeonamesRecordParser;
 import com.berico.clavin.util.GeonamesUtils;
 
 /*#####################################################################
@@ -43,9 +59,33 @@ import com.berico.clavin.util.GeonamesUtils;
  * Build a CLAVIN index from the Geonames gazetteer.  This process
  * assumes you have downloaded the Geonames gazetteer from this
  * url:  http://download.geonames.org/export/dump/allCountries.zip
- * and have extracted the text file.  We will convert each line of the
+ * (or one or more of the country files, like US.zip).  The archives are
+ * read directly (as are .gz files and extracted text files), so there's no
+ * need to extract them first.  We will convert each line of the
  * file into a Place entry, providing the record to the indexer for
  * processing.
+ * 
+ * When the builder is given more than one thread, each file is read on a
+ * single reader thread (several files may be read at once) and handed out
+ * in batches of lines to a pool of workers, which parse the lines and add
+ * the places to the (shared) index.
+ * 
+ * Given the GeoNames admin code tables (--admin1-codes, --admin2-codes),
+ * the admin1 and admin2 references of each place are resolved to the ids
+ * and names of the divisions they refer to.
+ * 
+ * Given the GeoNames alternate names table (--alternate-names), its names
+ * are indexed with their languages, so searches can be restricted to names
+ * in certain languages.  The table (15M+ rows) is joined to the records with
+ * an external sort-merge on geonameId, holding at most --sort-buffer lines
+ * of each in memory and spilling the rest to --temp-dir.
+ * 
+ * Every --checkpoint-every records, the index is committed along with how
+ * far the build has got through each file (the byte offset of the next line
+ * and the number of lines read).  Given --resume, an interrupted build reads
+ * that checkpoint back and carries on from those offsets.  (Builds joining
+ * the alternate names have to sort both tables again, then skip the records
+ * already indexed.)
  */
 public class GeonamesIndexBuilder extends IndexBuilder {
 
@@ -61,8 +101,66 @@ public class GeonamesIndexBuilder extends IndexBuilder {
 		new GeonamesIndexBuilder(args);
 	}
 	
-	private String geonamesSourceFile;
-	private BufferedReader reader;
+	/**
+	 * Number of lines handed to a worker at a time.
+	 */
+	public static int BATCH_SIZE = 1000;
+	
+	/**
+	 * Number of batches (per thread) that may be waiting on a worker before
+	 * the reader stops to let them catch up.
+	 */
+	public static int BATCHES_PER_THREAD = 4;
+	
+	/**
+	 * Commit user data keys of a checkpoint, recording for each source (by
+	 * its position on the command line) the name of the source, the offset
+	 * of the next line to read and the number of lines read.
+	 */
+	public static final String COMMIT_CHECKPOINT_SOURCE = "clavin.checkpoint.%s.source";
+	public static final String COMMIT_CHECKPOINT_OFFSET = "clavin.checkpoint.%s.offset";
+	public static final String COMMIT_CHECKPOINT_LINES = "clavin.checkpoint.%s.lines";
+	
+	/**
+	 * Name of the single source of a build joining the alternate names; its
+	 * offset is the number of (sorted) records read.
+	 */
+	static final String SORTED_RECORDS = "the sorted Geonames records";
+	
+	private List<String> geonamesSourceFiles;
+	private int readerThreads;
+	private boolean retainRawLines;
+	private String admin1CodesFile;
+	private String admin2CodesFile;
+	private String alternateNamesFile;
+	private int sortBufferLines;
+	private File tempDirectory;
+	private boolean resume;
+	
+	/**
+	 * Checkpoint being resumed from (null to start at the beginning).
+	 */
+	private Map<String, String> checkpoint;
+	
+	/**
+	 * Resolves the admin codes of each place (null if there are no code
+	 * tables).  Read-only once loaded, so the workers share it.
+	 */
+	private GeonamesAdminCodes adminCodes;
+	
+	/**
+	 * Parsers reuse their Place between records (it is indexed before the
+	 * next line is parsed), so each thread gets its own.
+	 */
+	private final ThreadLocal<GeonamesRecordParser> parsers = 
+		new ThreadLocal<GeonamesRecordParser>(){
+		
+			@Override
+			protected GeonamesRecordParser initialValue() {
+				
+				return new GeonamesRecordParser(retainRawLines, true);
+			}
+		};
 	
 	/**
 	 * Instantiate the IndexBuilder with the command line arguments.
@@ -80,6 +178,17 @@ public class GeonamesIndexBuilder extends IndexBuilder {
 		
 		return "Converts the Geonames gazetteer into a CLAVIN index.";
 	}
+	
+	/**
+	 * The build records how far it has got through its files, so it can
+	 * resume from a checkpoint every million records.
+	 * @return 1,000,000 records.
+	 */
+	@Override
+	protected long getDefaultCheckpointInterval() {
+		
+		return 1000000;
+	}
 
 	/**
 	 * The super class provides the argument parser before parsing the input.
@@ -90,28 +199,97 @@ public class GeonamesIndexBuilder extends IndexBuilder {
 	@Override
 	protected void extend(ArgumentParser parser) {
 		
-		 // Register the Geonames source file. 
+		 // Register the Geonames source files. 
 		 parser.addArgument("source")
 		 	.metavar("geonames-file")
 		 	.type(String.class)
-		 	.required(true)
-		 	.help("Geonames gazetteer source location.");
+		 	.nargs("+")
+		 	.help("Geonames gazetteer source locations (.txt, .zip or .gz).");
+		 
+		 parser.addArgument("--readers")
+		 	.metavar("readers")
+		 	.type(Integer.class)
+		 	.help("Number of source files read at once (defaults to one per file, "
+		 		+ "up to the number of threads).");
+		 
+		 // Keeping the raw line bloats the index with a copy of every record.
+		 parser.addArgument("--retain-raw-lines")
+		 	.action(Arguments.storeTrue())
+		 	.help("Keep each raw Geonames line as the context of its Place.");
+		 
+		 // The code tables resolve admin codes to the places they refer to.
+		 parser.addArgument("--admin1-codes")
+		 	.metavar("admin1-file")
+		 	.type(String.class)
+		 	.help("Geonames admin1 code table (admin1CodesASCII.txt).");
+		 
+		 parser.addArgument("--admin2-codes")
+		 	.metavar("admin2-file")
+		 	.type(String.class)
+		 	.help("Geonames admin2 code table (admin2Codes.txt); requires --admin1-codes.");
+		 
+		 // The alternate names table is joined to the records by sorting both.
+		 parser.addArgument("--alternate-names")
+		 	.metavar("alternate-names-file")
+		 	.type(String.class)
+		 	.help("Geonames alternate names table (alternateNamesV2.txt or .zip) "
+		 		+ "to index language-tagged names from.");
+		 
+		 parser.addArgument("--sort-buffer")
+		 	.metavar("lines")
+		 	.type(Integer.class)
+		 	.setDefault(ExternalLineSorter.DEFAULT_MAX_LINES_IN_MEMORY)
+		 	.help("Lines held in memory (per table) when sorting for the alternate names join.");
+		 
+		 parser.addArgument("--temp-dir")
+		 	.metavar("directory")
+		 	.type(String.class)
+		 	.help("Directory for the sort's spill files (defaults to java.io.tmpdir).");
+		 
+		 parser.addArgument("--resume")
+		 	.action(Arguments.storeTrue())
+		 	.help("Carry on from the last checkpoint of an interrupted build (given the same files).");
 	}
 	
 	/**
 	 * Initialize the index builder with the provided command line input
 	 * preparsed for us.  In our case, we only want to collect the location of
-	 * the source file.
+	 * the source files.
 	 * @param namespace The object containing the parsed input.
 	 */
 	@Override
 	protected void initialize(Namespace namespace) {
 		
-		geonamesSourceFile = namespace.getString("source");
+		geonamesSourceFiles = new ArrayList<String>();
+		
+		for (Object source : namespace.getList("source")) 
+			geonamesSourceFiles.add(source.toString());
+		
+		Integer readers = namespace.getInt("readers");
+		
+		readerThreads = (readers == null)? 
+			Math.min(geonamesSourceFiles.size(), threads) : Math.max(1, readers);
+		
+		retainRawLines = namespace.getBoolean("retain_raw_lines");
+		
+		admin1CodesFile = namespace.getString("admin1_codes");
+		admin2CodesFile = namespace.getString("admin2_codes");
+		
+		alternateNamesFile = namespace.getString("alternate_names");
+		
+		hasAlternateNames = alternateNamesFile != null;
+		
+		sortBufferLines = namespace.getInt("sort_buffer");
+		
+		String tempDir = namespace.getString("temp_dir");
+		
+		tempDirectory = (tempDir == null)? null : new File(tempDir);
+		
+		resume = namespace.getBoolean("resume");
 	}
 
 	/**
-	 * Being the process of converting the Geonames source file into Place
+	 * Being the process of converting the Geonames source files into Place
 	 * objects that can be added to the CLAVIN index.
 	 * @param context This is a helper we can use to emit places and find
 	 * out how many records we've already processed.
@@ -119,34 +297,496 @@ public class GeonamesIndexBuilder extends IndexBuilder {
 	@Override
 	protected void begin(BuilderContext context) throws Exception {
 		
-		// Initialize the reader.
-		reader = 
-			new BufferedReader(
-				new InputStreamReader(
-					new FileInputStream( 
-						new File(geonamesSourceFile)), "UTF-8" ));
+		adminCodes = GeonamesAdminCodes.load(admin1CodesFile, admin2CodesFile);
 		
-		String line;
+		if (resume){
+			
+			checkpoint = readCheckpoint();
+			
+			if (checkpoint == null){
+				
+				// Whatever was indexed before the first checkpoint can't be
+				// accounted for.
+				pl("> No checkpoint to resume from; starting from the beginning.");
+				
+				clearIndex();
+			}
+			else {
+				
+				pl("> Resuming from the checkpoint at %,d records.", getTotalProcessed());
+			}
+		}
 		
-		// Iterate over each line of the file.
-		while ((line = reader.readLine()) != null){
+		if (alternateNamesFile != null) {
 			
-			try {
+			processWithAlternateNames(context);
+		}
+		else if (threads > 1) {
+			
+			processInParallel(context);
+		}
+		else {
+			
+			Checkpoints checkpoints = new Checkpoints(geonamesSourceFiles, null, 0);
+			
+			for (int i = 0; i < geonamesSourceFiles.size(); i++){
+				
+				String source = geonamesSourceFiles.get(i);
+				
+				long offset = checkpoints.getOffset(i);
+				
+				BufferedReader reader = 
+					GeonamesUtils.openGeonamesFile(new File(source), offset);
+				
+				try {
+					
+					String line;
+					long lineNumber = checkpoints.getLines(i);
+					
+					// Iterate over each line of the file.
+					while ((line = reader.readLine()) != null){
+						
+						processLine(context, source, ++lineNumber, line, null);
+						
+						offset += GeonamesUtils.getEncodedLength(line);
+						
+						if (lineNumber % BATCH_SIZE == 0) checkpoints.advance(i, offset, lineNumber);
+					}
+					
+					checkpoints.advance(i, offset, lineNumber);
+				}
+				finally {
+					
+					reader.close();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Read the files on a pool of readers, handing batches of lines to a 
+	 * pool of workers.  Returns once every line has been added to the index.
+	 * 
+	 * The workers add their places to the shared IndexWriter as they go, so
+	 * the documents aren't in the order of the files (and a single thread's
+	 * wouldn't stay in order either once the merge policy merges segments
+	 * that aren't adjacent).  Nothing depends on the order: search results
+	 * tied on population and score are ordered by place id instead (see
+	 * {@link LuceneLocationNameIndex#DEFAULT_SORTER}).
+	 * @param context Context to add places to.
+	 * @throws Exception
+	 */
+	protected void processInParallel(final BuilderContext context) throws Exception {
+		
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		
+		ExecutorService readers = Executors.newFixedThreadPool(readerThreads);
+		
+		// Keep the readers from running ahead of the workers and
+		// filling the heap with lines.
+		final Semaphore pendingBatches = new Semaphore(threads * BATCHES_PER_THREAD);
+		
+		final Checkpoints checkpoints = 
+			new Checkpoints(geonamesSourceFiles, pendingBatches, threads * BATCHES_PER_THREAD);
+		
+		try {
+			
+			List<Future<Long>> reads = new ArrayList<Future<Long>>();
+			
+			for (int i = 0; i < geonamesSourceFiles.size(); i++){
+				
+				final int source = i;
+				
+				reads.add(readers.submit(new Callable<Long>(){
+					
+					@Override
+					public Long call() throws Exception {
+						
+						return readInBatches(workers, pendingBatches, checkpoints, context, source);
+					}
+				}));
+			}
+			
+			// Surface any error reading the files.
+			for (Future<Long> read : reads) read.get();
+		}
+		finally {
+			
+			readers.shutdownNow();
+			
+			// Let the workers finish what was read before returning, so
+			// the index isn't closed out from under them.
+			workers.shutdown();
+			
+			while (!workers.awaitTermination(1, TimeUnit.SECONDS));
+		}
+	}
+	
+	/**
+	 * Read a file, handing batches of its lines to the workers.
+	 * @param workers Worker pool.
+	 * @param pendingBatches Permits for pending batches.
+	 * @param checkpoints Progress through the files.
+	 * @param context Context to add places to.
+	 * @param sourceIndex Index of the file to read in the source files.
+	 * @return Number of lines read.
+	 * @throws Exception
+	 */
+	long readInBatches(
+			ExecutorService workers, 
+			Semaphore pendingBatches, 
+			Checkpoints checkpoints,
+			BuilderContext context, 
+			int sourceIndex) throws Exception {
+		
+		String source = geonamesSourceFiles.get(sourceIndex);
+		
+		long offset = checkpoints.getOffset(sourceIndex);
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(new File(source), offset);
+		
+		try {
+			
+			String line;
+			long lineNumber = checkpoints.getLines(sourceIndex);
+			
+			List<String> batch = new ArrayList<String>(BATCH_SIZE);
+			
+			while ((line = reader.readLine()) != null){
+				
+				batch.add(line);
+				
+				offset += GeonamesUtils.getEncodedLength(line);
+				
+				if (batch.size() == BATCH_SIZE){
+					
+					// The batch has to be handed over and recorded as read
+					// before another reader can take a checkpoint.
+					synchronized (checkpoints){
+						
+						submitBatch(workers, pendingBatches, context, source, lineNumber, batch, null);
+						
+						lineNumber += batch.size();
+						
+						checkpoints.advance(sourceIndex, offset, lineNumber);
+					}
+					
+					batch = new ArrayList<String>(BATCH_SIZE);
+				}
+			}
+			
+			synchronized (checkpoints){
+				
+				if (!batch.isEmpty())
+					submitBatch(workers, pendingBatches, context, source, lineNumber, batch, null);
+				
+				lineNumber += batch.size();
+				
+				checkpoints.advance(sourceIndex, offset, lineNumber);
+			}
+			
+			return lineNumber;
+		}
+		finally {
+			
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Hand a batch of lines to a worker, waiting if too many are pending.
+	 * @param workers Worker pool.
+	 * @param pendingBatches Permits for pending batches.
+	 * @param context Context to add places to.
+	 * @param source File the lines came from.
+	 * @param linesBefore Number of lines in the file before this batch.
+	 * @param batch Lines to process.
+	 * @param batchNames Language-tagged names of each line (null if none).
+	 * @throws InterruptedException
+	 */
+	void submitBatch(
+			ExecutorService workers, 
+			final Semaphore pendingBatches, 
+			final BuilderContext context, 
+			final String source,
+			final long linesBefore, 
+			final List<String> batch,
+			final List<List<AlternateName>> batchNames) throws InterruptedException {
+		
+		pendingBatches.acquire();
+		
+		workers.execute(new Runnable(){
+			
+			@Override
+			public void run() {
+				
+				try {
+					
+					for (int i = 0; i < batch.size(); i++){
+						
+						processLine(context, source, linesBefore + i + 1, batch.get(i), 
+							(batchNames == null)? null : batchNames.get(i));
+					}
+				}
+				finally {
+					
+					pendingBatches.release();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Join the alternate names table to the records and index them.  Both
+	 * are sorted by geonameId (spilling to disk, so neither is ever held in
+	 * memory), then merged: each record is handed to the workers with the
+	 * names that share its id.
+	 * @param context Context to add places to.
+	 * @throws Exception
+	 */
+	protected void processWithAlternateNames(final BuilderContext context) throws Exception {
+		
+		ExecutorService sorters = Executors.newSingleThreadExecutor();
+		
+		final ExternalLineSorter names = new ExternalLineSorter(tempDirectory, sortBufferLines);
+		
+		ExternalLineSorter records = new ExternalLineSorter(tempDirectory, sortBufferLines);
+		
+		try {
+			
+			// Sort the names while the records are sorted on this thread.
+			Future<Long> sortedNames = sorters.submit(new Callable<Long>(){
+				
+				@Override
+				public Long call() throws Exception {
+					
+					return addAlternateNames(names, alternateNamesFile);
+				}
+			});
+			
+			for (String source : geonamesSourceFiles) addLines(records, source);
+			
+			sortedNames.get();
+			
+			pl("> Joining %s records to %s alternate names (%s and %s runs spilled).", 
+				records.size(), names.size(), records.getRunCount(), names.getRunCount());
+			
+			joinAlternateNames(context, records.sort(), names.sort());
+		}
+		finally {
+			
+			sorters.shutdownNow();
+			
+			records.close();
+			names.close();
+		}
+	}
+	
+	/**
+	 * Merge the sorted records and names, handing the records (with their
+	 * names) to the workers.
+	 * @param context Context to add places to.
+	 * @param records Records sorted by geonameId.
+	 * @param names Alternate names (sort lines) sorted by geonameId.
+	 * @throws Exception
+	 */
+	void joinAlternateNames(
+			BuilderContext context, 
+			ExternalLineSorter.SortedLines records, 
+			ExternalLineSorter.SortedLines names) throws Exception {
+		
+		String source = SORTED_RECORDS;
+		
+		ExecutorService workers = (threads > 1)? Executors.newFixedThreadPool(threads) : null;
+		
+		Semaphore pendingBatches = new Semaphore(threads * BATCHES_PER_THREAD);
+		
+		Checkpoints checkpoints = new Checkpoints(Collections.singletonList(source), 
+			(workers == null)? null : pendingBatches, threads * BATCHES_PER_THREAD);
+		
+		// The records before the checkpoint are already in the index.
+		long skip = checkpoints.getOffset(0);
+		
+		try {
+			
+			String line;
+			String name = names.next();
+			long lineNumber = 0;
+			
+			List<String> batch = new ArrayList<String>(BATCH_SIZE);
+			List<List<AlternateName>> batchNames = new ArrayList<List<AlternateName>>(BATCH_SIZE);
+			
+			while ((line = records.next()) != null){
+				
+				int key = records.getKey();
+				
+				// Names of places that aren't in the records are skipped.
+				while (name != null && names.getKey() < key) name = names.next();
+				
+				if (lineNumber < skip){
+					
+					while (name != null && names.getKey() == key) name = names.next();
+					
+					lineNumber++;
+					
+					continue;
+				}
+				
+				List<AlternateName> placeNames = new ArrayList<AlternateName>();
+				
+				while (name != null && names.getKey() == key){
+					
+					placeNames.add(GeonamesAlternateNames.parse(name));
+					
+					name = names.next();
+				}
+				
+				if (workers == null){
+					
+					processLine(context, source, ++lineNumber, line, placeNames);
+					
+					if (lineNumber % BATCH_SIZE == 0) checkpoints.advance(0, lineNumber, lineNumber);
+					
+					continue;
+				}
+				
+				batch.add(line);
+				batchNames.add(placeNames);
+				
+				if (batch.size() == BATCH_SIZE){
+					
+					submitBatch(workers, pendingBatches, context, source, lineNumber, batch, batchNames);
+					
+					lineNumber += batch.size();
+					
+					checkpoints.advance(0, lineNumber, lineNumber);
+					
+					batch = new ArrayList<String>(BATCH_SIZE);
+					batchNames = new ArrayList<List<AlternateName>>(BATCH_SIZE);
+				}
+			}
+			
+			if (!batch.isEmpty())
+				submitBatch(workers, pendingBatches, context, source, lineNumber, batch, batchNames);
+		}
+		finally {
+			
+			if (workers != null){
+				
+				workers.shutdown();
+				
+				while (!workers.awaitTermination(1, TimeUnit.SECONDS));
+			}
+		}
+	}
+	
+	/**
+	 * Add the lines of a file to a sorter.
+	 * @param sorter Sorter to add to.
+	 * @param source File to read.
+	 * @return Number of lines added.
+	 * @throws IOException
+	 */
+	long addLines(ExternalLineSorter sorter, String source) throws IOException {
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(new File(source));
+		
+		long added = 0;
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null){
+				
+				sorter.add(line);
+				
+				added++;
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return added;
+	}
+	
+	/**
+	 * Add the names in the alternate names table to a sorter.
+	 * @param sorter Sorter to add to.
+	 * @param source Alternate names table.
+	 * @return Number of names added.
+	 * @throws IOException
+	 */
+	long addAlternateNames(ExternalLineSorter sorter, String source) throws IOException {
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(new File(source));
+		
+		long added = 0;
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null){
+				
+				String sortLine = GeonamesAlternateNames.toSortLine(line);
+				
+				if (sortLine == null) continue;
+				
+				sorter.add(sortLine);
+				
+				added++;
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return added;
+	}
+	
+	/**
+	 * Parse a line of a file and add the place to the index.
+	 * @param context Context to add the place to.
+	 * @param source File the line came from (for error reporting).
+	 * @param lineNumber Line number in the file (for error reporting).
+	 * @param line Line of the Geonames file.
+	 * @param alternateNames Language-tagged names of the place (null if none).
+	 */
+	void processLine(
+			BuilderContext context, 
+			String source, 
+			long lineNumber, 
+			String line, 
+			List<AlternateName> alternateNames){
+		
+		try {
 			
 			// Parse the line into a Place object
-			Place place = GeonamesUtils.parseFromGeoNamesRecord(line);
+			Place place = parsers.get().parse(line);
+			
+			// Point the admin codes at the places they refer to
+			if (adminCodes != null) adminCodes.resolve(place);
 			
 			// Add the place object to the BuilderContext
-			context.add(place);
+			if (alternateNames == null) context.add(place);
+			else context.add(place, alternateNames);
+		
+		// If an exception occurs in the processing of this file,
+		// catch it, and display what happened.
+		} catch (Exception e){
 			
-			// If an exception occurs in the processing of this file,
-			// catch it, and display what happened.
-			} catch (Exception e){
+			// Several workers may be reporting at once.
+			synchronized (this) {
 				
 				br();
 				
-				pl("Could not parse line %s, an error was encountered: %s", 
-					context.getTotalProcessed(),
+				pl("Could not parse line %s of %s, an error was encountered: %s", 
+					lineNumber,
+					source,
 					e.getMessage());
 				
 				br();
@@ -156,12 +796,126 @@ public class GeonamesIndexBuilder extends IndexBuilder {
 
 	/**
 	 * When the index creation process is done, the super class gives us
-	 * an opportunity to clean up resources.  Here we'll close the reader.
+	 * an opportunity to clean up resources.  The readers close their files
+	 * as they finish, so there's nothing left to do.
 	 */
 	@Override
-	protected void cleanup() throws Exception {
+	protected void cleanup() throws Exception {}
+	
+	/**
+	 * Tracks how far the build has got through each source, taking a
+	 * checkpoint every checkpointInterval records.  Readers record a position
+	 * only once the lines before it have been handed to the workers, and a
+	 * checkpoint waits for the workers to finish what they've been handed (by
+	 * taking every pending batch permit), so a checkpoint never counts a line
+	 * that isn't in the index, or misses one that is.
+	 */
+	class Checkpoints {
+		
+		private final List<String> sources;
+		private final long[] offsets;
+		private final long[] lines;
+		private final Semaphore pendingBatches;
+		private final int permits;
+		private long nextCheckpoint;
+		
+		/**
+		 * Start tracking the sources, from the checkpoint being resumed if
+		 * there is one.
+		 * @param sources Names of the sources (in a fixed order).
+		 * @param pendingBatches Permits for pending batches (null if the
+		 * lines are processed as they are read).
+		 * @param permits Number of permits.
+		 * @throws IOException if the checkpoint was taken reading other sources.
+		 */
+		Checkpoints(List<String> sources, Semaphore pendingBatches, int permits) throws IOException {
+			
+			this.sources = sources;
+			this.offsets = new long[sources.size()];
+			this.lines = new long[sources.size()];
+			this.pendingBatches = pendingBatches;
+			this.permits = permits;
+			
+			if (checkpoint != null){
+				
+				for (int i = 0; i <= sources.size(); i++){
+					
+					String source = checkpoint.get(String.format(COMMIT_CHECKPOINT_SOURCE, i));
+					
+					String expected = (i < sources.size())? sources.get(i) : null;
+					
+					if ((source == null)? expected != null : !source.equals(expected))
+						throw new IOException(String.format(
+							"The checkpoint was taken reading %s, not %s; resume with the same files.", 
+							source, expected));
+					
+					if (expected == null) break;
+					
+					offsets[i] = Long.parseLong(checkpoint.get(String.format(COMMIT_CHECKPOINT_OFFSET, i)));
+					lines[i] = Long.parseLong(checkpoint.get(String.format(COMMIT_CHECKPOINT_LINES, i)));
+				}
+			}
+			
+			nextCheckpoint = getTotalProcessed() + checkpointInterval;
+		}
+		
+		/**
+		 * @param source Index of the source.
+		 * @return Offset to start reading the source from.
+		 */
+		long getOffset(int source){
+			
+			return offsets[source];
+		}
+		
+		/**
+		 * @param source Index of the source.
+		 * @return Number of lines of the source before the offset.
+		 */
+		long getLines(int source){
+			
+			return lines[source];
+		}
 		
-		reader.close();
+		/**
+		 * Record that the lines of a source up to an offset have been
+		 * handed over, taking a checkpoint if one is due.
+		 * @param source Index of the source.
+		 * @param offset Offset of the next line to read.
+		 * @param lineCount Number of lines before the offset.
+		 * @throws IOException
+		 * @throws InterruptedException
+		 */
+		synchronized void advance(int source, long offset, long lineCount) 
+				throws IOException, InterruptedException {
+			
+			offsets[source] = offset;
+			lines[source] = lineCount;
+			
+			if (checkpointInterval <= 0 || getTotalProcessed() < nextCheckpoint) return;
+			
+			// Wait for the workers to finish the pending batches.
+			if (pendingBatches != null) pendingBatches.acquire(permits);
+			
+			try {
+				
+				Map<String, String> progress = new HashMap<String, String>();
+				
+				for (int i = 0; i < sources.size(); i++){
+					
+					progress.put(String.format(COMMIT_CHECKPOINT_SOURCE, i), sources.get(i));
+					progress.put(String.format(COMMIT_CHECKPOINT_OFFSET, i), Long.toString(offsets[i]));
+					progress.put(String.format(COMMIT_CHECKPOINT_LINES, i), Long.toString(lines[i]));
+				}
+				
+				commitCheckpoint(progress);
+			}
+			finally {
+				
+				if (pendingBatches != null) pendingBatches.release(permits);
+			}
+			
+			nextCheckpoint = getTotalProcessed() + checkpointInterval;
+		}
 	}
-	
 }
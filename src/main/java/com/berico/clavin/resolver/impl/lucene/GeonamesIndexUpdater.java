@@ -0,0 +1,522 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.util.ExternalLineSorter;
+import com.berico.clavin.util.GeonamesAdminCodes;
+import com.berico.clavin.util.GeonamesAlternateNames;
+import com.berico.clavin.util.GeonamesRecordParser;
+import com.berico.clavin.util.GeonamesUtils;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesIndexUpdater.java
+ * 
+ *###################################################################*/
+
+/**
+ * Apply the daily Geonames diff files to an existing CLAVIN index, rather
+ * than rebuilding it from scratch.  The files can be downloaded from:
+ * http://download.geonames.org/export/dump/ and are named:
+ * 
+ * modifications-YYYY-MM-DD.txt = Records added or changed that day (same
+ * format as allCountries.txt); each replaces the document with its geonameId.
+ * 
+ * deletes-YYYY-MM-DD.txt = Records deleted that day (geonameId, name and
+ * comment); each document with the geonameId is removed.
+ * 
+ * The files are applied in date order (modifications before deletes on the
+ * same day), and the last one is committed as the gazetteer version 
+ * ({@link IndexBuilder#COMMIT_GAZETTEER_VERSION}): its date, followed by
+ * ":deletes" for a deletes file (see {@link DiffFile#getVersion()}).  Files
+ * at or before the version already in the index are skipped, so applying the
+ * same files twice is harmless, and a day's deletes can be applied after its
+ * modifications.  Searchers using a refreshing SearcherManager (see
+ * {@link LuceneComponentsFactory}) pick up the changes once committed.
+ * 
+ * Lines that can't be parsed are reported and skipped.  Any other error (like
+ * the IndexWriter failing) stops the update and rolls the index back to the
+ * version it was at.
+ * 
+ * Documents are rebuilt from the modified records, so an index built with
+ * the language-tagged names of the alternate names table needs the table
+ * (--alternate-names) to keep those names; the names of the modified places
+ * are read from it.  Without it, the modified places lose them (the updater
+ * warns when the index was built with them).
+ */
+public class GeonamesIndexUpdater extends IndexBuilder {
+
+	/**
+	 * You have to have an entry point, and it can't be inherited
+	 * from a super class.
+	 * @param args Command line arguments.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception{
+		
+		new GeonamesIndexUpdater(args);
+	}
+	
+	/**
+	 * Matches the names of the diff files, capturing the kind and date.
+	 */
+	static final Pattern DIFF_FILE_PATTERN = 
+		Pattern.compile("(modifications|deletes)-(\\d{4}-\\d{2}-\\d{2})\\.txt$");
+	
+	private List<DiffFile> diffFiles;
+	private String version;
+	private BufferedReader reader;
+	private GeonamesRecordParser parser;
+	private String admin1CodesFile;
+	private String admin2CodesFile;
+	private GeonamesAdminCodes adminCodes;
+	private String alternateNamesFile;
+	
+	/**
+	 * Language-tagged names of the modified places, by id (null if there
+	 * is no alternate names table).
+	 */
+	private Map<Integer, List<AlternateName>> alternateNames;
+	
+	/**
+	 * Instantiate the updater with the command line arguments.
+	 * @param args Command line arguments.
+	 * @throws Exception
+	 */
+	public GeonamesIndexUpdater(String[] args) throws Exception { super(args); }
+
+	/**
+	 * The description of what this updater does.
+	 * @return Description
+	 */
+	@Override
+	protected String getDescription() {
+		
+		return "Applies Geonames modifications and deletes files to a CLAVIN index.";
+	}
+
+	/**
+	 * Register the diff files.
+	 * @param parser Argument parser to register new arguments with.
+	 */
+	@Override
+	protected void extend(ArgumentParser parser) {
+		
+		parser.addArgument("diffs")
+			.metavar("diff-file")
+			.type(String.class)
+			.nargs("+")
+			.help("Geonames modifications-YYYY-MM-DD.txt and deletes-YYYY-MM-DD.txt files.");
+		
+		parser.addArgument("--retain-raw-lines")
+			.action(Arguments.storeTrue())
+			.help("Keep each raw Geonames line as the context of its Place.");
+		
+		// Modified places should be resolved like the ones already indexed.
+		parser.addArgument("--admin1-codes")
+			.metavar("admin1-file")
+			.type(String.class)
+			.help("Geonames admin1 code table (admin1CodesASCII.txt).");
+		
+		parser.addArgument("--admin2-codes")
+			.metavar("admin2-file")
+			.type(String.class)
+			.help("Geonames admin2 code table (admin2Codes.txt); requires --admin1-codes.");
+		
+		// Modified places should keep their language-tagged names.
+		parser.addArgument("--alternate-names")
+			.metavar("alternate-names-file")
+			.type(String.class)
+			.help("Geonames alternate names table (alternateNamesV2.txt or .zip), "
+				+ "for indexes built with it.");
+	}
+	
+	/**
+	 * Collect the diff files, putting them in the order they are applied.
+	 * @param namespace The object containing the parsed input.
+	 */
+	@Override
+	protected void initialize(Namespace namespace) {
+		
+		// Places are applied one at a time, so one can be reused.
+		parser = new GeonamesRecordParser(namespace.getBoolean("retain_raw_lines"), true);
+		
+		admin1CodesFile = namespace.getString("admin1_codes");
+		admin2CodesFile = namespace.getString("admin2_codes");
+		
+		alternateNamesFile = namespace.getString("alternate_names");
+		
+		diffFiles = new ArrayList<DiffFile>();
+		
+		for (Object path : namespace.getList("diffs")){
+			
+			DiffFile diffFile = DiffFile.parse(path.toString());
+			
+			if (diffFile == null){
+				
+				pl("Ignoring %s; it isn't a modifications or deletes file.", path);
+				
+				continue;
+			}
+			
+			diffFiles.add(diffFile);
+		}
+		
+		Collections.sort(diffFiles);
+	}
+	
+	/**
+	 * Only a few records change each day; don't merge the whole index.
+	 * @return 0 (no merge).
+	 */
+	@Override
+	protected int getDefaultMergeSegments() {
+		
+		return 0;
+	}
+	
+	/**
+	 * An update that didn't finish cleanly is rolled back, so the index
+	 * stays at its version rather than committing part of a diff file.
+	 * @return true
+	 */
+	@Override
+	protected boolean rollsBackUnfinished() {
+		
+		return true;
+	}
+	
+	/**
+	 * Record the version of the last diff file applied (or keep the
+	 * index's version if none were).
+	 * @return Commit user data with the gazetteer version.
+	 */
+	@Override
+	protected Map<String, String> getCommitUserData() {
+		
+		if (version == null) return null;
+		
+		Map<String, String> userData = new HashMap<String, String>();
+		
+		userData.put(COMMIT_GAZETTEER_VERSION, version);
+		
+		return userData;
+	}
+
+	/**
+	 * Apply each diff file newer than the index's current version.
+	 * @param context Context to update and delete places with.
+	 */
+	@Override
+	protected void begin(BuilderContext context) throws Exception {
+		
+		// The version the index was at before this update (and stays at
+		// unless a file is applied).
+		String indexVersion = indexWriter.getCommitData().get(COMMIT_GAZETTEER_VERSION);
+		
+		version = indexVersion;
+		
+		pl("> Current gazetteer version: %s", (indexVersion == null)? "unknown" : indexVersion);
+		
+		adminCodes = GeonamesAdminCodes.load(admin1CodesFile, admin2CodesFile);
+		
+		List<DiffFile> pending = new ArrayList<DiffFile>();
+		
+		for (DiffFile diffFile : diffFiles){
+			
+			if (diffFile.isAppliedTo(indexVersion)) pl("> Skipping %s; already applied.", diffFile.path);
+			else pending.add(diffFile);
+		}
+		
+		if (alternateNamesFile != null){
+			
+			alternateNames = loadAlternateNames(alternateNamesFile, getModifiedPlaceIds(pending));
+			
+			pl("> Read the alternate names of %s modified places.", alternateNames.size());
+		}
+		else if (hasAlternateNames){
+			
+			pl("> Warning: the index has language-tagged names, but no --alternate-names table "
+				+ "was given; modified places will be indexed without them.");
+		}
+		
+		for (DiffFile diffFile : pending){
+			
+			pl("> Applying %s", diffFile.path);
+			
+			apply(context, diffFile);
+			
+			version = diffFile.getVersion();
+		}
+	}
+	
+	/**
+	 * Apply a single diff file.  Lines that can't be parsed are skipped, but
+	 * errors updating the index are thrown.
+	 * @param context Context to update and delete places with.
+	 * @param diffFile File to apply.
+	 * @throws Exception
+	 */
+	void apply(BuilderContext context, DiffFile diffFile) throws Exception {
+		
+		reader = GeonamesUtils.openGeonamesFile(new File(diffFile.path));
+		
+		try {
+			
+			String line;
+			long lineNumber = 0;
+			
+			while ((line = reader.readLine()) != null){
+				
+				lineNumber++;
+				
+				int placeId = 0;
+				Place place = null;
+				
+				try {
+					
+					// geonameId, name, comment
+					if (diffFile.isDeletes) placeId = Integer.parseInt(line.split("\t")[0]);
+					else place = parser.parse(line);
+				}
+				catch (IllegalArgumentException e){
+					
+					pl("Could not parse line %s of %s, an error was encountered: %s",
+						lineNumber, diffFile.path, e.getMessage());
+					
+					continue;
+				}
+				
+				if (diffFile.isDeletes){
+					
+					context.delete(placeId);
+				}
+				else {
+					
+					if (adminCodes != null) adminCodes.resolve(place);
+					
+					if (alternateNames == null) context.update(place);
+					else context.update(place, getAlternateNames(place.getId()));
+				}
+			}
+		}
+		finally {
+			
+			reader.close();
+			
+			reader = null;
+		}
+	}
+
+	/**
+	 * Get the language-tagged names of a modified place.
+	 * @param placeId Id of the place.
+	 * @return Names (empty if it has none).
+	 */
+	List<AlternateName> getAlternateNames(int placeId){
+		
+		List<AlternateName> names = alternateNames.get(placeId);
+		
+		return (names == null)? new ArrayList<AlternateName>() : names;
+	}
+	
+	/**
+	 * Get the ids of the places in the modifications files.
+	 * @param diffFiles Diff files to be applied.
+	 * @return Ids of the modified places.
+	 * @throws IOException
+	 */
+	static Set<Integer> getModifiedPlaceIds(List<DiffFile> diffFiles) throws IOException {
+		
+		Set<Integer> placeIds = new HashSet<Integer>();
+		
+		for (DiffFile diffFile : diffFiles){
+			
+			if (diffFile.isDeletes) continue;
+			
+			BufferedReader reader = GeonamesUtils.openGeonamesFile(new File(diffFile.path));
+			
+			try {
+				
+				String line;
+				
+				while ((line = reader.readLine()) != null){
+					
+					int placeId = ExternalLineSorter.getKey(line);
+					
+					if (placeId != Integer.MIN_VALUE) placeIds.add(placeId);
+				}
+			}
+			finally {
+				
+				reader.close();
+			}
+		}
+		
+		return placeIds;
+	}
+	
+	/**
+	 * Read the language-tagged names of some places from the alternate names
+	 * table, in the order of the table (as the builder indexes them).  Only
+	 * the names of those places are kept, so the table is never loaded.
+	 * @param source Alternate names table.
+	 * @param placeIds Ids of the places.
+	 * @return Names of each place with any, by id.
+	 * @throws IOException
+	 */
+	static Map<Integer, List<AlternateName>> loadAlternateNames(String source, Set<Integer> placeIds) 
+			throws IOException {
+		
+		Map<Integer, List<AlternateName>> names = new HashMap<Integer, List<AlternateName>>();
+		
+		if (placeIds.isEmpty()) return names;
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(new File(source));
+		
+		try {
+			
+			String row;
+			
+			while ((row = reader.readLine()) != null){
+				
+				String sortLine = GeonamesAlternateNames.toSortLine(row);
+				
+				if (sortLine == null) continue;
+				
+				Integer placeId = ExternalLineSorter.getKey(sortLine);
+				
+				if (!placeIds.contains(placeId)) continue;
+				
+				List<AlternateName> placeNames = names.get(placeId);
+				
+				if (placeNames == null){
+					
+					placeNames = new ArrayList<AlternateName>();
+					
+					names.put(placeId, placeNames);
+				}
+				
+				placeNames.add(GeonamesAlternateNames.parse(sortLine));
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return names;
+	}
+	
+	/**
+	 * Close the reader if a file was being applied when something went wrong.
+	 */
+	@Override
+	protected void cleanup() throws Exception {
+		
+		if (reader != null) reader.close();
+	}
+	
+	/**
+	 * A Geonames diff file, ordered by date and then with modifications
+	 * before deletes.
+	 */
+	static class DiffFile implements Comparable<DiffFile> {
+		
+		final String path;
+		final String date;
+		final boolean isDeletes;
+		
+		DiffFile(String path, String date, boolean isDeletes){
+			
+			this.path = path;
+			this.date = date;
+			this.isDeletes = isDeletes;
+		}
+		
+		/**
+		 * Get the gazetteer version of an index once the file is applied: the
+		 * date, followed by ":deletes" for a deletes file.  Versions sort in
+		 * the order the files are applied.
+		 * @return Version
+		 */
+		String getVersion(){
+			
+			return isDeletes? date + ":deletes" : date;
+		}
+		
+		/**
+		 * Is the file already applied to an index at the version?
+		 * @param indexVersion Gazetteer version of the index (null if unknown).
+		 * @return True if the file is at or before the version.
+		 */
+		boolean isAppliedTo(String indexVersion){
+			
+			return indexVersion != null && getVersion().compareTo(indexVersion) <= 0;
+		}
+		
+		/**
+		 * Get the diff file from its path.
+		 * @param path Path to the file.
+		 * @return Diff File or null if the name isn't one of a diff file.
+		 */
+		static DiffFile parse(String path){
+			
+			Matcher matcher = DIFF_FILE_PATTERN.matcher(path);
+			
+			if (!matcher.find()) return null;
+			
+			return new DiffFile(
+				path, matcher.group(2), matcher.group(1).equals("deletes"));
+		}
+
+		@Override
+		public int compareTo(DiffFile other) {
+			
+			int byDate = date.compareTo(other.date);
+			
+			if (byDate != 0) return byDate;
+			
+			return (isDeletes == other.isDeletes)? 0 : (isDeletes? 1 : -1);
+		}
+	}
+}
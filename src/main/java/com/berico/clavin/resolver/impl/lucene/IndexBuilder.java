@@ -5,27 +5,38 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.IntField;
-import org.apache.lucene.document.NumericDocValuesField;
-import org.apache.lucene.document.StoredField;
-import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.spatial.SpatialStrategy;
 
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
 import com.berico.clavin.gazetteer.Place;
-import com.berico.clavin.util.Serializer;
 import com.spatial4j.core.context.SpatialContext;
-import com.spatial4j.core.shape.Shape;
 
 /*#####################################################################
  * 
@@ -93,6 +104,29 @@ import com.spatial4j.core.shape.Shape;
  */
 public abstract class IndexBuilder implements BuilderContext {
 
+	/**
+	 * Commit user data key recording the version of the gazetteer in the index.
+	 */
+	public static final String COMMIT_GAZETTEER_VERSION = "clavin.gazetteer.version";
+	
+	/**
+	 * Commit user data key recording the number of records processed at
+	 * a checkpoint.  Only checkpoints (of unfinished builds) carry it.
+	 */
+	public static final String COMMIT_CHECKPOINT_RECORDS = "clavin.checkpoint.records";
+	
+	/**
+	 * Commit user data key recording the schema of the index's documents
+	 * (see {@link PlaceDocumentBuilder}).
+	 */
+	public static final String COMMIT_SCHEMA = "clavin.schema";
+	
+	/**
+	 * Commit user data key recording that places were indexed with their
+	 * language-tagged names, so updates know to index them too.
+	 */
+	public static final String COMMIT_ALTERNATE_NAMES = "clavin.alternateNames";
+	
 	/**
 	 * Provide a description for this particular implementation of the IndexBuilder.
 	 * @return Description to show on the console.
@@ -151,16 +185,102 @@ public abstract class IndexBuilder implements BuilderContext {
 	/**
 	 * Total number of records processed.
 	 */
-	protected long totalNumberProcessed = 0l;
+	protected final AtomicLong totalNumberProcessed = new AtomicLong();
+	
+	/**
+	 * Number of threads derived classes may use to convert and add records.
+	 */
+	protected int threads = 1;
+	
+	/**
+	 * Settings for the IndexWriter (see {@link LuceneComponentsFactory}).
+	 */
+	protected Options writerOptions = new Options();
+	
+	/**
+	 * Number of segments to merge the index down to once it's built (0 to
+	 * leave the segments as they are).  Fewer segments mean fewer places
+	 * for each search to look.
+	 */
+	protected int mergeSegments = getDefaultMergeSegments();
+	
+	/**
+	 * Number of records between checkpoints (0 for none).  Each checkpoint
+	 * commits the index along with the progress derived classes record,
+	 * so an interrupted build can pick up where it left off.
+	 */
+	protected long checkpointInterval = getDefaultCheckpointInterval();
+	
+	/**
+	 * Whether added places replace any document with the same id (rather
+	 * than being added alongside it), for when the index may already hold
+	 * some of the places being added.
+	 */
+	protected boolean replaceExisting = false;
+	
+	/**
+	 * Set once the index has been built and committed.  Until then, closing
+	 * the index may roll it back (see {@link #rollsBackUnfinished()}).
+	 */
+	private volatile boolean finished = false;
+	
+	/**
+	 * Layout of a sharded index (null for a single index).  Each shard gets
+	 * its own IndexWriter; indexWriter is the first of them.
+	 */
+	protected IndexShards shards;
+	protected IndexWriter[] shardWriters;
+	
+	/**
+	 * The only shard being (re)built, or -1 for all of them.
+	 */
+	protected int onlyShard = -1;
+	
+	/**
+	 * The places (and names) that go into the index.  Unless the command 
+	 * line says otherwise, an existing index keeps the subset it was built with.
+	 */
+	protected IndexSubset subset = new IndexSubset();
+	
+	/**
+	 * Schema of the documents (see {@link PlaceDocumentBuilder}).  Unless
+	 * the command line says otherwise, an existing index keeps its schema.
+	 */
+	protected String schema;
+	
+	/**
+	 * Whether places are indexed with their language-tagged names (set by
+	 * derived classes that have them).  An existing index that has them
+	 * keeps recording it.
+	 */
+	protected boolean hasAlternateNames = false;
+	
+	/**
+	 * How often (in milliseconds) progress is printed to the console.
+	 */
+	public static long PROGRESS_INTERVAL_MS = 10000;
+	
+	/**
+	 * Time the process started and of the last progress report, and the
+	 * number of records processed at the last report.
+	 */
+	private long startTime;
+	private long lastReportTime;
+	private long lastReportCount;
 	
 	/**
-	 * Reusable index fields.
+	 * Document builders reuse their fields, so each thread adding
+	 * places gets its own.
 	 */
-	private TextField indexNameField = new TextField(FieldConstants.NAME, "", Field.Store.YES);
-	private StoredField placeField = new StoredField(FieldConstants.PLACE, "");
-	private IntField recordIdField = new IntField(FieldConstants.PLACE_ID, -1, Field.Store.NO);
-	private NumericDocValuesField populationField = new NumericDocValuesField(FieldConstants.POPULATION, -1l);
-	private StoredField geospatialField = new StoredField(FieldConstants.GEOMETRY, "");
+	private final ThreadLocal<PlaceDocumentBuilder> documentBuilders = 
+		new ThreadLocal<PlaceDocumentBuilder>(){
+		
+			@Override
+			protected PlaceDocumentBuilder initialValue() {
+				
+				return new PlaceDocumentBuilder(spatialContext, spatialStrategy, schema);
+			}
+		};
 	
 	/**
 	 * Instantiate the IndexBuilder with the command line input.
@@ -181,7 +301,7 @@ public abstract class IndexBuilder implements BuilderContext {
 		String absoluteIndexDir = new File(indexDirectory).getAbsolutePath();
 		
 		pl("> Writing index to: %s", absoluteIndexDir);
-		pl("> Each dot represents 1,000 processed records.");
+		pl("> Progress is reported every %s seconds.", PROGRESS_INTERVAL_MS / 1000);
 		
 		hr();
 		pl("> Press Control-C (or unplug your computer) to terminate");
@@ -191,14 +311,27 @@ public abstract class IndexBuilder implements BuilderContext {
 		// Initialize the index.
 		initializeIndex();
 		
+		initializeSubset();
+		
+		initializeSchema();
+		
 		try {
 			
 			// Stopwatch
 			Date start = new Date();
 			
+			startTime = lastReportTime = start.getTime();
+			
 			// Delegate processing to derived classes.
 			begin(this);
 			
+			reportProgress(true);
+			
+			// Merge the index down so searches have fewer segments to cover.
+			optimizeIndex();
+			
+			finished = true;
+			
 			// Stop!
 			Date end = new Date();
 			
@@ -246,6 +379,95 @@ public abstract class IndexBuilder implements BuilderContext {
 				.required(true)
 				.help("Index directory location (will create if it doesn't exist).");
 
+		// Register the number of threads used to convert and index records.
+		parser.addArgument("-t", "--threads")
+				.metavar("threads")
+				.type(Integer.class)
+				.setDefault(Runtime.getRuntime().availableProcessors())
+				.help("Number of threads used to build the index (defaults to the number of processors).");
+
+		// Register the IndexWriter settings.
+		parser.addArgument("--ram-buffer")
+				.metavar("megabytes")
+				.type(Double.class)
+				.setDefault(LuceneComponentsFactory.DEFAULT_RAM_BUFFER_MB)
+				.help("Size of the RAM buffer documents are collected in before being written.");
+		
+		parser.addArgument("--merge-policy")
+				.choices("tiered", "logByteSize", "logDoc")
+				.setDefault(LuceneComponentsFactory.DEFAULT_MERGE_POLICY)
+				.help("Policy used to merge segments while building.");
+		
+		parser.addArgument("--compound-files")
+				.action(Arguments.storeTrue())
+				.help("Pack segments into compound files (fewer file handles, slower to build).");
+		
+		parser.addArgument("--merge-segments")
+				.metavar("segments")
+				.type(Integer.class)
+				.setDefault(mergeSegments)
+				.help("Number of segments to merge the finished index down to (0 to skip).");
+		
+		parser.addArgument("--checkpoint-every")
+				.metavar("records")
+				.type(Long.class)
+				.setDefault(checkpointInterval)
+				.help("Commit the index (and where the build has got to) every so many records (0 for never).");
+		
+		// Register the sharding settings.
+		parser.addArgument("--shards")
+				.metavar("shards")
+				.type(Integer.class)
+				.setDefault(0)
+				.help("Partition the index into this many shard directories (0 for a single index).");
+		
+		parser.addArgument("--shard-by")
+				.choices(IndexShards.BY_COUNTRY, IndexShards.BY_HASH)
+				.setDefault(IndexShards.BY_COUNTRY)
+				.help("Assign places to shards by country (searches can be routed by country) or by hash of their id.");
+		
+		parser.addArgument("--only-shard")
+				.metavar("shard")
+				.type(Integer.class)
+				.help("Rebuild only this shard, skipping places that belong in the others.");
+		
+		// Register the subset settings.
+		parser.addArgument("--countries")
+				.metavar("country")
+				.nargs("+")
+				.help("Only index places whose primary country is one of these (e.g. US CA).");
+		
+		parser.addArgument("--feature-classes")
+				.metavar("feature-class")
+				.nargs("+")
+				.help("Only index places of these feature classes (e.g. P A), or of the --feature-codes.");
+		
+		parser.addArgument("--feature-codes")
+				.metavar("feature-code")
+				.nargs("+")
+				.help("Only index places with these feature codes (e.g. PPLC ADM1), or of the --feature-classes.");
+		
+		parser.addArgument("--min-population")
+				.metavar("population")
+				.type(Long.class)
+				.help("Only index places with at least this population.");
+		
+		parser.addArgument("--bbox")
+				.metavar("min-lat", "min-lon", "max-lat", "max-lon")
+				.type(Double.class)
+				.nargs(4)
+				.help("Only index places inside this bounding box (min-lon > max-lon crosses the antimeridian).");
+		
+		parser.addArgument("--max-alternate-names")
+				.metavar("names")
+				.type(Integer.class)
+				.help("Index at most this many alternate names per place.");
+		
+		parser.addArgument("--schema")
+				.choices(PlaceDocumentBuilder.SCHEMA_STANDARD, PlaceDocumentBuilder.SCHEMA_SLIM)
+				.help("Document schema; slim indexes exact names as keywords and drops frequencies, "
+					+ "positions, norms and unused stored names (defaults to the existing index's, or standard).");
+
 		// Allow the derived class to extend the arguments parser.
 		extend(parser);
 
@@ -259,6 +481,45 @@ public abstract class IndexBuilder implements BuilderContext {
 			// Collect the index directory.
 			indexDirectory = namespace.getString("index");
 			
+			// Collect the number of threads.
+			threads = Math.max(1, namespace.getInt("threads"));
+			
+			// Collect the IndexWriter settings.
+			LuceneComponentsFactory.configureRamBuffer(
+				writerOptions, namespace.getDouble("ram_buffer"));
+			
+			LuceneComponentsFactory.configureMergePolicy(
+				writerOptions, namespace.getString("merge_policy"));
+			
+			LuceneComponentsFactory.configureUseCompoundFile(
+				writerOptions, namespace.getBoolean("compound_files"));
+			
+			mergeSegments = namespace.getInt("merge_segments");
+			
+			checkpointInterval = namespace.getLong("checkpoint_every");
+			
+			// Collect the sharding settings.
+			int shardCount = namespace.getInt("shards");
+			
+			if (shardCount > 0) 
+				shards = new IndexShards(shardCount, namespace.getString("shard_by"));
+			
+			Integer only = namespace.getInt("only_shard");
+			
+			if (only != null){
+				
+				if (shards == null || only < 0 || only >= shards.getCount())
+					throw new ArgumentParserException(
+						"--only-shard needs a shard number less than --shards.", parser);
+				
+				onlyShard = only;
+			}
+			
+			// Collect the subset settings.
+			collectSubset(parser, namespace);
+			
+			schema = namespace.getString("schema");
+			
 		} catch (ArgumentParserException ex) {
 
 			parser.handleError(ex);
@@ -270,15 +531,136 @@ public abstract class IndexBuilder implements BuilderContext {
 		initialize(namespace);
 	}
 	
+	/**
+	 * Collect the subset of the places to index from the command line.
+	 * @param parser Argument parser (for reporting errors).
+	 * @param namespace Parsed argument input.
+	 * @throws ArgumentParserException if a restriction isn't valid.
+	 */
+	protected void collectSubset(ArgumentParser parser, Namespace namespace) 
+			throws ArgumentParserException {
+		
+		try {
+			
+			List<CountryCode> countries = new ArrayList<CountryCode>();
+			
+			for (Object country : getList(namespace, "countries")) 
+				countries.add(CountryCode.valueOf(country.toString().toUpperCase()));
+			
+			List<FeatureClass> featureClasses = new ArrayList<FeatureClass>();
+			
+			for (Object featureClass : getList(namespace, "feature_classes")) 
+				featureClasses.add(FeatureClass.valueOf(featureClass.toString().toUpperCase()));
+			
+			List<FeatureCode> featureCodes = new ArrayList<FeatureCode>();
+			
+			for (Object featureCode : getList(namespace, "feature_codes")) 
+				featureCodes.add(FeatureCode.valueOf(featureCode.toString().toUpperCase()));
+			
+			subset.setCountries(countries);
+			
+			subset.setFeatureTypes(featureClasses, featureCodes);
+			
+			Long minPopulation = namespace.getLong("min_population");
+			
+			if (minPopulation != null) subset.setMinPopulation(minPopulation);
+			
+			List<Object> bbox = namespace.getList("bbox");
+			
+			if (bbox != null){
+				
+				subset.setBoundingBox(
+					(Double)bbox.get(0), (Double)bbox.get(1), (Double)bbox.get(2), (Double)bbox.get(3));
+			}
+			
+			Integer maxAlternateNames = namespace.getInt("max_alternate_names");
+			
+			if (maxAlternateNames != null) subset.setMaxAlternateNames(maxAlternateNames);
+		}
+		catch (IllegalArgumentException e){
+			
+			throw new ArgumentParserException(
+				"Invalid subset restriction: " + e.getMessage(), parser);
+		}
+	}
+	
+	/**
+	 * Get a list argument, which is null if it wasn't given.
+	 * @param namespace Parsed argument input.
+	 * @param dest Name of the argument.
+	 * @return Values (empty if not given).
+	 */
+	static List<Object> getList(Namespace namespace, String dest){
+		
+		List<Object> values = namespace.getList(dest);
+		
+		return (values == null)? Collections.emptyList() : values;
+	}
+	
+	/**
+	 * Keep an existing index to the subset it was built with, unless the
+	 * command line restricts it.
+	 */
+	protected void initializeSubset(){
+		
+		if (subset.isEverything()) 
+			subset = IndexSubset.fromCommitData(indexWriter.getCommitData());
+		
+		if (!subset.isEverything()) pl("> Indexing the subset: %s", subset);
+	}
+	
+	/**
+	 * Keep an existing index to the schema it was built with, unless the
+	 * command line says otherwise, and to recording whether its places have
+	 * their language-tagged names.
+	 */
+	protected void initializeSchema(){
+		
+		Map<String, String> commitData = indexWriter.getCommitData();
+		
+		String existing = (commitData == null)? null : commitData.get(COMMIT_SCHEMA);
+		
+		if (schema == null) 
+			schema = (existing == null)? PlaceDocumentBuilder.SCHEMA_STANDARD : existing;
+		
+		else if (existing != null && !existing.equals(schema))
+			pl("> Warning: adding %s documents to a %s index.", schema, existing);
+		
+		pl("> Using the %s schema.", schema);
+		
+		if (commitData != null && "true".equals(commitData.get(COMMIT_ALTERNATE_NAMES)))
+			hasAlternateNames = true;
+	}
+	
 	/**
 	 * Initialize the Lucene index.
 	 * @throws IOException
 	 */
 	protected void initializeIndex() throws IOException{
 	
+		IndexShards existing = IndexShards.read(new File(indexDirectory));
+		
+		// An existing sharded index (e.g. being updated) keeps its layout.
+		if (existing != null){
+			
+			if (shards != null 
+					&& (shards.getCount() != existing.getCount() || !shards.getBy().equals(existing.getBy())))
+				throw new IOException(String.format(
+					"The index in %s is already sharded differently (%s).", indexDirectory, existing));
+			
+			shards = existing;
+		}
+		
+		if (shards != null){
+			
+			initializeShards();
+			
+			return;
+		}
+		
 		final LuceneComponentsFactory factory = new LuceneComponentsFactory(indexDirectory);
 		
-		factory.initializeWriter();
+		factory.initializeWriter(writerOptions);
 		
 		indexWriter = factory.getIndexWriter();
 		
@@ -294,7 +676,7 @@ public abstract class IndexBuilder implements BuilderContext {
 				
 				try {
 					
-					factory.getIndexWriter().close();
+					closeWriter(factory.getIndexWriter());
 					
 				} catch (IOException e) {
 					
@@ -306,16 +688,398 @@ public abstract class IndexBuilder implements BuilderContext {
 		});
 	}
 	
+	/**
+	 * Open a writer for each shard being built (in its own directory under
+	 * the index directory).
+	 * @throws IOException
+	 */
+	protected void initializeShards() throws IOException {
+		
+		pl("> Building %s shard(s) by %s.", shards.getCount(), shards.getBy());
+		
+		final LuceneComponentsFactory[] factories = new LuceneComponentsFactory[shards.getCount()];
+		
+		shardWriters = new IndexWriter[shards.getCount()];
+		
+		for (int i = 0; i < factories.length; i++){
+			
+			if (onlyShard >= 0 && i != onlyShard) continue;
+			
+			factories[i] = new LuceneComponentsFactory(
+				IndexShards.getShardDirectory(new File(indexDirectory), i).getPath());
+			
+			factories[i].initializeWriter(writerOptions);
+			
+			shardWriters[i] = factories[i].getIndexWriter();
+			
+			if (indexWriter == null){
+				
+				indexWriter = shardWriters[i];
+				
+				spatialContext = factories[i].getSpatialContext();
+				
+				spatialStrategy = factories[i].getSpatialStrategy();
+			}
+		}
+		
+		// Rebuilding a shard replaces everything in it.
+		if (onlyShard >= 0) shardWriters[onlyShard].deleteAll();
+		
+		// Register a shutdown hook to close the indexes when the process terminates.
+		Runtime.getRuntime().addShutdownHook(new Thread(){
+			
+			@Override
+			public void run(){
+				
+				for (LuceneComponentsFactory factory : factories){
+					
+					if (factory == null) continue;
+					
+					try {
+						
+						closeWriter(factory.getIndexWriter());
+						
+					} catch (IOException e) {
+						
+						e.printStackTrace();
+					}
+					
+					factory.getIndex().close();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Close a writer when the process terminates.  If the build didn't
+	 * finish and should be rolled back (see {@link #rollsBackUnfinished()}),
+	 * the writer is rolled back to its last commit rather than committing
+	 * records that commit doesn't account for.
+	 * @param writer Index Writer.
+	 * @throws IOException
+	 */
+	protected void closeWriter(IndexWriter writer) throws IOException {
+		
+		if (!finished && rollsBackUnfinished()) writer.rollback();
+		else writer.close();
+	}
+	
+	/**
+	 * Whether an unfinished build is rolled back when the process terminates,
+	 * rather than committed.  By default, only builds taking checkpoints are
+	 * (to their last checkpoint).
+	 * @return True to roll back an unfinished build.
+	 */
+	protected boolean rollsBackUnfinished(){
+		
+		return checkpointInterval > 0;
+	}
+	
+	/**
+	 * Get the writer of the shard a place belongs in.
+	 * @param place Place
+	 * @return Writer, or null if the place's shard isn't being built.
+	 */
+	protected IndexWriter getWriter(Place place){
+		
+		if (shards == null) return indexWriter;
+		
+		return shardWriters[shards.getShard(place)];
+	}
+	
+	/**
+	 * Get the writers of the index (one per shard being built).
+	 * @return Writers
+	 */
+	protected List<IndexWriter> getWriters(){
+		
+		if (shards == null) return Collections.singletonList(indexWriter);
+		
+		List<IndexWriter> writers = new ArrayList<IndexWriter>();
+		
+		for (IndexWriter writer : shardWriters){
+			
+			if (writer != null) writers.add(writer);
+		}
+		
+		return writers;
+	}
+	
+	/**
+	 * The number of segments the index is merged down to unless the command
+	 * line says otherwise.  Builders that only touch a few records (like
+	 * updates) can override this to skip the merge.
+	 * @return Number of segments (0 to skip merging).
+	 */
+	protected int getDefaultMergeSegments(){
+		
+		return 1;
+	}
+	
+	/**
+	 * The number of records between checkpoints unless the command line
+	 * says otherwise.  Only builders that record their progress and can
+	 * resume from it (like the GeonamesIndexBuilder) should override this;
+	 * without that, a checkpoint just commits part of the index, which an
+	 * interrupted build couldn't roll back.
+	 * @return Number of records (0 for no checkpoints).
+	 */
+	protected long getDefaultCheckpointInterval(){
+		
+		return 0;
+	}
+	
+	/**
+	 * Commit what has been added to the index as a checkpoint, recording the
+	 * number of records processed and the progress supplied by the derived
+	 * class.  Nothing may be added to the index while the checkpoint is 
+	 * being taken, or the checkpoint won't match what was committed.
+	 * @param progress Where the build has got to (to be read back on resume).
+	 * @throws IOException
+	 */
+	protected void commitCheckpoint(Map<String, String> progress) throws IOException {
+		
+		Map<String, String> commitData = new HashMap<String, String>(progress);
+		
+		if (shards != null) commitData.putAll(shards.getCommitData());
+		
+		commitData.putAll(subset.getCommitData());
+		
+		commitData.put(COMMIT_SCHEMA, schema);
+		
+		if (hasAlternateNames) commitData.put(COMMIT_ALTERNATE_NAMES, "true");
+		
+		commitData.put(COMMIT_CHECKPOINT_RECORDS, Long.toString(getTotalProcessed()));
+		
+		for (IndexWriter writer : getWriters()){
+			
+			writer.setCommitData(commitData);
+			
+			writer.commit();
+		}
+		
+		pl("> Checkpoint at %,d records.", getTotalProcessed());
+	}
+	
+	/**
+	 * Read the last checkpoint committed to the index, and count the records
+	 * it covers as processed.  The shards of a sharded index are committed
+	 * one after another, so if the build was interrupted in between, they
+	 * may disagree; the earliest checkpoint is used, and places replace the
+	 * ones already in the later shards.
+	 * @return Commit user data of the checkpoint, or null if the index has
+	 * no checkpoint to resume from.
+	 */
+	protected Map<String, String> readCheckpoint(){
+		
+		Map<String, String> checkpoint = null;
+		
+		long records = Long.MAX_VALUE;
+		
+		for (IndexWriter writer : getWriters()){
+			
+			Map<String, String> commitData = writer.getCommitData();
+			
+			// A shard without a checkpoint means starting over.
+			if (commitData == null || !commitData.containsKey(COMMIT_CHECKPOINT_RECORDS))
+				return null;
+			
+			long committed = Long.parseLong(commitData.get(COMMIT_CHECKPOINT_RECORDS));
+			
+			if (checkpoint != null && committed != records) replaceExisting = true;
+			
+			if (committed < records){
+				
+				checkpoint = commitData;
+				
+				records = committed;
+			}
+		}
+		
+		totalNumberProcessed.set(records);
+		
+		return checkpoint;
+	}
+	
+	/**
+	 * Remove every document from the index (e.g. a partial build that can't
+	 * be resumed).
+	 * @throws IOException
+	 */
+	protected void clearIndex() throws IOException {
+		
+		for (IndexWriter writer : getWriters()) writer.deleteAll();
+	}
+	
+	/**
+	 * Provide user data (e.g. {@link #COMMIT_GAZETTEER_VERSION}) to store
+	 * with the final commit.
+	 * @return Commit user data, or null for none.
+	 */
+	protected Map<String, String> getCommitUserData(){
+		
+		return null;
+	}
+	
+	/**
+	 * Merge the index down to the requested number of segments and
+	 * commit it.
+	 * @throws IOException
+	 */
+	protected void optimizeIndex() throws IOException {
+		
+		if (mergeSegments > 0){
+			
+			pl("> Merging the index into %s segment(s)...", mergeSegments);
+		}
+		
+		Map<String, String> userData = getCommitUserData();
+		
+		final Map<String, String> commitData = new HashMap<String, String>();
+		
+		if (userData != null) commitData.putAll(userData);
+		
+		// Every shard records the layout, so searchers can find the others.
+		if (shards != null) commitData.putAll(shards.getCommitData());
+		
+		commitData.putAll(subset.getCommitData());
+		
+		commitData.put(COMMIT_SCHEMA, schema);
+		
+		if (hasAlternateNames) commitData.put(COMMIT_ALTERNATE_NAMES, "true");
+		
+		List<IndexWriter> writers = getWriters();
+		
+		if (writers.size() == 1){
+			
+			optimizeWriter(writers.get(0), commitData);
+			
+			return;
+		}
+		
+		// Merge and commit the shards in parallel, one thread per shard.
+		ExecutorService mergers = Executors.newFixedThreadPool(writers.size());
+		
+		try {
+			
+			List<Future<Void>> merges = new ArrayList<Future<Void>>();
+			
+			for (final IndexWriter writer : writers){
+				
+				merges.add(mergers.submit(new Callable<Void>(){
+					
+					@Override
+					public Void call() throws Exception {
+						
+						optimizeWriter(writer, commitData);
+						
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> merge : merges) merge.get();
+		}
+		catch (InterruptedException e){
+			
+			throw new IOException("Interrupted while merging the shards.", e);
+		}
+		catch (ExecutionException e){
+			
+			throw new IOException("Could not merge a shard.", e.getCause());
+		}
+		finally {
+			
+			mergers.shutdown();
+		}
+	}
+	
+	/**
+	 * Merge a writer's index down to the requested number of segments and
+	 * commit it.
+	 * @param writer Index Writer.
+	 * @param commitData Commit user data (empty for none).
+	 * @throws IOException
+	 */
+	protected void optimizeWriter(IndexWriter writer, Map<String, String> commitData) throws IOException {
+		
+		if (mergeSegments > 0) writer.forceMerge(mergeSegments);
+		
+		if (!commitData.isEmpty()) writer.setCommitData(commitData);
+		
+		writer.commit();
+	}
+	
 	/**
 	 * Add a place to the index.  This is a method of the BuilderContext
-	 * implementation.
+	 * implementation, and may be called from several threads at once.
 	 * @param place Place to add to the index.
 	 */
 	public void add(Place place){
 		
+		add(place, null);
+	}
+	
+	/**
+	 * Add a place and its language-tagged names to the index.  This is a 
+	 * method of the BuilderContext implementation, and may be called from 
+	 * several threads at once.
+	 * @param place Place to add to the index.
+	 * @param alternateNames Language-tagged names of the place (may be null).
+	 */
+	public void add(Place place, List<AlternateName> alternateNames){
+		
 		try {
+			
+			// Places outside the subset are counted, but not indexed.
+			if (subset.accepts(place)){
+				
+				subset.trimAlternateNames(place);
+				
+				addPlaceToIndex(place, subset.trimAlternateNames(alternateNames));
+			}
+			
+			incrementProcessCounter();
+		}
+		catch (Exception ex){
+			
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Replace the place with the same id in the index.  This is a method of
+	 * the BuilderContext implementation, and may be called from several
+	 * threads at once.
+	 * @param place Updated place.
+	 */
+	public void update(Place place){
 		
-			addPlaceToIndex(place);
+		update(place, null);
+	}
+	
+	/**
+	 * Replace the place with the same id in the index, along with its
+	 * language-tagged names.  This is a method of the BuilderContext
+	 * implementation, and may be called from several threads at once.
+	 * @param place Updated place.
+	 * @param alternateNames Language-tagged names of the place (may be null).
+	 */
+	public void update(Place place, List<AlternateName> alternateNames){
+		
+		try {
+			
+			if (subset.accepts(place)){
+				
+				subset.trimAlternateNames(place);
+				
+				updatePlaceInIndex(place, subset.trimAlternateNames(alternateNames));
+			}
+			else {
+				
+				// The place may have moved out of the subset.
+				deletePlaceFromIndex(place.getId());
+			}
 			
 			incrementProcessCounter();
 		}
@@ -326,14 +1090,63 @@ public abstract class IndexBuilder implements BuilderContext {
 	}
 	
 	/**
-	 * Increment the total processed counter and print a message
-	 * if a threshold is reached.
+	 * Remove the place with the id from the index.  This is a method of
+	 * the BuilderContext implementation, and may be called from several
+	 * threads at once.
+	 * @param placeId Id of the place.
+	 */
+	public void delete(int placeId){
+		
+		try {
+			
+			deletePlaceFromIndex(placeId);
+			
+			incrementProcessCounter();
+		}
+		catch (Exception ex){
+			
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Increment the total processed counter, checking every 1,000
+	 * records whether it's time to report progress.
 	 */
 	protected void incrementProcessCounter(){
 		
-		totalNumberProcessed++;
+		if (totalNumberProcessed.incrementAndGet() % 1000 == 0) reportProgress(false);
+	}
+	
+	/**
+	 * Print the number of records processed, the rate they're being processed
+	 * at (since the last report and overall) and how much heap is in use.
+	 * @param force Print even if the report interval hasn't passed.
+	 */
+	protected synchronized void reportProgress(boolean force){
+		
+		long now = System.currentTimeMillis();
+		
+		if (!force && now - lastReportTime < PROGRESS_INTERVAL_MS) return;
+		
+		long total = totalNumberProcessed.get();
+		
+		long recentRate = 
+			(total - lastReportCount) * 1000 / Math.max(1, now - lastReportTime);
+		
+		long overallRate = total * 1000 / Math.max(1, now - startTime);
+		
+		Runtime runtime = Runtime.getRuntime();
+		
+		long usedHeapMB = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+		
+		long maxHeapMB = runtime.maxMemory() / (1024 * 1024);
 		
-		if (totalNumberProcessed % 1000 == 0) p(".");
+		pl("> %,d records; %,d records/sec (%,d overall); heap %,d MB of %,d MB", 
+			total, recentRate, overallRate, usedHeapMB, maxHeapMB);
+		
+		lastReportTime = now;
+		lastReportCount = total;
 	}
 	
 	/**
@@ -342,143 +1155,88 @@ public abstract class IndexBuilder implements BuilderContext {
 	 */
 	public long getTotalProcessed(){
 		
-		return totalNumberProcessed;
+		return totalNumberProcessed.get();
 	}
 	
 	/**
-	 * Call this to add a place to the index.
+	 * Call this to add a place to the index.  This is safe to call from
+	 * several threads at once; each thread builds documents with its own
+	 * fields and the IndexWriter is shared.
 	 * @param place Place to add.
 	 * @throws IOException
 	 */
 	public void addPlaceToIndex(Place place) throws IOException{
 		
-		Document document = buildDocument(place);
-		
-		indexWriter.addDocument(document);
-	}
-	
-	
-	/**
-  	 * Builds a Lucene document to be added to the index based on a
-  	 * specified name for the location and the corresponding
-  	 * {@link Place} object.
-  	 * 
-  	 * @param name			name to serve as index key
-  	 * @param place		GeoName Entry
-  	 * @return
-  	 */
-  	private Document buildDocument(Place place) {
-  		
-  		// in case you're wondering, yes, this is a non-standard use of
-  		// the Lucene Document construct
-	    Document doc = new Document();
-	    
-	    // this is essentially the key we'll try to match location
-	    // names against
-	    addIndexNameField(doc, place.getName());
-	    
-	    if (!place.getAsciiName().equals(place.getName())){
-	    	
-	    		addIndexNameField(doc, place.getAsciiName());
-	    }
-	    
-	    for (String altName : place.getAlternateNames()){
-	    	
-	    		if (!altName.equals(place.getName()) && !altName.equals(place.getAsciiName())){
-	    	
-	    			addIndexNameField(doc, altName);
-	    		}
-	    }
-	    
-	    // this is the payload we'll return when matching location
-	    // names to gazetteer records
-	    addPlaceField(doc, Serializer.Default.serialize(place));
-	    
-	    // TODO: use geonameID to link administrative subdivisions to
-	    //		 each other
-	    addRecordIdField(doc, place.getId());
-	    
-	    // we'll initially sort match results based on population
-	    addPopulationField(doc, place.getPopulation());
-	    
-	    // we'll create a new Spatial geometry from the centroid of the geoname location
-	    Shape centroid = spatialContext.makePoint(
-	    		place.getCenter().getLongitude(), place.getCenter().getLatitude());
-	    
-	    // add a deserializable representation of the shape to the document.
-	    addGeospatialField(doc, centroid);
-	    
-	    // we will add the field to the index
-	    for (Field f : spatialStrategy.createIndexableFields(centroid)){
-	    		
-	    		doc.add(f);
-	    }
-	    
-	    return doc;
-  	}
-  	
-  	/**
-  	 * Add an Indexed Name Field.
-  	 * @param doc Document to set on.
-  	 * @param value Field value.
-  	 */
-  	private void addIndexNameField(Document doc, String value){
-  		
-  		indexNameField.setStringValue(value);
-  		
-  		doc.add(indexNameField);  		
-  	}
-  	
-  	/**
-  	 * Add the Place field to the document. 
-  	 * @param doc Document to set on.
-  	 * @param place String representation of place.
-  	 */
-  	private void addPlaceField(Document doc, String place){
-  		
-  		placeField.setStringValue(place);
-  		
-  		doc.add(placeField);
-  	}
-  	
-  	/**
-  	 * Add the Id field to the document.
-  	 * @param doc Document to set on.
-  	 * @param recordId Id of the record.
-  	 */
-  	private void addRecordIdField(Document doc, int recordId){
-  		
-  		recordIdField.setIntValue(recordId);
-  		
-  		doc.add(recordIdField);
-  	}
-  	
-  	/**
-  	 * Add the population to the document.
-  	 * @param doc Document to set on.
-  	 * @param population Population size.
-  	 */
-  	private void addPopulationField(Document doc, long population){
-  		
-  		populationField.setLongValue(population);
-  		
-  		doc.add(populationField);
-  	}
-  	
-  	/**
-  	 * Add the geospatial index field.
-  	 * @param doc Document to set on.
-  	 * @param shape Geospatial value (typically a Point, like a lat/lon).
-  	 */
-  	@SuppressWarnings("deprecation")
-	private void addGeospatialField(Document doc, Shape shape){
-  		
-		// TODO: Maybe do this more elegantly with the Spatial4J API's
-  		// ShapeReaderWriter...
-  		geospatialField.setStringValue(spatialContext.toString(shape));
-  		
-  		doc.add(geospatialField);
-  	}
+		addPlaceToIndex(place, null);
+	}
+	
+	/**
+	 * Call this to add a place, along with its language-tagged names, to
+	 * the index.  This is safe to call from several threads at once.
+	 * @param place Place to add.
+	 * @param alternateNames Language-tagged names of the place (may be null).
+	 * @throws IOException
+	 */
+	public void addPlaceToIndex(Place place, List<AlternateName> alternateNames) throws IOException{
+		
+		IndexWriter writer = getWriter(place);
+		
+		// The place belongs in a shard that isn't being built.
+		if (writer == null) return;
+		
+		Document document = documentBuilders.get().build(place, alternateNames);
+		
+		if (replaceExisting) writer.updateDocument(LuceneUtils.getPlaceIdTerm(place.getId()), document);
+		else writer.addDocument(document);
+	}
+	
+	/**
+	 * Call this to replace a place in the index, keyed on its id.
+	 * @param place Updated place.
+	 * @throws IOException
+	 */
+	public void updatePlaceInIndex(Place place) throws IOException{
+		
+		updatePlaceInIndex(place, null);
+	}
+	
+	/**
+	 * Call this to replace a place, along with its language-tagged names,
+	 * in the index, keyed on its id.
+	 * @param place Updated place.
+	 * @param alternateNames Language-tagged names of the place (may be null).
+	 * @throws IOException
+	 */
+	public void updatePlaceInIndex(Place place, List<AlternateName> alternateNames) throws IOException{
+		
+		IndexWriter target = getWriter(place);
+		
+		Term placeIdTerm = LuceneUtils.getPlaceIdTerm(place.getId());
+		
+		// When sharding by country, the place may have moved from another shard.
+		for (IndexWriter writer : getWriters()){
+			
+			if (writer != target) writer.deleteDocuments(placeIdTerm);
+		}
+		
+		if (target == null) return;
+		
+		Document document = documentBuilders.get().build(place, alternateNames);
+		
+		target.updateDocument(placeIdTerm, document);
+	}
+	
+	/**
+	 * Call this to remove a place from the index, keyed on its id.
+	 * @param placeId Id of the place.
+	 * @throws IOException
+	 */
+	public void deletePlaceFromIndex(int placeId) throws IOException{
+		
+		// The place may be in any shard.
+		for (IndexWriter writer : getWriters()) 
+			writer.deleteDocuments(LuceneUtils.getPlaceIdTerm(placeId));
+	}
 	
 	/**
 	 * Print a message to the console.
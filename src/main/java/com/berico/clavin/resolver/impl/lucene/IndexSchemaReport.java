@@ -0,0 +1,271 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.LocationOccurrence;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexSchemaReport.java
+ * 
+ *###################################################################*/
+
+/**
+ * Compares CLAVIN indexes (typically the same gazetteer built with the
+ * standard and slim schemas, see {@link PlaceDocumentBuilder}): their size
+ * on disk and the latency of searching each of them for a list of names
+ * through a {@link LuceneLocationNameIndex}.
+ * 
+ * Each index is searched for every name once to warm it up, then --repeat
+ * more times, timing each search.  The report prints, per index, the size,
+ * number of documents, mean results per search and the mean, median, 95th
+ * and 99th percentile latencies.
+ */
+public class IndexSchemaReport {
+	
+	/**
+	 * Names searched for when no file of names is given.
+	 */
+	static final List<String> DEFAULT_NAMES = Arrays.asList(
+		"Boston", "Springfield", "Paris", "London", "Kabul", "Reston", 
+		"New York", "San Jose", "Georgia", "Washington", "Cairo", "Lagos",
+		"Sao Paulo", "Moskva", "Beijing", "Sydney", "Victoria", "Santa Cruz",
+		"Bostn", "Lundon");
+	
+	public static void main(String[] args) throws Exception {
+		
+		ArgumentParser parser = 
+			ArgumentParsers.newArgumentParser("clavin-schema-report")
+				.description("Compares the size and search latency of CLAVIN indexes.");
+		
+		parser.addArgument("indexes")
+			.metavar("index-directory")
+			.nargs("+")
+			.help("Index directories to compare (e.g. one per schema).");
+		
+		parser.addArgument("--names")
+			.metavar("names-file")
+			.help("File with one name to search for per line (defaults to a short built-in list).");
+		
+		parser.addArgument("--repeat")
+			.metavar("passes")
+			.type(Integer.class)
+			.setDefault(5)
+			.help("Number of timed passes over the names.");
+		
+		parser.addArgument("--no-fuzzy")
+			.action(Arguments.storeTrue())
+			.help("Don't fall back to fuzzy matching (time exact matches only).");
+		
+		Namespace namespace = null;
+		
+		try {
+			
+			namespace = parser.parseArgs(args);
+			
+		} catch (ArgumentParserException ex) {
+			
+			parser.handleError(ex);
+			
+			System.exit(1);
+		}
+		
+		String namesFile = namespace.getString("names");
+		
+		List<String> names = (namesFile == null)? DEFAULT_NAMES : readNames(new File(namesFile));
+		
+		Options options = new Options();
+		
+		LuceneLocationNameIndex.configureUseFuzzy(options, !namespace.getBoolean("no_fuzzy"));
+		
+		int repeat = Math.max(1, namespace.getInt("repeat"));
+		
+		System.out.println(String.format("%,d names, %s timed passes%n", names.size(), repeat));
+		
+		System.out.println(String.format("%-30s %10s %10s %8s %9s %9s %9s %9s", 
+			"index", "size (MB)", "documents", "results", "mean (ms)", "p50 (ms)", "p95 (ms)", "p99 (ms)"));
+		
+		for (Object index : namespace.getList("indexes")){
+			
+			report(index.toString(), names, repeat, options);
+		}
+	}
+	
+	/**
+	 * Measure and print the report line of an index.
+	 * @param indexDirectory Index directory.
+	 * @param names Names to search for.
+	 * @param repeat Number of timed passes.
+	 * @param options Search options.
+	 * @throws Exception
+	 */
+	static void report(String indexDirectory, List<String> names, int repeat, Options options) 
+			throws Exception {
+		
+		LuceneComponentsFactory factory = new LuceneComponentsFactory(indexDirectory);
+		
+		factory.initializeSearcher(options);
+		
+		LuceneComponents lucene = factory.getComponents();
+		
+		LuceneLocationNameIndex nameIndex = new LuceneLocationNameIndex(lucene);
+		
+		IndexSearcher searcher = lucene.acquireSearcher(options);
+		
+		int documents;
+		
+		try {
+			
+			IndexReader reader = searcher.getIndexReader();
+			
+			documents = reader.numDocs();
+		}
+		finally {
+			
+			lucene.releaseSearcher(searcher);
+		}
+		
+		// Warm up the caches (and the JIT).
+		for (String name : names) nameIndex.search(new LocationOccurrence(name, 0), options);
+		
+		long[] latencies = new long[names.size() * repeat];
+		
+		long results = 0;
+		
+		for (int pass = 0; pass < repeat; pass++){
+			
+			for (int i = 0; i < names.size(); i++){
+				
+				LocationOccurrence occurrence = new LocationOccurrence(names.get(i), 0);
+				
+				long start = System.nanoTime();
+				
+				results += nameIndex.search(occurrence, options).size();
+				
+				latencies[pass * names.size() + i] = System.nanoTime() - start;
+			}
+		}
+		
+		Arrays.sort(latencies);
+		
+		long total = 0;
+		
+		for (long latency : latencies) total += latency;
+		
+		System.out.println(String.format("%-30s %10.1f %,10d %8.1f %9.3f %9.3f %9.3f %9.3f", 
+			indexDirectory, 
+			getSize(new File(indexDirectory)) / (1024d * 1024d),
+			documents,
+			results / (double) latencies.length,
+			total / (double) latencies.length / 1e6,
+			getPercentile(latencies, 0.50) / 1e6,
+			getPercentile(latencies, 0.95) / 1e6,
+			getPercentile(latencies, 0.99) / 1e6));
+		
+		factory.getSearcherManager().close();
+	}
+	
+	/**
+	 * Get a percentile of sorted values (nearest rank).
+	 * @param sorted Sorted values.
+	 * @param percentile Percentile (0 to 1).
+	 * @return Value.
+	 */
+	static long getPercentile(long[] sorted, double percentile){
+		
+		int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+		
+		return sorted[Math.min(sorted.length - 1, Math.max(0, rank))];
+	}
+	
+	/**
+	 * Get the size of the files in a directory (including the shards of a
+	 * sharded index).
+	 * @param file File or directory.
+	 * @return Size in bytes.
+	 */
+	static long getSize(File file){
+		
+		if (!file.isDirectory()) return file.length();
+		
+		long size = 0;
+		
+		File[] children = file.listFiles();
+		
+		if (children != null){
+			
+			for (File child : children) size += getSize(child);
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Read the names to search for, one per line (blank lines are skipped).
+	 * @param file File of names.
+	 * @return Names
+	 * @throws IOException
+	 */
+	static List<String> readNames(File file) throws IOException {
+		
+		BufferedReader reader = 
+			new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		
+		List<String> names = new ArrayList<String>();
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null){
+				
+				if (line.trim().length() > 0) names.add(line.trim());
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return names;
+	}
+}
@@ -0,0 +1,244 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.store.FSDirectory;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexShards.java
+ * 
+ *###################################################################*/
+
+/**
+ * Describes how a CLAVIN index is partitioned into shards, and which shard
+ * each Place belongs in.
+ * 
+ * A sharded index is a directory holding one Lucene index per shard
+ * ("shard-0", "shard-1", ...).  Places are assigned to shards either by 
+ * their primary country (every place in a country lives in the same shard,
+ * so searches hinting at a country only need that country's shard) or by a
+ * hash of their id (evenly sized shards, but every search covers them all).
+ * The layout is recorded in the commit data of every shard.
+ */
+public class IndexShards {
+
+	public static final String SHARD_DIRECTORY_PREFIX = "shard-";
+	
+	/**
+	 * Commit user data keys recording the layout.
+	 */
+	public static final String COMMIT_SHARD_COUNT = "clavin.shard.count";
+	public static final String COMMIT_SHARD_BY = "clavin.shard.by";
+	
+	/**
+	 * Ways of assigning places to shards.
+	 */
+	public static final String BY_COUNTRY = "country";
+	public static final String BY_HASH = "hash";
+	
+	protected final int count;
+	protected final String by;
+	
+	/**
+	 * Instantiate the layout.
+	 * @param count Number of shards.
+	 * @param by How places are assigned to shards (BY_COUNTRY or BY_HASH).
+	 */
+	public IndexShards(int count, String by) {
+		
+		if (count < 1)
+			throw new IllegalArgumentException("An index needs at least one shard.");
+		
+		if (!BY_COUNTRY.equals(by) && !BY_HASH.equals(by))
+			throw new IllegalArgumentException(
+				String.format("Unknown way of sharding '%s'.", by));
+		
+		this.count = count;
+		this.by = by;
+	}
+	
+	/**
+	 * Get the shard a Place belongs in.
+	 * @param place Place
+	 * @return Shard number.
+	 */
+	public int getShard(Place place){
+		
+		if (BY_COUNTRY.equals(by)) return getShard(place.getPrimaryCountryCode());
+		
+		return (place.getId() & Integer.MAX_VALUE) % count;
+	}
+	
+	/**
+	 * Get the shard the places in a country belong in (when sharding by
+	 * country).  The assignment only depends on the country code and the
+	 * number of shards, so it's the same in every build.
+	 * @param country Country
+	 * @return Shard number.
+	 */
+	public int getShard(CountryCode country){
+		
+		CountryCode code = (country == null)? CountryCode.NULL : country;
+		
+		return (code.name().hashCode() & Integer.MAX_VALUE) % count;
+	}
+	
+	/**
+	 * Get the shards holding the places in the supplied countries.
+	 * @param countries Countries
+	 * @return Shard numbers (in order), or null if every shard may hold 
+	 * places in the countries (i.e. when sharding by hash, or no countries
+	 * were supplied).
+	 */
+	public int[] getShards(Collection<CountryCode> countries){
+		
+		if (!isRoutable() || countries == null || countries.isEmpty()) return null;
+		
+		TreeSet<Integer> shards = new TreeSet<Integer>();
+		
+		for (CountryCode country : countries) shards.add(getShard(country));
+		
+		int[] numbers = new int[shards.size()];
+		
+		int i = 0;
+		
+		for (int shard : shards) numbers[i++] = shard;
+		
+		return numbers;
+	}
+	
+	/**
+	 * Can searches be routed to specific shards by country?
+	 * @return True if sharded by country.
+	 */
+	public boolean isRoutable(){
+		
+		return BY_COUNTRY.equals(by);
+	}
+	
+	/**
+	 * Get the number of shards.
+	 * @return Number of shards.
+	 */
+	public int getCount(){
+		
+		return count;
+	}
+	
+	/**
+	 * Get how places are assigned to shards.
+	 * @return BY_COUNTRY or BY_HASH.
+	 */
+	public String getBy(){
+		
+		return by;
+	}
+	
+	/**
+	 * Get the commit user data recording the layout.
+	 * @return Commit user data.
+	 */
+	public Map<String, String> getCommitData(){
+		
+		HashMap<String, String> commitData = new HashMap<String, String>();
+		
+		commitData.put(COMMIT_SHARD_COUNT, Integer.toString(count));
+		commitData.put(COMMIT_SHARD_BY, by);
+		
+		return commitData;
+	}
+	
+	/**
+	 * Get the directory of a shard.
+	 * @param indexDirectory Directory of the sharded index.
+	 * @param shard Shard number.
+	 * @return Directory of the shard's index.
+	 */
+	public static File getShardDirectory(File indexDirectory, int shard){
+		
+		return new File(indexDirectory, SHARD_DIRECTORY_PREFIX + shard);
+	}
+	
+	/**
+	 * Is the index directory a sharded index?
+	 * @param indexDirectory Index directory.
+	 * @return True if it holds shards.
+	 */
+	public static boolean isSharded(File indexDirectory){
+		
+		return getShardDirectory(indexDirectory, 0).isDirectory();
+	}
+	
+	/**
+	 * Read the layout of a sharded index from the last commit of its 
+	 * first shard.
+	 * @param indexDirectory Index directory.
+	 * @return Layout, or null if the index isn't sharded.
+	 * @throws IOException if the layout couldn't be read.
+	 */
+	public static IndexShards read(File indexDirectory) throws IOException {
+		
+		if (!isSharded(indexDirectory)) return null;
+		
+		FSDirectory directory = FSDirectory.open(getShardDirectory(indexDirectory, 0));
+		
+		try {
+			
+			List<IndexCommit> commits = DirectoryReader.listCommits(directory);
+			
+			Map<String, String> commitData = 
+				commits.get(commits.size() - 1).getUserData();
+			
+			if (!commitData.containsKey(COMMIT_SHARD_COUNT))
+				throw new IOException(String.format(
+					"The shards in %s don't record their layout.", indexDirectory));
+			
+			return new IndexShards(
+				Integer.parseInt(commitData.get(COMMIT_SHARD_COUNT)),
+				commitData.get(COMMIT_SHARD_BY));
+		}
+		finally {
+			
+			directory.close();
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("IndexShards [count=%s, by=%s]", count, by);
+	}
+}
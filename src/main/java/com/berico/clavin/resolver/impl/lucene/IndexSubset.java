@@ -0,0 +1,358 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexSubset.java
+ * 
+ *###################################################################*/
+
+/**
+ * Describes the subset of a gazetteer that goes into an index: the places
+ * in certain countries, of certain kinds (by FeatureClass or FeatureCode, as
+ * in {@link CandidateFilterCache}), with at least a minimum population or
+ * inside a bounding box, each with at most so many alternate names.  An
+ * empty subset accepts everything.
+ * 
+ * The subset is recorded in the commit data of the index, so updates to the
+ * index keep to it.
+ */
+public class IndexSubset {
+	
+	/**
+	 * Commit user data keys recording the subset (only the restrictions in
+	 * use are recorded).
+	 */
+	public static final String COMMIT_COUNTRIES = "clavin.subset.countries";
+	public static final String COMMIT_FEATURE_CLASSES = "clavin.subset.featureClasses";
+	public static final String COMMIT_FEATURE_CODES = "clavin.subset.featureCodes";
+	public static final String COMMIT_MIN_POPULATION = "clavin.subset.minPopulation";
+	public static final String COMMIT_BOUNDING_BOX = "clavin.subset.boundingBox";
+	public static final String COMMIT_MAX_ALTERNATE_NAMES = "clavin.subset.maxAlternateNames";
+	
+	/**
+	 * Value of maxAlternateNames when the names aren't capped.
+	 */
+	public static final int UNLIMITED = -1;
+	
+	/**
+	 * Orders language-tagged names so the ones worth keeping come first:
+	 * preferred and short names, then the rest, then colloquial and
+	 * historic names.
+	 */
+	static final Comparator<AlternateName> NAMES_TO_KEEP_FIRST = new Comparator<AlternateName>(){
+		
+		@Override
+		public int compare(AlternateName a, AlternateName b) {
+			
+			return getRank(a) - getRank(b);
+		}
+		
+		int getRank(AlternateName name){
+			
+			if (name.isPreferred() || name.isShortName()) return 0;
+			
+			if (name.isColloquial() || name.isHistoric()) return 2;
+			
+			return 1;
+		}
+	};
+	
+	protected EnumSet<CountryCode> countries = EnumSet.noneOf(CountryCode.class);
+	protected EnumSet<FeatureClass> featureClasses = EnumSet.noneOf(FeatureClass.class);
+	protected EnumSet<FeatureCode> featureCodes = EnumSet.noneOf(FeatureCode.class);
+	protected long minPopulation = 0;
+	
+	/**
+	 * Bounding box (minLat, minLon, maxLat, maxLon), or null for the world.
+	 */
+	protected double[] boundingBox;
+	
+	protected int maxAlternateNames = UNLIMITED;
+	
+	/**
+	 * Restrict the places to those whose primary country is in the set.
+	 * @param countries Countries (empty for all).
+	 */
+	public void setCountries(Collection<CountryCode> countries){
+		
+		this.countries.clear();
+		this.countries.addAll(countries);
+	}
+	
+	/**
+	 * Restrict the places to those whose FeatureClass or FeatureCode is in
+	 * the sets (when either is not empty).
+	 * @param featureClasses Feature Classes (empty for all).
+	 * @param featureCodes Feature Codes (empty for all).
+	 */
+	public void setFeatureTypes(Collection<FeatureClass> featureClasses, Collection<FeatureCode> featureCodes){
+		
+		this.featureClasses.clear();
+		this.featureClasses.addAll(featureClasses);
+		
+		this.featureCodes.clear();
+		this.featureCodes.addAll(featureCodes);
+	}
+	
+	/**
+	 * Restrict the places to those with at least the population.
+	 * @param minPopulation Minimum population (0 or less for any).
+	 */
+	public void setMinPopulation(long minPopulation){
+		
+		this.minPopulation = Math.max(0, minPopulation);
+	}
+	
+	/**
+	 * Restrict the places to those inside a bounding box.  A box whose
+	 * minimum longitude is greater than its maximum crosses the antimeridian.
+	 * @param minLatitude Southern edge.
+	 * @param minLongitude Western edge.
+	 * @param maxLatitude Northern edge.
+	 * @param maxLongitude Eastern edge.
+	 */
+	public void setBoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude){
+		
+		if (minLatitude > maxLatitude)
+			throw new IllegalArgumentException(String.format(
+				"The bounding box's southern edge (%s) is north of its northern edge (%s).",
+				minLatitude, maxLatitude));
+		
+		this.boundingBox = new double[]{ minLatitude, minLongitude, maxLatitude, maxLongitude };
+	}
+	
+	/**
+	 * Cap the number of alternate names indexed with each place (applied
+	 * separately to the names in the record and the language-tagged names).
+	 * @param maxAlternateNames Maximum number of names (UNLIMITED for all).
+	 */
+	public void setMaxAlternateNames(int maxAlternateNames){
+		
+		this.maxAlternateNames = (maxAlternateNames < 0)? UNLIMITED : maxAlternateNames;
+	}
+	
+	/**
+	 * Does the subset restrict anything?
+	 * @return True if every place (and name) is accepted.
+	 */
+	public boolean isEverything(){
+		
+		return countries.isEmpty()
+			&& featureClasses.isEmpty()
+			&& featureCodes.isEmpty()
+			&& minPopulation <= 0
+			&& boundingBox == null
+			&& maxAlternateNames == UNLIMITED;
+	}
+	
+	/**
+	 * Does the place belong in the index?
+	 * @param place Place
+	 * @return True if the place passes every restriction.
+	 */
+	public boolean accepts(Place place){
+		
+		if (!countries.isEmpty() && !countries.contains(place.getPrimaryCountryCode()))
+			return false;
+		
+		if ((!featureClasses.isEmpty() || !featureCodes.isEmpty())
+				&& !featureClasses.contains(place.getFeatureClass())
+				&& !featureCodes.contains(place.getFeatureCode()))
+			return false;
+		
+		// places without a population (OUT_OF_BOUNDS) only fail a minimum
+		if (minPopulation > 0 && place.getPopulation() < minPopulation) return false;
+		
+		if (boundingBox != null){
+			
+			if (place.getCenter() == null) return false;
+			
+			double latitude = place.getCenter().getLatitude();
+			double longitude = place.getCenter().getLongitude();
+			
+			if (latitude < boundingBox[0] || latitude > boundingBox[2]) return false;
+			
+			boolean crossesAntimeridian = boundingBox[1] > boundingBox[3];
+			
+			if (crossesAntimeridian){
+				
+				if (longitude < boundingBox[1] && longitude > boundingBox[3]) return false;
+			}
+			else if (longitude < boundingBox[1] || longitude > boundingBox[3]) return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Drop the alternate names of the place (in the record) beyond the cap.
+	 * @param place Place (its list of names is trimmed).
+	 */
+	public void trimAlternateNames(Place place){
+		
+		List<String> names = place.getAlternateNames();
+		
+		if (maxAlternateNames == UNLIMITED || names == null || names.size() <= maxAlternateNames)
+			return;
+		
+		names.subList(maxAlternateNames, names.size()).clear();
+	}
+	
+	/**
+	 * Get the language-tagged names to index, keeping preferred and short
+	 * names over colloquial and historic ones when there are more than the cap.
+	 * @param alternateNames Language-tagged names (may be null).
+	 * @return Names to index (the same list if there's no need to drop any).
+	 */
+	public List<AlternateName> trimAlternateNames(List<AlternateName> alternateNames){
+		
+		if (maxAlternateNames == UNLIMITED || alternateNames == null
+				|| alternateNames.size() <= maxAlternateNames)
+			return alternateNames;
+		
+		List<AlternateName> kept = new ArrayList<AlternateName>(alternateNames);
+		
+		// The sort is stable, so names of the same rank keep their order.
+		Collections.sort(kept, NAMES_TO_KEEP_FIRST);
+		
+		return kept.subList(0, maxAlternateNames);
+	}
+	
+	/**
+	 * Get the commit user data recording the subset.
+	 * @return Commit user data (empty if the subset is everything).
+	 */
+	public Map<String, String> getCommitData(){
+		
+		Map<String, String> commitData = new HashMap<String, String>();
+		
+		if (!countries.isEmpty()) commitData.put(COMMIT_COUNTRIES, join(countries));
+		
+		if (!featureClasses.isEmpty()) commitData.put(COMMIT_FEATURE_CLASSES, join(featureClasses));
+		
+		if (!featureCodes.isEmpty()) commitData.put(COMMIT_FEATURE_CODES, join(featureCodes));
+		
+		if (minPopulation > 0) commitData.put(COMMIT_MIN_POPULATION, Long.toString(minPopulation));
+		
+		if (boundingBox != null){
+			
+			commitData.put(COMMIT_BOUNDING_BOX, String.format("%s,%s,%s,%s",
+				boundingBox[0], boundingBox[1], boundingBox[2], boundingBox[3]));
+		}
+		
+		if (maxAlternateNames != UNLIMITED)
+			commitData.put(COMMIT_MAX_ALTERNATE_NAMES, Integer.toString(maxAlternateNames));
+		
+		return commitData;
+	}
+	
+	/**
+	 * Read the subset recorded in an index's commit user data.
+	 * @param commitData Commit user data (may be null).
+	 * @return Subset (everything if none was recorded).
+	 */
+	public static IndexSubset fromCommitData(Map<String, String> commitData){
+		
+		IndexSubset subset = new IndexSubset();
+		
+		if (commitData == null) return subset;
+		
+		String value;
+		
+		if ((value = commitData.get(COMMIT_COUNTRIES)) != null){
+			
+			for (String country : split(value)) subset.countries.add(CountryCode.valueOf(country));
+		}
+		
+		if ((value = commitData.get(COMMIT_FEATURE_CLASSES)) != null){
+			
+			for (String featureClass : split(value))
+				subset.featureClasses.add(FeatureClass.valueOf(featureClass));
+		}
+		
+		if ((value = commitData.get(COMMIT_FEATURE_CODES)) != null){
+			
+			for (String featureCode : split(value))
+				subset.featureCodes.add(FeatureCode.valueOf(featureCode));
+		}
+		
+		if ((value = commitData.get(COMMIT_MIN_POPULATION)) != null)
+			subset.setMinPopulation(Long.parseLong(value));
+		
+		if ((value = commitData.get(COMMIT_BOUNDING_BOX)) != null){
+			
+			String[] edges = split(value);
+			
+			subset.setBoundingBox(
+				Double.parseDouble(edges[0]), Double.parseDouble(edges[1]),
+				Double.parseDouble(edges[2]), Double.parseDouble(edges[3]));
+		}
+		
+		if ((value = commitData.get(COMMIT_MAX_ALTERNATE_NAMES)) != null)
+			subset.setMaxAlternateNames(Integer.parseInt(value));
+		
+		return subset;
+	}
+	
+	static String join(Collection<? extends Enum<?>> values){
+		
+		StringBuilder joined = new StringBuilder();
+		
+		for (Enum<?> value : values){
+			
+			if (joined.length() > 0) joined.append(',');
+			
+			joined.append(value.name());
+		}
+		
+		return joined.toString();
+	}
+	
+	static String[] split(String value){
+		
+		return value.split(",");
+	}
+	
+	@Override
+	public String toString() {
+		
+		return isEverything()? "everything" : getCommitData().toString();
+	}
+}
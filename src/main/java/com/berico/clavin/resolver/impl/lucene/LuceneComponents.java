@@ -1,9 +1,16 @@
 package com.berico.clavin.resolver.impl.lucene;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.spatial.SpatialStrategy;
 
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
 import com.spatial4j.core.context.SpatialContext;
 
 /*#####################################################################
@@ -36,13 +43,13 @@ import com.spatial4j.core.context.SpatialContext;
 
 public class LuceneComponents {
 
-	protected SearcherManager searcherManager;
+	protected ReferenceManager<IndexSearcher> searcherManager;
 	protected SpatialStrategy spatialStrategy;
 	protected SpatialContext spatialContext;
 	protected Analyzer indexAnalyzer;
 	
 	public LuceneComponents(
-			SearcherManager searcherManager,
+			ReferenceManager<IndexSearcher> searcherManager,
 			SpatialStrategy spatialStrategy, 
 			SpatialContext spatialContext,
 			Analyzer indexAnalyzer) {
@@ -53,9 +60,68 @@ public class LuceneComponents {
 		this.indexAnalyzer = indexAnalyzer;
 	}
 
-	public SearcherManager getSearcherManager() {
+	/**
+	 * Get the manager searchers are acquired from (a SearcherManager, or a
+	 * ShardedSearcherManager for sharded indexes).
+	 * @return Searcher manager.
+	 */
+	public ReferenceManager<IndexSearcher> getSearcherManager() {
 		return searcherManager;
 	}
+	
+	/**
+	 * Acquire a searcher.  If the index is sharded by country and the options
+	 * hint at countries (see {@link LuceneComponentsFactory#KEY_COUNTRY_HINT}),
+	 * the searcher only covers the shards holding those countries.  Hinted
+	 * codes are case-insensitive, and ones that aren't countries are ignored.
+	 * @param options Options with the (optional) country hint.
+	 * @return Searcher; give it back with releaseSearcher.
+	 * @throws IOException
+	 */
+	public IndexSearcher acquireSearcher(Options options) throws IOException {
+		
+		String hint = (options == null)? null : options.get(LuceneComponentsFactory.KEY_COUNTRY_HINT);
+		
+		if (hint == null || !(searcherManager instanceof ShardedSearcherManager))
+			return searcherManager.acquire();
+		
+		return ((ShardedSearcherManager) searcherManager).acquire(getHintedCountries(hint));
+	}
+	
+	/**
+	 * Get the countries of a country hint, ignoring codes that aren't
+	 * countries (and so can't be routed to a shard).
+	 * @param hint Comma-separated country codes.
+	 * @return Countries (empty if there are none, which searches every shard).
+	 */
+	static List<CountryCode> getHintedCountries(String hint){
+		
+		List<CountryCode> countries = new ArrayList<CountryCode>();
+		
+		for (String code : LuceneCoordinateIndex.split(hint)){
+			
+			try {
+				
+				countries.add(CountryCode.valueOf(code.toUpperCase()));
+			}
+			catch (IllegalArgumentException e) {
+				
+				// not a country
+			}
+		}
+		
+		return countries;
+	}
+	
+	/**
+	 * Release a searcher acquired with acquireSearcher.
+	 * @param searcher Searcher
+	 * @throws IOException
+	 */
+	public void releaseSearcher(IndexSearcher searcher) throws IOException {
+		
+		searcherManager.release(searcher);
+	}
 
 	public SpatialStrategy getSpatialStrategy() {
 		return spatialStrategy;
@@ -2,12 +2,24 @@ package com.berico.clavin.resolver.impl.lucene;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.LogDocMergePolicy;
+import org.apache.lucene.index.LogMergePolicy;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.spatial.SpatialStrategy;
 import org.apache.lucene.spatial.prefix.RecursivePrefixTreeStrategy;
@@ -15,6 +27,11 @@ import org.apache.lucene.spatial.prefix.tree.GeohashPrefixTree;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
 import com.spatial4j.core.context.SpatialContext;
 
 /*#####################################################################
@@ -51,7 +68,54 @@ import com.spatial4j.core.context.SpatialContext;
  */
 public class LuceneComponentsFactory {
 
-	SearcherManager searcherManager;
+	private static final Logger logger = 
+			LoggerFactory.getLogger(LuceneComponentsFactory.class);
+	
+	/**
+	 * How often (in seconds) the SearcherManager checks for changes committed
+	 * to the index (e.g. by the GeonamesIndexUpdater).  With 0 (the default),
+	 * searchers only see the index as it was when they were initialized.
+	 */
+	public static int DEFAULT_REFRESH_SECONDS = 0;
+	public static String KEY_DEFAULT_REFRESH_SECONDS = "lucene.search.refreshSeconds";
+
+	/**
+	 * Number of threads used to search index segments concurrently.  With 1
+	 * (the default), every search runs on the calling thread.
+	 */
+	public static int DEFAULT_SEARCH_THREADS = 1;
+	public static String KEY_DEFAULT_SEARCH_THREADS = "lucene.search.threads";
+	
+	/**
+	 * Countries (comma-separated codes, e.g. "US,CA") searches are expected
+	 * to find places in.  When the index is sharded by country, searches only
+	 * cover the shards holding these countries.  Unset means every shard.
+	 */
+	public static String KEY_COUNTRY_HINT = "lucene.search.countries";
+	
+	/**
+	 * Size (in MB) of the buffer documents are collected in before being
+	 * flushed to a new segment.  Larger buffers mean fewer, larger segments
+	 * to merge while building.
+	 */
+	public static double DEFAULT_RAM_BUFFER_MB = 256;
+	public static String KEY_DEFAULT_RAM_BUFFER_MB = "index.writer.ramBufferMB";
+	
+	/**
+	 * Merge policy used by the writer: "tiered", "logByteSize" or "logDoc".
+	 */
+	public static String DEFAULT_MERGE_POLICY = "tiered";
+	public static String KEY_DEFAULT_MERGE_POLICY = "index.writer.mergePolicy";
+	
+	/**
+	 * Whether segments are packed into compound files.  Compound files
+	 * use fewer file handles, but cost extra I/O to build and the
+	 * CLAVIN index is rarely opened more than once per process.
+	 */
+	public static boolean DEFAULT_USE_COMPOUND_FILE = false;
+	public static String KEY_DEFAULT_USE_COMPOUND_FILE = "index.writer.useCompoundFile";
+	
+	ReferenceManager<IndexSearcher> searcherManager;
 	SpatialContext spatialContext;
 	SpatialStrategy spatialStrategy;
 	FSDirectory index;
@@ -59,6 +123,10 @@ public class LuceneComponentsFactory {
 	Analyzer indexAnalyzer;
 	File indexDir;
 	IndexWriter indexWriter;
+	ExecutorService searchExecutor;
+	ScheduledExecutorService refresher;
+	IndexShards shards;
+	FSDirectory[] shardDirectories;
 	
 	/**
 	 * Instantiate with a handle to the local Lucene index.
@@ -101,15 +169,122 @@ public class LuceneComponentsFactory {
 	 */
 	public LuceneComponentsFactory initializeWriter() throws IOException {
 		
+		return initializeWriter(new Options());
+	}
+	
+	/**
+	 * Initialize the IndexWriter (and other components), tuned by the
+	 * supplied options.
+	 * @param options Options with the (optional) writer settings.
+	 * @return This object (it's needlessly fluent!).
+	 * @throws IOException
+	 */
+	public LuceneComponentsFactory initializeWriter(Options options) throws IOException {
+		
+		options = (options == null)? new Options() : options;
+		
 		initializeCommon();
 		
 		// instantiate the index writer
-		indexWriter = new IndexWriter(index, 
-				new IndexWriterConfig(Version.LUCENE_43, indexAnalyzer));
+		indexWriter = new IndexWriter(index, createWriterConfig(options));
 		
 		return this;
 	}
 	
+	/**
+	 * Create the configuration of the IndexWriter from the options.
+	 * @param options Options with the (optional) writer settings.
+	 * @return Index Writer configuration.
+	 */
+	protected IndexWriterConfig createWriterConfig(Options options){
+		
+		IndexWriterConfig config = 
+				new IndexWriterConfig(Version.LUCENE_43, indexAnalyzer);
+		
+		config.setRAMBufferSizeMB(
+			options.getDouble(KEY_DEFAULT_RAM_BUFFER_MB, DEFAULT_RAM_BUFFER_MB));
+		
+		// Flush on RAM usage alone.
+		config.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+		
+		config.setMergePolicy(createMergePolicy(
+			options.containsKey(KEY_DEFAULT_MERGE_POLICY)? 
+				options.get(KEY_DEFAULT_MERGE_POLICY) : DEFAULT_MERGE_POLICY,
+			options.getBoolean(KEY_DEFAULT_USE_COMPOUND_FILE, DEFAULT_USE_COMPOUND_FILE)));
+		
+		return config;
+	}
+	
+	/**
+	 * Create the named merge policy.
+	 * @param name "tiered", "logByteSize" or "logDoc".
+	 * @param useCompoundFile Should segments be packed into compound files?
+	 * @return Merge Policy.
+	 */
+	static MergePolicy createMergePolicy(String name, boolean useCompoundFile){
+		
+		double noCFSRatio = (useCompoundFile)? 1.0 : 0.0;
+		
+		if ("tiered".equalsIgnoreCase(name)){
+			
+			TieredMergePolicy mergePolicy = new TieredMergePolicy();
+			
+			mergePolicy.setNoCFSRatio(noCFSRatio);
+			
+			return mergePolicy;
+		}
+		
+		LogMergePolicy mergePolicy = null;
+		
+		if ("logByteSize".equalsIgnoreCase(name)){
+			
+			mergePolicy = new LogByteSizeMergePolicy();
+		}
+		else if ("logDoc".equalsIgnoreCase(name)){
+			
+			mergePolicy = new LogDocMergePolicy();
+		}
+		else {
+			
+			throw new IllegalArgumentException(
+				String.format("Unknown merge policy '%s'.", name));
+		}
+		
+		mergePolicy.setNoCFSRatio(noCFSRatio);
+		
+		return mergePolicy;
+	}
+	
+	/**
+	 * Set the size of the writer's RAM buffer.
+	 * @param options Options to set on
+	 * @param megabytes Size in MB.
+	 */
+	public static void configureRamBuffer(Options options, double megabytes){
+		
+		options.put(KEY_DEFAULT_RAM_BUFFER_MB, Double.toString(megabytes));
+	}
+	
+	/**
+	 * Set the writer's merge policy.
+	 * @param options Options to set on
+	 * @param mergePolicy "tiered", "logByteSize" or "logDoc".
+	 */
+	public static void configureMergePolicy(Options options, String mergePolicy){
+		
+		options.put(KEY_DEFAULT_MERGE_POLICY, mergePolicy);
+	}
+	
+	/**
+	 * Set whether the writer packs segments into compound files.
+	 * @param options Options to set on
+	 * @param useCompoundFile true to use compound files.
+	 */
+	public static void configureUseCompoundFile(Options options, boolean useCompoundFile){
+		
+		options.put(KEY_DEFAULT_USE_COMPOUND_FILE, Boolean.toString(useCompoundFile));
+	}
+	
 	
 	/**
 	 * Initialize the SearcherManager (and other components).
@@ -118,6 +293,11 @@ public class LuceneComponentsFactory {
 	 */
 	public LuceneComponentsFactory initializeSearcher() throws IOException{
 		
+		// a sharded index is a directory of indexes.
+		shards = IndexShards.read(indexDir);
+		
+		if (shards != null) return initializeShardedSearcher();
+		
 		initializeCommon();
 		
 		// instantiate an index searcher
@@ -126,13 +306,198 @@ public class LuceneComponentsFactory {
 		// override default TF/IDF score to ignore multiple appearances
 		indexSearcher.setSimilarity(new BinarySimilarity());
 		
-		// Instantiate the searcher manager.
-		searcherManager = new SearcherManager(index, null);
+		// Instantiate the searcher manager, searching segments concurrently
+		// if we were given an executor.
+		searcherManager = (searchExecutor == null)? 
+			new SearcherManager(index, null) :
+			new SearcherManager(index, new SegmentParallelSearcherFactory(searchExecutor));
 		
 		// Do it.
 		return this;
 	}
 	
+	/**
+	 * Initialize the searcher over the shards of a sharded index, opened as
+	 * one MultiReader (see {@link ShardedSearcherManager}).
+	 * @return This object (it's needlessly fluent!).
+	 * @throws IOException 
+	 */
+	protected LuceneComponentsFactory initializeShardedSearcher() throws IOException {
+		
+		// The common components, other than the (shard) directories.
+		initializeCommon();
+		
+		shardDirectories = new FSDirectory[shards.getCount()];
+		
+		for (int i = 0; i < shardDirectories.length; i++){
+			
+			shardDirectories[i] = 
+				FSDirectory.open(IndexShards.getShardDirectory(indexDir, i));
+		}
+		
+		searcherManager = new ShardedSearcherManager(
+			shards, 
+			shardDirectories, 
+			(searchExecutor == null)? null : new SegmentParallelSearcherFactory(searchExecutor));
+		
+		// instantiate an index searcher over the shards, with its own readers 
+		// (so the manager's searchers are neither pinned nor changed).
+		DirectoryReader[] readers = new DirectoryReader[shardDirectories.length];
+		
+		for (int i = 0; i < readers.length; i++) readers[i] = DirectoryReader.open(shardDirectories[i]);
+		
+		indexSearcher = new IndexSearcher(new MultiReader(readers, true));
+		
+		// override default TF/IDF score to ignore multiple appearances
+		indexSearcher.setSimilarity(new BinarySimilarity());
+		
+		logger.info("Opened {} shards ({}).", shards.getCount(), shards);
+		
+		return this;
+	}
+	
+	/**
+	 * Initialize the SearcherManager (and other components), creating a 
+	 * search executor if the options ask for more than one search thread.
+	 * @param options Options with the (optional) number of search threads.
+	 * @return This object (it's needlessly fluent!).
+	 * @throws IOException 
+	 */
+	public LuceneComponentsFactory initializeSearcher(Options options) throws IOException{
+		
+		options = (options == null)? new Options() : options;
+		
+		int threads = options.getInt(KEY_DEFAULT_SEARCH_THREADS, DEFAULT_SEARCH_THREADS);
+		
+		if (searchExecutor == null && threads > 1)
+			searchExecutor = createSearchExecutor(threads);
+		
+		initializeSearcher();
+		
+		int refreshSeconds = 
+				options.getInt(KEY_DEFAULT_REFRESH_SECONDS, DEFAULT_REFRESH_SECONDS);
+		
+		if (refreshSeconds > 0) scheduleRefresh(refreshSeconds);
+		
+		return this;
+	}
+	
+	/**
+	 * Periodically reopen the SearcherManager if changes have been committed
+	 * to the index.  Searches in flight keep the searcher they acquired.
+	 * @param seconds Time between checks.
+	 */
+	protected void scheduleRefresh(int seconds){
+		
+		refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			
+			@Override
+			public Thread newThread(Runnable runnable) {
+				
+				Thread thread = new Thread(runnable, "clavin-searcher-refresh");
+				
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+		
+		refresher.scheduleWithFixedDelay(new Runnable(){
+			
+			@Override
+			public void run() {
+				
+				try {
+					
+					maybeRefresh();
+				}
+				catch (IOException e) {
+					
+					logger.error("Could not refresh the index searcher.", e);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Reopen the SearcherManager if changes have been committed to the index.
+	 * @return true if the searcher now reflects the latest commit.
+	 * @throws IOException
+	 */
+	public boolean maybeRefresh() throws IOException {
+		
+		return searcherManager.maybeRefresh();
+	}
+	
+	/**
+	 * Create a fixed pool of daemon threads for searching segments, so an
+	 * application doesn't have to shut it down to exit.
+	 * @param threads Number of threads.
+	 * @return Executor.
+	 */
+	protected static ExecutorService createSearchExecutor(int threads){
+		
+		return Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			
+			int count = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				
+				Thread thread = new Thread(runnable, "clavin-search-" + (++count));
+				
+				thread.setDaemon(true);
+				
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Set the executor used to search index segments concurrently.  Cheap
+	 * exact lookups still run on the calling thread.  Must be set before
+	 * initializing the searcher.
+	 * @param searchExecutor Executor (or null to search on the calling thread).
+	 * @return This object (it's needlessly fluent!).
+	 */
+	public LuceneComponentsFactory setSearchExecutor(ExecutorService searchExecutor){
+		
+		this.searchExecutor = searchExecutor;
+		
+		return this;
+	}
+	
+	/**
+	 * Set how often the searcher checks for changes committed to the index.
+	 * @param options Options to set on
+	 * @param seconds Time between checks (0 to never check).
+	 */
+	public static void configureRefreshSeconds(Options options, int seconds){
+		
+		options.put(KEY_DEFAULT_REFRESH_SECONDS, Integer.toString(seconds));
+	}
+	
+	/**
+	 * Hint at the countries searches are expected to find places in, so 
+	 * searches of an index sharded by country only cover their shards.
+	 * @param options Options to set on
+	 * @param countries Countries (none to search every shard).
+	 */
+	public static void configureCountryHint(Options options, CountryCode... countries){
+		
+		options.put(KEY_COUNTRY_HINT, LuceneCoordinateIndex.join(countries));
+	}
+	
+	/**
+	 * Set the number of threads used to search index segments concurrently.
+	 * @param options Options to set on
+	 * @param threads Number of threads (1 to search on the calling thread).
+	 */
+	public static void configureSearchThreads(Options options, int threads){
+		
+		options.put(KEY_DEFAULT_SEARCH_THREADS, Integer.toString(threads));
+	}
+	
 	/**
 	 * Retrieve the essential Lucene components needed to perform a faceted search.
 	 * @return  A wrapper class with all the necessary Lucene constructs.
@@ -144,12 +509,21 @@ public class LuceneComponentsFactory {
 	}
 
 	/**
-	 * Get the SearcherManager.
+	 * Get the SearcherManager (a ShardedSearcherManager for sharded indexes).
 	 * @return SearcherManager.
 	 */
-	public SearcherManager getSearcherManager() {
+	public ReferenceManager<IndexSearcher> getSearcherManager() {
 		return searcherManager;
 	}
+	
+	/**
+	 * Get the layout of a sharded index.
+	 * @return Shards, or null if the index isn't sharded (or the searcher
+	 * hasn't been initialized).
+	 */
+	public IndexShards getShards() {
+		return shards;
+	}
 
 	/**
 	 * Get the Spatial4j Context.
@@ -199,6 +573,14 @@ public class LuceneComponentsFactory {
 		return indexDir;
 	}
 
+	/**
+	 * Get the executor used to search segments concurrently.
+	 * @return Executor (null if searches run on the calling thread).
+	 */
+	public ExecutorService getSearchExecutor() {
+		return searchExecutor;
+	}
+
 	/**
 	 * Get the Index Writer.
 	 * @return Index Writer.
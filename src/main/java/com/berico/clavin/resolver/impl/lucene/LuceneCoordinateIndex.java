@@ -1,21 +1,33 @@
 package com.berico.clavin.resolver.impl.lucene;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.spatial.query.SpatialArgs;
 import org.apache.lucene.spatial.query.SpatialOperation;
 
 import com.berico.clavin.Options;
 import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
 import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
 import com.berico.clavin.resolver.ResolvedCoordinate;
 import com.berico.clavin.resolver.impl.CoordinateIndex;
+import com.berico.clavin.util.ZOrderCurve;
+import com.spatial4j.core.context.SpatialContext;
 import com.spatial4j.core.distance.DistanceUtils;
 import com.spatial4j.core.shape.Circle;
+import com.spatial4j.core.shape.Point;
 
 /*#####################################################################
  * 
@@ -56,14 +68,67 @@ import com.spatial4j.core.shape.Circle;
  */
 public class LuceneCoordinateIndex implements CoordinateIndex {
 
+	/**
+	 * Max radius searched around a coordinate.  Coordinates whose precision
+	 * is unknown are searched with this radius.
+	 */
 	public static int DEFAULT_DISTANCE_KM = 20;
 	public static String KEY_DEFAULT_DISTANCE_KM = "coord.index.distance";
 	
+	/**
+	 * Min radius searched around a coordinate, however precise it is.
+	 */
+	public static double DEFAULT_MIN_DISTANCE_KM = 1;
+	public static String KEY_DEFAULT_MIN_DISTANCE_KM = "coord.index.minDistance";
+	
+	/**
+	 * Smallest radius ever searched.  A radius is widened by doubling it, so
+	 * a radius of zero would never grow.
+	 */
+	static final double SMALLEST_RADIUS_KM = 0.001;
+	
+	/**
+	 * The initial search radius of a coordinate with a known precision
+	 * is its precision multiplied by this value.
+	 */
+	public static double DEFAULT_PRECISION_MULTIPLIER = 10;
+	public static String KEY_DEFAULT_PRECISION_MULTIPLIER = "coord.index.precisionMultiplier";
+	
+	/**
+	 * If fewer than this many candidates are found around a coordinate, its
+	 * search radius is doubled (up to the max radius) and it is searched again.
+	 */
+	public static int DEFAULT_MIN_RESULTS = 1;
+	public static String KEY_DEFAULT_MIN_RESULTS = "coord.index.minResults";
+	
 	public static int DEFAULT_LIMIT = 5000;
 	public static String KEY_DEFAULT_LIMIT = "coord.index.limit";
 	
+	/**
+	 * When searching a batch of coordinates, nearby coordinates are grouped
+	 * and searched together.  This is the furthest (as a multiple of the search
+	 * radius) a coordinate can be from the first coordinate in its group.
+	 */
+	public static int DEFAULT_CLUSTER_SPAN = 3;
+	public static String KEY_DEFAULT_CLUSTER_SPAN = "coord.index.clusterSpan";
+	
+	/**
+	 * Restrict candidates to these Feature Classes and/or Feature Codes
+	 * (comma-separated, e.g. "P,A").  Unset means no restriction.
+	 */
+	public static String KEY_FEATURE_CLASSES = "coord.index.featureClasses";
+	public static String KEY_FEATURE_CODES = "coord.index.featureCodes";
+	
+	/**
+	 * Restrict candidates to places with at least this population.
+	 */
+	public static long DEFAULT_MIN_POPULATION = 0;
+	public static String KEY_DEFAULT_MIN_POPULATION = "coord.index.minPopulation";
+	
 	protected LuceneComponents lucene;
 	
+	protected CandidateFilterCache filterCache = new CandidateFilterCache();
+	
 	/**
 	 * Instantiate the index with it's Lucene dependencies.
 	 * @param lucene Lucene Components
@@ -92,63 +157,380 @@ public class LuceneCoordinateIndex implements CoordinateIndex {
 	public List<ResolvedCoordinate> search(
 			CoordinateOccurrence<?> coordinate, Options options) throws Exception {
 		
+		List<CoordinateOccurrence<?>> coordinates = 
+				Collections.<CoordinateOccurrence<?>>singletonList(coordinate);
+		
+		return searchAll(coordinates, options).get(0);
+	}
+	
+	/**
+	 * Search for locations around each of the supplied coordinates.
+	 * 
+	 * Each coordinate is searched with a radius sized from the precision it
+	 * was written with (see {@link CoordinateOccurrence#getPrecisionInKm()}),
+	 * so precise coordinates only pull back a handful of candidates.  Any
+	 * coordinate that finds too few candidates has its radius doubled and is
+	 * searched again, until it reaches the max radius.
+	 * 
+	 * Rather than performing a search per coordinate, the coordinates are
+	 * sorted along a Z-order curve and consecutive coordinates whose search
+	 * circles overlap are grouped.  Each group is searched once, using a circle
+	 * large enough to cover all of its members, and each document is loaded once
+	 * before being handed out to the members it is near.
+	 * 
+	 * @param coordinates Coordinates to search for nearby locations.
+	 * @param options Options to configure the search.
+	 * @return One list of candidates per coordinate, in the order provided.
+	 */
+	@Override
+	public List<List<ResolvedCoordinate>> searchAll(
+			List<CoordinateOccurrence<?>> coordinates, Options options) throws Exception {
+		
 		// Guard against null.
 		options = (options == null)? new Options() : options;
 		
-		int distance = 
-				options.getInt(KEY_DEFAULT_DISTANCE_KM, DEFAULT_DISTANCE_KM);
+		// Keep both radii positive, or widening would never end.
+		double maxDistance = Math.max(SMALLEST_RADIUS_KM,
+				options.getInt(KEY_DEFAULT_DISTANCE_KM, DEFAULT_DISTANCE_KM));
+		
+		double minDistance = Math.min(maxDistance, Math.max(SMALLEST_RADIUS_KM,
+				options.getDouble(KEY_DEFAULT_MIN_DISTANCE_KM, DEFAULT_MIN_DISTANCE_KM)));
+		
+		double precisionMultiplier = 
+				options.getDouble(KEY_DEFAULT_PRECISION_MULTIPLIER, DEFAULT_PRECISION_MULTIPLIER);
+		
+		int minResults = 
+				options.getInt(KEY_DEFAULT_MIN_RESULTS, DEFAULT_MIN_RESULTS);
 
 		int limit = 
 				options.getInt(KEY_DEFAULT_LIMIT, DEFAULT_LIMIT);
 		
-		return performSearch(coordinate, distance, limit);
+		int clusterSpan = 
+				options.getInt(KEY_DEFAULT_CLUSTER_SPAN, DEFAULT_CLUSTER_SPAN);
+		
+		SpatialContext spatialContext = this.lucene.getSpatialContext();
+		
+		// Candidate lists, in the same order as the coordinates.
+		ArrayList<List<ResolvedCoordinate>> candidates = 
+				new ArrayList<List<ResolvedCoordinate>>(coordinates.size());
+		
+		ArrayList<BatchEntry> entries = new ArrayList<BatchEntry>(coordinates.size());
+		
+		for (CoordinateOccurrence<?> coordinate : coordinates){
+			
+			LatLon center = coordinate.convertToLatLon();
+			
+			BatchEntry entry = new BatchEntry(
+				coordinate, 
+				spatialContext.makePoint(center.getLongitude(), center.getLatitude()),
+				ZOrderCurve.encode(center.getLatitude(), center.getLongitude()),
+				getInitialRadius(coordinate.getPrecisionInKm(), 
+					precisionMultiplier, minDistance, maxDistance));
+			
+			entries.add(entry);
+			
+			candidates.add(entry.candidates);
+		}
+		
+		// Put coordinates that are near each other next to each other.
+		Collections.sort(entries);
+		
+		Query candidateQuery = getCandidateQuery(options);
+		
+		// Acquire a searcher.
+		IndexSearcher searcher = this.lucene.acquireSearcher(options);
+		
+		try {
+			
+			List<BatchEntry> pending = entries;
+			
+			while (!pending.isEmpty()){
+			
+				for (List<BatchEntry> cluster : cluster(pending, clusterSpan)){
+					
+					searchCluster(searcher, cluster, limit, candidateQuery);
+				}
+				
+				pending = widen(pending, minResults, maxDistance);
+			}
+		}
+		finally {
+			
+			this.lucene.releaseSearcher(searcher);
+		}
+		
+		return candidates;
 	}
 	
 	/**
-	 * Search for locations around the supplied coordinate.
-	 * @param coordinate Coordinate to search for nearby locations.
-	 * @param distanceInKm Kilometer radius to search around the
-	 * target coordinate for named locations.
-	 * @param limit Max number of results to return from the index.
-	 * @return ResolvedCoordinate instance.
+	 * Determine the radius a coordinate is first searched with.
+	 * @param precisionInKm Precision of the coordinate (or UNKNOWN_PRECISION).
+	 * @param precisionMultiplier Multiple of the precision to search.
+	 * @param minDistanceInKm Min search radius.
+	 * @param maxDistanceInKm Max search radius.
+	 * @return Search radius in kilometers.
 	 */
-	List<ResolvedCoordinate> performSearch(
-			CoordinateOccurrence<?> coordinate, 
-			int distanceInKm,
-			int limit)
-			throws Exception {
+	static double getInitialRadius(
+			double precisionInKm, 
+			double precisionMultiplier, 
+			double minDistanceInKm, 
+			double maxDistanceInKm){
 		
-		// Acquire a searcher.
-		IndexSearcher searcher = this.lucene.getSearcherManager().acquire();
+		if (precisionInKm < 0) return maxDistanceInKm;
+		
+		double radius = precisionInKm * precisionMultiplier;
+		
+		return Math.max(minDistanceInKm, Math.min(maxDistanceInKm, radius));
+	}
+	
+	/**
+	 * Find the entries that did not find enough candidates and can still
+	 * widen their search, doubling their radius (up to the max) and
+	 * discarding the candidates they found so far.
+	 * @param entries Entries (sorted by Z-order) that were just searched.
+	 * @param minResults Min number of candidates an entry should have.
+	 * @param maxDistanceInKm Max search radius.
+	 * @return Entries (still sorted by Z-order) to search again.
+	 */
+	static List<BatchEntry> widen(
+			List<BatchEntry> entries, int minResults, double maxDistanceInKm){
+		
+		ArrayList<BatchEntry> widened = new ArrayList<BatchEntry>();
+		
+		for (BatchEntry entry : entries){
+			
+			if (entry.candidates.size() >= minResults 
+					|| entry.radiusInKm >= maxDistanceInKm) continue;
+			
+			entry.radiusInKm = Math.min(maxDistanceInKm, entry.radiusInKm * 2);
+			
+			entry.candidates.clear();
+			
+			widened.add(entry);
+		}
+		
+		return widened;
+	}
+	
+	/**
+	 * Group the (Z-order sorted) entries into clusters of neighbors.  An entry
+	 * joins the current cluster if its search circle overlaps the previous entry's
+	 * and it is within the cluster span of the cluster's first entry.
+	 * @param sortedEntries Entries sorted by Z-order.
+	 * @param clusterSpan Max distance from the first entry (in search radii).
+	 * @return Clusters of entries.
+	 */
+	List<List<BatchEntry>> cluster(List<BatchEntry> sortedEntries, int clusterSpan){
+		
+		SpatialContext spatialContext = this.lucene.getSpatialContext();
+		
+		ArrayList<List<BatchEntry>> clusters = new ArrayList<List<BatchEntry>>();
+		
+		List<BatchEntry> cluster = null;
+		BatchEntry first = null;
+		BatchEntry previous = null;
+		
+		for (BatchEntry entry : sortedEntries){
+			
+			boolean joinsCluster = cluster != null
+				&& LuceneUtils.distanceInKm(previous.point, entry.point, spatialContext) 
+					<= previous.radiusInKm + entry.radiusInKm
+				&& LuceneUtils.distanceInKm(first.point, entry.point, spatialContext) 
+					<= clusterSpan * Math.max(first.radiusInKm, entry.radiusInKm);
+			
+			if (!joinsCluster){
+				
+				cluster = new ArrayList<BatchEntry>();
+				
+				clusters.add(cluster);
+				
+				first = entry;
+			}
+			
+			cluster.add(entry);
+			
+			previous = entry;
+		}
+		
+		return clusters;
+	}
+	
+	/**
+	 * Perform a single search covering every entry in the cluster, handing
+	 * each result to the entries it falls within the search radius of.
+	 * 
+	 * The search is capped at the limit for every entry together, and hits
+	 * come back in index order, so if there are more hits than that, a dense
+	 * entry can use up the hits before a sparse neighbor's places are reached.
+	 * The entries left short of the limit are then searched on their own, so
+	 * each gets the candidates a search for it alone would have.
+	 * @param searcher Searcher to use.
+	 * @param cluster Entries to search for.
+	 * @param limit Max number of candidates per entry.
+	 * @param candidateQuery Query restricting the kinds of places returned.
+	 * @throws Exception
+	 */
+	void searchCluster(
+			IndexSearcher searcher, 
+			List<BatchEntry> cluster, 
+			int limit,
+			Query candidateQuery) throws Exception {
+		
+		SpatialContext spatialContext = this.lucene.getSpatialContext();
+		
+		Point anchor = cluster.get(0).point;
+		
+		// Find how far the furthest member's search circle reaches from the first.
+		double reachInKm = 0;
+		
+		for (BatchEntry entry : cluster){
+			
+			reachInKm = Math.max(reachInKm, entry.radiusInKm
+				+ LuceneUtils.distanceInKm(anchor, entry.point, spatialContext));
+		}
+		
+		Filter filter = makeFilter(anchor.getY(), anchor.getX(), reachInKm);
+		
+		int clusterLimit = (int) Math.min(
+			(long) limit * cluster.size(), Integer.MAX_VALUE);
+		
+		TopDocs results = searcher.search(candidateQuery, filter, clusterLimit);
+		
+		handOut(searcher, results, cluster, limit);
+		
+		// Every hit was handed out (or the cluster is a single entry).
+		if (results.totalHits <= results.scoreDocs.length || cluster.size() == 1) return;
+		
+		for (BatchEntry entry : cluster){
+			
+			if (entry.candidates.size() >= limit) continue;
+			
+			entry.candidates.clear();
+			
+			TopDocs entryResults = searcher.search(candidateQuery, 
+				makeFilter(entry.point.getY(), entry.point.getX(), entry.radiusInKm), limit);
+			
+			handOut(searcher, entryResults, Collections.singletonList(entry), limit);
+		}
+	}
+	
+	/**
+	 * Hand each hit to the entries it falls within the search radius of,
+	 * until they have the limit.
+	 * @param searcher Searcher the hits came from.
+	 * @param results Hits.
+	 * @param entries Entries to hand the hits to.
+	 * @param limit Max number of candidates per entry.
+	 * @throws Exception
+	 */
+	void handOut(
+			IndexSearcher searcher, 
+			TopDocs results, 
+			List<BatchEntry> entries, 
+			int limit) throws Exception {
+		
+		SpatialContext spatialContext = this.lucene.getSpatialContext();
+		
+		for (ScoreDoc scoreDoc : results.scoreDocs){
+			
+			Document doc = searcher.doc(scoreDoc.doc);
+			
+			Point point = LuceneUtils.readCentroid(doc, spatialContext);
+			
+			// Only deserialize the Place if some member needs it.
+			Place record = null;
+			
+			for (BatchEntry entry : entries){
+				
+				if (entry.candidates.size() >= limit) continue;
+				
+				if (LuceneUtils.distanceInKm(
+						point, entry.point, spatialContext) > entry.radiusInKm) continue;
+				
+				if (record == null) record = LuceneUtils.dehydrate(doc);
+				
+				entry.candidates.add(
+					LuceneUtils.convertToCoordinate(
+						entry.occurrence, entry.point, record, point, spatialContext));
+			}
+		}
+	}
+	
+	/**
+	 * Get the query selecting which kinds of places are candidates.  The
+	 * spatial filter is applied on top of this query, so restrictions (Feature
+	 * Class/Code, population) are enforced inside the spatial search, before
+	 * any documents are loaded.
+	 * @param options Options with the (optional) restrictions.
+	 * @return Query matching the allowed places.
+	 */
+	protected Query getCandidateQuery(Options options){
+		
+		Filter restrictions = filterCache.getFilter(
+			parseFeatureClasses(options.get(KEY_FEATURE_CLASSES)),
+			parseFeatureCodes(options.get(KEY_FEATURE_CODES)),
+			options.getLong(KEY_DEFAULT_MIN_POPULATION, DEFAULT_MIN_POPULATION));
+		
+		if (restrictions == null) return new MatchAllDocsQuery();
+		
+		return new ConstantScoreQuery(restrictions);
+	}
+	
+	/**
+	 * Create a Lucene filter matching everything within the radius
+	 * of the supplied center.
+	 * @param latitude Latitude of the center.
+	 * @param longitude Longitude of the center.
+	 * @param distanceInKm Radius of the circle.
+	 * @return Spatial filter.
+	 */
+	Filter makeFilter(double latitude, double longitude, double distanceInKm){
 		
 		// Convert the KM distance to degrees.
 		double distanceInDegrees = 
 			DistanceUtils.dist2Degrees(
 				distanceInKm, DistanceUtils.EARTH_MEAN_RADIUS_KM);
 		
-		// Convert the coordinate to it's lat/lon representation.
-		LatLon center = coordinate.convertToLatLon();
-		
 		// Create a circular bounding box using the coordinate as the center
 		// and the distance as the circle's radius.
 		Circle queryBoundary = 
 				this.lucene.getSpatialContext().makeCircle(
-				center.getLongitude(), center.getLatitude(), distanceInDegrees);
+				longitude, latitude, distanceInDegrees);
 		
 		// Create a spatial search configuration
 		SpatialArgs spatialArgs = new SpatialArgs(
 			SpatialOperation.Intersects, queryBoundary);
 		
 		// Get a Lucene filter from the spatial config.
-		Filter filter = this.lucene.getSpatialStrategy().makeFilter(spatialArgs);
+		return this.lucene.getSpatialStrategy().makeFilter(spatialArgs);
+	}
+	
+	/**
+	 * A coordinate being searched as part of a batch, along with the
+	 * candidates found for it so far.
+	 */
+	static class BatchEntry implements Comparable<BatchEntry> {
 		
-		// Search the index using the circle as a bounding box (er...circle).
-		TopDocs results = searcher.search(
-			new MatchAllDocsQuery(), filter, DEFAULT_LIMIT);
+		final CoordinateOccurrence<?> occurrence;
+		final Point point;
+		final long zOrder;
+		final List<ResolvedCoordinate> candidates = new ArrayList<ResolvedCoordinate>();
+		double radiusInKm;
 		
-		// Convert the results to a ResolvedCoordinate
-		return LuceneUtils.convertToCoordinate(
-				coordinate, searcher, results, lucene);
+		BatchEntry(
+				CoordinateOccurrence<?> occurrence, Point point, long zOrder, double radiusInKm){
+			
+			this.occurrence = occurrence;
+			this.point = point;
+			this.zOrder = zOrder;
+			this.radiusInKm = radiusInKm;
+		}
+
+		@Override
+		public int compareTo(BatchEntry other) {
+			
+			return (zOrder < other.zOrder)? -1 : ((zOrder == other.zOrder)? 0 : 1);
+		}
 	}
 
 	/**
@@ -161,6 +543,36 @@ public class LuceneCoordinateIndex implements CoordinateIndex {
 		options.put(KEY_DEFAULT_DISTANCE_KM, Integer.toString(km));
 	}
 	
+	/**
+	 * Set the min radius in which to look for matches in the index.
+	 * @param options Options to set on
+	 * @param km Min distance in Kilometers
+	 */
+	public static void configureMinLookupDistance(Options options, double km){
+		
+		options.put(KEY_DEFAULT_MIN_DISTANCE_KM, Double.toString(km));
+	}
+	
+	/**
+	 * Set the multiple of a coordinate's precision initially searched.
+	 * @param options Options to set on
+	 * @param multiplier Multiple of the precision.
+	 */
+	public static void configurePrecisionMultiplier(Options options, double multiplier){
+		
+		options.put(KEY_DEFAULT_PRECISION_MULTIPLIER, Double.toString(multiplier));
+	}
+	
+	/**
+	 * Set the number of results below which the search radius is widened.
+	 * @param options Options to set on
+	 * @param minResults Min number of results.
+	 */
+	public static void configureMinResults(Options options, int minResults){
+		
+		options.put(KEY_DEFAULT_MIN_RESULTS, Integer.toString(minResults));
+	}
+	
 	/**
 	 * Set the max number of results to return from the index.
 	 * @param options Options to set on
@@ -170,4 +582,104 @@ public class LuceneCoordinateIndex implements CoordinateIndex {
 		
 		options.put(KEY_DEFAULT_LIMIT, Integer.toString(limit));
 	}
+	
+	/**
+	 * Only return places with one of the supplied Feature Classes (or one
+	 * of the Feature Codes set by configureFeatureCodes).
+	 * @param options Options to set on
+	 * @param featureClasses Allowed Feature Classes.
+	 */
+	public static void configureFeatureClasses(
+			Options options, FeatureClass... featureClasses){
+		
+		options.put(KEY_FEATURE_CLASSES, join(featureClasses));
+	}
+	
+	/**
+	 * Only return places with one of the supplied Feature Codes (or one
+	 * of the Feature Classes set by configureFeatureClasses).
+	 * @param options Options to set on
+	 * @param featureCodes Allowed Feature Codes.
+	 */
+	public static void configureFeatureCodes(
+			Options options, FeatureCode... featureCodes){
+		
+		options.put(KEY_FEATURE_CODES, join(featureCodes));
+	}
+	
+	/**
+	 * Only return places with at least the supplied population.
+	 * @param options Options to set on
+	 * @param minPopulation Minimum population.
+	 */
+	public static void configureMinPopulation(Options options, long minPopulation){
+		
+		options.put(KEY_DEFAULT_MIN_POPULATION, Long.toString(minPopulation));
+	}
+	
+	/**
+	 * Parse a comma-separated list of Feature Classes.
+	 * @param value Comma-separated list (may be null).
+	 * @return Feature Classes.
+	 */
+	static List<FeatureClass> parseFeatureClasses(String value){
+		
+		ArrayList<FeatureClass> featureClasses = new ArrayList<FeatureClass>();
+		
+		for (String name : split(value)) featureClasses.add(FeatureClass.valueOf(name));
+		
+		return featureClasses;
+	}
+	
+	/**
+	 * Parse a comma-separated list of Feature Codes.
+	 * @param value Comma-separated list (may be null).
+	 * @return Feature Codes.
+	 */
+	static List<FeatureCode> parseFeatureCodes(String value){
+		
+		ArrayList<FeatureCode> featureCodes = new ArrayList<FeatureCode>();
+		
+		for (String name : split(value)) featureCodes.add(FeatureCode.valueOf(name));
+		
+		return featureCodes;
+	}
+	
+	/**
+	 * Split a comma-separated list, ignoring whitespace and empty values.
+	 * @param value Comma-separated list (may be null).
+	 * @return Values in the list.
+	 */
+	static List<String> split(String value){
+		
+		ArrayList<String> values = new ArrayList<String>();
+		
+		if (value == null) return values;
+		
+		for (String item : value.split(",")){
+			
+			if (item.trim().length() > 0) values.add(item.trim());
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Join the names of the enum values with commas.
+	 * @param values Enum values.
+	 * @return Comma-separated list.
+	 */
+	static String join(Enum<?>... values){
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for (Enum<?> value : values){
+			
+			if (sb.length() > 0) sb.append(",");
+			
+			sb.append(value.name());
+		}
+		
+		return sb.toString();
+	}
 }
@@ -1,14 +1,20 @@
 package com.berico.clavin.resolver.impl.lucene;
 
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.analyzing.AnalyzingQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParserBase;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
@@ -56,10 +62,15 @@ import com.berico.clavin.resolver.impl.LocationNameIndex;
  *     a fuzzy match against the index on the name provided.
  * 
  * By default, results are sorted first by population, and then by
- * field score.  This works well for location names that are subsets
- * of a index's normalized name ("New York" in "City of New York"), but
- * will definitely exhibit a population bias for results like Boston, MA
- * and Boston, Philippines.
+ * field score.  This will definitely exhibit a population bias for
+ * results like Boston, MA and Boston, Philippines.
+ * 
+ * The exact match depends on the index's schema.  Against a full index it
+ * is a phrase query, so it also finds location names that are subsets of
+ * an indexed name ("New York" in "City of New York").  Against a slim
+ * index it looks up whole names only (see {@link #getExactNameQuery(String, 
+ * List)}): "New York" doesn't find "City of New York", so a name that is
+ * only part of a place's names is left to the fuzzy match, if any.
  */
 public class LuceneLocationNameIndex implements LocationNameIndex {
 
@@ -79,16 +90,28 @@ public class LuceneLocationNameIndex implements LocationNameIndex {
 	public static final String KEY_DEFAULT_USE_FUZZY = "location.index.useFuzzy";
 	
 	/**
-	 * Default sorting mechanism (Population, then Field Score).
+	 * Only match names in these languages (comma-separated ISO-639 codes,
+	 * e.g. "en,de").  Unset means all names match.  Requires an index built
+	 * with the alternate names table.
+	 */
+	public static final String KEY_LANGUAGES = "location.index.languages";
+	
+	/**
+	 * Default sorting mechanism (Population, then Field Score, then place id).
 	 * It's important to note that this mechanism favors population size of
 	 * results.  The assumption is that "Boston" will resolve to "City of Boston"
 	 * before "Boston" (exact term match for location in Philippines) or something
 	 * more specific like "Boston Heights".
+	 * 
+	 * Places tied on both are put in the order of their ids (the order of the
+	 * Geonames files), not the order of their documents: documents aren't kept
+	 * in file order by parallel builds, merges or shards.
 	 */
 	public static Sort DEFAULT_SORTER = 
 		new Sort(
 			new SortField(FieldConstants.POPULATION, SortField.Type.LONG, true),
-			SortField.FIELD_SCORE);
+			SortField.FIELD_SCORE,
+			new SortField(FieldConstants.PLACE_ID, FieldCache.NUMERIC_UTILS_INT_PARSER));
 	
 	LuceneComponents lucene;
 	AnalyzingQueryParser queryParser;
@@ -123,37 +146,57 @@ public class LuceneLocationNameIndex implements LocationNameIndex {
 		// Get whether fuzzy matching is enabled.
 		boolean useFuzzy = options.getBoolean(KEY_DEFAULT_USE_FUZZY, DEFAULT_USE_FUZZY);
 		
-		IndexSearcher searcher = lucene.getSearcherManager().acquire();
-		
-		boolean usedFuzzy = false;
+		// Get the languages names are restricted to (if any).
+		List<String> languages = LuceneCoordinateIndex.split(options.get(KEY_LANGUAGES));
 		
-		// We need to sanitize the name so it doesn't have unescaped Lucene syntax that
-		// would throw off the search index.
-		String escapedName = 
-				QueryParserBase.escape(occurrence.getText().toLowerCase());
+		// Acquire a searcher (over the hinted countries' shards, if sharded).
+		IndexSearcher searcher = lucene.acquireSearcher(options);
 		
-		// Try an exact query
-		Query query = getExactQuery(escapedName);
-		
-		// Gather the results.
-		TopDocs results = searcher.search(query, null, limit, DEFAULT_SORTER);
-		
-		// If there are no results, and a fuzzy query was requested
-		if (results.scoreDocs.length == 0 && useFuzzy) {
+		try {
+			
+			boolean usedFuzzy = false;
+			
+			// We need to sanitize the name so it doesn't have unescaped Lucene syntax that
+			// would throw off the search index.
+			String escapedName = 
+					QueryParserBase.escape(occurrence.getText().toLowerCase());
 			
-			usedFuzzy = true;
+			// Match exact names against whole-name terms if the index being
+			// searched has them (the slim schema).  The searcher may be any
+			// shard, or reopened since, so it's checked every time (a field
+			// lookup per segment).
+			boolean hasExactNames = 
+				LuceneUtils.hasField(searcher.getIndexReader(), FieldConstants.EXACT_NAME);
 			
-			// Attempt a fuzzy query
-			query = getFuzzyQuery(escapedName);
+			// Try an exact query
+			Query query = hasExactNames?
+				getExactNameQuery(occurrence.getText(), languages) : 
+				getExactQuery(escapedName, languages);
 			
-			// Gather the results
-			results = searcher.search(query, null, limit, DEFAULT_SORTER);
+			// Gather the results.
+			TopDocs results = searcher.search(query, null, limit, DEFAULT_SORTER);
+			
+			// If there are no results, and a fuzzy query was requested
+			if (results.scoreDocs.length == 0 && useFuzzy) {
+				
+				usedFuzzy = true;
+				
+				// Attempt a fuzzy query
+				query = getFuzzyQuery(escapedName, languages);
+				
+				// Gather the results
+				results = searcher.search(query, null, limit, DEFAULT_SORTER);
+			}
+			
+			if (results.scoreDocs.length == 0)
+				logger.info("Found no results for {}.", escapedName);
+			
+			return LuceneUtils.convertToLocations(occurrence, searcher, results, usedFuzzy);
+		}
+		finally {
+			
+			lucene.releaseSearcher(searcher);
 		}
-		
-		if (results.scoreDocs.length == 0)
-			logger.info("Found no results for {}.", escapedName);
-		
-		return LuceneUtils.convertToLocations(occurrence, searcher, results, usedFuzzy);
 	}
 	
 	/**
@@ -164,13 +207,53 @@ public class LuceneLocationNameIndex implements LocationNameIndex {
 	 */
 	protected Query getExactQuery(String locationName) throws ParseException {
 	
+		return getExactQuery(locationName, Collections.<String>emptyList());
+	}
+	
+	/**
+	 * Construct an exact query for the provided location name, matching
+	 * only names in the supplied languages.
+	 * @param locationName Name to search for.
+	 * @param languages Languages to match (empty for all names).
+	 * @return Exact Query
+	 * @throws ParseException
+	 */
+	protected Query getExactQuery(String locationName, List<String> languages) throws ParseException {
+	
 		// We want to attempt to force an 'exact match', but using quotes in the 
 		// search string.  We also want to search in lower case to avoid
 		// unnormalized names or gramatical errors.
 		String searchExpression = String.format("\"%s\"", locationName.toLowerCase());
 		
 		// Parse the Lucene query
-		return queryParser.parse(searchExpression);
+		return queryParser.parse(restrictToLanguages(searchExpression, languages));
+	}
+	
+	/**
+	 * Construct an exact query against the whole-name terms of the slim
+	 * schema.  Unlike the phrase query of {@link #getExactQuery(String, List)},
+	 * it only matches places with the whole name ("york" doesn't match
+	 * "New York"), and it's a single term lookup per field.
+	 * @param locationName Name to search for (unescaped).
+	 * @param languages Languages to match (empty for all names).
+	 * @return Exact Query
+	 */
+	protected Query getExactNameQuery(String locationName, List<String> languages){
+		
+		String name = LuceneUtils.normalizeName(locationName);
+		
+		if (languages.isEmpty()) return new TermQuery(new Term(FieldConstants.EXACT_NAME, name));
+		
+		BooleanQuery query = new BooleanQuery();
+		
+		for (String language : languages){
+			
+			query.add(new TermQuery(new Term(
+				LuceneUtils.getLanguageNameField(FieldConstants.EXACT_NAME, language), name)), 
+				Occur.SHOULD);
+		}
+		
+		return query;
 	}
 	
 	/**
@@ -181,12 +264,51 @@ public class LuceneLocationNameIndex implements LocationNameIndex {
 	 */
 	protected Query getFuzzyQuery(String locationName) throws ParseException{
 
+		return getFuzzyQuery(locationName, Collections.<String>emptyList());
+	}
+	
+	/**
+	 * Construct a fuzzy query for the provided location name, matching
+	 * only names in the supplied languages.
+	 * @param locationName Name to search for.
+	 * @param languages Languages to match (empty for all names).
+	 * @return Fuzzy Query
+	 * @throws ParseException
+	 */
+	protected Query getFuzzyQuery(String locationName, List<String> languages) throws ParseException{
+
 		// Adding a tilde at the end of the query will instruct Lucene to perform
 		// a fuzzy query.
 		String searchExpression = String.format("%s~", locationName.toLowerCase());
 		
 		// Parse the Lucene query
-		return queryParser.parse(searchExpression);
+		return queryParser.parse(restrictToLanguages(searchExpression, languages));
+	}
+	
+	/**
+	 * Apply a search expression to the name fields of the supplied languages
+	 * instead of the (default) field holding every name.  The expression is
+	 * grouped, as a field only applies to the term after it ("field:new
+	 * york~" would search "york~" in every language).
+	 * @param searchExpression Expression to search for.
+	 * @param languages Languages to match (empty for all names).
+	 * @return Search expression.
+	 */
+	static String restrictToLanguages(String searchExpression, List<String> languages){
+		
+		if (languages.isEmpty()) return searchExpression;
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for (String language : languages){
+			
+			if (sb.length() > 0) sb.append(" OR ");
+			
+			sb.append(LuceneUtils.getLanguageNameField(language))
+			  .append(":(").append(searchExpression).append(')');
+		}
+		
+		return sb.toString();
 	}
 	
 	/**
@@ -208,6 +330,25 @@ public class LuceneLocationNameIndex implements LocationNameIndex {
 		options.put(KEY_DEFAULT_LIMIT, Integer.toString(limit));
 	}
 	
+	/**
+	 * Only match names in the supplied languages.
+	 * @param options Options to set on
+	 * @param languages ISO-639 language codes (none for all names).
+	 */
+	public static void configureLanguages(Options options, String... languages){
+		
+		StringBuilder sb = new StringBuilder();
+		
+		for (String language : languages){
+			
+			if (sb.length() > 0) sb.append(",");
+			
+			sb.append(language);
+		}
+		
+		options.put(KEY_LANGUAGES, sb.toString());
+	}
+	
 	/**
 	 * Set whether fuzzy matching should be used.
 	 * @param options Options to set on
@@ -5,8 +5,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 
 import com.berico.clavin.extractor.CoordinateOccurrence;
 import com.berico.clavin.extractor.LocationOccurrence;
@@ -95,39 +100,81 @@ public class LuceneUtils {
 				// Grab the document from Lucene
 				Document doc = searcher.doc(results.scoreDocs[i].doc);
 				
-				// Get the Place record
-				Place record = dehydrate(doc);
-				
-				// Get the centroid of the Place
-				String positionOfLocation = doc.get(FieldConstants.GEOMETRY);
-				
-				// TODO: Spatial4J supposedly has a ShapeReaderWriter implementation
-				// that we should be using instead.
-				@SuppressWarnings("deprecation")
-				Point point = (Point) spatialContext.readShape(positionOfLocation);
-				
-				// Calculate the distance
-				double distanceInDegrees = 
-						spatialContext.getDistCalc().distance(point, occurrencePoint);
-				
-				double distanceInKm = DistanceUtils.degrees2Dist(
-						distanceInDegrees, DistanceUtils.EARTH_MEAN_RADIUS_KM);
-				
-				// Calculate the direction
-				double direction = calculateDirection(
-					point.getX(), point.getY(), 
-					occurrencePoint.getX(), occurrencePoint.getY());
-				
 				// Add the ResolvedCoordinate to the list.
 				resolvedCoordinates.add(
-					new ResolvedCoordinate(occurrence, record, 
-						new Vector(distanceInKm, direction)));
+					convertToCoordinate(
+						occurrence, occurrencePoint, 
+						dehydrate(doc), readCentroid(doc, spatialContext), 
+						spatialContext));
 			}
 		}
 		
 		return resolvedCoordinates;
 	}
 	
+	/**
+	 * Build a ResolvedCoordinate from a Place that has already been pulled
+	 * from the index.  This allows one loaded document to be compared against
+	 * several coordinate occurrences without going back to Lucene.
+	 * @param occurrence the CoordinateOccurrence in the document.
+	 * @param occurrencePoint the occurrence as a Spatial4j point.
+	 * @param record the Place record.
+	 * @param point the centroid of the Place record.
+	 * @param spatialContext Spatial4j context used to calculate distance.
+	 * @return ResolvedCoordinate
+	 */
+	public static ResolvedCoordinate convertToCoordinate(
+			CoordinateOccurrence<?> occurrence,
+			Point occurrencePoint,
+			Place record,
+			Point point,
+			SpatialContext spatialContext){
+		
+		// Calculate the distance
+		double distanceInKm = distanceInKm(point, occurrencePoint, spatialContext);
+		
+		// Calculate the direction
+		double direction = calculateDirection(
+			point.getX(), point.getY(), 
+			occurrencePoint.getX(), occurrencePoint.getY());
+		
+		return new ResolvedCoordinate(
+			occurrence, record, new Vector(distanceInKm, direction));
+	}
+	
+	/**
+	 * Read the centroid of the Place stored in the document.
+	 * @param doc Document with the geometry field.
+	 * @param spatialContext Spatial4j context used to read the shape.
+	 * @return Centroid of the Place.
+	 */
+	public static Point readCentroid(Document doc, SpatialContext spatialContext){
+		
+		String positionOfLocation = doc.get(FieldConstants.GEOMETRY);
+		
+		// TODO: Spatial4J supposedly has a ShapeReaderWriter implementation
+		// that we should be using instead.
+		@SuppressWarnings("deprecation")
+		Point point = (Point) spatialContext.readShape(positionOfLocation);
+		
+		return point;
+	}
+	
+	/**
+	 * Calculate the distance, in kilometers, between two points.
+	 * @param a First point
+	 * @param b Second point
+	 * @param spatialContext Spatial4j context used to calculate distance.
+	 * @return Distance in KM.
+	 */
+	public static double distanceInKm(Point a, Point b, SpatialContext spatialContext){
+		
+		double distanceInDegrees = spatialContext.getDistCalc().distance(a, b);
+		
+		return DistanceUtils.degrees2Dist(
+			distanceInDegrees, DistanceUtils.EARTH_MEAN_RADIUS_KM);
+	}
+	
 	/**
 	 * Calculate the direction from a center point "c" to an offset point "o".
 	 * @param cx Center X
@@ -227,4 +274,103 @@ public class LuceneUtils {
 		
 		return Serializer.Default.deserialize(serializedPlace, Place.class);
 	}
+	
+	/**
+	 * Get the term identifying a Place's document in the index.  The id is
+	 * indexed as an IntField, so this is its full-precision (shift 0)
+	 * prefix-coded term, which only that document has.
+	 * @param placeId Id of the Place (the geonameId).
+	 * @return Term to update or delete the document by.
+	 */
+	public static Term getPlaceIdTerm(int placeId){
+		
+		BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
+		
+		NumericUtils.intToPrefixCoded(placeId, 0, bytes);
+		
+		return new Term(FieldConstants.PLACE_ID, bytes);
+	}
+	
+	/**
+	 * Get the name of the field holding a Place's names in the supplied
+	 * language (e.g. "indexName_de").  Characters that aren't letters or
+	 * digits are replaced so the field can be used in query syntax.
+	 * @param language Language code (e.g. "de", "zh-CN").
+	 * @return Name of the field.
+	 */
+	public static String getLanguageNameField(String language){
+		
+		return getLanguageNameField(FieldConstants.NAME, language);
+	}
+	
+	/**
+	 * Get the name of the field holding a Place's names (as indexed in the
+	 * supplied field) in the supplied language (e.g. "exactName_de").
+	 * @param nameField Field holding the names in every language.
+	 * @param language Language code (e.g. "de", "zh-CN").
+	 * @return Name of the field.
+	 */
+	public static String getLanguageNameField(String nameField, String language){
+		
+		StringBuilder field = new StringBuilder(nameField).append('_');
+		
+		for (char c : language.toLowerCase().toCharArray()){
+			
+			field.append(Character.isLetterOrDigit(c)? c : '_');
+		}
+		
+		return field.toString();
+	}
+	
+	/**
+	 * Normalize a whole name the way the index analyzer normalizes its
+	 * words (lower case, split on whitespace), keeping it as a single term:
+	 * "  New   York " becomes "new york".
+	 * @param name Name
+	 * @return Normalized name.
+	 */
+	public static String normalizeName(String name){
+		
+		StringBuilder normalized = new StringBuilder(name.length());
+		
+		boolean inWhitespace = true;
+		
+		for (int i = 0; i < name.length(); ){
+			
+			int c = name.codePointAt(i);
+			
+			i += Character.charCount(c);
+			
+			if (Character.isWhitespace(c)){
+				
+				inWhitespace = true;
+				
+				continue;
+			}
+			
+			if (inWhitespace && normalized.length() > 0) normalized.append(' ');
+			
+			inWhitespace = false;
+			
+			normalized.appendCodePoint(Character.toLowerCase(c));
+		}
+		
+		return normalized.toString();
+	}
+	
+	/**
+	 * Does any segment of the index have the field?
+	 * @param reader Index Reader.
+	 * @param field Name of the field.
+	 * @return True if the field is in the index.
+	 */
+	public static boolean hasField(IndexReader reader, String field){
+		
+		for (AtomicReaderContext leaf : reader.leaves()){
+			
+			if (leaf.reader().getFieldInfos().fieldInfo(field) != null) return true;
+		}
+		
+		return false;
+	}
 }
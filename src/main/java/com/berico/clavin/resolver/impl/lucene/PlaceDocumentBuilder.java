@@ -0,0 +1,371 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.spatial.SpatialStrategy;
+
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.util.Serializer;
+import com.spatial4j.core.context.SpatialContext;
+import com.spatial4j.core.shape.Shape;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * PlaceDocumentBuilder.java
+ * 
+ *###################################################################*/
+
+/**
+ * Converts a {@link Place} into the Lucene document stored in the CLAVIN index.
+ * 
+ * The builder reuses its Field instances between documents to avoid creating
+ * garbage for every record, which means an instance is NOT thread-safe and
+ * a document must be handed to the IndexWriter before the next one is built.
+ * Give each indexing thread its own builder.
+ * 
+ * Documents are built to one of two schemas:
+ * 
+ * SCHEMA_STANDARD = every name is stored and indexed with frequencies,
+ * positions and norms, and exact matches are phrase queries.
+ * 
+ * SCHEMA_SLIM = names are indexed without frequencies, positions or norms
+ * (BinarySimilarity ignores frequencies, and results are sorted by population
+ * first), and only the primary name, the one reported as the match, is
+ * stored.  Each whole name is also indexed as a single normalized term
+ * ({@link FieldConstants#EXACT_NAME}) for exact matching, and the place id
+ * gets a single term (the one {@link LuceneUtils#getPlaceIdTerm(int)} looks
+ * up) instead of a trie of them.
+ */
+public class PlaceDocumentBuilder {
+
+	public static final String SCHEMA_STANDARD = "standard";
+	public static final String SCHEMA_SLIM = "slim";
+	
+	/**
+	 * Names in the slim schema: matched word by word, without frequencies,
+	 * positions or norms.
+	 */
+	static final FieldType SLIM_NAME_TYPE = new FieldType(TextField.TYPE_NOT_STORED);
+	static final FieldType SLIM_STORED_NAME_TYPE = new FieldType(TextField.TYPE_STORED);
+	
+	/**
+	 * Place ids in the slim schema: only the full precision term.
+	 */
+	static final FieldType SLIM_PLACE_ID_TYPE = new FieldType(IntField.TYPE_NOT_STORED);
+	
+	static {
+		
+		for (FieldType type : new FieldType[]{ SLIM_NAME_TYPE, SLIM_STORED_NAME_TYPE, SLIM_PLACE_ID_TYPE }){
+			
+			type.setIndexOptions(IndexOptions.DOCS_ONLY);
+			type.setOmitNorms(true);
+		}
+		
+		SLIM_PLACE_ID_TYPE.setNumericPrecisionStep(Integer.MAX_VALUE);
+		
+		SLIM_NAME_TYPE.freeze();
+		SLIM_STORED_NAME_TYPE.freeze();
+		SLIM_PLACE_ID_TYPE.freeze();
+	}
+	
+	protected SpatialContext spatialContext;
+	protected SpatialStrategy spatialStrategy;
+	protected boolean slim;
+	
+	/**
+	 * Reusable index fields.
+	 */
+	private StoredField placeField = new StoredField(FieldConstants.PLACE, "");
+	private IntField recordIdField;
+	private NumericDocValuesField populationField = new NumericDocValuesField(FieldConstants.POPULATION, -1l);
+	private StoredField geospatialField = new StoredField(FieldConstants.GEOMETRY, "");
+	private StringField featureClassField = new StringField(FieldConstants.FEATURE_CLASS, "", Field.Store.NO);
+	private StringField featureCodeField = new StringField(FieldConstants.FEATURE_CODE, "", Field.Store.NO);
+	
+	// Names already in the document (when adding alternate names).
+	private HashSet<String> indexedNames = new HashSet<String>();
+	
+	/**
+	 * Instantiate with the spatial components used to index the centroid.
+	 * @param spatialContext Spatial4j Context.
+	 * @param spatialStrategy Spatial indexing strategy.
+	 */
+	public PlaceDocumentBuilder(
+			SpatialContext spatialContext, SpatialStrategy spatialStrategy) {
+		
+		this(spatialContext, spatialStrategy, SCHEMA_STANDARD);
+	}
+	
+	/**
+	 * Instantiate with the spatial components used to index the centroid,
+	 * building documents to the supplied schema.
+	 * @param spatialContext Spatial4j Context.
+	 * @param spatialStrategy Spatial indexing strategy.
+	 * @param schema SCHEMA_STANDARD or SCHEMA_SLIM.
+	 */
+	public PlaceDocumentBuilder(
+			SpatialContext spatialContext, SpatialStrategy spatialStrategy, String schema) {
+		
+		this.spatialContext = spatialContext;
+		this.spatialStrategy = spatialStrategy;
+		
+		if (SCHEMA_SLIM.equals(schema)) slim = true;
+		else if (!SCHEMA_STANDARD.equals(schema))
+			throw new IllegalArgumentException("Unknown index schema: " + schema);
+		
+		this.recordIdField = slim? 
+			new IntField(FieldConstants.PLACE_ID, -1, SLIM_PLACE_ID_TYPE) :
+			new IntField(FieldConstants.PLACE_ID, -1, Field.Store.NO);
+	}
+	
+	/**
+	 * Builds a Lucene document to be added to the index based on a
+	 * specified name for the location and the corresponding
+	 * {@link Place} object.
+	 * 
+	 * @param place GeoName Entry
+	 * @return Document (valid until the next call to build).
+	 */
+	public Document build(Place place) {
+		
+		return build(place, null);
+	}
+	
+	/**
+	 * Builds a Lucene document for the {@link Place}, also indexing the
+	 * supplied language-tagged names.  Each name is added to the name field
+	 * (unless the place already has it), and names with a language are also
+	 * added to the field for their language, so searches can be restricted 
+	 * to names in certain languages.
+	 * 
+	 * @param place GeoName Entry
+	 * @param alternateNames Language-tagged names (may be null).
+	 * @return Document (valid until the next call to build).
+	 */
+	public Document build(Place place, List<AlternateName> alternateNames) {
+		
+		// in case you're wondering, yes, this is a non-standard use of
+		// the Lucene Document construct
+		Document doc = new Document();
+		
+		// this is essentially the key we'll try to match location
+		// names against
+		addIndexNameField(doc, place.getName());
+		
+		if (!place.getAsciiName().equals(place.getName())){
+			
+			addIndexNameField(doc, place.getAsciiName());
+		}
+		
+		for (String altName : place.getAlternateNames()){
+			
+			if (!altName.equals(place.getName()) && !altName.equals(place.getAsciiName())){
+				
+				addIndexNameField(doc, altName);
+			}
+		}
+		
+		if (alternateNames != null && !alternateNames.isEmpty()){
+			
+			addAlternateNameFields(doc, place, alternateNames);
+		}
+		
+		// this is the payload we'll return when matching location
+		// names to gazetteer records
+		addPlaceField(doc, Serializer.Default.serialize(place));
+		
+		// TODO: use geonameID to link administrative subdivisions to
+		//		 each other
+		addRecordIdField(doc, place.getId());
+		
+		// we'll initially sort match results based on population
+		addPopulationField(doc, place.getPopulation());
+		
+		// allow searches to be restricted to certain kinds of places
+		addFeatureFields(doc, place);
+		
+		// we'll create a new Spatial geometry from the centroid of the geoname location
+		Shape centroid = spatialContext.makePoint(
+				place.getCenter().getLongitude(), place.getCenter().getLatitude());
+		
+		// add a deserializable representation of the shape to the document.
+		addGeospatialField(doc, centroid);
+		
+		// we will add the field to the index
+		for (Field f : spatialStrategy.createIndexableFields(centroid)){
+			
+			doc.add(f);
+		}
+		
+		return doc;
+	}
+	
+	/**
+	 * Add an Indexed Name Field.  A place has several names, so unlike the
+	 * other fields, this one can't be shared; a Field added to a document
+	 * more than once would index its last value each time.
+	 * @param doc Document to set on.
+	 * @param value Field value.
+	 */
+	private void addIndexNameField(Document doc, String value){
+		
+		if (!slim){
+			
+			doc.add(new TextField(FieldConstants.NAME, value, Field.Store.YES));
+			
+			return;
+		}
+		
+		// Only the first (primary) name is ever read back.
+		boolean first = doc.getField(FieldConstants.NAME) == null;
+		
+		doc.add(new Field(FieldConstants.NAME, value, first? SLIM_STORED_NAME_TYPE : SLIM_NAME_TYPE));
+		
+		doc.add(new StringField(FieldConstants.EXACT_NAME, LuceneUtils.normalizeName(value), Field.Store.NO));
+	}
+	
+	/**
+	 * Add the language-tagged names of a place.
+	 * @param doc Document to set on.
+	 * @param place Place the names belong to.
+	 * @param alternateNames Language-tagged names.
+	 */
+	private void addAlternateNameFields(
+			Document doc, Place place, List<AlternateName> alternateNames){
+		
+		indexedNames.clear();
+		indexedNames.add(place.getName());
+		indexedNames.add(place.getAsciiName());
+		indexedNames.addAll(place.getAlternateNames());
+		
+		for (AlternateName alternateName : alternateNames){
+			
+			String name = alternateName.getName();
+			
+			if (indexedNames.add(name)) addIndexNameField(doc, name);
+			
+			if (alternateName.hasLanguage() && !slim){
+				
+				doc.add(new TextField(
+					LuceneUtils.getLanguageNameField(alternateName.getLanguage()), 
+					name, Field.Store.NO));
+			}
+			else if (alternateName.hasLanguage()){
+				
+				doc.add(new Field(
+					LuceneUtils.getLanguageNameField(alternateName.getLanguage()), 
+					name, SLIM_NAME_TYPE));
+				
+				doc.add(new StringField(
+					LuceneUtils.getLanguageNameField(FieldConstants.EXACT_NAME, alternateName.getLanguage()), 
+					LuceneUtils.normalizeName(name), Field.Store.NO));
+			}
+		}
+	}
+	
+	/**
+	 * Add the Place field to the document. 
+	 * @param doc Document to set on.
+	 * @param place String representation of place.
+	 */
+	private void addPlaceField(Document doc, String place){
+		
+		placeField.setStringValue(place);
+		
+		doc.add(placeField);
+	}
+	
+	/**
+	 * Add the Id field to the document.
+	 * @param doc Document to set on.
+	 * @param recordId Id of the record.
+	 */
+	private void addRecordIdField(Document doc, int recordId){
+		
+		recordIdField.setIntValue(recordId);
+		
+		doc.add(recordIdField);
+	}
+	
+	/**
+	 * Add the population to the document.
+	 * @param doc Document to set on.
+	 * @param population Population size.
+	 */
+	private void addPopulationField(Document doc, long population){
+		
+		populationField.setLongValue(population);
+		
+		doc.add(populationField);
+	}
+	
+	/**
+	 * Add the feature class and code fields to the document.
+	 * @param doc Document to set on.
+	 * @param place Place with the feature class and code.
+	 */
+	private void addFeatureFields(Document doc, Place place){
+		
+		if (place.getFeatureClass() != null){
+			
+			featureClassField.setStringValue(place.getFeatureClass().name());
+			
+			doc.add(featureClassField);
+		}
+		
+		if (place.getFeatureCode() != null){
+			
+			featureCodeField.setStringValue(place.getFeatureCode().name());
+			
+			doc.add(featureCodeField);
+		}
+	}
+	
+	/**
+	 * Add the geospatial index field.
+	 * @param doc Document to set on.
+	 * @param shape Geospatial value (typically a Point, like a lat/lon).
+	 */
+	@SuppressWarnings("deprecation")
+	private void addGeospatialField(Document doc, Shape shape){
+		
+		// TODO: Maybe do this more elegantly with the Spatial4J API's
+		// ShapeReaderWriter...
+		geospatialField.setStringValue(spatialContext.toString(shape));
+		
+		doc.add(geospatialField);
+	}
+}
@@ -0,0 +1,135 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SegmentParallelIndexSearcher.java
+ * 
+ *###################################################################*/
+
+/**
+ * IndexSearcher that searches the segments of the index concurrently
+ * (using the supplied executor) for expensive queries, like spatial
+ * filters and (rewritten) fuzzy queries.
+ * 
+ * Exact lookups (a single term or phrase) only touch a handful of
+ * postings per segment, so handing each segment to another thread costs
+ * more than it saves; those are searched on the calling thread.  The same
+ * goes for indexes with a single segment.
+ */
+public class SegmentParallelIndexSearcher extends IndexSearcher {
+
+	/**
+	 * Instantiate with the reader and the executor segments are searched with.
+	 * @param reader Index Reader.
+	 * @param executor Executor used to search segments concurrently.
+	 */
+	public SegmentParallelIndexSearcher(IndexReader reader, ExecutorService executor) {
+		
+		super(reader, executor);
+	}
+	
+	/**
+	 * Search (unsorted), only using the executor for expensive queries.
+	 */
+	@Override
+	protected TopDocs search(Weight weight, ScoreDoc after, int nDocs) 
+			throws IOException {
+		
+		if (shouldSearchInParallel(weight.getQuery()))
+			return super.search(weight, after, nDocs);
+		
+		return search(leafContexts, weight, after, nDocs);
+	}
+	
+	/**
+	 * Search (sorted), only using the executor for expensive queries.
+	 */
+	@Override
+	protected TopFieldDocs search(
+			Weight weight, FieldDoc after, int nDocs, Sort sort, 
+			boolean fillFields, boolean doDocScores, boolean doMaxScore) 
+					throws IOException {
+		
+		if (shouldSearchInParallel(weight.getQuery()))
+			return super.search(
+				weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+		
+		return search(
+			leafContexts, weight, after, nDocs, sort, fillFields, doDocScores, doMaxScore);
+	}
+	
+	/**
+	 * Determine whether the (rewritten) query is worth searching segments
+	 * concurrently for.
+	 * @param query Rewritten query.
+	 * @return true if the segments should be searched concurrently.
+	 */
+	protected boolean shouldSearchInParallel(Query query){
+		
+		return leafContexts.size() > 1 && !isExactLookup(query);
+	}
+	
+	/**
+	 * Is the (rewritten) query an exact lookup: a single term or phrase?
+	 * Fuzzy queries are rewritten into a BooleanQuery with a clause per
+	 * expanded term, and filtered (e.g. spatial) queries are wrapped in a 
+	 * FilteredQuery, so neither counts.
+	 * @param query Rewritten query.
+	 * @return true if the query is an exact lookup.
+	 */
+	static boolean isExactLookup(Query query){
+		
+		if (query instanceof TermQuery 
+				|| query instanceof PhraseQuery 
+				|| query instanceof MultiPhraseQuery) return true;
+		
+		if (query instanceof BooleanQuery){
+			
+			BooleanClause[] clauses = ((BooleanQuery) query).getClauses();
+			
+			return clauses.length == 1 && isExactLookup(clauses[0].getQuery());
+		}
+		
+		return false;
+	}
+}
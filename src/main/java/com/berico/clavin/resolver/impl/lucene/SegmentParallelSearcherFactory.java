@@ -0,0 +1,65 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SegmentParallelSearcherFactory.java
+ * 
+ *###################################################################*/
+
+/**
+ * SearcherFactory used by the SearcherManager to create
+ * {@link SegmentParallelIndexSearcher}s sharing one executor.
+ */
+public class SegmentParallelSearcherFactory extends SearcherFactory {
+
+	protected ExecutorService executor;
+	
+	/**
+	 * Instantiate with the executor segments are searched with.
+	 * @param executor Executor shared by all searchers.
+	 */
+	public SegmentParallelSearcherFactory(ExecutorService executor) {
+		
+		this.executor = executor;
+	}
+	
+	/**
+	 * Create a new searcher for the (re)opened reader.
+	 * @param reader Index Reader.
+	 * @return Searcher.
+	 */
+	@Override
+	public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+		
+		return new SegmentParallelIndexSearcher(reader, executor);
+	}
+}
@@ -0,0 +1,214 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.store.Directory;
+
+import com.berico.clavin.gazetteer.CountryCode;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ShardedSearcherManager.java
+ * 
+ *###################################################################*/
+
+/**
+ * Manages searchers over a sharded index (see {@link IndexShards}).
+ * 
+ * The shards are opened as one {@link MultiReader}, so a plain acquire()
+ * searches all of them like a single index.  When the index is sharded by
+ * country, {@link #acquire(Collection)} instead returns a searcher over just
+ * the shards holding the hinted countries.  Either way, release the searcher
+ * back to this manager when done.
+ * 
+ * Refreshing reopens only the shards that have changed.
+ */
+public class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+	protected final IndexShards shards;
+	protected final SearcherFactory searcherFactory;
+	
+	/**
+	 * Open the shards.
+	 * @param shards Layout of the index.
+	 * @param directories Directory of each shard (in shard order).
+	 * @param searcherFactory Creates the searchers (null for plain IndexSearchers).
+	 * @throws IOException
+	 */
+	public ShardedSearcherManager(
+			IndexShards shards, 
+			Directory[] directories, 
+			SearcherFactory searcherFactory) throws IOException {
+		
+		this.shards = shards;
+		this.searcherFactory = 
+			(searcherFactory == null)? new SearcherFactory() : searcherFactory;
+		
+		DirectoryReader[] readers = new DirectoryReader[directories.length];
+		
+		try {
+			
+			for (int i = 0; i < directories.length; i++) 
+				readers[i] = DirectoryReader.open(directories[i]);
+			
+			current = newSearcher(readers);
+		}
+		finally {
+			
+			// the MultiReader holds its own references.
+			release(readers);
+		}
+	}
+	
+	/**
+	 * Acquire a searcher over the shards holding places in the supplied
+	 * countries.  Places in other countries that share those shards may
+	 * still be found.
+	 * @param countries Countries hinted at (null or empty for all shards).
+	 * @return Searcher (release it back to this manager).
+	 * @throws IOException
+	 */
+	public IndexSearcher acquire(Collection<CountryCode> countries) throws IOException {
+		
+		int[] routed = shards.getShards(countries);
+		
+		IndexSearcher searcher = acquire();
+		
+		if (routed == null || routed.length == shards.getCount()) return searcher;
+		
+		try {
+			
+			List<IndexReaderContext> all = searcher.getIndexReader().getContext().children();
+			
+			IndexReader[] selected = new IndexReader[routed.length];
+			
+			for (int i = 0; i < routed.length; i++) selected[i] = all.get(routed[i]).reader();
+			
+			// The new MultiReader references the shards it covers, so it
+			// outlives the searcher it was carved from.
+			return searcherFactory.newSearcher(new MultiReader(selected, false));
+		}
+		finally {
+			
+			release(searcher);
+		}
+	}
+	
+	/**
+	 * Get the layout of the index.
+	 * @return Shards
+	 */
+	public IndexShards getShards(){
+		
+		return shards;
+	}
+	
+	@Override
+	protected void decRef(IndexSearcher reference) throws IOException {
+		
+		reference.getIndexReader().decRef();
+	}
+	
+	@Override
+	protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+		
+		List<IndexReaderContext> children = 
+			referenceToRefresh.getIndexReader().getContext().children();
+		
+		DirectoryReader[] readers = new DirectoryReader[children.size()];
+		DirectoryReader[] reopened = new DirectoryReader[children.size()];
+		
+		boolean changed = false;
+		
+		try {
+			
+			for (int i = 0; i < readers.length; i++){
+				
+				DirectoryReader reader = (DirectoryReader) children.get(i).reader();
+				
+				reopened[i] = DirectoryReader.openIfChanged(reader);
+				
+				changed |= (reopened[i] != null);
+				
+				readers[i] = (reopened[i] == null)? reader : reopened[i];
+			}
+			
+			return (changed)? newSearcher(readers) : null;
+		}
+		finally {
+			
+			release(reopened);
+		}
+	}
+	
+	@Override
+	protected boolean tryIncRef(IndexSearcher reference) {
+		
+		return reference.getIndexReader().tryIncRef();
+	}
+	
+	/**
+	 * Get the reference count of a searcher's reader.
+	 * @param reference Searcher
+	 * @return Reference count.
+	 */
+	protected int getRefCount(IndexSearcher reference) {
+		
+		return reference.getIndexReader().getRefCount();
+	}
+	
+	/**
+	 * Create a searcher over the shards.
+	 * @param readers Reader of each shard.
+	 * @return Searcher
+	 * @throws IOException
+	 */
+	IndexSearcher newSearcher(DirectoryReader[] readers) throws IOException {
+		
+		return searcherFactory.newSearcher(new MultiReader(readers, false));
+	}
+	
+	/**
+	 * Release our references to readers (the searchers hold their own).
+	 * @param readers Readers (null entries are skipped).
+	 * @throws IOException
+	 */
+	static void release(DirectoryReader[] readers) throws IOException {
+		
+		for (DirectoryReader reader : readers){
+			
+			if (reader != null) reader.decRef();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.berico.clavin.resolver.impl.strategies;
+
+import com.berico.clavin.Options;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * BoundedWeigher.java
+ * 
+ *###################################################################*/
+
+/**
+ * A Weigher that knows the most it can give any ITEM of a CONTEXT.
+ * 
+ * The {@link GenericWeightedSelectionStrategy} weighs candidates with the
+ * other (unbounded) weighers first, and skips the bounded ones for any
+ * candidate that couldn't beat the best so far even if it got the most
+ * from each of them.  Bounded weighers should be the expensive ones.
+ * 
+ * @param <ITEM>
+ * @param <CONTEXT>
+ */
+public interface BoundedWeigher<ITEM, CONTEXT> extends Weigher<ITEM, CONTEXT> {
+	
+	/**
+	 * Get the largest weight this weigher gives any item of the context.
+	 * @param context Extra context to help in weighing
+	 * @param options Options to help configure the weigher
+	 * @return Upper bound of weigh(item, context, options).
+	 */
+	double getMaxWeight(CONTEXT context, Options options);
+	
+}
@@ -1,9 +1,14 @@
 package com.berico.clavin.resolver.impl.strategies;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.berico.clavin.Options;
 
 /*#####################################################################
@@ -37,14 +42,16 @@ import com.berico.clavin.Options;
 
 /**
  * Really simple, reusable weighting strategy for evaluating items.
- *
+ * 
  * @param <ITEM> Item to weigh
  * @param <CONTEXT> Context to help in the weighing
  */
 public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
-
+	
+	private static final Logger logger = LoggerFactory.getLogger(GenericWeightedSelectionStrategy.class);
+	
 	ArrayList<Weigher<ITEM, CONTEXT>> weighers = new ArrayList<Weigher<ITEM, CONTEXT>>();
-
+	
 	/**
 	 * Please ensure you add the weighers you would like to use.
 	 */
@@ -75,7 +82,8 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 	
 	/**
 	 * Select the best candidate from each list of candidates that represent
-	 * the best selection for that collection.
+	 * the best selection for that collection.  Weighers that can prepare
+	 * for the context ({@link PreparableWeigher}) do so once, up front.
 	 * @param candidatesList List of Candidate Lists
 	 * @param context Context to help weighers.
 	 * @param options Options for configuring the weighers
@@ -87,10 +95,12 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 		
 		ArrayList<ITEM> bestSelections = new ArrayList<ITEM>();
 		
+		List<Weigher<ITEM, CONTEXT>> preparedWeighers = prepareWeighers(context, options);
+		
 		for (List<ITEM> candidates : candidatesList){
 			
 			ITEM bestSelection = 
-				makeSelection(candidates, context, options);
+				makeSelection(candidates, context, options, preparedWeighers);
 			
 			if (bestSelection != null){
 				
@@ -101,6 +111,29 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 		return bestSelections;
 	}
 	
+	/**
+	 * Get the weighers to weigh the candidates of a context with: those
+	 * that can prepare for the context are replaced by their prepared
+	 * weighers.
+	 * @param context Context to help coach the weighers.
+	 * @param options Options to help configure the weighers.
+	 * @return Weighers for the context.
+	 */
+	@SuppressWarnings("unchecked")
+	protected List<Weigher<ITEM, CONTEXT>> prepareWeighers(CONTEXT context, Options options){
+		
+		List<Weigher<ITEM, CONTEXT>> preparedWeighers = 
+			new ArrayList<Weigher<ITEM, CONTEXT>>(this.weighers.size());
+		
+		for (Weigher<ITEM, CONTEXT> weigher : this.weighers){
+			
+			preparedWeighers.add((weigher instanceof PreparableWeigher)? 
+				((PreparableWeigher<ITEM, CONTEXT>)weigher).prepare(context, options) : weigher);
+		}
+		
+		return preparedWeighers;
+	}
+	
 	/**
 	 * Given a list of Candidates, select the best item.
 	 * @param candidates Candidates to choose from.
@@ -110,6 +143,30 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 	 */
 	protected ITEM makeSelection(List<ITEM> candidates, CONTEXT context, Options options){
 		
+		return makeSelection(candidates, context, options, this.weighers);
+	}
+	
+	/**
+	 * Given a list of Candidates, select the best item.  If some of the
+	 * weighers are {@link BoundedWeigher}s, the selection is the same but
+	 * they are only asked to weigh the candidates that could still win
+	 * (see {@link #makeBoundedSelection(List, CONTEXT, Options, List)}).
+	 * @param candidates Candidates to choose from.
+	 * @param context Context to help coach the weighers.
+	 * @param options Options to help configure the weighers.
+	 * @param weighers Weighers to weigh the candidates with.
+	 * @return Best Selection or null.
+	 */
+	protected ITEM makeSelection(
+			List<ITEM> candidates, CONTEXT context, Options options, 
+			List<Weigher<ITEM, CONTEXT>> weighers){
+		
+		for (Weigher<ITEM, CONTEXT> weigher : weighers){
+			
+			if (weigher instanceof BoundedWeigher && candidates.size() > 1)
+				return makeBoundedSelection(candidates, context, options, weighers);
+		}
+		
 		ITEM bestSelection = null;
 		double bestWeight = -1;
 		
@@ -117,7 +174,7 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 			
 			for (ITEM candidate : candidates){
 				
-				double weight = getWeight(candidate, context, options);
+				double weight = getWeight(candidate, context, options, weighers);
 				
 				if (weight > bestWeight){
 					
@@ -125,12 +182,107 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 					
 					bestSelection = candidate;
 					
-					System.out.println("New Best: " + weight + ", Loc: " + candidate);
+					onNewBest(candidate, weight);
 				}
 			}
 		}
 		
+		return bestSelection;
+	}
+	
+	/**
+	 * Select the best item (branch and bound): weigh every candidate with
+	 * the unbounded weighers, and go through them from the highest of those
+	 * partial weights down, only asking the bounded weighers about the
+	 * candidates that could beat the best so far if each bounded weigher gave
+	 * them its maximum.  Once one can't, none of the rest can either.
+	 * 
+	 * The selection is the same as weighing every candidate in order: the
+	 * weights are summed in the same order, and ties go to the candidate
+	 * earlier in the list.
+	 * @param candidates Candidates to choose from.
+	 * @param context Context to help coach the weighers.
+	 * @param options Options to help configure the weighers.
+	 * @param weighers Weighers to weigh the candidates with.
+	 * @return Best Selection or null.
+	 */
+	@SuppressWarnings("unchecked")
+	protected ITEM makeBoundedSelection(
+			List<ITEM> candidates, CONTEXT context, Options options, 
+			List<Weigher<ITEM, CONTEXT>> weighers){
 		
+		// the weights of the unbounded weighers, and the most the bounded
+		// ones could add
+		final double[][] weights = new double[candidates.size()][weighers.size()];
+		final double[] partialWeights = new double[candidates.size()];
+		double maxBoundedWeight = 0;
+		
+		for (int w = 0; w < weighers.size(); w++){
+			
+			Weigher<ITEM, CONTEXT> weigher = weighers.get(w);
+			
+			if (weigher instanceof BoundedWeigher){
+				
+				maxBoundedWeight += 
+					((BoundedWeigher<ITEM, CONTEXT>)weigher).getMaxWeight(context, options);
+				
+				continue;
+			}
+			
+			for (int i = 0; i < candidates.size(); i++){
+				
+				weights[i][w] = weigher.weigh(candidates.get(i), context, options);
+				
+				partialWeights[i] += weights[i][w];
+			}
+		}
+		
+		Integer[] order = new Integer[candidates.size()];
+		
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		
+		// highest partial weight first; the sort is stable, so ties stay in order
+		Arrays.sort(order, new Comparator<Integer>(){
+			
+			@Override
+			public int compare(Integer a, Integer b) {
+				
+				return Double.compare(partialWeights[b], partialWeights[a]);
+			}
+		});
+		
+		ITEM bestSelection = null;
+		int bestIndex = -1;
+		double bestWeight = -1;
+		
+		for (int i : order){
+			
+			double maxWeight = partialWeights[i] + maxBoundedWeight;
+			
+			if (maxWeight < bestWeight) break;
+			
+			if (maxWeight == bestWeight && (bestSelection == null || i > bestIndex)) continue;
+			
+			double weight = 0;
+			
+			for (int w = 0; w < weighers.size(); w++){
+				
+				Weigher<ITEM, CONTEXT> weigher = weighers.get(w);
+				
+				weight += (weigher instanceof BoundedWeigher)? 
+					weigher.weigh(candidates.get(i), context, options) : weights[i][w];
+			}
+			
+			if (weight > bestWeight || (weight == bestWeight && bestSelection != null && i < bestIndex)){
+				
+				bestWeight = weight;
+				bestIndex = i;
+				
+				bestSelection = candidates.get(i);
+				
+				onNewBest(bestSelection, weight);
+			}
+		}
 		
 		return bestSelection;
 	}
@@ -146,13 +298,40 @@ public class GenericWeightedSelectionStrategy<ITEM, CONTEXT> {
 	 */
 	protected double getWeight(ITEM candidate, CONTEXT context, Options options){
 		
+		return getWeight(candidate, context, options, this.weighers);
+	}
+	
+	/**
+	 * Get the overall weight of the candidate ITEM by
+	 * taking the sum of weights provided by the weighers.
+	 * @param candidate Candidate item to weigh
+	 * @param context Addition context for the weighing algorithms.
+	 * @param options Options to help configure the weighers.
+	 * @param weighers Weighers to weigh the candidate with.
+	 * @return The numeric score of the selection.
+	 */
+	protected double getWeight(
+			ITEM candidate, CONTEXT context, Options options, 
+			List<Weigher<ITEM, CONTEXT>> weighers){
+		
 		double weight = 0;
 		
-		for (Weigher<ITEM, CONTEXT> weigher : this.weighers){
+		for (Weigher<ITEM, CONTEXT> weigher : weighers){
 			
 			weight += weigher.weigh(candidate, context, options);
 		}
 		
 		return weight;
 	}
+	
+	/**
+	 * Called whenever a candidate beats the best weight seen so far for
+	 * its list; override to trace how selections are made.
+	 * @param candidate The new best candidate.
+	 * @param weight Its weight.
+	 */
+	protected void onNewBest(ITEM candidate, double weight){
+		
+		if (logger.isTraceEnabled()) logger.trace("New Best: {}, Loc: {}", weight, candidate);
+	}
 }
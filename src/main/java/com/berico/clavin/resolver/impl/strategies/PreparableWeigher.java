@@ -0,0 +1,56 @@
+package com.berico.clavin.resolver.impl.strategies;
+
+import com.berico.clavin.Options;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * PreparableWeigher.java
+ * 
+ *###################################################################*/
+
+/**
+ * A Weigher that can do the work that depends only on the CONTEXT (for
+ * instance, normalizing the names found in a document into a set) once,
+ * rather than for every ITEM it weighs.
+ * 
+ * The {@link GenericWeightedSelectionStrategy} calls prepare() once per
+ * selection and weighs every candidate with the weigher it returns.  That
+ * weigher is only used with the same context and options, by a single
+ * thread, so it can keep whatever it built.
+ * 
+ * @param <ITEM>
+ * @param <CONTEXT>
+ */
+public interface PreparableWeigher<ITEM, CONTEXT> extends Weigher<ITEM, CONTEXT> {
+	
+	/**
+	 * Prepare to weigh the items of a single context.
+	 * @param context Extra context to help in weighing
+	 * @param options Options to help configure the weigher
+	 * @return Weigher for items with this context (and options).
+	 */
+	Weigher<ITEM, CONTEXT> prepare(CONTEXT context, Options options);
+	
+}
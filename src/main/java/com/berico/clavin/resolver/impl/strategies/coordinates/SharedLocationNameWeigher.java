@@ -1,10 +1,17 @@
 package com.berico.clavin.resolver.impl.strategies.coordinates;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import com.berico.clavin.Options;
 import com.berico.clavin.extractor.LocationOccurrence;
 import com.berico.clavin.resolver.ResolvedCoordinate;
+import com.berico.clavin.resolver.impl.strategies.BoundedWeigher;
+import com.berico.clavin.resolver.impl.strategies.PreparableWeigher;
+import com.berico.clavin.resolver.impl.strategies.Weigher;
 
 /*#####################################################################
 *
@@ -38,9 +45,22 @@ import com.berico.clavin.resolver.ResolvedCoordinate;
  * Improve the resolution rank of a ResolvedCoordinate if the name of the
  * resolved coordinate matches a plain-named location occurring in the 
  * document.
+ * 
+ * Weighing a coordinate on its own compares each of its known location's
+ * names with each location in the document.  Prepared for a document
+ * ({@link #prepare(Collection, Options)}), the weigher puts the document's
+ * location names in a set once, and looks each name up in it instead.
+ * 
+ * The weight is never more than the multiplier (and only ever minus the
+ * multiplier if the document has no locations), so it is a
+ * {@link BoundedWeigher}: coordinates that can't win on distance alone
+ * aren't compared by name at all.
  */
-public class SharedLocationNameWeigher implements ResolvedCoordinateWeigher {
-
+public class SharedLocationNameWeigher 
+	implements ResolvedCoordinateWeigher, 
+		BoundedWeigher<ResolvedCoordinate, Collection<LocationOccurrence>>,
+		PreparableWeigher<ResolvedCoordinate, Collection<LocationOccurrence>> {
+	
 	// Arbitrary multiplier applied to the best matching score.
 	public static double SHARED_LOCATION_MULTIPLIER = 3;
 	
@@ -68,11 +88,115 @@ public class SharedLocationNameWeigher implements ResolvedCoordinateWeigher {
 			
 			if (matchScore > bestMatch) bestMatch = matchScore;
 		}
-
+		
 		// Return the best match value with an added multiplier
 		return SHARED_LOCATION_MULTIPLIER * bestMatch;
 	}
 	
+	/**
+	 * Get the most any coordinate can weigh with the location occurrences.
+	 * @param context Set of plain-named locations found in the document.
+	 * @param options Options for configuring the weigher
+	 * @return The multiplier (or minus it if there are no locations).
+	 */
+	@Override
+	public double getMaxWeight(Collection<LocationOccurrence> context, Options options) {
+		
+		return SHARED_LOCATION_MULTIPLIER * (context.isEmpty()? -1 : 1);
+	}
+	
+	/**
+	 * Prepare to weigh the coordinates of a document: the same weights, from
+	 * a set of the document's lower-cased location names.
+	 * @param context Set of plain-named locations found in the document.
+	 * @param options Options for configuring the weigher
+	 * @return Weigher for the document's coordinates.
+	 */
+	@Override
+	public Weigher<ResolvedCoordinate, Collection<LocationOccurrence>> prepare(
+			Collection<LocationOccurrence> context, Options options) {
+		
+		Set<String> names = new HashSet<String>();
+		
+		for (LocationOccurrence occurrence : context) names.add(occurrence.getText().toLowerCase());
+		
+		return new PreparedWeigher(names);
+	}
+	
+	/**
+	 * Weighs the coordinates of a document by looking their names up in the
+	 * set of the document's location names.
+	 */
+	static class PreparedWeigher 
+		implements ResolvedCoordinateWeigher, 
+			BoundedWeigher<ResolvedCoordinate, Collection<LocationOccurrence>> {
+		
+		final Set<String> names;
+		
+		PreparedWeigher(Set<String> names){
+			
+			this.names = names;
+		}
+		
+		@Override
+		public double weigh(
+				ResolvedCoordinate item,
+				Collection<LocationOccurrence> context,
+				Options options) {
+			
+			if (names.isEmpty()) return SHARED_LOCATION_MULTIPLIER * -1;
+			
+			return SHARED_LOCATION_MULTIPLIER * 
+				getMatchScore(item.getKnownLocation().getAlternateNames(), names);
+		}
+		
+		@Override
+		public double getMaxWeight(Collection<LocationOccurrence> context, Options options) {
+			
+			return SHARED_LOCATION_MULTIPLIER * (names.isEmpty()? -1 : 1);
+		}
+	}
+	
+	/**
+	 * The same as the best {@link #getMatchScore(Collection, String)} over the
+	 * names of a document: for each document name, only the first of the
+	 * alternate names matching it (one containing the other) counts, and it
+	 * scores 1 if it is the same name and 0 otherwise.  So the score is 1 if
+	 * an alternate name is in the set and no earlier alternate name
+	 * contains it or is contained by it.
+	 * @param collection Alternate names.
+	 * @param names Lower-cased names of the locations in the document.
+	 * @return 1 or 0.
+	 */
+	static double getMatchScore(Collection<String> collection, Set<String> names){
+		
+		List<String> earlier = new ArrayList<String>(collection.size());
+		
+		for (String collectionItem : collection){
+			
+			String name = collectionItem.toLowerCase();
+			
+			if (names.contains(name) && !overlapsAny(earlier, name)) return 1d;
+			
+			earlier.add(name);
+		}
+		
+		return 0d;
+	}
+	
+	/**
+	 * Does one of the names contain the name, or is contained by it?
+	 */
+	static boolean overlapsAny(List<String> names, String name){
+		
+		for (String other : names){
+			
+			if (other.contains(name) || name.contains(other)) return true;
+		}
+		
+		return false;
+	}
+	
 	/**
 	 * Determine how much of a match an alternate name is to a location
 	 * occurrence (a value between 0 and 1).  This similarity is based on
@@ -0,0 +1,382 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.resolver.ResolvedLocation;
+import com.berico.clavin.resolver.impl.LocationCandidateSelectionStrategy;
+import com.berico.clavin.util.ListUtils;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * BeamSearchStrategy.java
+ * 
+ *###################################################################*/
+
+/**
+ * Selects candidates with the same objective as the
+ * {@link ContextualOptimizationStrategy} (few distinct countries and admin1
+ * divisions, without reaching too far down the candidate lists), but rather
+ * than scoring every combination of candidates it keeps only the best few
+ * partial combinations (the beam) as it moves through the locations, and
+ * then polishes the winner by revisiting each location in turn (coordinate
+ * descent).
+ * 
+ * The result isn't guaranteed to be the best combination, but the cost grows
+ * linearly with the number of locations (beam width x candidate depth per
+ * location) rather than exponentially, so the context window can cover a
+ * whole document.
+ * 
+ * Locations without any candidates are skipped, rather than leaving the rest
+ * of their context window unresolved.
+ */
+public class BeamSearchStrategy implements LocationCandidateSelectionStrategy {
+	
+	/**
+	 * Number of partial combinations kept as each location is added.
+	 */
+	public static final int DEFAULT_BEAM_WIDTH = 10;
+	public static final String KEY_DEFAULT_BEAM_WIDTH = "resolver.selection.beamWidth";
+	
+	/**
+	 * Maximum number of coordinate descent passes over the locations once the
+	 * beam search is done (0 for none).  Passes stop early when nothing changes.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 3;
+	public static final String KEY_DEFAULT_MAX_ITERATIONS = "resolver.selection.beamIterations";
+	
+	/**
+	 * Number of candidates considered for each location.
+	 */
+	public static final int DEFAULT_CANDIDATE_DEPTH = 10;
+	public static final String KEY_DEFAULT_CANDIDATE_DEPTH = "resolver.selection.beamCandidateDepth";
+	
+	/**
+	 * The depth the {@link ContextualOptimizationStrategy} starts searching at;
+	 * choosing candidates above it costs nothing extra.
+	 */
+	static final int MIN_DEPTH = 3;
+	
+	/**
+	 * For each candidate list, select the best candidate.  The locations are
+	 * split into context windows as in the {@link ContextualOptimizationStrategy}
+	 * (and with the same key, {@link ContextualOptimizationStrategy#KEY_DEFAULT_MAX_CONTEXT_WINDOW}).
+	 * @param allPossibilities Set of candidate lists to sort through.
+	 * @param cooccurringCoordinates Coordinates that occurred within the document.
+	 * @param options Options to help configure the optimization strategy.
+	 * @return Set of the best candidate choices.
+	 */
+	@Override
+	public List<ResolvedLocation> select(
+			List<List<ResolvedLocation>> allPossibilities,
+			Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+			Options options)
+			throws Exception {
+		
+		options = (options == null)? new Options() : options;
+		
+		int maxContextWindow = options.getInt(
+			ContextualOptimizationStrategy.KEY_DEFAULT_MAX_CONTEXT_WINDOW,
+			ContextualOptimizationStrategy.DEFAULT_MAX_CONTEXT_WINDOW);
+		
+		int beamWidth = Math.max(1, options.getInt(KEY_DEFAULT_BEAM_WIDTH, DEFAULT_BEAM_WIDTH));
+		int maxIterations = options.getInt(KEY_DEFAULT_MAX_ITERATIONS, DEFAULT_MAX_ITERATIONS);
+		int candidateDepth = Math.max(1, options.getInt(KEY_DEFAULT_CANDIDATE_DEPTH, DEFAULT_CANDIDATE_DEPTH));
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		for (List<ResolvedLocation> locationCandidates : allPossibilities){
+			
+			if (!locationCandidates.isEmpty()) candidates.add(locationCandidates);
+		}
+		
+		if (maxContextWindow <= 1)
+			return pickBestCandidates(candidates, beamWidth, maxIterations, candidateDepth);
+		
+		List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
+		
+		for (List<List<ResolvedLocation>> theseCandidates : ListUtils.chunkifyList(candidates, maxContextWindow)) {
+			
+			bestCandidates.addAll(
+				pickBestCandidates(theseCandidates, beamWidth, maxIterations, candidateDepth));
+		}
+		
+		return bestCandidates;
+	}
+	
+	/**
+	 * Pick a candidate for each location (none of the lists may be empty).
+	 * @param allCandidates Candidates of each location.
+	 * @param beamWidth Number of partial combinations to keep.
+	 * @param maxIterations Maximum number of coordinate descent passes.
+	 * @param candidateDepth Number of candidates considered for each location.
+	 * @return Best candidate of each location.
+	 */
+	List<ResolvedLocation> pickBestCandidates(
+			List<List<ResolvedLocation>> allCandidates,
+			int beamWidth, int maxIterations, int candidateDepth){
+		
+		if (allCandidates.isEmpty()) return new ArrayList<ResolvedLocation>();
+		
+		CandidateMatrix matrix = new CandidateMatrix(allCandidates, candidateDepth);
+		
+		int[] combo = search(matrix, beamWidth);
+		
+		descend(matrix, combo, maxIterations);
+		
+		return ContextualOptimizationStrategy.getCandidates(allCandidates, combo);
+	}
+	
+	/**
+	 * Beam search through the locations in order.
+	 * @param matrix Candidates of each location.
+	 * @param beamWidth Number of partial combinations to keep.
+	 * @return Index of the chosen candidate of each location.
+	 */
+	static int[] search(CandidateMatrix matrix, int beamWidth){
+		
+		List<Partial> beam = new ArrayList<Partial>();
+		
+		beam.add(new Partial());
+		
+		for (int i = 0; i < matrix.locations; i++){
+			
+			List<Partial> expanded = new ArrayList<Partial>();
+			
+			for (Partial partial : beam){
+				
+				for (int c = 0; c < matrix.getLimit(i); c++){
+					
+					expanded.add(new Partial(
+						partial, c, matrix.getCountry(i, c), matrix.getState(i, c)));
+				}
+			}
+			
+			// The sort is stable, so ties go to the partial that chose
+			// candidates higher in the lists first.
+			Collections.sort(expanded, Partial.BEST_FIRST);
+			
+			beam = (expanded.size() > beamWidth)? expanded.subList(0, beamWidth) : expanded;
+		}
+		
+		int[] combo = new int[matrix.locations];
+		
+		int i = combo.length - 1;
+		
+		for (Partial partial = beam.get(0); partial.parent != null; partial = partial.parent)
+			combo[i--] = partial.candidate;
+		
+		return combo;
+	}
+	
+	/**
+	 * Improve a combination by changing one location's candidate at a time,
+	 * until a pass over the locations changes nothing (or the passes run out).
+	 * @param matrix Candidates of each location.
+	 * @param combo Index of the chosen candidate of each location (updated).
+	 * @param maxIterations Maximum number of passes.
+	 */
+	static void descend(CandidateMatrix matrix, int[] combo, int maxIterations){
+		
+		CandidateMatrix.DistinctCounter counter = new CandidateMatrix.DistinctCounter(matrix);
+		int[] depthCounts = new int[matrix.depth];
+		int rankSum = 0;
+		
+		for (int i = 0; i < combo.length; i++){
+			
+			counter.set(i, combo[i]);
+			depthCounts[combo[i]]++;
+			rankSum += combo[i];
+		}
+		
+		for (int iteration = 0; iteration < maxIterations; iteration++){
+			
+			boolean changed = false;
+			
+			for (int i = 0; i < combo.length; i++){
+				
+				// take the location out, and see which candidate fits best
+				counter.set(i, -1);
+				depthCounts[combo[i]]--;
+				rankSum -= combo[i];
+				
+				int deepest = depthCounts.length - 1;
+				
+				while (deepest >= 0 && depthCounts[deepest] == 0) deepest--;
+				
+				int best = combo[i];
+				long bestCost = Long.MAX_VALUE;
+				
+				for (int c = 0; c < matrix.getLimit(i); c++){
+					
+					long cost = getCost(counter.getDistinctWith(i, c), Math.max(deepest, c), rankSum + c);
+					
+					if (cost < bestCost){
+						
+						bestCost = cost;
+						best = c;
+					}
+				}
+				
+				changed |= best != combo[i];
+				
+				combo[i] = best;
+				
+				counter.set(i, best);
+				depthCounts[best]++;
+				rankSum += best;
+			}
+			
+			if (!changed) break;
+		}
+	}
+	
+	/**
+	 * The cost of a (partial) combination, lower is better.  The
+	 * {@link ContextualOptimizationStrategy} scores a combination as
+	 * locations / (distinct countries + distinct admin1 divisions) / depth,
+	 * where the depth is at least {@link #MIN_DEPTH} and deep enough to reach
+	 * every chosen candidate; the cost orders combinations the same way,
+	 * breaking ties in favor of candidates higher in their lists.
+	 * @param distinct Distinct countries + distinct admin1 divisions.
+	 * @param deepest Deepest candidate chosen (0 for the first).
+	 * @param rankSum Sum of the chosen candidates' positions in their lists.
+	 * @return Cost
+	 */
+	static long getCost(int distinct, int deepest, int rankSum){
+		
+		long depth = Math.max(MIN_DEPTH, deepest + 1);
+		
+		return ((distinct * depth) << 32) + rankSum;
+	}
+	
+	/**
+	 * A combination of candidates for the first few locations, linked to the
+	 * combination it extends (so extending one doesn't copy the choices).  The
+	 * distinct keys are copied, but there are only as many as the countries
+	 * and divisions in play.
+	 */
+	static class Partial {
+		
+		static final Comparator<Partial> BEST_FIRST = new Comparator<Partial>(){
+			
+			@Override
+			public int compare(Partial a, Partial b) {
+				
+				return (a.cost < b.cost)? -1 : ((a.cost == b.cost)? 0 : 1);
+			}
+		};
+		
+		final Partial parent;
+		final int candidate;
+		final int[] countries;
+		final int[] states;
+		final int deepest;
+		final int rankSum;
+		final long cost;
+		
+		/**
+		 * The empty combination.
+		 */
+		Partial(){
+			
+			this.parent = null;
+			this.candidate = -1;
+			this.countries = new int[0];
+			this.states = new int[0];
+			this.deepest = 0;
+			this.rankSum = 0;
+			this.cost = 0;
+		}
+		
+		/**
+		 * Extend a combination with the next location's candidate.
+		 */
+		Partial(Partial parent, int candidate, int country, int state){
+			
+			this.parent = parent;
+			this.candidate = candidate;
+			this.countries = with(parent.countries, country);
+			this.states = with(parent.states, state);
+			this.deepest = Math.max(parent.deepest, candidate);
+			this.rankSum = parent.rankSum + candidate;
+			this.cost = getCost(countries.length + states.length, deepest, rankSum);
+		}
+		
+		/**
+		 * Get the distinct keys with another added.
+		 */
+		static int[] with(int[] keys, int key){
+			
+			for (int existing : keys){
+				
+				if (existing == key) return keys;
+			}
+			
+			int[] extended = new int[keys.length + 1];
+			
+			System.arraycopy(keys, 0, extended, 0, keys.length);
+			
+			extended[keys.length] = key;
+			
+			return extended;
+		}
+	}
+	
+	/**
+	 * Set the beam width on the Options object
+	 * @param options Options to set on.
+	 * @param beamWidth Number of partial combinations to keep.
+	 */
+	public static void configureBeamWidth(Options options, int beamWidth){
+		
+		options.put(KEY_DEFAULT_BEAM_WIDTH, Integer.toString(beamWidth));
+	}
+	
+	/**
+	 * Set the maximum number of coordinate descent passes on the Options object
+	 * @param options Options to set on.
+	 * @param maxIterations Maximum number of passes (0 for none).
+	 */
+	public static void configureMaxIterations(Options options, int maxIterations){
+		
+		options.put(KEY_DEFAULT_MAX_ITERATIONS, Integer.toString(maxIterations));
+	}
+	
+	/**
+	 * Set the number of candidates considered for each location on the Options object
+	 * @param options Options to set on.
+	 * @param candidateDepth Number of candidates.
+	 */
+	public static void configureCandidateDepth(Options options, int candidateDepth){
+		
+		options.put(KEY_DEFAULT_CANDIDATE_DEPTH, Integer.toString(candidateDepth));
+	}
+}
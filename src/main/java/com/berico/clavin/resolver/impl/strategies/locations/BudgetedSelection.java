@@ -0,0 +1,74 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * BudgetedSelection.java
+ * 
+ *###################################################################*/
+
+/**
+ * The locations selected by a strategy with a time budget, noting whether
+ * the budget ran out before every context window was optimized (in which
+ * case some of the locations are simply the most populous candidates).
+ */
+public class BudgetedSelection extends ArrayList<ResolvedLocation> {
+	
+	private static final long serialVersionUID = 6377164541913472235L;
+	
+	protected boolean budgetExceeded = false;
+	
+	/**
+	 * Did the budget run out?
+	 * @return True if some locations weren't optimized.
+	 */
+	public boolean isBudgetExceeded() {
+		
+		return budgetExceeded;
+	}
+	
+	/**
+	 * Note that the budget ran out.
+	 */
+	void setBudgetExceeded() {
+		
+		budgetExceeded = true;
+	}
+	
+	/**
+	 * Did the budget run out while selecting these locations?
+	 * @param selected Locations returned by a selection strategy.
+	 * @return True if the strategy ran out of time (false if it had no budget).
+	 */
+	public static boolean isBudgetExceeded(List<ResolvedLocation> selected) {
+		
+		return (selected instanceof BudgetedSelection) 
+			&& ((BudgetedSelection)selected).isBudgetExceeded();
+	}
+}
@@ -0,0 +1,234 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.gazetteer.PlaceReference;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * CandidateMatrix.java
+ * 
+ *###################################################################*/
+
+/**
+ * The candidates of a context window packed for scoring combinations: the
+ * country (CountryCode ordinal) and admin1 division (interned, so the ids run
+ * from 0 to getStateCount() - 1) of each location's candidates, in flat
+ * arrays indexed by location x depth + candidate.  Packing once means
+ * scoring a combination never touches the Places, or allocates.
+ */
+class CandidateMatrix {
+	
+	final int locations;
+	final int depth;
+	final int[] limits;
+	final int[] countries;
+	final int[] states;
+	final int stateCount;
+	
+	/**
+	 * Pack the candidates of each location, down to the depth.
+	 * @param allCandidates Candidates of each location.
+	 * @param depth Number of candidates packed for each location.
+	 */
+	CandidateMatrix(List<List<ResolvedLocation>> allCandidates, int depth) {
+		
+		this.locations = allCandidates.size();
+		this.depth = depth;
+		this.limits = new int[locations];
+		this.countries = new int[locations * depth];
+		this.states = new int[locations * depth];
+		
+		Map<String, Integer> stateIds = new HashMap<String, Integer>();
+		
+		for (int i = 0; i < locations; i++) {
+			
+			List<ResolvedLocation> candidates = allCandidates.get(i);
+			
+			limits[i] = Math.min(candidates.size(), depth);
+			
+			for (int c = 0; c < limits[i]; c++) {
+				
+				Place place = candidates.get(c).getPlace();
+				
+				String key = getAdmin1Key(place);
+				Integer id = stateIds.get(key);
+				
+				if (id == null) {
+					
+					id = stateIds.size();
+					
+					stateIds.put(key, id);
+				}
+				
+				countries[i * depth + c] = place.getPrimaryCountryCode().ordinal();
+				states[i * depth + c] = id;
+			}
+		}
+		
+		this.stateCount = stateIds.size();
+	}
+	
+	/**
+	 * Pack every candidate of each location.
+	 * @param allCandidates Candidates of each location.
+	 */
+	CandidateMatrix(List<List<ResolvedLocation>> allCandidates) {
+		
+		this(allCandidates, getMaxCandidates(allCandidates));
+	}
+	
+	/**
+	 * Get the number of candidates packed for a location.
+	 */
+	int getLimit(int location) {
+		
+		return limits[location];
+	}
+	
+	int getCountry(int location, int candidate) {
+		
+		return countries[location * depth + candidate];
+	}
+	
+	int getState(int location, int candidate) {
+		
+		return states[location * depth + candidate];
+	}
+	
+	/**
+	 * Get a key identifying the admin1 division (state, province) of a
+	 * place.  This is "#" and the id of the division when the index was
+	 * built with the admin code tables; otherwise it's the country and admin1
+	 * code ("US.MA").  Country codes never start with "#", so the two can't
+	 * be confused.
+	 * @param place Place
+	 * @return Key of the place's admin1 division ("" if it has none).
+	 */
+	static String getAdmin1Key(Place place) {
+		
+		for (PlaceReference reference : place.getSuperPlaces()) {
+			
+			// the first administrative parent is the admin1 division
+			if (!reference.isAdministrativeParent()) continue;
+			
+			if (reference.isResolved()) return "#" + reference.getPlaceId();
+			
+			return place.getPrimaryCountryCode().name() + "." + 
+				((reference.getId() == null)? "" : reference.getId());
+		}
+		
+		return "";
+	}
+	
+	static int getMaxCandidates(List<List<ResolvedLocation>> allCandidates) {
+		
+		int max = 0;
+		
+		for (List<ResolvedLocation> candidates : allCandidates) max = Math.max(max, candidates.size());
+		
+		return max;
+	}
+	
+	/**
+	 * Counts the distinct countries and admin1 divisions of a combination of
+	 * candidates as it changes one location at a time: a count per country
+	 * and division, so each change is a couple of array updates.
+	 */
+	static class DistinctCounter {
+		
+		final CandidateMatrix matrix;
+		final int[] chosen;
+		final int[] countryCounts = new int[CountryCode.values().length];
+		final int[] stateCounts;
+		int distinct = 0;
+		
+		/**
+		 * Start with no candidate chosen for any location.
+		 */
+		DistinctCounter(CandidateMatrix matrix) {
+			
+			this.matrix = matrix;
+			this.chosen = new int[matrix.locations];
+			this.stateCounts = new int[matrix.stateCount];
+			
+			for (int i = 0; i < chosen.length; i++) chosen[i] = -1;
+		}
+		
+		/**
+		 * Choose a location's candidate (replacing the one chosen before).
+		 * @param location Location
+		 * @param candidate Candidate, or -1 for none.
+		 */
+		void set(int location, int candidate) {
+			
+			int previous = chosen[location];
+			
+			if (previous == candidate) return;
+			
+			if (previous >= 0) {
+				
+				if (--countryCounts[matrix.getCountry(location, previous)] == 0) distinct--;
+				if (--stateCounts[matrix.getState(location, previous)] == 0) distinct--;
+			}
+			
+			if (candidate >= 0) {
+				
+				if (countryCounts[matrix.getCountry(location, candidate)]++ == 0) distinct++;
+				if (stateCounts[matrix.getState(location, candidate)]++ == 0) distinct++;
+			}
+			
+			chosen[location] = candidate;
+		}
+		
+		/**
+		 * Get the number of distinct countries plus the number of distinct
+		 * admin1 divisions of the chosen candidates.
+		 */
+		int getDistinct() {
+			
+			return distinct;
+		}
+		
+		/**
+		 * Get what getDistinct() would be if a location without a chosen
+		 * candidate chose one.
+		 * @param location Location (without a chosen candidate).
+		 * @param candidate Candidate
+		 * @return Distinct countries + distinct admin1 divisions.
+		 */
+		int getDistinctWith(int location, int candidate) {
+			
+			return distinct
+				+ ((countryCounts[matrix.getCountry(location, candidate)] == 0)? 1 : 0)
+				+ ((stateCounts[matrix.getState(location, candidate)] == 0)? 1 : 0);
+		}
+	}
+}
@@ -2,12 +2,20 @@ package com.berico.clavin.resolver.impl.strategies.locations;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.berico.clavin.Options;
 import com.berico.clavin.extractor.CoordinateOccurrence;
-import com.berico.clavin.gazetteer.CountryCode;
 import com.berico.clavin.resolver.ResolvedLocation;
 import com.berico.clavin.resolver.impl.LocationCandidateSelectionStrategy;
 import com.berico.clavin.util.ListUtils;
@@ -47,21 +55,70 @@ import com.berico.clavin.util.ListUtils;
  * 
  * This strategy will ignore the occurrence of coordinates as a means of narrowing
  * plain-named locations to a geographic position.
+ * 
+ * Scoring every combination gets expensive quickly as the number of names
+ * and candidates grows, so the time spent on a document can be capped
+ * (resolver.selection.maxMillis).  When the time runs out, the best
+ * combination found so far is used for the context window being optimized,
+ * and the most populous candidates for the windows after it; the returned
+ * list is a {@link BudgetedSelection} noting that the budget was exceeded.
+ * 
+ * The context windows are independent, so given an Executor the strategy
+ * optimizes them in parallel (the calling thread works on them too, so a
+ * busy or saturated executor just means less help), and merges the results
+ * in order.
  */
 public class ContextualOptimizationStrategy implements LocationCandidateSelectionStrategy {
 	
+	private static final Logger logger = LoggerFactory.getLogger(ContextualOptimizationStrategy.class);
+	
 	/**
 	 * Represents how much content to consider when resolving the set of locations.
 	 */
 	public static final int DEFAULT_MAX_CONTEXT_WINDOW = 5;
 	public static final String KEY_DEFAULT_MAX_CONTEXT_WINDOW = "resolver.selection.maxContextWindow";
 	
+	/**
+	 * How long (in milliseconds) to spend optimizing the locations of a
+	 * document; 0 for no limit.
+	 */
+	public static final long DEFAULT_MAX_MILLIS = 0;
+	public static final String KEY_DEFAULT_MAX_MILLIS = "resolver.selection.maxMillis";
+	
+	/**
+	 * Number of combinations scored between checks of the clock.
+	 */
+	static final int COMBINATIONS_PER_CLOCK_CHECK = 1024;
+	
+	/**
+	 * Executor helping to optimize the context windows (or null).
+	 */
+	protected final Executor executor;
+	
+	/**
+	 * Optimize the context windows on the calling thread.
+	 */
+	public ContextualOptimizationStrategy() {
+		
+		this(null);
+	}
+	
+	/**
+	 * Optimize the context windows of a document in parallel.
+	 * @param executor Executor to optimize windows on, alongside the calling
+	 * thread (null to use the calling thread alone).
+	 */
+	public ContextualOptimizationStrategy(Executor executor) {
+		
+		this.executor = executor;
+	}
+	
 	/**
 	 * For each candidate list, select the best candidate.
 	 * @param allPossibilities Set of candidate lists to sort through.
 	 * @param cooccurringCoordinates Coordinates that occurred within the document.
 	 * @param options Options to help configure the optimization strategy.
-	 * @return Set of the best candidate choices.
+	 * @return Set of the best candidate choices (a {@link BudgetedSelection}).
 	 */
 	@Override
 	public List<ResolvedLocation> select(
@@ -75,20 +132,139 @@ public class ContextualOptimizationStrategy implements LocationCandidateSelectio
 		int maxContextWindow = options.getInt(
 				KEY_DEFAULT_MAX_CONTEXT_WINDOW, DEFAULT_MAX_CONTEXT_WINDOW);
 		
-		if (maxContextWindow <= 1) return pickBestCandidates(allPossibilities);
-			
-		List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
+		long maxMillis = options.getLong(KEY_DEFAULT_MAX_MILLIS, DEFAULT_MAX_MILLIS);
+		
+		// the clock is only checked if there's a budget
+		long deadline = (maxMillis > 0)? 
+			System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxMillis) : 0;
 		
 		// Chunk the list and process in pieces to reduce the processing load
-		for (List<List<ResolvedLocation>> theseCandidates : ListUtils.chunkifyList(allPossibilities, maxContextWindow)) {
-			// select the best match for each location name based
-			// based on heuristics
-			bestCandidates.addAll(pickBestCandidates(theseCandidates));
+		List<List<List<ResolvedLocation>>> chunks = (maxContextWindow <= 1)? 
+			Collections.singletonList(allPossibilities) : 
+			ListUtils.chunkifyList(allPossibilities, maxContextWindow);
+		
+		ChunkOptimizer optimizer = new ChunkOptimizer(chunks, deadline);
+		
+		if (executor != null) {
+			
+			try {
+				
+				for (int i = 1; i < chunks.size(); i++) executor.execute(optimizer);
+			}
+			catch (RejectedExecutionException e) {
+				
+				// whatever isn't picked up is optimized on this thread
+				logger.debug("The executor refused to optimize context windows: {}", e.getMessage());
+			}
+		}
+		
+		optimizer.run();
+		
+		BudgetedSelection bestCandidates = optimizer.getSelection();
+		
+		if (bestCandidates.isBudgetExceeded()) {
+			
+			logger.warn("Ran out of time ({} ms) selecting the candidates of {} locations; " + 
+				"the rest were given their most populous candidates.", maxMillis, allPossibilities.size());
 		}
 		
 		return bestCandidates;
 	}
-
+	
+	/**
+	 * Select the best candidates of a context window, unless the time has
+	 * already run out, in which case the most populous candidates are.
+	 * @param candidates Candidates of each location in the window.
+	 * @param deadline System.nanoTime() to give up at (0 for none).
+	 * @return Selected candidates.
+	 */
+	BudgetedSelection optimizeChunk(List<List<ResolvedLocation>> candidates, long deadline) {
+		
+		BudgetedSelection selection = new BudgetedSelection();
+		
+		if (deadline != 0 && System.nanoTime() - deadline > 0) {
+			
+			selection.setBudgetExceeded();
+			
+			selection.addAll(pickMostPopulousCandidates(candidates));
+		}
+		// select the best match for each location name based
+		// based on heuristics
+		else pickBestCandidates(candidates, deadline, selection);
+		
+		return selection;
+	}
+	
+	/**
+	 * Optimizes the context windows of a document, taking the next window
+	 * not yet claimed until they're all claimed.  It is run by the calling
+	 * thread and any number of executor threads.
+	 */
+	class ChunkOptimizer implements Runnable {
+		
+		final List<List<List<ResolvedLocation>>> chunks;
+		final long deadline;
+		final BudgetedSelection[] selections;
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done;
+		volatile Throwable failure;
+		
+		ChunkOptimizer(List<List<List<ResolvedLocation>>> chunks, long deadline) {
+			
+			this.chunks = chunks;
+			this.deadline = deadline;
+			this.selections = new BudgetedSelection[chunks.size()];
+			this.done = new CountDownLatch(chunks.size());
+		}
+		
+		@Override
+		public void run() {
+			
+			int i;
+			
+			while ((i = next.getAndIncrement()) < chunks.size()) {
+				
+				try {
+					
+					selections[i] = optimizeChunk(chunks.get(i), deadline);
+				}
+				catch (Throwable t) {
+					
+					failure = t;
+				}
+				finally {
+					
+					done.countDown();
+				}
+			}
+		}
+		
+		/**
+		 * Wait for the windows claimed by other threads, and merge the
+		 * selections in order.
+		 * @return Selected candidates of every window.
+		 * @throws InterruptedException
+		 * @throws ExecutionException If a window couldn't be optimized.
+		 */
+		BudgetedSelection getSelection() throws InterruptedException, ExecutionException {
+			
+			done.await();
+			
+			if (failure != null) throw new ExecutionException(failure);
+			
+			BudgetedSelection merged = new BudgetedSelection();
+			
+			for (BudgetedSelection selection : selections) {
+				
+				merged.addAll(selection);
+				
+				if (selection.isBudgetExceeded()) merged.setBudgetExceeded();
+			}
+			
+			return merged;
+		}
+	}
+	
 	/**
   	 * Uses heuristics to select the best match for each location name
   	 * extracted from a document, choosing from among a list of lists
@@ -105,22 +281,30 @@ public class ContextualOptimizationStrategy implements LocationCandidateSelectio
   	 * ought to choose Springfield, MA over Springfield, IL or
   	 * Springfield, MO.
   	 * 
-  	 * TODO: consider lat/lon distance in addition to shared
-  	 * 		 CountryCodes and Admin1Codes.
+  	 * The {@link SpatialCoherenceStrategy} considers lat/lon distance
+  	 * in addition to shared CountryCodes and Admin1Codes.
   	 * 
   	 * @param allCandidates	list of lists of candidate matches for locations names
-  	 * @return				list of best matches for each location name
+  	 * @param deadline		System.nanoTime() to give up at (0 for none)
+  	 * @param selection		the best match for each location name is added to this
+  	 * 						(which is marked if the deadline passes)
   	 */
-  	private List<ResolvedLocation> pickBestCandidates(List<List<ResolvedLocation>> allCandidates) {
-  		
-  		// initialize return object
-  		List<ResolvedLocation> bestCandidates = new ArrayList<ResolvedLocation>();
+  	private void pickBestCandidates(
+  			List<List<ResolvedLocation>> allCandidates, long deadline, BudgetedSelection selection) {
   		
-  		// variables used in heuristic matching
-  		List<CountryCode> countries;
-  		List<String> states;
+  		// variables used in heuristic matching; the candidates are packed
+  		// once, and the distinct countries & admin1 divisions of a
+  		// combination are counted as it changes
+  		CandidateMatrix matrix = new CandidateMatrix(allCandidates);
+  		CandidateMatrix.DistinctCounter counter = new CandidateMatrix.DistinctCounter(matrix);
   		float score;
   		
+  		// the combination being scored (the index of the candidate chosen
+  		// for each location), and the best one found so far
+  		int[] combo = new int[allCandidates.size()];
+  		int[] limits = new int[allCandidates.size()];
+  		int[] bestCombo = null;
+  		
   		// initial values for variables controlling recursion
   		float newMaxScore = 0;
   		float oldMaxScore = 0;
@@ -130,38 +314,43 @@ public class ContextualOptimizationStrategy implements LocationCandidateSelectio
   		// number" of *3* based on tests of the "Springfield Problem"
   		int candidateDepth = 3;
   		
+  		// combinations scored since the clock was last checked
+  		int unchecked = 0;
+  		
   		// keep searching deeper & deeper for better combinations of
   		// candidate matches, as long as the scores are improving
   		do {
   			// reset the threshold for recursion
   			oldMaxScore = newMaxScore;
   			
-  			// loop through all combinations up to the specified depth.
-  			// first recursive call for each depth starts at index 0
-	  		for (List<ResolvedLocation> combo : generateAllCombos(allCandidates, 0, candidateDepth)) {
-	  			
-	  			// these lists store the country codes & admin1 codes for each candidate
-	  			countries = new ArrayList<CountryCode>();
+  			// loop through all combinations up to the specified depth,
+  			// starting from the first candidate of every location
+	  		boolean more = startCombos(allCandidates, candidateDepth, combo, limits);
+	  		
+	  		if (more) {
 	  			
-	  			states = new ArrayList<String>();
+	  			for (int i = 0; i < combo.length; i++) counter.set(i, combo[i]);
+	  		}
+	  		
+	  		while (more) {
 	  			
-	  			for (ResolvedLocation location: combo) {
-	  				countries.add(location.getPlace().getPrimaryCountryCode());
+	  			if (deadline != 0 && ++unchecked == COMBINATIONS_PER_CLOCK_CHECK) {
 	  				
-	  				String a1 = location.getPlace().getAdministrativeParents().get(0).getName();
+	  				unchecked = 0;
 	  				
-	  				states.add(a1);
+	  				if (System.nanoTime() - deadline > 0) {
+	  					
+	  					selection.setBudgetExceeded();
+	  					
+	  					break;
+	  				}
 	  			}
 	  			
-	  			// unique-ify the lists to look for common country codes & admin1 codes
-	  			countries = new ArrayList<CountryCode>(new HashSet<CountryCode>(countries));
-	  			
-	  			states = new ArrayList<String>(new HashSet<String>(states));
-	  			
 	  			// calculate a score for this particular combination based on commonality
 	  			// of country codes & admin1 codes, and the cost of searching this deep
 	  			// TODO: tune this score calculation!
-	  			score = ((float)allCandidates.size() / (countries.size() + states.size())) / candidateDepth;
+	  			score = ((float)allCandidates.size() / 
+	  				counter.getDistinct()) / candidateDepth;
 	  			
 	  			/* *********************************************************** 
 	  			 * "So, at last we meet for the first time for the last time."
@@ -180,67 +369,123 @@ public class ContextualOptimizationStrategy implements LocationCandidateSelectio
 	  			// if this is the best we've seen during this loop, update the return value
 	  			if (score > newMaxScore) {
 	  				newMaxScore = score;
-	  				bestCandidates = combo;
+	  				bestCombo = combo.clone();
 	  			}
+	  			
+	  			// move on to the next combination, updating the counts of the
+	  			// locations whose candidate changed
+	  			int changed = nextCombo(combo, limits);
+	  			
+	  			more = changed >= 0;
+	  			
+	  			for (int i = changed; more && i < combo.length; i++) counter.set(i, combo[i]);
 	  		}
 	  		
 	  		// search one level deeper in the next loop
 	  		candidateDepth++;
 	  		
-  		} while (newMaxScore > oldMaxScore);
+  		} while (newMaxScore > oldMaxScore && !selection.isBudgetExceeded());
   		// keep searching while the scores are monotonically increasing
   		
-  		return bestCandidates;
+  		if (bestCombo != null) selection.addAll(getCandidates(allCandidates, bestCombo));
+  		
+  		// the time ran out before any combination was scored
+  		else if (selection.isBudgetExceeded()) selection.addAll(pickMostPopulousCandidates(allCandidates));
+  	}
+  	
+  	/**
+  	 * Pick the most populous candidate of each location (the first, if there's
+  	 * a tie), skipping locations without candidates.
+  	 * @param allCandidates	list of lists of candidate matches for locations names
+  	 * @return				most populous candidate of each location
+  	 */
+  	static List<ResolvedLocation> pickMostPopulousCandidates(List<List<ResolvedLocation>> allCandidates) {
+  		
+  		List<ResolvedLocation> candidates = new ArrayList<ResolvedLocation>(allCandidates.size());
+  		
+  		for (List<ResolvedLocation> locationCandidates : allCandidates) {
+  			
+  			ResolvedLocation mostPopulous = null;
+  			
+  			for (ResolvedLocation candidate : locationCandidates) {
+  				
+  				if (mostPopulous == null || 
+  						candidate.getPlace().getPopulation() > mostPopulous.getPlace().getPopulation())
+  					mostPopulous = candidate;
+  			}
+  			
+  			if (mostPopulous != null) candidates.add(mostPopulous);
+  		}
+  		
+  		return candidates;
   	}
 	
 	/**
-  	 * Recursive helper function for
-  	 * {@link LocationResolver#pickBestCandidates(List<List<ResolvedLocation>>)}.
-  	 * 
-  	 * Generates all combinations of candidate matches from each
-  	 * location, down to the specified depth through the lists.
-  	 * 
-  	 * Adapted from:
-  	 * http://www.daniweb.com/software-development/java/threads/177956/generating-all-possible-combinations-from-list-of-sublists#post882553
+  	 * Start enumerating the combinations of candidates down to the 
+  	 * specified depth through the lists (the first candidate of every
+  	 * location), in the order the original recursive enumeration produced
+  	 * them: the last location's candidate changes fastest.  Rather than
+  	 * building every combination as a list up front (depth^n of them),
+  	 * the combination is an array of candidate indexes advanced in place
+  	 * by {@link #nextCombo(int[], int[])}, so enumerating takes no memory
+  	 * beyond the two arrays.
   	 * 
   	 * @param allCandidates	list of lists of candidate matches for all location names
-  	 * @param index			keeps track of which location we're working on for recursive calls
-  	 * @param depth			max depth into list we're searching during this recursion
-  	 * @return				all combinations of candidate matches for each location, down to the specified depth
+  	 * @param depth			max depth into list we're searching
+  	 * @param combo			set to the first combination
+  	 * @param limits		set to the number of candidates considered for each location
+  	 * @return				false if there are no combinations (a location has no candidates)
   	 */
-  	List<List<ResolvedLocation>> generateAllCombos(List<List<ResolvedLocation>> allCandidates, int index, int depth) {
-  		
-		// stopping condition
-		if(index == allCandidates.size()) {
-			// return a list with an empty list
-			List<List<ResolvedLocation>> result = new ArrayList<List<ResolvedLocation>>();
-			result.add(new ArrayList<ResolvedLocation>());
-			return result;
-		}
-		
-		// initialize return object
-		List<List<ResolvedLocation>> result = new ArrayList<List<ResolvedLocation>>();
-		
-		// recursive call
-		List<List<ResolvedLocation>> recursive = generateAllCombos(allCandidates, index+1, depth);
-		
-		// for each element of the first list of input, up to depth or list size
-		for(int j = 0; j < Math.min(allCandidates.get(index).size(), depth); j++) {
-			// add the element to all combinations obtained for the rest of the lists
-			for(int k = 0; k < recursive.size(); k++) {
-				List<ResolvedLocation> newList = new ArrayList<ResolvedLocation>();
-				// add element of the first list
-				newList.add(allCandidates.get(index).get(j));
-				// copy a combination from recursive
-				for(ResolvedLocation listItem : recursive.get(k))
-					newList.add(listItem);
-	            // add new combination to result
-				result.add(newList);
-			}
-		}
-		
-		return result;
-	}
+  	static boolean startCombos(List<List<ResolvedLocation>> allCandidates, int depth, int[] combo, int[] limits) {
+  		
+  		for (int i = 0; i < combo.length; i++) {
+  			
+  			combo[i] = 0;
+  			
+  			limits[i] = Math.min(allCandidates.get(i).size(), depth);
+  			
+  			if (limits[i] == 0) return false;
+  		}
+  		
+  		return true;
+  	}
+  	
+  	/**
+  	 * Advance a combination to the next one, like an odometer.
+  	 * @param combo		combination to advance
+  	 * @param limits	number of candidates considered for each location
+  	 * @return			index of the first location whose candidate changed
+  	 * 					(every location after it changed too), or -1 if
+  	 * 					that was the last combination
+  	 */
+  	static int nextCombo(int[] combo, int[] limits) {
+  		
+  		int i = combo.length - 1;
+  		
+  		while (i >= 0 && ++combo[i] == limits[i]) {
+  			
+  			combo[i] = 0;
+  			
+  			i--;
+  		}
+  		
+  		return i;
+  	}
+  	
+  	/**
+  	 * Get the candidates chosen by a combination.
+  	 * @param allCandidates	list of lists of candidate matches for all location names
+  	 * @param combo			index of the chosen candidate of each location
+  	 * @return				chosen candidates
+  	 */
+  	static List<ResolvedLocation> getCandidates(List<List<ResolvedLocation>> allCandidates, int[] combo) {
+  		
+  		List<ResolvedLocation> candidates = new ArrayList<ResolvedLocation>(combo.length);
+  		
+  		for (int i = 0; i < combo.length; i++) candidates.add(allCandidates.get(i).get(combo[i]));
+  		
+  		return candidates;
+  	}
   	
   	/**
   	 * Set the max context window on the Options object
@@ -251,4 +496,14 @@ public class ContextualOptimizationStrategy implements LocationCandidateSelectio
   		
   		options.put(KEY_DEFAULT_MAX_CONTEXT_WINDOW, Integer.toString(maxContextWindow));
   	}
+  	
+  	/**
+  	 * Set the time budget for optimizing a document's locations on the Options object
+  	 * @param options Options to set on.
+  	 * @param maxMillis Budget in milliseconds (0 for no limit).
+  	 */
+  	public static void configureMaxMillis(Options options, long maxMillis){
+  		
+  		options.put(KEY_DEFAULT_MAX_MILLIS, Long.toString(maxMillis));
+  	}
 }
@@ -0,0 +1,322 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.resolver.ResolvedLocation;
+import com.berico.clavin.resolver.impl.RepeatedLocationSelectionStrategy;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SpatialCoherenceStrategy.java
+ * 
+ *###################################################################*/
+
+/**
+ * Adds geography to the objective of the other strategies: besides sharing
+ * countries and admin1 divisions, the chosen candidates should be close to
+ * one another.  A combination costs
+ * 
+ *   distinct countries + distinct admin1 divisions 
+ *     + spatial weight x spread / 1000 km
+ *     + {@link #RANK_COST} x (sum of the candidates' positions in their lists)
+ * 
+ * where the spread is the number of located candidates times their root
+ * mean square distance from their centre, which comes straight from the
+ * length of the sum of their unit vectors S: for n candidates, the mean
+ * square (angular) distance is about 2 (n - |S|) / n.  Each candidate's
+ * position is converted to a unit vector once, so the running sum is
+ * updated with a subtraction and an addition as candidates are swapped,
+ * and trying a candidate costs a few multiplications rather than the
+ * distances to every other candidate.
+ * 
+ * The combination starts as the {@link VotingSelectionStrategy}'s choices
+ * (with a vote for each occurrence of a name), and is then improved one
+ * location at a time (coordinate descent), so the cost is linear in the
+ * number of locations.  The objective counts each name once however often
+ * it occurred.  Locations without any candidates are skipped.
+ */
+public class SpatialCoherenceStrategy implements RepeatedLocationSelectionStrategy {
+	
+	/**
+	 * How much the candidates being spread 1000 km (per candidate) costs,
+	 * relative to an extra country or division.
+	 */
+	public static final double DEFAULT_SPATIAL_WEIGHT = 1.0;
+	public static final String KEY_DEFAULT_SPATIAL_WEIGHT = "resolver.selection.spatialWeight";
+	
+	/**
+	 * Maximum number of passes over the locations (passes stop early when
+	 * nothing changes).
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 5;
+	public static final String KEY_DEFAULT_MAX_ITERATIONS = "resolver.selection.spatialIterations";
+	
+	/**
+	 * Number of candidates considered for each location.
+	 */
+	public static final int DEFAULT_CANDIDATE_DEPTH = 10;
+	public static final String KEY_DEFAULT_CANDIDATE_DEPTH = "resolver.selection.spatialCandidateDepth";
+	
+	/**
+	 * Cost of each step down a candidate list, so the evidence has to be
+	 * worth something to pick a lesser candidate.
+	 */
+	static final double RANK_COST = 0.1;
+	
+	/**
+	 * Kilometers per radian of the Earth's surface.
+	 */
+	static final double EARTH_RADIUS_KM = 6371.0;
+	
+	/**
+	 * For each candidate list, select the best candidate.
+	 * @param allPossibilities Set of candidate lists to sort through.
+	 * @param cooccurringCoordinates Coordinates that occurred within the document.
+	 * @param options Options to help configure the strategy.
+	 * @return Set of the best candidate choices.
+	 */
+	@Override
+	public List<ResolvedLocation> select(
+			List<List<ResolvedLocation>> allPossibilities,
+			Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+			Options options)
+			throws Exception {
+		
+		return select(allPossibilities, null, cooccurringCoordinates, options);
+	}
+	
+	/**
+	 * For each candidate list, select the best candidate, counting each
+	 * list's name as often as it occurred.
+	 * @param allPossibilities Set of candidate lists to sort through.
+	 * @param multiplicity Number of times each list's name occurred (null for once each).
+	 * @param cooccurringCoordinates Coordinates that occurred within the document.
+	 * @param options Options to help configure the strategy.
+	 * @return Set of the best candidate choices.
+	 */
+	@Override
+	public List<ResolvedLocation> select(
+			List<List<ResolvedLocation>> allPossibilities,
+			int[] multiplicity,
+			Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+			Options options)
+			throws Exception {
+		
+		options = (options == null)? new Options() : options;
+		
+		double spatialWeight = options.getDouble(KEY_DEFAULT_SPATIAL_WEIGHT, DEFAULT_SPATIAL_WEIGHT);
+		int maxIterations = options.getInt(KEY_DEFAULT_MAX_ITERATIONS, DEFAULT_MAX_ITERATIONS);
+		int candidateDepth = Math.max(1, options.getInt(KEY_DEFAULT_CANDIDATE_DEPTH, DEFAULT_CANDIDATE_DEPTH));
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		int[] counts = VotingSelectionStrategy.getMultiplicity(allPossibilities, multiplicity, candidates);
+		
+		CandidateMatrix matrix = new CandidateMatrix(candidates, candidateDepth);
+		
+		int[] combo = VotingSelectionStrategy.vote(
+			matrix, VotingSelectionStrategy.getPriors(candidates, matrix, counts));
+		
+		descend(matrix, getUnitVectors(candidates, matrix), combo, spatialWeight, maxIterations);
+		
+		return ContextualOptimizationStrategy.getCandidates(candidates, combo);
+	}
+	
+	/**
+	 * Convert the position of each candidate to a unit vector (x, y, z);
+	 * candidates without a position get the zero vector.
+	 * @param allCandidates Candidates of each location.
+	 * @param matrix The candidates packed.
+	 * @return Unit vectors (3 x (location x depth + candidate)).
+	 */
+	static double[] getUnitVectors(List<List<ResolvedLocation>> allCandidates, CandidateMatrix matrix) {
+		
+		double[] vectors = new double[3 * matrix.locations * matrix.depth];
+		
+		for (int i = 0; i < matrix.locations; i++){
+			
+			for (int c = 0; c < matrix.getLimit(i); c++){
+				
+				LatLon center = allCandidates.get(i).get(c).getPlace().getCenter();
+				
+				if (center == null || center.isNull()) continue;
+				
+				double latitude = Math.toRadians(center.getLatitude());
+				double longitude = Math.toRadians(center.getLongitude());
+				
+				int v = 3 * (i * matrix.depth + c);
+				
+				vectors[v] = Math.cos(latitude) * Math.cos(longitude);
+				vectors[v + 1] = Math.cos(latitude) * Math.sin(longitude);
+				vectors[v + 2] = Math.sin(latitude);
+			}
+		}
+		
+		return vectors;
+	}
+	
+	/**
+	 * Improve a combination by changing one location's candidate at a time,
+	 * until a pass over the locations changes nothing (or the passes run out).
+	 * @param matrix The candidates packed.
+	 * @param vectors Unit vector of each candidate.
+	 * @param combo Index of the chosen candidate of each location (updated).
+	 * @param spatialWeight Weight of the spatial term.
+	 * @param maxIterations Maximum number of passes.
+	 */
+	static void descend(
+			CandidateMatrix matrix, double[] vectors, int[] combo, double spatialWeight, int maxIterations){
+		
+		CandidateMatrix.DistinctCounter counter = new CandidateMatrix.DistinctCounter(matrix);
+		
+		// running sum of the chosen candidates' vectors, and how many have one
+		double[] sum = new double[3];
+		int located = 0;
+		
+		for (int i = 0; i < combo.length; i++){
+			
+			counter.set(i, combo[i]);
+			
+			located += add(sum, vectors, matrix, i, combo[i], 1);
+		}
+		
+		for (int iteration = 0; iteration < maxIterations; iteration++){
+			
+			boolean changed = false;
+			
+			for (int i = 0; i < combo.length; i++){
+				
+				// take the location out, and see which candidate fits best
+				counter.set(i, -1);
+				
+				located -= add(sum, vectors, matrix, i, combo[i], -1);
+				
+				int best = combo[i];
+				double bestCost = Double.POSITIVE_INFINITY;
+				
+				for (int c = 0; c < matrix.getLimit(i); c++){
+					
+					int v = 3 * (i * matrix.depth + c);
+					
+					double x = sum[0] + vectors[v];
+					double y = sum[1] + vectors[v + 1];
+					double z = sum[2] + vectors[v + 2];
+					
+					int withLocated = located + (isLocated(vectors, v)? 1 : 0);
+					
+					double cost = counter.getDistinctWith(i, c)
+						+ spatialWeight * getSpread(withLocated, Math.sqrt(x * x + y * y + z * z))
+						+ RANK_COST * c;
+					
+					// ties go to the current candidate, then the one higher in the list
+					if (cost < bestCost || (cost == bestCost && c == combo[i])){
+						
+						bestCost = cost;
+						best = c;
+					}
+				}
+				
+				changed |= best != combo[i];
+				
+				combo[i] = best;
+				
+				counter.set(i, best);
+				
+				located += add(sum, vectors, matrix, i, best, 1);
+			}
+			
+			if (!changed) break;
+		}
+	}
+	
+	/**
+	 * Add (or subtract) a candidate's vector to the running sum.
+	 * @return 1 if the candidate has a position, 0 if not.
+	 */
+	static int add(double[] sum, double[] vectors, CandidateMatrix matrix, int i, int c, int sign){
+		
+		int v = 3 * (i * matrix.depth + c);
+		
+		sum[0] += sign * vectors[v];
+		sum[1] += sign * vectors[v + 1];
+		sum[2] += sign * vectors[v + 2];
+		
+		return isLocated(vectors, v)? 1 : 0;
+	}
+	
+	/**
+	 * Get the spread of located candidates (their number times their root
+	 * mean square distance from their centre) in thousands of kilometers.
+	 * @param located Number of candidates with a position.
+	 * @param length Length of the sum of their unit vectors.
+	 * @return Spread
+	 */
+	static double getSpread(int located, double length){
+		
+		double spread = Math.sqrt(Math.max(0, 2 * located * (located - length)));
+		
+		return spread * EARTH_RADIUS_KM / 1000;
+	}
+	
+	static boolean isLocated(double[] vectors, int v){
+		
+		return vectors[v] != 0 || vectors[v + 1] != 0 || vectors[v + 2] != 0;
+	}
+	
+	/**
+	 * Set the weight of the spatial term on the Options object
+	 * @param options Options to set on.
+	 * @param spatialWeight Cost of scattering, relative to an extra country or division.
+	 */
+	public static void configureSpatialWeight(Options options, double spatialWeight){
+		
+		options.put(KEY_DEFAULT_SPATIAL_WEIGHT, Double.toString(spatialWeight));
+	}
+	
+	/**
+	 * Set the maximum number of passes over the locations on the Options object
+	 * @param options Options to set on.
+	 * @param maxIterations Maximum number of passes.
+	 */
+	public static void configureMaxIterations(Options options, int maxIterations){
+		
+		options.put(KEY_DEFAULT_MAX_ITERATIONS, Integer.toString(maxIterations));
+	}
+	
+	/**
+	 * Set the number of candidates considered for each location on the Options object
+	 * @param options Options to set on.
+	 * @param candidateDepth Number of candidates.
+	 */
+	public static void configureCandidateDepth(Options options, int candidateDepth){
+		
+		options.put(KEY_DEFAULT_CANDIDATE_DEPTH, Integer.toString(candidateDepth));
+	}
+}
@@ -0,0 +1,278 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.resolver.ResolvedLocation;
+import com.berico.clavin.resolver.impl.RepeatedLocationSelectionStrategy;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * VotingSelectionStrategy.java
+ * 
+ *###################################################################*/
+
+/**
+ * A cheap alternative to the {@link ContextualOptimizationStrategy} for
+ * high volumes of documents.  Rather than scoring combinations of
+ * candidates, it makes two passes over the locations of the whole document:
+ * 
+ * 1. Every location spreads one vote over the countries and admin1
+ * divisions (states, provinces) of its candidates, favoring candidates high
+ * in the list and with large populations.  A name that occurred several
+ * times but is resolved once (see {@link RepeatedLocationSelectionStrategy})
+ * has a vote for each occurrence.
+ * 
+ * 2. Each location picks the candidate whose country and division got the
+ * most votes from the other locations, plus its own vote for the candidate
+ * (which decides when the other locations have nothing to say).
+ * 
+ * The cost is locations x candidate depth, with no combinations at all:
+ * each location takes its own votes out of the tallies before scoring its
+ * candidates, and puts them back after.  Locations without any candidates
+ * are skipped.
+ */
+public class VotingSelectionStrategy implements RepeatedLocationSelectionStrategy {
+	
+	/**
+	 * Number of candidates of each location that vote and can be picked.
+	 */
+	public static final int DEFAULT_CANDIDATE_DEPTH = 10;
+	public static final String KEY_DEFAULT_CANDIDATE_DEPTH = "resolver.selection.votingCandidateDepth";
+	
+	/**
+	 * For each candidate list, select the best candidate.
+	 * @param allPossibilities Set of candidate lists to sort through.
+	 * @param cooccurringCoordinates Coordinates that occurred within the document.
+	 * @param options Options to help configure the strategy.
+	 * @return Set of the best candidate choices.
+	 */
+	@Override
+	public List<ResolvedLocation> select(
+			List<List<ResolvedLocation>> allPossibilities,
+			Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+			Options options)
+			throws Exception {
+		
+		return select(allPossibilities, null, cooccurringCoordinates, options);
+	}
+	
+	/**
+	 * For each candidate list, select the best candidate, counting each
+	 * list's name as often as it occurred.
+	 * @param allPossibilities Set of candidate lists to sort through.
+	 * @param multiplicity Number of times each list's name occurred (null for once each).
+	 * @param cooccurringCoordinates Coordinates that occurred within the document.
+	 * @param options Options to help configure the strategy.
+	 * @return Set of the best candidate choices.
+	 */
+	@Override
+	public List<ResolvedLocation> select(
+			List<List<ResolvedLocation>> allPossibilities,
+			int[] multiplicity,
+			Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+			Options options)
+			throws Exception {
+		
+		options = (options == null)? new Options() : options;
+		
+		int candidateDepth = Math.max(1, options.getInt(KEY_DEFAULT_CANDIDATE_DEPTH, DEFAULT_CANDIDATE_DEPTH));
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		int[] counts = getMultiplicity(allPossibilities, multiplicity, candidates);
+		
+		CandidateMatrix matrix = new CandidateMatrix(candidates, candidateDepth);
+		
+		int[] combo = vote(matrix, getPriors(candidates, matrix, counts));
+		
+		return ContextualOptimizationStrategy.getCandidates(candidates, combo);
+	}
+	
+	/**
+	 * Collect the locations with candidates, along with the number of times
+	 * each one's name occurred.
+	 * @param allPossibilities Candidate lists (one per location).
+	 * @param multiplicity Number of times each list's name occurred (null for once each).
+	 * @param candidates Non-empty candidate lists (filled in).
+	 * @return Number of occurrences of each non-empty list's name.
+	 */
+	static int[] getMultiplicity(
+			List<List<ResolvedLocation>> allPossibilities, 
+			int[] multiplicity,
+			List<List<ResolvedLocation>> candidates) {
+		
+		if (multiplicity != null && multiplicity.length != allPossibilities.size())
+			throw new IllegalArgumentException(String.format(
+				"%s counts for %s candidate lists.", multiplicity.length, allPossibilities.size()));
+		
+		int[] counts = new int[allPossibilities.size()];
+		
+		for (int i = 0; i < allPossibilities.size(); i++){
+			
+			if (allPossibilities.get(i).isEmpty()) continue;
+			
+			counts[candidates.size()] = (multiplicity == null)? 1 : Math.max(1, multiplicity[i]);
+			
+			candidates.add(allPossibilities.get(i));
+		}
+		
+		return counts;
+	}
+	
+	/**
+	 * Get each candidate's share of its location's vote, each location
+	 * occurring once.
+	 * @param allCandidates Candidates of each location.
+	 * @param matrix The candidates packed.
+	 * @return Vote of each candidate (location x depth + candidate).
+	 */
+	static double[] getPriors(List<List<ResolvedLocation>> allCandidates, CandidateMatrix matrix) {
+		
+		return getPriors(allCandidates, matrix, null);
+	}
+	
+	/**
+	 * Get each candidate's share of its location's votes: the weight of a
+	 * candidate is (1 + log10(1 + population)) / (1 + position in the list),
+	 * normalized so each location's candidates add up to the number of times
+	 * the location occurred.
+	 * @param allCandidates Candidates of each location.
+	 * @param matrix The candidates packed.
+	 * @param multiplicity Number of occurrences of each location (null for once each).
+	 * @return Vote of each candidate (location x depth + candidate).
+	 */
+	static double[] getPriors(
+			List<List<ResolvedLocation>> allCandidates, CandidateMatrix matrix, int[] multiplicity) {
+		
+		double[] priors = new double[matrix.locations * matrix.depth];
+		
+		for (int i = 0; i < matrix.locations; i++){
+			
+			double total = 0;
+			
+			for (int c = 0; c < matrix.getLimit(i); c++){
+				
+				long population = Math.max(0, allCandidates.get(i).get(c).getPlace().getPopulation());
+				
+				double weight = (1 + Math.log10(1 + population)) / (1 + c);
+				
+				priors[i * matrix.depth + c] = weight;
+				
+				total += weight;
+			}
+			
+			double votes = (multiplicity == null)? 1 : multiplicity[i];
+			
+			for (int c = 0; c < matrix.getLimit(i); c++) priors[i * matrix.depth + c] *= votes / total;
+		}
+		
+		return priors;
+	}
+	
+	/**
+	 * Tally the votes, and pick each location's candidate against them.
+	 * @param matrix The candidates packed.
+	 * @param priors Vote of each candidate (location x depth + candidate).
+	 * @return Index of the chosen candidate of each location.
+	 */
+	static int[] vote(CandidateMatrix matrix, double[] priors) {
+		
+		double[] countryVotes = new double[CountryCode.values().length];
+		double[] stateVotes = new double[matrix.stateCount];
+		
+		// first pass: tally the votes
+		for (int i = 0; i < matrix.locations; i++){
+			
+			for (int c = 0; c < matrix.getLimit(i); c++){
+				
+				countryVotes[matrix.getCountry(i, c)] += priors[i * matrix.depth + c];
+				stateVotes[matrix.getState(i, c)] += priors[i * matrix.depth + c];
+			}
+		}
+		
+		// second pass: pick the candidate the other locations support most
+		int[] combo = new int[matrix.locations];
+		
+		// tallies the location's own votes are taken out of, to put back
+		double[] savedCountryVotes = new double[matrix.depth];
+		double[] savedStateVotes = new double[matrix.depth];
+		
+		for (int i = 0; i < matrix.locations; i++){
+			
+			int limit = matrix.getLimit(i);
+			
+			// take the location's own votes out of the tallies (in one pass)
+			for (int c = 0; c < limit; c++){
+				
+				savedCountryVotes[c] = countryVotes[matrix.getCountry(i, c)];
+				savedStateVotes[c] = stateVotes[matrix.getState(i, c)];
+				
+				countryVotes[matrix.getCountry(i, c)] -= priors[i * matrix.depth + c];
+				stateVotes[matrix.getState(i, c)] -= priors[i * matrix.depth + c];
+			}
+			
+			double bestScore = Double.NEGATIVE_INFINITY;
+			
+			for (int c = 0; c < limit; c++){
+				
+				double score = priors[i * matrix.depth + c]
+					+ countryVotes[matrix.getCountry(i, c)]
+					+ stateVotes[matrix.getState(i, c)];
+				
+				// ties go to the candidate higher in the list
+				if (score > bestScore){
+					
+					bestScore = score;
+					combo[i] = c;
+				}
+			}
+			
+			// put the tallies back as they were (in reverse, so a country or
+			// division voted for twice gets the value saved first)
+			for (int c = limit - 1; c >= 0; c--){
+				
+				countryVotes[matrix.getCountry(i, c)] = savedCountryVotes[c];
+				stateVotes[matrix.getState(i, c)] = savedStateVotes[c];
+			}
+		}
+		
+		return combo;
+	}
+	
+	/**
+	 * Set the number of candidates considered for each location on the Options object
+	 * @param options Options to set on.
+	 * @param candidateDepth Number of candidates.
+	 */
+	public static void configureCandidateDepth(Options options, int candidateDepth){
+		
+		options.put(KEY_DEFAULT_CANDIDATE_DEPTH, Integer.toString(candidateDepth));
+	}
+}
@@ -0,0 +1,414 @@
+package com.berico.clavin.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ExternalLineSorter.java
+ * 
+ *###################################################################*/
+
+/**
+ * Sorts lines of text by the integer at the start of each line (everything
+ * up to the first tab, e.g. the geonameId of a GeoNames record) using a
+ * bounded amount of memory.
+ * 
+ * Lines are collected in memory until there are maxLinesInMemory of them,
+ * at which point they are sorted and spilled to a temporary "run" file.
+ * Sorting then merges the runs (and whatever is still in memory), reading
+ * each one sequentially, so no more than maxLinesInMemory lines are ever
+ * held at once.  Lines with the same key keep the order they were added in;
+ * lines without a numeric key sort first.
+ * 
+ * A sorter is NOT thread-safe.  Close it to delete the run files.
+ */
+public class ExternalLineSorter {
+
+	/**
+	 * Default number of lines held in memory before spilling to disk.
+	 */
+	public static int DEFAULT_MAX_LINES_IN_MEMORY = 500000;
+	
+	// Size of the buffers used to read and write the runs.
+	static final int RUN_BUFFER_SIZE = 1 << 16;
+	
+	// Orders lines by key, then by the order they were added in.
+	static final Comparator<SortLine> ORDER = new Comparator<SortLine>(){
+		
+		@Override
+		public int compare(SortLine a, SortLine b) {
+			
+			if (a.key != b.key) return (a.key < b.key)? -1 : 1;
+			
+			return (a.sequence < b.sequence)? -1 : ((a.sequence == b.sequence)? 0 : 1);
+		}
+	};
+	
+	protected final File tempDirectory;
+	protected final int maxLinesInMemory;
+	
+	private SortLine[] lines;
+	private int count = 0;
+	private long added = 0;
+	
+	private final List<File> runs = new ArrayList<File>();
+	
+	private final List<BufferedReader> openRuns = new ArrayList<BufferedReader>();
+	
+	/**
+	 * Instantiate the sorter.
+	 * @param tempDirectory Directory for the run files (null for the default
+	 * temporary directory).
+	 * @param maxLinesInMemory Number of lines held in memory before spilling.
+	 */
+	public ExternalLineSorter(File tempDirectory, int maxLinesInMemory) {
+		
+		this.tempDirectory = tempDirectory;
+		this.maxLinesInMemory = Math.max(1, maxLinesInMemory);
+		this.lines = new SortLine[Math.min(this.maxLinesInMemory, 1024)];
+	}
+	
+	/**
+	 * Add a line to sort.
+	 * @param line Line of text (without a line terminator).
+	 * @throws IOException if the lines couldn't be spilled.
+	 */
+	public void add(String line) throws IOException {
+		
+		if (count == maxLinesInMemory) spill();
+		
+		if (count == lines.length) 
+			lines = Arrays.copyOf(lines, Math.min(lines.length * 2, maxLinesInMemory));
+		
+		lines[count++] = new SortLine(getKey(line), added++, line);
+	}
+	
+	/**
+	 * Number of lines added.
+	 * @return Number of lines.
+	 */
+	public long size(){
+		
+		return added;
+	}
+	
+	/**
+	 * Number of runs spilled to disk.
+	 * @return Number of runs.
+	 */
+	public int getRunCount(){
+		
+		return runs.size();
+	}
+	
+	/**
+	 * Finish adding lines and read them back in sorted order.  The sorter
+	 * shouldn't be added to afterwards.
+	 * @return Sorted lines.
+	 * @throws IOException
+	 */
+	public SortedLines sort() throws IOException {
+		
+		Arrays.sort(lines, 0, count, ORDER);
+		
+		if (runs.isEmpty()) return new InMemoryLines(lines, count);
+		
+		// Merge the lines still in memory with the runs.
+		PriorityQueue<SortLine> heads = new PriorityQueue<SortLine>(runs.size() + 1, ORDER);
+		
+		InMemoryLines inMemory = new InMemoryLines(lines, count);
+		
+		List<SortedLines> sources = new ArrayList<SortedLines>();
+		
+		for (File run : runs){
+			
+			BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new FileInputStream(run), "UTF-8"), RUN_BUFFER_SIZE);
+			
+			openRuns.add(reader);
+			
+			sources.add(new RunLines(reader));
+		}
+		
+		// lines in memory were added last, so they come last among equal keys.
+		sources.add(inMemory);
+		
+		return new MergedLines(sources, heads);
+	}
+	
+	/**
+	 * Delete the run files.
+	 */
+	public void close(){
+		
+		for (BufferedReader reader : openRuns){
+			
+			try { reader.close(); } catch (IOException e) {}
+		}
+		
+		for (File run : runs) run.delete();
+		
+		openRuns.clear();
+		runs.clear();
+		
+		lines = new SortLine[0];
+		count = 0;
+	}
+	
+	/**
+	 * Sort the lines in memory and write them to a new run.
+	 * @throws IOException
+	 */
+	void spill() throws IOException {
+		
+		Arrays.sort(lines, 0, count, ORDER);
+		
+		File run = File.createTempFile("clavin-sort", ".run", tempDirectory);
+		
+		run.deleteOnExit();
+		
+		runs.add(run);
+		
+		BufferedWriter writer = new BufferedWriter(
+			new OutputStreamWriter(new FileOutputStream(run), "UTF-8"), RUN_BUFFER_SIZE);
+		
+		try {
+			
+			for (int i = 0; i < count; i++){
+				
+				writer.write(lines[i].line);
+				writer.write('\n');
+				
+				lines[i] = null;
+			}
+		}
+		finally {
+			
+			writer.close();
+		}
+		
+		count = 0;
+	}
+	
+	/**
+	 * Parse the integer at the start of a line (up to the first tab).
+	 * @param line Line of text.
+	 * @return Key, or Integer.MIN_VALUE if the line doesn't start with one.
+	 */
+	public static int getKey(CharSequence line){
+		
+		int length = line.length();
+		int i = 0;
+		boolean negative = false;
+		
+		if (length > 0 && line.charAt(0) == '-'){
+			
+			negative = true;
+			i++;
+		}
+		
+		long value = 0;
+		int digits = 0;
+		
+		for (; i < length; i++, digits++){
+			
+			char c = line.charAt(i);
+			
+			if (c == '\t') break;
+			
+			if (c < '0' || c > '9' || digits > 10) return Integer.MIN_VALUE;
+			
+			value = value * 10 + (c - '0');
+		}
+		
+		if (digits == 0) return Integer.MIN_VALUE;
+		
+		value = negative? -value : value;
+		
+		if (value <= Integer.MIN_VALUE || value > Integer.MAX_VALUE) return Integer.MIN_VALUE;
+		
+		return (int) value;
+	}
+	
+	/**
+	 * Lines read back in sorted order.
+	 */
+	public static abstract class SortedLines {
+		
+		protected int key;
+		
+		/**
+		 * Get the next line.
+		 * @return Next line, or null if there are no more.
+		 * @throws IOException
+		 */
+		public abstract String next() throws IOException;
+		
+		/**
+		 * Key of the line last returned by next().
+		 * @return Key
+		 */
+		public int getKey(){
+			
+			return key;
+		}
+	}
+	
+	/**
+	 * A line (and its key) waiting to be sorted.
+	 */
+	static class SortLine {
+		
+		final int key;
+		final long sequence;
+		final String line;
+		
+		// source of the line, while merging
+		SortedLines source;
+		
+		SortLine(int key, long sequence, String line){
+			
+			this.key = key;
+			this.sequence = sequence;
+			this.line = line;
+		}
+	}
+	
+	/**
+	 * Sorted lines held in memory.
+	 */
+	static class InMemoryLines extends SortedLines {
+		
+		private final SortLine[] lines;
+		private final int count;
+		private int position = 0;
+		
+		InMemoryLines(SortLine[] lines, int count){
+			
+			this.lines = lines;
+			this.count = count;
+		}
+		
+		@Override
+		public String next() {
+			
+			if (position == count) return null;
+			
+			SortLine line = lines[position];
+			
+			// let the line be collected once it's been read
+			lines[position++] = null;
+			
+			key = line.key;
+			
+			return line.line;
+		}
+	}
+	
+	/**
+	 * Sorted lines read from a run.
+	 */
+	static class RunLines extends SortedLines {
+		
+		private final BufferedReader reader;
+		
+		RunLines(BufferedReader reader){
+			
+			this.reader = reader;
+		}
+		
+		@Override
+		public String next() throws IOException {
+			
+			String line = reader.readLine();
+			
+			if (line != null) key = ExternalLineSorter.getKey(line);
+			
+			return line;
+		}
+	}
+	
+	/**
+	 * Merges several sources of sorted lines.
+	 */
+	static class MergedLines extends SortedLines {
+		
+		private final PriorityQueue<SortLine> heads;
+		
+		MergedLines(List<SortedLines> sources, PriorityQueue<SortLine> heads) throws IOException {
+			
+			this.heads = heads;
+			
+			// the position of the source breaks ties, keeping equal keys in 
+			// the order they were added.
+			for (int i = 0; i < sources.size(); i++) advance(sources.get(i), i);
+		}
+		
+		@Override
+		public String next() throws IOException {
+			
+			SortLine head = heads.poll();
+			
+			if (head == null) return null;
+			
+			key = head.key;
+			
+			advance(head.source, head.sequence);
+			
+			return head.line;
+		}
+		
+		/**
+		 * Queue the next line of a source.
+		 * @param source Source to read.
+		 * @param position Position of the source in the merge.
+		 * @throws IOException
+		 */
+		void advance(SortedLines source, long position) throws IOException {
+			
+			String line = source.next();
+			
+			if (line == null) return;
+			
+			SortLine head = new SortLine(source.getKey(), position, line);
+			
+			head.source = source;
+			
+			heads.add(head);
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package com.berico.clavin.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.gazetteer.PlaceReference;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesAdminCodes.java
+ * 
+ *###################################################################*/
+
+/**
+ * Resolves the admin1 and admin2 codes of GeoNames records to the places they
+ * refer to, using the GeoNames code tables:
+ * 
+ * http://download.geonames.org/export/dump/admin1CodesASCII.txt
+ * http://download.geonames.org/export/dump/admin2Codes.txt
+ * 
+ * Each table is read once into memory.  Codes are kept in small maps per
+ * country (admin1) and per admin1 division (admin2), keyed by the code
+ * itself, so resolving a record creates no garbage.  The country of a record
+ * needs no table; {@link CountryCode} already carries its id and name.
+ * 
+ * Once loaded, the codes may be shared by any number of threads.
+ */
+public class GeonamesAdminCodes {
+
+	// admin1 code -> division, per country (by ordinal).
+	@SuppressWarnings("unchecked")
+	private final HashMap<String, Integer>[] admin1ByCountry = 
+		new HashMap[CountryCode.values().length];
+	
+	// admin2 code -> division, per admin1 division.
+	private final List<HashMap<String, Integer>> admin2ByAdmin1 = 
+		new ArrayList<HashMap<String, Integer>>();
+	
+	// Divisions (admin1 and admin2) are numbered; these are their ids and names.
+	private int[] ids = new int[4096];
+	private String[] names = new String[4096];
+	private int divisions = 0;
+	
+	/**
+	 * Load the code tables.
+	 * @param admin1Codes Admin1 code table (null if there isn't one).
+	 * @param admin2Codes Admin2 code table (null if there isn't one).
+	 * @return Admin codes, or null if there is no admin1 code table.
+	 * @throws IOException
+	 */
+	public static GeonamesAdminCodes load(String admin1Codes, String admin2Codes) throws IOException {
+		
+		if (admin1Codes == null) return null;
+		
+		GeonamesAdminCodes adminCodes = new GeonamesAdminCodes();
+		
+		adminCodes.loadAdmin1Codes(new File(admin1Codes));
+		
+		if (admin2Codes != null) adminCodes.loadAdmin2Codes(new File(admin2Codes));
+		
+		return adminCodes;
+	}
+	
+	/**
+	 * Load the admin1 code table (e.g. admin1CodesASCII.txt).  Lines look
+	 * like "US.VA	Virginia	Virginia	6254928".
+	 * @param file Admin1 code table.
+	 * @return Number of codes loaded.
+	 * @throws IOException
+	 */
+	public int loadAdmin1Codes(File file) throws IOException {
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(file);
+		
+		int loaded = 0;
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null){
+				
+				String[] fields = line.split("\t");
+				
+				if (fields.length < 4) continue;
+				
+				String[] codes = fields[0].split("\\.");
+				
+				CountryCode country = getCountry(codes[0]);
+				
+				if (codes.length != 2 || country == null) continue;
+				
+				addAdmin1(country, codes[1], Integer.parseInt(fields[3]), fields[1]);
+				
+				loaded++;
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return loaded;
+	}
+	
+	/**
+	 * Load the admin2 code table (e.g. admin2Codes.txt).  Lines look like
+	 * "US.VA.059	Fairfax County	Fairfax County	4758041".  Codes whose 
+	 * admin1 division isn't known (load the admin1 codes first) are skipped.
+	 * @param file Admin2 code table.
+	 * @return Number of codes loaded.
+	 * @throws IOException
+	 */
+	public int loadAdmin2Codes(File file) throws IOException {
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(file);
+		
+		int loaded = 0;
+		
+		try {
+			
+			String line;
+			
+			while ((line = reader.readLine()) != null){
+				
+				String[] fields = line.split("\t");
+				
+				if (fields.length < 4) continue;
+				
+				String[] codes = fields[0].split("\\.");
+				
+				CountryCode country = getCountry(codes[0]);
+				
+				if (codes.length != 3 || country == null) continue;
+				
+				int admin1 = getAdmin1(country, codes[1]);
+				
+				if (admin1 < 0) continue;
+				
+				addAdmin2(admin1, codes[2], Integer.parseInt(fields[3]), fields[1]);
+				
+				loaded++;
+			}
+		}
+		finally {
+			
+			reader.close();
+		}
+		
+		return loaded;
+	}
+	
+	/**
+	 * Resolve the admin1 and admin2 references of a Place (the first two of 
+	 * its super places, as filled by the parsers) to the ids and names of 
+	 * the divisions.  References to unknown codes are left unresolved.
+	 * @param place Place to resolve.
+	 */
+	public void resolve(Place place){
+		
+		List<PlaceReference> superPlaces = place.getSuperPlaces();
+		
+		if (superPlaces.size() < 2) return;
+		
+		int admin1 = getAdmin1(place.getPrimaryCountryCode(), superPlaces.get(0).getId());
+		
+		setDivision(superPlaces.get(0), admin1);
+		
+		int admin2 = (admin1 < 0)? -1 : getAdmin2(admin1, superPlaces.get(1).getId());
+		
+		setDivision(superPlaces.get(1), admin2);
+	}
+	
+	/**
+	 * Get the id of an admin1 division.
+	 * @param country Country of the division.
+	 * @param code Admin1 code.
+	 * @return Id of the division's Place, or PlaceReference.UNRESOLVED.
+	 */
+	public int getAdmin1Id(CountryCode country, String code){
+		
+		int admin1 = getAdmin1(country, code);
+		
+		return (admin1 < 0)? PlaceReference.UNRESOLVED : ids[admin1];
+	}
+	
+	/**
+	 * Number of divisions (admin1 and admin2) loaded.
+	 * @return Number of divisions.
+	 */
+	public int size(){
+		
+		return divisions;
+	}
+	
+	/**
+	 * Point the reference at a division.
+	 * @param reference Reference to set.
+	 * @param division Division number (or -1 if unknown).
+	 */
+	void setDivision(PlaceReference reference, int division){
+		
+		if (division < 0){
+			
+			reference.setPlaceId(PlaceReference.UNRESOLVED);
+		}
+		else {
+			
+			reference.setPlaceId(ids[division]);
+			reference.setName(names[division]);
+		}
+	}
+	
+	/**
+	 * Find an admin1 division.
+	 * @param country Country of the division.
+	 * @param code Admin1 code.
+	 * @return Division number, or -1 if unknown.
+	 */
+	int getAdmin1(CountryCode country, String code){
+		
+		if (country == null || code == null) return -1;
+		
+		HashMap<String, Integer> codes = admin1ByCountry[country.ordinal()];
+		
+		Integer division = (codes == null)? null : codes.get(code);
+		
+		return (division == null)? -1 : division;
+	}
+	
+	/**
+	 * Find an admin2 division.
+	 * @param admin1 Admin1 division number.
+	 * @param code Admin2 code.
+	 * @return Division number, or -1 if unknown.
+	 */
+	int getAdmin2(int admin1, String code){
+		
+		if (code == null) return -1;
+		
+		HashMap<String, Integer> codes = admin2ByAdmin1.get(admin1);
+		
+		Integer division = (codes == null)? null : codes.get(code);
+		
+		return (division == null)? -1 : division;
+	}
+	
+	/**
+	 * Add an admin1 division.
+	 * @param country Country of the division.
+	 * @param code Admin1 code.
+	 * @param id Id of the division's Place.
+	 * @param name Name of the division.
+	 */
+	void addAdmin1(CountryCode country, String code, int id, String name){
+		
+		HashMap<String, Integer> codes = admin1ByCountry[country.ordinal()];
+		
+		if (codes == null){
+			
+			codes = new HashMap<String, Integer>();
+			
+			admin1ByCountry[country.ordinal()] = codes;
+		}
+		
+		codes.put(code, addDivision(id, name));
+	}
+	
+	/**
+	 * Add an admin2 division.
+	 * @param admin1 Admin1 division number the division is in.
+	 * @param code Admin2 code.
+	 * @param id Id of the division's Place.
+	 * @param name Name of the division.
+	 */
+	void addAdmin2(int admin1, String code, int id, String name){
+		
+		HashMap<String, Integer> codes = admin2ByAdmin1.get(admin1);
+		
+		if (codes == null){
+			
+			codes = new HashMap<String, Integer>();
+			
+			admin2ByAdmin1.set(admin1, codes);
+		}
+		
+		codes.put(code, addDivision(id, name));
+	}
+	
+	/**
+	 * Number a new division.
+	 * @param id Id of the division's Place.
+	 * @param name Name of the division.
+	 * @return Division number.
+	 */
+	int addDivision(int id, String name){
+		
+		if (divisions == ids.length){
+			
+			int[] moreIds = new int[ids.length * 2];
+			String[] moreNames = new String[ids.length * 2];
+			
+			System.arraycopy(ids, 0, moreIds, 0, divisions);
+			System.arraycopy(names, 0, moreNames, 0, divisions);
+			
+			ids = moreIds;
+			names = moreNames;
+		}
+		
+		ids[divisions] = id;
+		names[divisions] = name;
+		
+		// every division gets a slot for its own (admin2) codes.
+		admin2ByAdmin1.add(null);
+		
+		return divisions++;
+	}
+	
+	/**
+	 * Get the country with the code.
+	 * @param code ISO-3166 2-letter country code.
+	 * @return Country, or null if the code is unknown.
+	 */
+	static CountryCode getCountry(String code){
+		
+		try {
+			
+			return CountryCode.valueOf(code);
+		}
+		catch (IllegalArgumentException e){
+			
+			return null;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.berico.clavin.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.berico.clavin.gazetteer.AlternateName;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesAlternateNames.java
+ * 
+ *###################################################################*/
+
+/**
+ * Utilities for the GeoNames alternate names table 
+ * (http://download.geonames.org/export/dump/alternateNamesV2.zip), whose
+ * tab-delimited rows are:
+ * 
+ * alternateNameId, geonameid, isolanguage, alternate name, isPreferredName,
+ * isShortName, isColloquial, isHistoric, from, to
+ * 
+ * Rows are converted to compact "sort lines" keyed by the geonameId
+ * (geonameid, language, name, flags), so the table can be sorted with an
+ * {@link ExternalLineSorter} and joined to the gazetteer records.
+ */
+public class GeonamesAlternateNames {
+
+	/**
+	 * "Languages" in the table that tag identifiers (links, postal codes,
+	 * Wikidata ids, ...) rather than names.
+	 */
+	public static final Set<String> NON_NAME_LANGUAGES = new HashSet<String>(
+		Arrays.asList("link", "wkdt", "post", "unlc", "tcid"));
+	
+	/**
+	 * Convert a row of the alternate names table into a sort line.
+	 * @param row Row of the table.
+	 * @return Sort line, or null if the row isn't a name.
+	 */
+	public static String toSortLine(String row){
+		
+		String[] fields = row.split("\t", -1);
+		
+		if (fields.length < 4) return null;
+		
+		String language = fields[2];
+		String name = fields[3];
+		
+		if (name.length() == 0 || NON_NAME_LANGUAGES.contains(language)) return null;
+		
+		StringBuilder sb = new StringBuilder(fields[1].length() + language.length() + name.length() + 8);
+		
+		sb.append(fields[1]).append('\t')
+		  .append(language).append('\t')
+		  .append(name).append('\t');
+		
+		// preferred, short, colloquial, historic
+		for (int i = 4; i < 8; i++){
+			
+			sb.append((fields.length > i && fields[i].equals("1"))? '1' : '0');
+		}
+		
+		return sb.toString();
+	}
+	
+	/**
+	 * Parse a sort line (see toSortLine) into an AlternateName.
+	 * @param sortLine Sort line.
+	 * @return Alternate name.
+	 */
+	public static AlternateName parse(String sortLine){
+		
+		int languageStart = sortLine.indexOf('\t') + 1;
+		int nameStart = sortLine.indexOf('\t', languageStart) + 1;
+		int flagsStart = sortLine.lastIndexOf('\t') + 1;
+		
+		AlternateName alternateName = new AlternateName(
+			sortLine.substring(nameStart, flagsStart - 1),
+			sortLine.substring(languageStart, nameStart - 1));
+		
+		alternateName.setPreferred(sortLine.charAt(flagsStart) == '1');
+		alternateName.setShortName(sortLine.charAt(flagsStart + 1) == '1');
+		alternateName.setColloquial(sortLine.charAt(flagsStart + 2) == '1');
+		alternateName.setHistoric(sortLine.charAt(flagsStart + 3) == '1');
+		
+		return alternateName;
+	}
+}
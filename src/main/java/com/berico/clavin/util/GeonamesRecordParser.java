@@ -0,0 +1,574 @@
+package com.berico.clavin.util;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.gazetteer.PlaceReference;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesRecordParser.java
+ * 
+ *###################################################################*/
+
+/**
+ * Parses GeoNames gazetteer records (tab-delimited lines, see
+ * http://download.geonames.org/export/dump/readme.txt) into {@link Place}s
+ * in a single pass over the characters of the line.
+ * 
+ * Unlike {@link GeonamesUtils#parseFromGeoNamesRecord(String)}, the parser
+ * doesn't split the line into substrings: numbers are parsed straight from
+ * the characters, short repetitive values (codes, timezones) come from a small
+ * cache, and the only strings created are the names of the place.  When
+ * asked to, it also reuses the same Place (and its lists) for every record.
+ * 
+ * A parser is NOT thread-safe; give each thread its own.  When reusing the
+ * Place, the previous record is overwritten by the next call to parse, so
+ * it must be consumed (e.g. added to the index) before then.
+ */
+public class GeonamesRecordParser {
+
+	// Number of fields in a well-formed record.
+	static final int FIELD_COUNT = 19;
+	
+	// Number of fields (through the admin2 code) a record can't do without.
+	static final int MIN_FIELD_COUNT = 12;
+	
+	static final double[] POWERS_OF_TEN = new double[]{
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+	
+	protected final boolean retainRawLine;
+	protected final boolean reusePlace;
+	
+	private char[] buffer = new char[1024];
+	
+	private final StringCache cache = new StringCache(4096);
+	
+	// TimeZone ids are normalized the way TimeZone.getTimeZone does (unknown -> GMT).
+	private final HashMap<String, String> timezoneIds = new HashMap<String, String>();
+	
+	private final Calendar calendar = Calendar.getInstance();
+	
+	private Place place;
+	
+	/**
+	 * Instantiate the parser.
+	 * @param retainRawLine Keep the raw line as the Place's context?
+	 * @param reusePlace Return the same Place (overwritten) from every call?
+	 */
+	public GeonamesRecordParser(boolean retainRawLine, boolean reusePlace) {
+		
+		this.retainRawLine = retainRawLine;
+		this.reusePlace = reusePlace;
+	}
+	
+	/**
+	 * Parse a record.
+	 * @param line Single line of tab-delimited text from the gazetteer.
+	 * @return Place (the reused instance if reusing places).
+	 */
+	public Place parse(CharSequence line){
+		
+		int length = line.length();
+		
+		if (buffer.length < length) buffer = new char[Math.max(length, buffer.length * 2)];
+		
+		if (line instanceof String){
+			
+			((String) line).getChars(0, length, buffer, 0);
+		}
+		else {
+			
+			for (int i = 0; i < length; i++) buffer[i] = line.charAt(i);
+		}
+		
+		Place parsed = parseRecord(buffer, 0, length);
+		
+		if (retainRawLine) parsed.setContext(line.toString());
+		
+		return parsed;
+	}
+	
+	/**
+	 * Parse a record from a character buffer.
+	 * @param chars Buffer with the record.
+	 * @param offset Start of the record in the buffer.
+	 * @param length Length of the record (excluding the line terminator).
+	 * @return Place (the reused instance if reusing places).
+	 */
+	public Place parse(char[] chars, int offset, int length){
+		
+		Place parsed = parseRecord(chars, offset, length);
+		
+		if (retainRawLine) parsed.setContext(new String(chars, offset, length));
+		
+		return parsed;
+	}
+	
+	/**
+	 * Parse the fields of a record (everything but the context).
+	 * @param chars Buffer with the record.
+	 * @param offset Start of the record in the buffer.
+	 * @param length Length of the record (excluding the line terminator).
+	 * @return Place (the reused instance if reusing places).
+	 */
+	protected Place parseRecord(char[] chars, int offset, int length){
+		
+		Place p = nextPlace();
+		
+		int end = offset + length;
+		int start = offset;
+		int field = 0;
+		
+		for (int i = offset; i <= end; i++){
+			
+			if (i == end || chars[i] == '\t'){
+				
+				parseField(p, field++, chars, start, i);
+				
+				start = i + 1;
+			}
+		}
+		
+		if (field < MIN_FIELD_COUNT){
+			
+			throw new IllegalArgumentException(String.format(
+				"Expected at least %s fields in the record, found %s.", 
+				MIN_FIELD_COUNT, field));
+		}
+		
+		if (field < FIELD_COUNT){
+			
+			// GeoNames record format is corrupted, don't trust any
+			// data after the admin2 code.
+			PlaceReference admin3 = p.getSuperPlaces().get(2);
+			PlaceReference admin4 = p.getSuperPlaces().get(3);
+			
+			admin3.setId("");
+			admin3.setName("");
+			admin3.setPlaceId(PlaceReference.UNRESOLVED);
+			admin4.setId("");
+			admin4.setName("");
+			admin4.setPlaceId(PlaceReference.UNRESOLVED);
+			
+			p.setPopulation(Place.OUT_OF_BOUNDS);
+			p.setElevation(Place.OUT_OF_BOUNDS);
+			p.setTimezone((String) null);
+			p.setModificationDate(new Date(0));
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * Get the Place to fill, resetting it to the state of a new Place.
+	 * @return Place
+	 */
+	protected Place nextPlace(){
+		
+		if (place == null || !reusePlace){
+			
+			place = new Place();
+			
+			place.setAlternateNames(new ArrayList<String>());
+			place.setAlternateCountryCodes(new ArrayList<CountryCode>());
+			place.setCenter(new LatLon());
+			
+			ArrayList<PlaceReference> superPlaces = new ArrayList<PlaceReference>();
+			
+			// Admin codes are resolved to places by GeonamesAdminCodes.
+			for (int i = 0; i < 4; i++) superPlaces.add(new PlaceReference("", "", true));
+			
+			place.setSuperPlaces(superPlaces);
+			
+			return place;
+		}
+		
+		// Everything else is overwritten by the fields of every
+		// (sufficiently complete) record.
+		place.getAlternateNames().clear();
+		place.getAlternateCountryCodes().clear();
+		place.setFeatureClass(FeatureClass.NULL);
+		place.setFeatureCode(FeatureCode.NULL);
+		place.setPrimaryCountryCode(CountryCode.NULL);
+		place.setElevation(0);
+		place.setContext(null);
+		
+		return place;
+	}
+	
+	/**
+	 * Parse a single field into the Place.
+	 * @param p Place to set on.
+	 * @param field Index of the field in the record.
+	 * @param chars Buffer.
+	 * @param start Start of the field.
+	 * @param end End of the field (exclusive).
+	 */
+	void parseField(Place p, int field, char[] chars, int start, int end){
+		
+		switch (field){
+		
+		case 0: 
+			p.setId((int) parseLong(chars, start, end)); 
+			break;
+		case 1: 
+			p.setName(new String(chars, start, end - start)); 
+			break;
+		case 2: 
+			p.setAsciiName(new String(chars, start, end - start)); 
+			break;
+		case 3: 
+			parseAlternateNames(p.getAlternateNames(), chars, start, end); 
+			break;
+		case 4: 
+			p.getCenter().setLatitude(parseDoubleOr(chars, start, end, Place.OUT_OF_BOUNDS)); 
+			break;
+		case 5: 
+			p.getCenter().setLongitude(parseDoubleOr(chars, start, end, Place.OUT_OF_BOUNDS)); 
+			break;
+		case 6: 
+			if (end > start) p.setFeatureClass(
+				FeatureClass.valueOf(cache.get(chars, start, end))); 
+			break;
+		case 7: 
+			if (end > start) p.setFeatureCode(
+				FeatureCode.valueOf(cache.get(chars, start, end))); 
+			break;
+		case 8: 
+			if (end > start) p.setPrimaryCountryCode(
+				CountryCode.valueOf(cache.get(chars, start, end))); 
+			break;
+		case 9: 
+			parseCountryCodes(p.getAlternateCountryCodes(), chars, start, end); 
+			break;
+		case 10: 
+		case 11: 
+		case 12: 
+		case 13: 
+			String code = cache.get(chars, start, end);
+			PlaceReference reference = p.getSuperPlaces().get(field - 10);
+			reference.setId(code);
+			reference.setName(code);
+			reference.setPlaceId(PlaceReference.UNRESOLVED);
+			break;
+		case 14: 
+			p.setPopulation(parseLongOr(chars, start, end, Place.OUT_OF_BOUNDS)); 
+			break;
+		case 15: 
+			p.setElevation(parseLongOr(chars, start, end, Place.OUT_OF_BOUNDS)); 
+			break;
+		case 17: 
+			p.setTimezone(getTimezoneId(cache.get(chars, start, end))); 
+			break;
+		case 18: 
+			p.setModificationDate(parseDate(chars, start, end)); 
+			break;
+		default:
+			// Felt the digital elevation model (16) was unimportant 
+			// for the purposes of the index.
+			break;
+		}
+	}
+	
+	/**
+	 * Parse the comma-separated alternate names.
+	 * @param names List to add to.
+	 * @param chars Buffer.
+	 * @param start Start of the field.
+	 * @param end End of the field (exclusive).
+	 */
+	static void parseAlternateNames(List<String> names, char[] chars, int start, int end){
+		
+		int nameStart = start;
+		
+		for (int i = start; i <= end; i++){
+			
+			if (i == end || chars[i] == ','){
+				
+				if (i > nameStart) names.add(new String(chars, nameStart, i - nameStart));
+				
+				nameStart = i + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Parse the comma-separated country codes (skipping malformed, empty codes).
+	 * @param codes List to add to.
+	 * @param chars Buffer.
+	 * @param start Start of the field.
+	 * @param end End of the field (exclusive).
+	 */
+	void parseCountryCodes(List<CountryCode> codes, char[] chars, int start, int end){
+		
+		int codeStart = start;
+		
+		for (int i = start; i <= end; i++){
+			
+			if (i == end || chars[i] == ','){
+				
+				if (i > codeStart) 
+					codes.add(CountryCode.valueOf(cache.get(chars, codeStart, i)));
+				
+				codeStart = i + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Normalize the timezone id like TimeZone.getTimeZone(id).getID() does,
+	 * remembering the answer for each id.
+	 * @param id Timezone id from the record.
+	 * @return Normalized id.
+	 */
+	String getTimezoneId(String id){
+		
+		String normalized = timezoneIds.get(id);
+		
+		if (normalized == null){
+			
+			normalized = TimeZone.getTimeZone(id).getID();
+			
+			timezoneIds.put(id, normalized);
+		}
+		
+		return normalized;
+	}
+	
+	/**
+	 * Parse a yyyy-MM-dd date (midnight in the default timezone, like 
+	 * SimpleDateFormat does), or the epoch if it can't be parsed.
+	 * @param chars Buffer.
+	 * @param start Start of the field.
+	 * @param end End of the field (exclusive).
+	 * @return Date
+	 */
+	Date parseDate(char[] chars, int start, int end){
+		
+		if (end - start != 10 || chars[start + 4] != '-' || chars[start + 7] != '-') 
+			return new Date(0);
+		
+		try {
+			
+			int year = (int) parseLong(chars, start, start + 4);
+			int month = (int) parseLong(chars, start + 5, start + 7);
+			int day = (int) parseLong(chars, start + 8, start + 10);
+			
+			calendar.clear();
+			calendar.set(year, month - 1, day);
+			
+			return calendar.getTime();
+		}
+		catch (NumberFormatException e){
+			
+			return new Date(0);
+		}
+	}
+	
+	/**
+	 * Parse a long, or return the default value if it can't be parsed.
+	 */
+	static long parseLongOr(char[] chars, int start, int end, long defaultValue){
+		
+		try {
+			
+			return parseLong(chars, start, end);
+		}
+		catch (NumberFormatException e){
+			
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Parse a (signed, decimal) long without creating a substring.
+	 * @param chars Buffer.
+	 * @param start Start of the number.
+	 * @param end End of the number (exclusive).
+	 * @return Value
+	 * @throws NumberFormatException if there isn't a number.
+	 */
+	static long parseLong(char[] chars, int start, int end){
+		
+		boolean negative = start < end && chars[start] == '-';
+		
+		int i = (negative || (start < end && chars[start] == '+'))? start + 1 : start;
+		
+		// Empty, or too long to be sure it doesn't overflow.
+		if (i == end || end - i > 18) 
+			return Long.parseLong(new String(chars, start, end - start));
+		
+		long value = 0;
+		
+		for (; i < end; i++){
+			
+			int digit = chars[i] - '0';
+			
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException(
+					String.format("For input string: \"%s\"", new String(chars, start, end - start)));
+			
+			value = value * 10 + digit;
+		}
+		
+		return (negative)? -value : value;
+	}
+	
+	/**
+	 * Parse a double, or return the default value if it can't be parsed.
+	 */
+	static double parseDoubleOr(char[] chars, int start, int end, double defaultValue){
+		
+		try {
+			
+			return parseDouble(chars, start, end);
+		}
+		catch (NumberFormatException e){
+			
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Parse a plain decimal (like "-77.3411") without creating a substring.
+	 * While the digits fit in the mantissa of a double, dividing by a power
+	 * of ten is exact to the last bit (the same as Double.parseDouble);
+	 * anything else (exponents, long values) is handed to Double.parseDouble.
+	 * @param chars Buffer.
+	 * @param start Start of the number.
+	 * @param end End of the number (exclusive).
+	 * @return Value
+	 * @throws NumberFormatException if there isn't a number.
+	 */
+	static double parseDouble(char[] chars, int start, int end){
+		
+		boolean negative = start < end && chars[start] == '-';
+		
+		int i = (negative || (start < end && chars[start] == '+'))? start + 1 : start;
+		
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean seenPoint = false;
+		boolean simple = i < end;
+		
+		for (; i < end && simple; i++){
+			
+			char c = chars[i];
+			
+			if (c >= '0' && c <= '9'){
+				
+				mantissa = mantissa * 10 + (c - '0');
+				
+				digits++;
+				
+				if (seenPoint) fractionDigits++;
+			}
+			else if (c == '.' && !seenPoint){
+				
+				seenPoint = true;
+			}
+			else {
+				
+				simple = false;
+			}
+		}
+		
+		if (!simple || digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length)
+			return Double.parseDouble(new String(chars, start, end - start));
+		
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		
+		return (negative)? -value : value;
+	}
+	
+	/**
+	 * A small, direct-mapped cache of strings keyed on their characters,
+	 * so that repetitive values don't create a new String per record.
+	 */
+	static class StringCache {
+		
+		private final String[] entries;
+		private final int mask;
+		
+		/**
+		 * @param size Number of slots (a power of two).
+		 */
+		StringCache(int size){
+			
+			entries = new String[size];
+			mask = size - 1;
+		}
+		
+		/**
+		 * Get the string with the characters, creating it if it isn't cached.
+		 * @param chars Buffer.
+		 * @param start Start of the string.
+		 * @param end End of the string (exclusive).
+		 * @return String
+		 */
+		String get(char[] chars, int start, int end){
+			
+			int hash = 0;
+			
+			for (int i = start; i < end; i++) hash = 31 * hash + chars[i];
+			
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			
+			String entry = entries[slot];
+			
+			if (entry != null && matches(entry, chars, start, end)) return entry;
+			
+			entry = new String(chars, start, end - start);
+			
+			entries[slot] = entry;
+			
+			return entry;
+		}
+		
+		static boolean matches(String entry, char[] chars, int start, int end){
+			
+			if (entry.length() != end - start) return false;
+			
+			for (int i = start; i < end; i++){
+				
+				if (entry.charAt(i - start) != chars[i]) return false;
+			}
+			
+			return true;
+		}
+	}
+}
@@ -1,19 +1,17 @@
 package com.berico.clavin.util;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
-import java.util.TimeZone;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
-import com.berico.clavin.gazetteer.CountryCode;
-import com.berico.clavin.gazetteer.FeatureClass;
-import com.berico.clavin.gazetteer.FeatureCode;
-import com.berico.clavin.gazetteer.LatLon;
 import com.berico.clavin.gazetteer.Place;
-import com.berico.clavin.gazetteer.PlaceReference;
 
 /*#####################################################################
  * 
@@ -50,145 +48,185 @@ import com.berico.clavin.gazetteer.PlaceReference;
 public class GeonamesUtils {
 
 	/**
-	 * Builds a {@link Place} object based on a single gazetteer
-	 * record in the GeoNames geographical database.
+	 * Size of the buffers used when reading Geonames files.  The files are
+	 * large and read sequentially, so big buffers mean fewer reads.
+	 */
+	public static int READ_BUFFER_SIZE = 1 << 20;
+	
+	/**
+	 * Open a Geonames file for reading, decompressing it as it is read if
+	 * it's an archive:
 	 * 
-	 * @param inputLine		single line of tab-delimited text representing one record from the GeoNames gazetteer
-	 * @return				new Place object
+	 * .zip = (e.g. allCountries.zip, US.zip) the first .txt entry that isn't
+	 * the readme (or the language code table) is read.
+	 * .gz = the decompressed stream is read.
+	 * 
+	 * Anything else is read as (UTF-8) text.
+	 * @param file Geonames file.
+	 * @return Reader over the lines of the file.
+	 * @throws IOException
 	 */
-	public static Place parseFromGeoNamesRecord(String inputLine) {
-		
-		// GeoNames gazetteer entries are tab-delimited
-		String[] tokens = inputLine.split("\t");
+	public static BufferedReader openGeonamesFile(File file) throws IOException {
 		
-		// initialize each field with the corresponding token
-		int geonameID = Integer.parseInt(tokens[0]);
-		String name = tokens[1];
-		String asciiName = tokens[2];
+		return openGeonamesFile(file, 0);
+	}
+	
+	/**
+	 * Open a Geonames file (see {@link #openGeonamesFile(File)}) for reading
+	 * from the start of a line other than the first, e.g. to resume a build.
+	 * Text files are seeked; archives are decompressed up to the offset.
+	 * @param file Geonames file.
+	 * @param offset Offset (in bytes of the decompressed text) of the line, as
+	 * counted by {@link #getEncodedLength(String)}.
+	 * @return Reader over the lines of the file from the offset (empty if 
+	 * the offset is the end of the file, counting an ending for the last
+	 * line whether or not it has one).
+	 * @throws IOException if the offset is past the end of the file or 
+	 * isn't at the start of a line.
+	 */
+	public static BufferedReader openGeonamesFile(File file, long offset) throws IOException {
 		
-		List<String> alternateNames;
-		if (tokens[3].length() > 0) {
-			// better to pass empty array than array containing empty String ""
-			alternateNames = Arrays.asList(tokens[3].split(","));
-		} else alternateNames = new ArrayList<String>();
+		String name = file.getName().toLowerCase();
 		
-		double latitude;
-		try {
-			latitude = Double.parseDouble(tokens[4]);
-		} catch (NumberFormatException e) {
-			latitude = Place.OUT_OF_BOUNDS;
-		}
+		InputStream input = 
+			new BufferedInputStream(new FileInputStream(file), READ_BUFFER_SIZE);
 		
-		double longitude;
 		try {
-			longitude = Double.parseDouble(tokens[5]);
-		} catch (NumberFormatException e) {
-			longitude = Place.OUT_OF_BOUNDS;
-		}
-		
-		FeatureClass featureClass;
-		if (tokens[6].length() > 0) {
-			featureClass = FeatureClass.valueOf(tokens[6]);
-		} else featureClass = FeatureClass.NULL; // not available
-		
-		FeatureCode featureCode;
-		if (tokens[7].length() > 0) {
-			featureCode = FeatureCode.valueOf(tokens[7]);
-		} else featureCode = FeatureCode.NULL; // not available
-		
-		CountryCode primaryCountryCode;
-		if (tokens[8].length() > 0) {
-			primaryCountryCode = CountryCode.valueOf(tokens[8]);
-		} else primaryCountryCode = CountryCode.NULL; // No Man's Land
-		
-		List<CountryCode> alternateCountryCodes = new ArrayList<CountryCode>();
-		if (tokens[9].length() > 0) {
-			// don't pass list only containing empty String ""
-			for (String code : tokens[9].split(",")) {
-				if (code.length() > 0) // check for malformed data
-					alternateCountryCodes.add(CountryCode.valueOf(code));
+			
+			if (name.endsWith(".zip")){
+				
+				ZipInputStream zip = new ZipInputStream(input);
+				
+				input = zip;
+				
+				ZipEntry entry;
+				
+				// Move the stream to the start of the gazetteer entry.
+				while ((entry = zip.getNextEntry()) != null){
+					
+					String entryName = entry.getName().toLowerCase();
+					
+					if (entryName.endsWith(".txt") 
+						&& !entryName.endsWith("readme.txt")
+						&& !entryName.endsWith("iso-languagecodes.txt")) break;
+				}
+				
+				if (entry == null)
+					throw new IOException(String.format(
+						"No Geonames file found in the archive %s.", file));
 			}
-		}
-		
-		String admin1Code = tokens[10];
-		String admin2Code = tokens[11];
-		
-		String admin3Code;
-		String admin4Code;
-		long population;
-		int elevation;
-		//int digitalElevationModel;
-		TimeZone timezone;
-		Date modificationDate;
-		
-		// check for dirty data...
-		if (tokens.length < 19) {
-			// GeoNames record format is corrupted, don't trust any
-			// data after this point
-			admin3Code = "";
-			admin4Code = "";
-			population = Place.OUT_OF_BOUNDS;
-			elevation = Place.OUT_OF_BOUNDS;
-			//digitalElevationModel = Place.OUT_OF_BOUNDS;
-			timezone = null;
-			modificationDate = new Date(0);
-		} else { // everything looks ok, soldiering on...
-			admin3Code = tokens[12];
-			admin4Code = tokens[13];
-			try {
-				population = Long.parseLong(tokens[14]);
-			} catch (NumberFormatException e) {
-				population = Place.OUT_OF_BOUNDS;
+			else if (name.endsWith(".gz")){
+				
+				input = new GZIPInputStream(input, READ_BUFFER_SIZE);
 			}
-			try {
-				elevation = Integer.parseInt(tokens[15]);
-			} catch (NumberFormatException e) {
-				elevation = Place.OUT_OF_BOUNDS;
+			else if (offset > file.length() + 1){
+				
+				// A text file can be skipped past its end, so check first.
+				throw new IOException(String.format(
+					"Offset %s is past the end of %s.", offset, file));
 			}
-			// Felt this was unimportant for the purposes of the index.
-			/*
-			try {
-				digitalElevationModel = Integer.parseInt(tokens[16]);
-			} catch (NumberFormatException e) {
-				digitalElevationModel = Place.OUT_OF_BOUNDS;
+			
+			if (offset > 0){
+				
+				skipFully(input, offset - 1);
+				
+				int previous = input.read();
+				
+				// The byte before the offset has to end the previous line, 
+				// unless that was the last line, and had no ending (the
+				// file has been read to the end).
+				if (previous >= 0 && previous != '\n')
+					throw new IOException(String.format(
+						"Offset %s of %s isn't at the start of a line.", offset, file));
 			}
-			*/
-			timezone = TimeZone.getTimeZone(tokens[17]);
-			try {
-				modificationDate = new SimpleDateFormat("yyyy-MM-dd").parse(tokens[18]);
-			} catch (ParseException e) {
-				modificationDate = new Date(0);
+			
+			return new BufferedReader(
+				new InputStreamReader(input, "UTF-8"), READ_BUFFER_SIZE);
+		}
+		catch (IOException e){
+			
+			input.close();
+			
+			throw e;
+		}
+	}
+
+	/**
+	 * Skip bytes of a stream (InputStream.skip may skip fewer than asked).
+	 * @param input Stream to skip.
+	 * @param count Number of bytes to skip.
+	 * @throws IOException if the stream ends first.
+	 */
+	static void skipFully(InputStream input, long count) throws IOException {
+		
+		while (count > 0){
+			
+			long skipped = input.skip(count);
+			
+			if (skipped <= 0){
+				
+				// Skip may return 0 before the end; only a read can tell.
+				if (input.read() < 0) 
+					throw new IOException("Reached the end of the file before the offset.");
+				
+				skipped = 1;
 			}
+			
+			count -= skipped;
+		}
+	}
+	
+	/**
+	 * Get the number of bytes a line of a Geonames file takes up (as UTF-8,
+	 * with its '\n' ending), without encoding it.  Summing these gives the
+	 * offsets {@link #openGeonamesFile(File, long)} reads from.
+	 * @param line Line (without its ending).
+	 * @return Length of the line in bytes.
+	 */
+	public static int getEncodedLength(String line){
+		
+		int length = line.length() + 1;
+		
+		for (int i = 0; i < line.length(); i++){
+			
+			char c = line.charAt(i);
+			
+			if (c < 0x80) continue;
+			
+			// Two bytes up to 0x7FF, three for the rest of the BMP, and four
+			// for a surrogate pair (two chars).
+			if (c < 0x800) length += 1;
+			else if (Character.isHighSurrogate(c)) length += 1;
+			else if (Character.isLowSurrogate(c)) length += 1;
+			else length += 2;
 		}
 		
-		Place p = new Place();
-		
-		p.setId(geonameID);
-		p.setName(name);
-		p.setAsciiName(asciiName);
-		p.setAlternateNames(alternateNames);
-		p.setCenter(new LatLon(latitude, longitude));
-		p.setFeatureClass(featureClass);
-		p.setFeatureCode(featureCode);
-		p.setPrimaryCountryCode(primaryCountryCode);
-		p.setAlternateCountryCodes(alternateCountryCodes);
-		
-		ArrayList<PlaceReference> superPlaces = new ArrayList<PlaceReference>();
-		
-		// TODO: Resolve Admin Code IDs
-		superPlaces.add(new PlaceReference(admin1Code, admin1Code, true));
-		superPlaces.add(new PlaceReference(admin2Code, admin2Code, true));
-		superPlaces.add(new PlaceReference(admin3Code, admin3Code, true));
-		superPlaces.add(new PlaceReference(admin4Code, admin4Code, true));
-		
-		p.setSuperPlaces(superPlaces);
-		
-		p.setPopulation(population);
-		p.setElevation(elevation);
-		if (timezone != null) p.setTimezone(timezone);
-		p.setModificationDate(modificationDate);
-		p.setContext(inputLine);
+		return length;
+	}
+	
+	/**
+	 * Builds a {@link Place} object based on a single gazetteer
+	 * record in the GeoNames geographical database.
+	 * 
+	 * @param inputLine		single line of tab-delimited text representing one record from the GeoNames gazetteer
+	 * @return				new Place object
+	 */
+	public static Place parseFromGeoNamesRecord(String inputLine) {
 		
-		return p;
+		return parsers.get().parse(inputLine);
 	}
+	
+	/**
+	 * Parsers (one per thread) used by parseFromGeoNamesRecord.  They retain
+	 * the raw line as the Place's context and return a new Place per record.
+	 */
+	private static final ThreadLocal<GeonamesRecordParser> parsers = 
+		new ThreadLocal<GeonamesRecordParser>(){
+		
+			@Override
+			protected GeonamesRecordParser initialValue() {
+				
+				return new GeonamesRecordParser(true, false);
+			}
+		};
 }
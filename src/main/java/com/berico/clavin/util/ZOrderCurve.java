@@ -0,0 +1,95 @@
+package com.berico.clavin.util;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ZOrderCurve.java
+ * 
+ *###################################################################*/
+
+/**
+ * Maps a lat/lon pair onto a Z-order (Morton) space-filling curve.
+ *
+ * Sorting coordinates by their Z-order value tends to place points that
+ * are near each other on the globe next to each other in the list, which
+ * lets batch operations group nearby coordinates with a single linear pass.
+ */
+public class ZOrderCurve {
+
+	// Number of bits used to quantize each axis.
+	public static final int BITS_PER_AXIS = 31;
+
+	private static final long AXIS_CELLS = 1l << BITS_PER_AXIS;
+
+	/**
+	 * Compute the Z-order value of a coordinate.
+	 * @param latitude Latitude (-90 to 90)
+	 * @param longitude Longitude (-180 to 180)
+	 * @return Position of the coordinate along the curve.
+	 */
+	public static long encode(double latitude, double longitude){
+
+		long y = quantize(latitude, -90d, 180d);
+		long x = quantize(longitude, -180d, 360d);
+
+		return spread(x) | (spread(y) << 1);
+	}
+
+	/**
+	 * Scale a value in the range [min, min + span] to an unsigned
+	 * integer cell on a single axis.
+	 * @param value Value to quantize.
+	 * @param min Minimum value of the range.
+	 * @param span Width of the range.
+	 * @return Cell number (0 to 2^BITS_PER_AXIS - 1).
+	 */
+	static long quantize(double value, double min, double span){
+
+		long cell = (long) (((value - min) / span) * AXIS_CELLS);
+
+		// Clamp the edges (latitude 90 / longitude 180) into the last cell.
+		if (cell < 0) return 0;
+		if (cell >= AXIS_CELLS) return AXIS_CELLS - 1;
+
+		return cell;
+	}
+
+	/**
+	 * Spread the lower 31 bits of the value out so that there is a
+	 * zero bit between each of them (abc -> 0a0b0c).
+	 * @param value Value to spread.
+	 * @return Spread value.
+	 */
+	static long spread(long value){
+
+		value &= 0x7FFFFFFFl;
+		value = (value | (value << 16)) & 0x0000FFFF0000FFFFl;
+		value = (value | (value << 8))  & 0x00FF00FF00FF00FFl;
+		value = (value | (value << 4))  & 0x0F0F0F0F0F0F0F0Fl;
+		value = (value | (value << 2))  & 0x3333333333333333l;
+		value = (value | (value << 1))  & 0x5555555555555555l;
+
+		return value;
+	}
+}
@@ -103,4 +103,13 @@ public class DdPatternParsingStrategyTest
 		assertEquals(-52.090904, coordinate.getValue().getLongitude(), 0.0001);
 	}
 	
+	@Test
+	public void strategy_reports_precision_of_least_precise_part(){
+		
+		CoordinateOccurrence<LatLon> coordinate = 
+			strategy.parse("40.446195, 79.9", 0);
+		
+		// Half of a tenth of a degree.
+		assertEquals(5.55975, coordinate.getPrecisionInKm(), 0.0001);
+	}
 }
@@ -172,4 +172,22 @@ public class DmsPatternParsingStrategyTest
 		assertEquals(40.4333333, coordinate.getValue().getLatitude(), 0.0001);
 		assertEquals(-79.933333, coordinate.getValue().getLongitude(), 0.0001);
 	}
+	
+	@Test
+	public void strategy_reports_finer_precision_when_seconds_are_present(){
+		
+		CoordinateOccurrence<LatLon> withSubseconds = 
+			strategy.parse("40:26:46.302N 079:56:55.903W", 0);
+		
+		CoordinateOccurrence<LatLon> withSeconds = 
+			strategy.parse("40:26:46N 079:56:55W", 0);
+		
+		CoordinateOccurrence<LatLon> withMinutes = 
+			strategy.parse("40:26N 079:56W", 0);
+		
+		// Half a thousandth of a second, second and minute respectively.
+		assertEquals(0.0000154, withSubseconds.getPrecisionInKm(), 0.0000001);
+		assertEquals(0.0154, withSeconds.getPrecisionInKm(), 0.0001);
+		assertEquals(0.9266, withMinutes.getPrecisionInKm(), 0.0001);
+	}
 }
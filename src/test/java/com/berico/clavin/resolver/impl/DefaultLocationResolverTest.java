@@ -0,0 +1,255 @@
+package com.berico.clavin.resolver.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.extractor.ExtractionContext;
+import com.berico.clavin.extractor.LocationOccurrence;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.ResolutionContext;
+import com.berico.clavin.resolver.ResolvedCoordinate;
+import com.berico.clavin.resolver.ResolvedLocation;
+import com.berico.clavin.resolver.impl.strategies.IdentityReductionStrategy;
+import com.berico.clavin.resolver.impl.strategies.locations.ContextualOptimizationStrategy;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * DefaultLocationResolverTest.java
+ * 
+ *###################################################################*/
+
+public class DefaultLocationResolverTest {
+	
+	/**
+	 * Finds a single place for any name, counting the searches.
+	 */
+	static class CountingLocationNameIndex implements LocationNameIndex {
+		
+		List<String> searches = new ArrayList<String>();
+		
+		@Override
+		public List<ResolvedLocation> search(
+				LocationOccurrence occurrence, Options options) throws Exception {
+			
+			searches.add(occurrence.getText());
+			
+			Place place = new Place();
+			
+			place.setId(searches.size());
+			place.setName(occurrence.getText().trim());
+			place.setPrimaryCountryCode(CountryCode.IQ);
+			
+			List<ResolvedLocation> candidates = new ArrayList<ResolvedLocation>();
+			
+			candidates.add(new ResolvedLocation(place.getName(), place, occurrence, false, 1));
+			
+			return candidates;
+		}
+	}
+	
+	/**
+	 * Finds nothing for any coordinate.
+	 */
+	static class EmptyCoordinateIndex implements CoordinateIndex {
+		
+		@Override
+		public List<ResolvedCoordinate> search(
+				CoordinateOccurrence<?> coordinate, Options options) throws Exception {
+			
+			return new ArrayList<ResolvedCoordinate>();
+		}
+		
+		@Override
+		public List<List<ResolvedCoordinate>> searchAll(
+				List<CoordinateOccurrence<?>> coordinates, Options options) throws Exception {
+			
+			List<List<ResolvedCoordinate>> candidates = new ArrayList<List<ResolvedCoordinate>>();
+			
+			for (int i = 0; i < coordinates.size(); i++) candidates.add(new ArrayList<ResolvedCoordinate>());
+			
+			return candidates;
+		}
+	}
+	
+	/**
+	 * Selects the first candidate of each location, keeping the number of
+	 * times each name occurred.
+	 */
+	static class FirstCandidateStrategy implements RepeatedLocationSelectionStrategy {
+		
+		int[] multiplicity;
+		
+		@Override
+		public List<ResolvedLocation> select(
+				List<List<ResolvedLocation>> allPossibilities,
+				Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+				Options options) throws Exception {
+			
+			int[] once = new int[allPossibilities.size()];
+			
+			Arrays.fill(once, 1);
+			
+			return select(allPossibilities, once, cooccurringCoordinates, options);
+		}
+		
+		@Override
+		public List<ResolvedLocation> select(
+				List<List<ResolvedLocation>> allPossibilities,
+				int[] multiplicity,
+				Collection<CoordinateOccurrence<?>> cooccurringCoordinates,
+				Options options) throws Exception {
+			
+			this.multiplicity = multiplicity;
+			
+			List<ResolvedLocation> selected = new ArrayList<ResolvedLocation>();
+			
+			for (List<ResolvedLocation> candidates : allPossibilities) selected.add(candidates.get(0));
+			
+			return selected;
+		}
+	}
+	
+	static DefaultLocationResolver createResolver(LocationNameIndex index){
+		
+		return createResolver(index, new ContextualOptimizationStrategy());
+	}
+	
+	static DefaultLocationResolver createResolver(
+			LocationNameIndex index, LocationCandidateSelectionStrategy locationSelectionStrategy){
+		
+		return new DefaultLocationResolver(
+			index, new EmptyCoordinateIndex(), locationSelectionStrategy, 
+			new CoordinateCandidateSelectionStrategy(){
+				
+				@Override
+				public List<ResolvedCoordinate> select(
+						List<List<ResolvedCoordinate>> allPossibilities,
+						Collection<LocationOccurrence> cooccurringLocations,
+						Options options) throws Exception {
+					
+					return new ArrayList<ResolvedCoordinate>();
+				}
+			}, 
+			new IdentityReductionStrategy());
+	}
+	
+	static ExtractionContext baghdadArticle(){
+		
+		return new ExtractionContext("...", Arrays.asList(
+			new LocationOccurrence("Baghdad", 0),
+			new LocationOccurrence("Basra", 100),
+			new LocationOccurrence("baghdad", 200),
+			new LocationOccurrence("Baghdad ", 300)), 
+			new ArrayList<CoordinateOccurrence<?>>());
+	}
+	
+	@Test
+	public void repeated_names_are_searched_once_and_resolved_for_every_occurrence() throws Exception {
+		
+		CountingLocationNameIndex index = new CountingLocationNameIndex();
+		
+		ResolutionContext resolved = 
+			createResolver(index, new FirstCandidateStrategy()).resolveLocations(baghdadArticle());
+		
+		assertEquals(Arrays.asList("Baghdad", "Basra"), index.searches);
+		
+		List<ResolvedLocation> locations = resolved.getLocations();
+		
+		assertEquals(4, locations.size());
+		
+		// in the order they occurred, each with its own occurrence
+		for (int i = 0; i < 4; i++) assertEquals(i * 100, locations.get(i).getLocation().getPosition());
+		
+		assertEquals("baghdad", locations.get(2).getLocation().getText());
+		assertSame(locations.get(0).getPlace(), locations.get(2).getPlace());
+		assertSame(locations.get(0).getPlace(), locations.get(3).getPlace());
+		assertEquals("Basra", locations.get(1).getPlace().getName());
+		
+		// each copy's confidence is measured from its own text
+		assertEquals(0, locations.get(2).getConfidence(), 0);
+		assertEquals(1, locations.get(3).getConfidence(), 0);
+	}
+	
+	@Test
+	public void names_are_only_grouped_for_strategies_that_count_them() throws Exception {
+		
+		CountingLocationNameIndex index = new CountingLocationNameIndex();
+		
+		ResolutionContext resolved = createResolver(index).resolveLocations(baghdadArticle());
+		
+		assertEquals(4, index.searches.size());
+		assertEquals(4, resolved.getLocations().size());
+	}
+	
+	@Test
+	public void repeated_names_can_be_searched_every_time() throws Exception {
+		
+		CountingLocationNameIndex index = new CountingLocationNameIndex();
+		
+		Options options = new Options();
+		
+		DefaultLocationResolver.configureCoalesceOccurrences(options, false);
+		
+		ResolutionContext resolved = 
+			createResolver(index, new FirstCandidateStrategy()).resolveLocations(baghdadArticle(), options);
+		
+		assertEquals(4, index.searches.size());
+		assertEquals(4, resolved.getLocations().size());
+	}
+	
+	@Test
+	public void names_are_grouped_regardless_of_case_and_spacing() {
+		
+		assertEquals("new york", DefaultLocationResolver.normalize("  New   York "));
+		assertEquals(DefaultLocationResolver.normalize("new\tyork"), DefaultLocationResolver.normalize("NEW YORK"));
+	}
+	
+	@Test
+	public void the_selection_strategy_is_told_how_often_each_name_occurred() throws Exception {
+		
+		FirstCandidateStrategy strategy = new FirstCandidateStrategy();
+		
+		createResolver(new CountingLocationNameIndex(), strategy).resolveLocations(baghdadArticle());
+		
+		assertArrayEquals(new int[]{ 3, 1 }, strategy.multiplicity);
+		
+		Options options = new Options();
+		
+		DefaultLocationResolver.configureCoalesceOccurrences(options, false);
+		
+		createResolver(new CountingLocationNameIndex(), strategy).resolveLocations(baghdadArticle(), options);
+		
+		assertArrayEquals(new int[]{ 1, 1, 1, 1 }, strategy.multiplicity);
+	}
+}
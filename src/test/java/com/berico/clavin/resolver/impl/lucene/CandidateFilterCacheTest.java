@@ -0,0 +1,89 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.lucene.search.Filter;
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * CandidateFilterCacheTest.java
+ * 
+ *###################################################################*/
+
+public class CandidateFilterCacheTest {
+
+	CandidateFilterCache cache = new CandidateFilterCache();
+	
+	@Test
+	public void no_restrictions_produces_no_filter() {
+		
+		Filter filter = cache.getFilter(
+			Collections.<FeatureClass>emptyList(), 
+			Collections.<FeatureCode>emptyList(), 
+			0);
+		
+		assertNull(filter);
+	}
+	
+	@Test
+	public void equivalent_restrictions_share_the_same_cached_filter() {
+		
+		Filter first = cache.getFilter(
+			Arrays.asList(FeatureClass.P, FeatureClass.A), 
+			Arrays.asList(FeatureCode.SCH), 
+			1000);
+		
+		Filter second = cache.getFilter(
+			Arrays.asList(FeatureClass.A, FeatureClass.P), 
+			Arrays.asList(FeatureCode.SCH), 
+			1000);
+		
+		assertNotNull(first);
+		assertSame(first, second);
+	}
+	
+	@Test
+	public void different_restrictions_produce_different_filters() {
+		
+		Filter populated = cache.getFilter(
+			Arrays.asList(FeatureClass.P), 
+			Collections.<FeatureCode>emptyList(), 
+			0);
+		
+		Filter large = cache.getFilter(
+			Arrays.asList(FeatureClass.P), 
+			Collections.<FeatureCode>emptyList(), 
+			100000);
+		
+		assertNotSame(populated, large);
+	}
+}
@@ -0,0 +1,216 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.impl.lucene.GeonamesIndexUpdater.DiffFile;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesIndexUpdaterTest.java
+ * 
+ *###################################################################*/
+
+public class GeonamesIndexUpdaterTest {
+
+	@Test
+	public void diff_files_are_recognized_by_name() {
+		
+		DiffFile modifications = DiffFile.parse("/tmp/modifications-2013-06-01.txt");
+		DiffFile deletes = DiffFile.parse("deletes-2013-06-02.txt");
+		
+		assertEquals("2013-06-01", modifications.date);
+		assertFalse(modifications.isDeletes);
+		assertEquals("2013-06-02", deletes.date);
+		assertTrue(deletes.isDeletes);
+		assertNull(DiffFile.parse("allCountries.txt"));
+	}
+	
+	@Test
+	public void diff_files_are_ordered_by_date_then_modifications_first() {
+		
+		List<DiffFile> diffFiles = new ArrayList<DiffFile>();
+		
+		diffFiles.add(DiffFile.parse("deletes-2013-06-02.txt"));
+		diffFiles.add(DiffFile.parse("deletes-2013-06-01.txt"));
+		diffFiles.add(DiffFile.parse("modifications-2013-06-02.txt"));
+		diffFiles.add(DiffFile.parse("modifications-2013-06-01.txt"));
+		
+		Collections.sort(diffFiles);
+		
+		assertEquals("modifications-2013-06-01.txt", diffFiles.get(0).path);
+		assertEquals("deletes-2013-06-01.txt", diffFiles.get(1).path);
+		assertEquals("modifications-2013-06-02.txt", diffFiles.get(2).path);
+		assertEquals("deletes-2013-06-02.txt", diffFiles.get(3).path);
+	}
+	
+	@Test
+	public void versions_sort_in_the_order_files_are_applied() {
+		
+		DiffFile modifications = DiffFile.parse("modifications-2013-06-01.txt");
+		DiffFile deletes = DiffFile.parse("deletes-2013-06-01.txt");
+		DiffFile nextModifications = DiffFile.parse("modifications-2013-06-02.txt");
+		
+		assertEquals("2013-06-01", modifications.getVersion());
+		assertEquals("2013-06-01:deletes", deletes.getVersion());
+		
+		assertTrue(modifications.getVersion().compareTo(deletes.getVersion()) < 0);
+		assertTrue(deletes.getVersion().compareTo(nextModifications.getVersion()) < 0);
+	}
+	
+	@Test
+	public void a_days_deletes_are_applied_after_its_modifications() {
+		
+		DiffFile modifications = DiffFile.parse("modifications-2013-06-01.txt");
+		DiffFile deletes = DiffFile.parse("deletes-2013-06-01.txt");
+		
+		assertFalse(modifications.isAppliedTo(null));
+		assertFalse(deletes.isAppliedTo(null));
+		
+		assertTrue(modifications.isAppliedTo("2013-06-01"));
+		assertFalse(deletes.isAppliedTo("2013-06-01"));
+		
+		assertTrue(modifications.isAppliedTo("2013-06-01:deletes"));
+		assertTrue(deletes.isAppliedTo("2013-06-01:deletes"));
+		assertTrue(deletes.isAppliedTo("2013-06-02"));
+	}
+	
+	@Test
+	public void modifications_and_deletes_of_the_same_day_are_both_applied() throws Exception {
+		
+		File indexDir = TestIndexes.createDirectory();
+		File diffDir = TestIndexes.createDirectory();
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		places.add(TestIndexes.place(42, "Deleted", CountryCode.US, 0, 38.9, -77.3));
+		
+		TestIndexes.write(indexDir, places);
+		
+		File modifications = new File(diffDir, "modifications-2013-06-01.txt");
+		File deletes = new File(diffDir, "deletes-2013-06-01.txt");
+		
+		write(modifications, 
+			"4781530\tReston\tReston\tReston\t38.96872\t-77.3411\tP\tPPL\tUS\t\tVA\t059\t\t\t"
+			+ "58404\t100\t102\tAmerica/New_York\t2011-05-14\n"
+			+ "not a record\n");
+		
+		write(deletes, "42\tDeleted\tno longer exists\n");
+		
+		// The updater's writer stays open until the JVM exits, so the
+		// directories are left for it to close.
+		new GeonamesIndexUpdater(new String[]{ 
+			indexDir.getPath(), modifications.getPath(), deletes.getPath() });
+		
+		FSDirectory directory = FSDirectory.open(indexDir);
+		DirectoryReader reader = DirectoryReader.open(directory);
+		
+		try {
+			
+			IndexSearcher searcher = new IndexSearcher(reader);
+			
+			assertEquals(1, searcher.search(new TermQuery(LuceneUtils.getPlaceIdTerm(4781530)), 1).totalHits);
+			assertEquals(0, searcher.search(new TermQuery(LuceneUtils.getPlaceIdTerm(42)), 1).totalHits);
+			
+			assertEquals("2013-06-01:deletes", 
+				reader.getIndexCommit().getUserData().get(IndexBuilder.COMMIT_GAZETTEER_VERSION));
+		}
+		finally {
+			
+			reader.close();
+			directory.close();
+		}
+	}
+	
+	@Test
+	public void only_the_alternate_names_of_modified_places_are_loaded() throws Exception {
+		
+		File diffDir = TestIndexes.createDirectory();
+		
+		File modifications = new File(diffDir, "modifications-2013-06-01.txt");
+		File deletes = new File(diffDir, "deletes-2013-06-01.txt");
+		File table = new File(diffDir, "alternateNames.txt");
+		
+		write(modifications, "4781530\tReston\tReston\tReston\t38.96872\t-77.3411\n");
+		write(deletes, "42\tDeleted\tno longer exists\n");
+		write(table, 
+			"1\t4781530\tde\tReston (Virginia)\t1\t\t\t\t\t\n"
+			+ "2\t42\tde\tDeleted\t\t\t\t\t\t\n"
+			+ "3\t4781530\tlink\thttp://en.wikipedia.org/wiki/Reston\t\t\t\t\t\t\n"
+			+ "4\t4781530\tes\tReston\t\t\t\t\t\t\n");
+		
+		List<DiffFile> diffFiles = new ArrayList<DiffFile>();
+		
+		diffFiles.add(DiffFile.parse(modifications.getPath()));
+		diffFiles.add(DiffFile.parse(deletes.getPath()));
+		
+		Set<Integer> placeIds = GeonamesIndexUpdater.getModifiedPlaceIds(diffFiles);
+		
+		assertEquals(Collections.singleton(4781530), placeIds);
+		
+		Map<Integer, List<AlternateName>> names = 
+			GeonamesIndexUpdater.loadAlternateNames(table.getPath(), placeIds);
+		
+		assertEquals(1, names.size());
+		assertEquals(2, names.get(4781530).size());
+		assertEquals("Reston (Virginia)", names.get(4781530).get(0).getName());
+		assertTrue(names.get(4781530).get(0).isPreferred());
+		assertEquals("es", names.get(4781530).get(1).getLanguage());
+		
+		TestIndexes.delete(diffDir);
+	}
+	
+	static void write(File file, String text) throws Exception {
+		
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		
+		try {
+			
+			writer.write(text);
+		}
+		finally {
+			
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexShardsTest.java
+ * 
+ *###################################################################*/
+
+
+public class IndexShardsTest {
+	
+	File indexDir;
+	
+	@Before
+	public void setUp() throws IOException {
+		
+		indexDir = TestIndexes.createDirectory();
+	}
+	
+	@After
+	public void tearDown() {
+		
+		TestIndexes.delete(indexDir);
+	}
+	
+	@Test
+	public void places_are_in_the_shard_of_their_country() {
+		
+		IndexShards shards = new IndexShards(4, IndexShards.BY_COUNTRY);
+		
+		for (CountryCode country : Arrays.asList(CountryCode.US, CountryCode.FR, CountryCode.JP)){
+			
+			Place place = TestIndexes.place(1, "Place", country, 0, 0, 0);
+			
+			assertEquals(shards.getShard(country), shards.getShard(place));
+		}
+	}
+	
+	@Test
+	public void countries_are_routed_to_their_shards_in_order() {
+		
+		IndexShards shards = new IndexShards(4, IndexShards.BY_COUNTRY);
+		
+		int us = shards.getShard(CountryCode.US);
+		int fr = shards.getShard(CountryCode.FR);
+		
+		int[] expected = (us == fr)? new int[]{ us } : new int[]{ Math.min(us, fr), Math.max(us, fr) };
+		
+		assertArrayEquals(expected, shards.getShards(Arrays.asList(CountryCode.US, CountryCode.FR)));
+		assertArrayEquals(expected, shards.getShards(Arrays.asList(CountryCode.FR, CountryCode.US, CountryCode.FR)));
+	}
+	
+	@Test
+	public void every_shard_is_searched_without_countries_or_when_sharded_by_hash() {
+		
+		IndexShards byCountry = new IndexShards(4, IndexShards.BY_COUNTRY);
+		IndexShards byHash = new IndexShards(4, IndexShards.BY_HASH);
+		
+		assertNull(byCountry.getShards(null));
+		assertNull(byCountry.getShards(Collections.<CountryCode>emptyList()));
+		assertNull(byHash.getShards(Arrays.asList(CountryCode.US)));
+	}
+	
+	@Test
+	public void the_layout_is_read_from_the_first_shard() throws Exception {
+		
+		assertNull(IndexShards.read(indexDir));
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		places.add(TestIndexes.place(1, "Reston", CountryCode.US, 0, 38.9, -77.3));
+		places.add(TestIndexes.place(2, "Paris", CountryCode.FR, 0, 48.9, 2.3));
+		
+		TestIndexes.writeShards(indexDir, new IndexShards(3, IndexShards.BY_COUNTRY), places);
+		
+		IndexShards shards = IndexShards.read(indexDir);
+		
+		assertEquals(3, shards.getCount());
+		assertEquals(IndexShards.BY_COUNTRY, shards.getBy());
+	}
+	
+	@Test(expected = IOException.class)
+	public void shards_without_a_layout_cannot_be_read() throws Exception {
+		
+		TestIndexes.write(
+			IndexShards.getShardDirectory(indexDir, 0), new ArrayList<Place>());
+		
+		IndexShards.read(indexDir);
+	}
+}
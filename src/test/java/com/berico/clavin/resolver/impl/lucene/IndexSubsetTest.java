@@ -0,0 +1,180 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * IndexSubsetTest.java
+ * 
+ *###################################################################*/
+
+public class IndexSubsetTest {
+	
+	static Place place(CountryCode country, FeatureCode code, long population, double lat, double lon){
+		
+		Place place = new Place();
+		
+		place.setPrimaryCountryCode(country);
+		place.setFeatureClass(code.featureClass);
+		place.setFeatureCode(code);
+		place.setPopulation(population);
+		place.setCenter(new LatLon(lat, lon));
+		place.setAlternateNames(new ArrayList<String>(Arrays.asList("a", "b", "c")));
+		
+		return place;
+	}
+	
+	static AlternateName name(String name, boolean preferred, boolean historic){
+		
+		AlternateName alternateName = new AlternateName(name, "en");
+		
+		alternateName.setPreferred(preferred);
+		alternateName.setHistoric(historic);
+		
+		return alternateName;
+	}
+	
+	Place reston = place(CountryCode.US, FeatureCode.PPL, 58404, 38.96872, -77.3411);
+	Place kabul = place(CountryCode.AF, FeatureCode.PPLC, 3043532, 34.52813, 69.17233);
+	Place fiji = place(CountryCode.FJ, FeatureCode.ISL, 0, -16.5, 179.5);
+	Place virginia = place(CountryCode.US, FeatureCode.ADM1, 8001024, 37.54812, -77.44675);
+	
+	@Test
+	public void an_empty_subset_accepts_everything() {
+		
+		IndexSubset subset = new IndexSubset();
+		
+		assertTrue(subset.isEverything());
+		assertTrue(subset.accepts(reston));
+		assertTrue(subset.accepts(fiji));
+		assertTrue(subset.getCommitData().isEmpty());
+	}
+	
+	@Test
+	public void places_without_a_population_are_only_dropped_by_a_minimum() {
+		
+		Place unknown = place(CountryCode.US, FeatureCode.PPL, Place.OUT_OF_BOUNDS, 38.9, -77.3);
+		
+		IndexSubset subset = new IndexSubset();
+		
+		assertTrue(subset.accepts(unknown));
+		
+		subset.setMinPopulation(1);
+		
+		assertFalse(subset.accepts(unknown));
+	}
+	
+	@Test
+	public void places_must_pass_every_restriction() {
+		
+		IndexSubset subset = new IndexSubset();
+		
+		subset.setCountries(Arrays.asList(CountryCode.US, CountryCode.AF));
+		
+		assertTrue(subset.accepts(reston));
+		assertFalse(subset.accepts(fiji));
+		
+		// Feature classes and codes are alternatives.
+		subset.setFeatureTypes(Collections.singleton(FeatureClass.A), Collections.singleton(FeatureCode.PPLC));
+		
+		assertFalse(subset.accepts(reston));
+		assertTrue(subset.accepts(kabul));
+		assertTrue(subset.accepts(virginia));
+		
+		subset.setMinPopulation(5000000);
+		
+		assertFalse(subset.accepts(kabul));
+		assertTrue(subset.accepts(virginia));
+	}
+	
+	@Test
+	public void bounding_boxes_may_cross_the_antimeridian() {
+		
+		IndexSubset subset = new IndexSubset();
+		
+		subset.setBoundingBox(36, -80, 40, -75);
+		
+		assertTrue(subset.accepts(reston));
+		assertFalse(subset.accepts(kabul));
+		
+		subset.setBoundingBox(-20, 175, -10, -175);
+		
+		assertTrue(subset.accepts(fiji));
+		assertFalse(subset.accepts(reston));
+	}
+	
+	@Test
+	public void alternate_names_are_capped_keeping_preferred_names() {
+		
+		IndexSubset subset = new IndexSubset();
+		
+		subset.setMaxAlternateNames(2);
+		
+		subset.trimAlternateNames(reston);
+		
+		assertEquals(Arrays.asList("a", "b"), reston.getAlternateNames());
+		
+		List<AlternateName> names = Arrays.asList(
+			name("Old", false, true), name("Plain", false, false), name("Official", true, false));
+		
+		List<AlternateName> kept = subset.trimAlternateNames(names);
+		
+		assertEquals(2, kept.size());
+		assertEquals("Official", kept.get(0).getName());
+		assertEquals("Plain", kept.get(1).getName());
+	}
+	
+	@Test
+	public void subsets_are_read_back_from_commit_data() {
+		
+		IndexSubset subset = new IndexSubset();
+		
+		subset.setCountries(Arrays.asList(CountryCode.US, CountryCode.CA));
+		subset.setFeatureTypes(Collections.singleton(FeatureClass.P), Collections.<FeatureCode>emptySet());
+		subset.setMinPopulation(1000);
+		subset.setBoundingBox(24.5, -125, 49.5, -66.9);
+		subset.setMaxAlternateNames(10);
+		
+		IndexSubset read = IndexSubset.fromCommitData(subset.getCommitData());
+		
+		assertEquals(subset.getCommitData(), read.getCommitData());
+		assertTrue(read.accepts(reston));
+		assertFalse(read.accepts(virginia));
+	}
+}
@@ -0,0 +1,164 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LuceneComponentsTest.java
+ * 
+ *###################################################################*/
+
+
+public class LuceneComponentsTest {
+	
+	File indexDir;
+	
+	IndexShards shards = new IndexShards(3, IndexShards.BY_COUNTRY);
+	
+	LuceneComponentsFactory factory;
+	
+	@Before
+	public void setUp() throws IOException {
+		
+		indexDir = TestIndexes.createDirectory();
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		places.add(TestIndexes.place(1, "Reston", CountryCode.US, 0, 38.9, -77.3));
+		places.add(TestIndexes.place(2, "Paris", CountryCode.FR, 0, 48.9, 2.3));
+		places.add(TestIndexes.place(3, "Osaka", CountryCode.JP, 0, 34.7, 135.5));
+		
+		TestIndexes.writeShards(indexDir, shards, places);
+		
+		factory = new LuceneComponentsFactory(indexDir.getPath()).initializeSearcher();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		
+		factory.getSearcherManager().close();
+		factory.getIndexSearcher().getIndexReader().close();
+		
+		for (FSDirectory directory : factory.shardDirectories) directory.close();
+		
+		TestIndexes.delete(indexDir);
+	}
+	
+	int countSearched(LuceneComponents lucene, Options options) throws IOException {
+		
+		IndexSearcher searcher = lucene.acquireSearcher(options);
+		
+		try {
+			
+			return searcher.getIndexReader().numDocs();
+		}
+		finally {
+			
+			lucene.releaseSearcher(searcher);
+		}
+	}
+	
+	@Test
+	public void searches_are_routed_to_the_shards_of_the_hinted_countries() throws Exception {
+		
+		LuceneComponents lucene = factory.getComponents();
+		
+		Options options = new Options();
+		
+		assertEquals(3, countSearched(lucene, options));
+		
+		LuceneComponentsFactory.configureCountryHint(options, CountryCode.US);
+		
+		IndexSearcher searcher = lucene.acquireSearcher(options);
+		
+		try {
+			
+			assertEquals(1, searcher.getIndexReader().getContext().children().size());
+			assertEquals(1, searcher.search(
+				new TermQuery(LuceneUtils.getPlaceIdTerm(1)), 1).totalHits);
+		}
+		finally {
+			
+			lucene.releaseSearcher(searcher);
+		}
+	}
+	
+	@Test
+	public void hinted_codes_are_case_insensitive_and_unknown_ones_are_ignored() throws Exception {
+		
+		assertEquals(Arrays.asList(CountryCode.US, CountryCode.FR), 
+			LuceneComponents.getHintedCountries("us, XX,FR,"));
+		
+		assertTrue(LuceneComponents.getHintedCountries("nowhere").isEmpty());
+		
+		LuceneComponents lucene = factory.getComponents();
+		
+		Options options = new Options();
+		
+		options.put(LuceneComponentsFactory.KEY_COUNTRY_HINT, "nowhere");
+		
+		assertEquals(3, countSearched(lucene, options));
+	}
+	
+	@Test
+	public void the_factorys_searcher_neither_pins_nor_changes_the_managed_ones() throws Exception {
+		
+		ReferenceManager<IndexSearcher> manager = factory.getSearcherManager();
+		
+		IndexSearcher managed = manager.acquire();
+		
+		try {
+			
+			// the manager's reference and this one.
+			assertEquals(2, managed.getIndexReader().getRefCount());
+			
+			assertNotSame(managed, factory.getIndexSearcher());
+			assertTrue(factory.getIndexSearcher().getSimilarity() instanceof BinarySimilarity);
+			assertFalse(managed.getSimilarity() instanceof BinarySimilarity);
+		}
+		finally {
+			
+			manager.release(managed);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.CoordinateOccurrence;
+import com.berico.clavin.extractor.coords.LatLonOccurrence;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.ResolvedCoordinate;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LuceneCoordinateIndexTest.java
+ * 
+ *###################################################################*/
+
+public class LuceneCoordinateIndexTest {
+	
+	File indexDir;
+	
+	LuceneComponentsFactory factory;
+	
+	@Before
+	public void setUp() throws IOException {
+		
+		indexDir = TestIndexes.createDirectory();
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		
+		if (factory != null) factory.getIndex().close();
+		
+		TestIndexes.delete(indexDir);
+	}
+	
+	static Place place(int id, double latitude, double longitude){
+		
+		return TestIndexes.place(id, "Place " + id, CountryCode.NULL, 0, latitude, longitude);
+	}
+	
+	/**
+	 * Index the places (in order) and open a coordinate index over them.
+	 */
+	LuceneCoordinateIndex index(List<Place> places) throws IOException {
+		
+		TestIndexes.write(indexDir, places);
+		
+		factory = new LuceneComponentsFactory(indexDir.getPath()).initializeSearcher();
+		
+		return new LuceneCoordinateIndex(factory.getComponents());
+	}
+	
+	static List<Integer> getIds(List<ResolvedCoordinate> candidates){
+		
+		List<Integer> ids = new ArrayList<Integer>();
+		
+		for (ResolvedCoordinate candidate : candidates) ids.add(candidate.getKnownLocation().getId());
+		
+		return ids;
+	}
+	
+	@Test
+	public void a_sparse_coordinate_gets_its_candidates_next_to_a_dense_one() throws Exception {
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		// Ten places near the dense coordinate (0, 0), indexed first...
+		for (int i = 0; i < 10; i++) places.add(place(i, 0, -0.01 * i));
+		
+		// ...and two near the sparse one (0, 0.3), 33 km away, indexed last.
+		places.add(place(100, 0, 0.35));
+		places.add(place(101, 0, 0.36));
+		
+		LuceneCoordinateIndex coordinateIndex = index(places);
+		
+		List<CoordinateOccurrence<?>> coordinates = new ArrayList<CoordinateOccurrence<?>>();
+		
+		coordinates.add(new LatLonOccurrence(0, "0, 0", new LatLon(0, 0)));
+		coordinates.add(new LatLonOccurrence(10, "0, 0.3", new LatLon(0, 0.3)));
+		
+		Options options = new Options();
+		
+		// Both are searched 20 km around, so they are searched as a cluster.
+		LuceneCoordinateIndex.configureLookupDistance(options, 20);
+		LuceneCoordinateIndex.configureLimit(options, 3);
+		
+		List<List<ResolvedCoordinate>> candidates = coordinateIndex.searchAll(coordinates, options);
+		
+		assertEquals(3, candidates.get(0).size());
+		assertEquals(Arrays.asList(100, 101), getIds(candidates.get(1)));
+		
+		// The same as searching for each on its own.
+		assertEquals(getIds(coordinateIndex.search(coordinates.get(0), options)), getIds(candidates.get(0)));
+		assertEquals(getIds(coordinateIndex.search(coordinates.get(1), options)), getIds(candidates.get(1)));
+	}
+	
+	@Test
+	public void a_zero_radius_is_still_widened_until_candidates_are_found() throws Exception {
+		
+		LuceneCoordinateIndex coordinateIndex = index(Arrays.asList(place(1, 0, 0.05)));
+		
+		// An exact coordinate, searched zero km around at first.
+		CoordinateOccurrence<?> coordinate = new LatLonOccurrence(0, "0, 0", new LatLon(0, 0));
+		
+		Options options = new Options();
+		
+		LuceneCoordinateIndex.configureMinLookupDistance(options, 0);
+		LuceneCoordinateIndex.configurePrecisionMultiplier(options, 0);
+		
+		assertEquals(Arrays.asList(1), getIds(coordinateIndex.search(coordinate, options)));
+		
+		// Nor does a max radius of zero search forever.
+		LuceneCoordinateIndex.configureLookupDistance(options, 0);
+		
+		assertTrue(coordinateIndex.search(coordinate, options).isEmpty());
+	}
+}
@@ -0,0 +1,242 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.LocationOccurrence;
+import com.berico.clavin.gazetteer.AlternateName;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LuceneLocationNameIndexTest.java
+ * 
+ *###################################################################*/
+
+public class LuceneLocationNameIndexTest {
+	
+	File indexDir;
+	
+	@Before
+	public void setUp() throws IOException {
+		
+		indexDir = TestIndexes.createDirectory();
+	}
+	
+	@After
+	public void tearDown() {
+		
+		TestIndexes.delete(indexDir);
+	}
+	
+	/**
+	 * Index the places (in order) and search for the name.
+	 * @return Ids of the places found, in the order found.
+	 */
+	List<Integer> search(List<Place> places, String name) throws Exception {
+		
+		TestIndexes.delete(indexDir);
+		TestIndexes.write(indexDir, places);
+		
+		return search(name, new Options());
+	}
+	
+	/**
+	 * Search the index for the name.
+	 * @return Ids of the places found, in the order found.
+	 */
+	List<Integer> search(String name, Options options) throws Exception {
+		
+		LuceneComponentsFactory factory = 
+			new LuceneComponentsFactory(indexDir.getPath()).initializeSearcher();
+		
+		try {
+			
+			List<ResolvedLocation> locations = new LuceneLocationNameIndex(factory.getComponents())
+				.search(new LocationOccurrence(name, 0), options);
+			
+			List<Integer> ids = new ArrayList<Integer>();
+			
+			for (ResolvedLocation location : locations) ids.add(location.getPlace().getId());
+			
+			return ids;
+		}
+		finally {
+			
+			factory.getIndex().close();
+		}
+	}
+	
+	/**
+	 * Index a place with its language-tagged names.
+	 */
+	void write(Place place, List<AlternateName> alternateNames) throws IOException {
+		
+		LuceneComponentsFactory factory = 
+			new LuceneComponentsFactory(indexDir.getPath()).initializeWriter();
+		
+		IndexWriter writer = factory.getIndexWriter();
+		
+		writer.addDocument(new PlaceDocumentBuilder(
+			factory.getSpatialContext(), factory.getSpatialStrategy()).build(place, alternateNames));
+		
+		writer.close();
+		
+		factory.getIndex().close();
+	}
+	
+	/**
+	 * Index the places in slim shards (by country), each recording the layout.
+	 */
+	void writeSlimShards(IndexShards shards, List<Place> places) throws IOException {
+		
+		for (int i = 0; i < shards.getCount(); i++){
+			
+			LuceneComponentsFactory factory = new LuceneComponentsFactory(
+				IndexShards.getShardDirectory(indexDir, i).getPath()).initializeWriter();
+			
+			IndexWriter writer = factory.getIndexWriter();
+			
+			PlaceDocumentBuilder builder = new PlaceDocumentBuilder(
+				factory.getSpatialContext(), factory.getSpatialStrategy(), PlaceDocumentBuilder.SCHEMA_SLIM);
+			
+			for (Place place : places){
+				
+				if (shards.getShard(place) == i) writer.addDocument(builder.build(place));
+			}
+			
+			writer.setCommitData(shards.getCommitData());
+			
+			writer.close();
+			
+			factory.getIndex().close();
+		}
+	}
+	
+	@Test
+	public void the_schema_is_that_of_the_shards_being_searched() throws Exception {
+		
+		IndexShards shards = new IndexShards(2, IndexShards.BY_COUNTRY);
+		
+		writeSlimShards(shards, Arrays.asList(
+			TestIndexes.place(1, "Reston", CountryCode.US, 58404, 38.9, -77.3)));
+		
+		// a country in the shard without any places
+		CountryCode elsewhere = null;
+		
+		for (CountryCode country : CountryCode.values()){
+			
+			if (shards.getShard(country) != shards.getShard(CountryCode.US)){
+				
+				elsewhere = country;
+				
+				break;
+			}
+		}
+		
+		LuceneComponentsFactory factory = 
+			new LuceneComponentsFactory(indexDir.getPath()).initializeSearcher();
+		
+		try {
+			
+			LuceneLocationNameIndex index = new LuceneLocationNameIndex(factory.getComponents());
+			
+			Options routed = new Options();
+			
+			LuceneComponentsFactory.configureCountryHint(routed, elsewhere);
+			
+			// the empty shard has no whole-name terms...
+			assertTrue(index.search(new LocationOccurrence("Reston", 0), routed).isEmpty());
+			
+			// ...but the slim index still gets searched for them, not with a phrase
+			List<ResolvedLocation> locations = 
+				index.search(new LocationOccurrence("Reston", 0), new Options());
+			
+			assertEquals(1, locations.size());
+			assertEquals(1, locations.get(0).getPlace().getId());
+		}
+		finally {
+			
+			factory.getSearcherManager().close();
+			factory.getIndexSearcher().getIndexReader().close();
+			
+			for (FSDirectory directory : factory.shardDirectories) directory.close();
+		}
+	}
+	
+	@Test
+	public void ties_are_ordered_by_place_id_whatever_the_document_order() throws Exception {
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		places.add(TestIndexes.place(3, "Springfield", CountryCode.US, 1000, 39.8, -89.6));
+		places.add(TestIndexes.place(1, "Springfield", CountryCode.US, 1000, 42.1, -72.5));
+		places.add(TestIndexes.place(4, "Springfield", CountryCode.US, 5000, 37.2, -93.3));
+		places.add(TestIndexes.place(2, "Springfield", CountryCode.US, 1000, 44.0, -123.0));
+		
+		List<Integer> expected = Arrays.asList(4, 1, 2, 3);
+		
+		assertEquals(expected, search(places, "Springfield"));
+		
+		Collections.reverse(places);
+		
+		assertEquals(expected, search(places, "Springfield"));
+	}
+	
+	@Test
+	public void fuzzy_names_of_several_words_only_match_the_languages_asked_for() throws Exception {
+		
+		write(TestIndexes.place(1, "Sin Nombre", CountryCode.US, 1000, 40.7, -74.0), Arrays.asList(
+			new AlternateName("New Amsterdam", "en"),
+			new AlternateName("Nueva York", "es")));
+		
+		Options options = new Options();
+		
+		LuceneLocationNameIndex.configureUseFuzzy(options, true);
+		LuceneLocationNameIndex.configureLanguages(options, "en");
+		
+		// "yorx~" would match the Spanish name if only "nueva" were restricted
+		assertEquals(Collections.<Integer>emptyList(), search("Nueva Yorx", options));
+		
+		LuceneLocationNameIndex.configureLanguages(options, "es");
+		
+		assertEquals(Arrays.asList(1), search("Nueva Yorx", options));
+	}
+}
@@ -0,0 +1,51 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * LuceneUtilsTest.java
+ * 
+ *###################################################################*/
+
+public class LuceneUtilsTest {
+
+	@Test
+	public void normalizeName_lower_cases_and_collapses_whitespace() {
+		
+		assertEquals("new york", LuceneUtils.normalizeName("  New \t York "));
+		assertEquals("são paulo", LuceneUtils.normalizeName("São Paulo"));
+		assertEquals("", LuceneUtils.normalizeName(" "));
+	}
+	
+	@Test
+	public void language_fields_are_derived_from_the_name_field() {
+		
+		assertEquals("indexName_zh_cn", LuceneUtils.getLanguageNameField("zh-CN"));
+		assertEquals("exactName_de", LuceneUtils.getLanguageNameField(FieldConstants.EXACT_NAME, "de"));
+	}
+}
@@ -0,0 +1,79 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SegmentParallelIndexSearcherTest.java
+ * 
+ *###################################################################*/
+
+public class SegmentParallelIndexSearcherTest {
+
+	@Test
+	public void term_and_phrase_queries_are_exact_lookups() {
+		
+		PhraseQuery phrase = new PhraseQuery();
+		phrase.add(new Term(FieldConstants.NAME, "new"));
+		phrase.add(new Term(FieldConstants.NAME, "york"));
+		
+		assertTrue(SegmentParallelIndexSearcher.isExactLookup(
+			new TermQuery(new Term(FieldConstants.NAME, "boston"))));
+		
+		assertTrue(SegmentParallelIndexSearcher.isExactLookup(phrase));
+	}
+	
+	@Test
+	public void expanded_boolean_queries_are_not_exact_lookups() {
+		
+		// This is what a fuzzy query looks like once rewritten.
+		BooleanQuery expanded = new BooleanQuery();
+		expanded.add(new TermQuery(new Term(FieldConstants.NAME, "boston")), Occur.SHOULD);
+		expanded.add(new TermQuery(new Term(FieldConstants.NAME, "bostan")), Occur.SHOULD);
+		
+		assertFalse(SegmentParallelIndexSearcher.isExactLookup(expanded));
+	}
+	
+	@Test
+	public void filtered_queries_are_not_exact_lookups() {
+		
+		FilteredQuery filtered = new FilteredQuery(
+			new MatchAllDocsQuery(), 
+			new QueryWrapperFilter(new TermQuery(new Term(FieldConstants.NAME, "boston"))));
+		
+		assertFalse(SegmentParallelIndexSearcher.isExactLookup(filtered));
+		assertFalse(SegmentParallelIndexSearcher.isExactLookup(new MatchAllDocsQuery()));
+	}
+}
@@ -0,0 +1,267 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ShardedSearcherManagerTest.java
+ * 
+ *###################################################################*/
+
+
+public class ShardedSearcherManagerTest {
+	
+	static final List<CountryCode> COUNTRIES = Arrays.asList(
+		CountryCode.US, CountryCode.FR, CountryCode.JP, CountryCode.BR, CountryCode.ZA, CountryCode.AU);
+	
+	File indexDir;
+	
+	IndexShards shards = new IndexShards(3, IndexShards.BY_COUNTRY);
+	
+	Directory[] directories;
+	
+	ShardedSearcherManager manager;
+	
+	@Before
+	public void setUp() throws IOException {
+		
+		indexDir = TestIndexes.createDirectory();
+		
+		List<Place> places = new ArrayList<Place>();
+		
+		for (int i = 0; i < COUNTRIES.size(); i++)
+			places.add(TestIndexes.place(i + 1, "Place " + i, COUNTRIES.get(i), 0, 0, 0));
+		
+		TestIndexes.writeShards(indexDir, shards, places);
+		
+		directories = new Directory[shards.getCount()];
+		
+		for (int i = 0; i < directories.length; i++)
+			directories[i] = FSDirectory.open(IndexShards.getShardDirectory(indexDir, i));
+		
+		manager = new ShardedSearcherManager(shards, directories, null);
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		
+		manager.close();
+		
+		for (Directory directory : directories) directory.close();
+		
+		TestIndexes.delete(indexDir);
+	}
+	
+	/**
+	 * Count the places indexed in the shards of the countries.
+	 */
+	int countPlaces(CountryCode... countries){
+		
+		int[] routed = shards.getShards(Arrays.asList(countries));
+		
+		int count = 0;
+		
+		for (CountryCode country : COUNTRIES){
+			
+			if (Arrays.binarySearch(routed, shards.getShard(country)) >= 0) count++;
+		}
+		
+		return count;
+	}
+	
+	static List<IndexReader> getShardReaders(IndexSearcher searcher){
+		
+		List<IndexReader> readers = new ArrayList<IndexReader>();
+		
+		for (IndexReaderContext child : searcher.getIndexReader().getContext().children())
+			readers.add(child.reader());
+		
+		return readers;
+	}
+	
+	static int[] getRefCounts(List<IndexReader> readers){
+		
+		int[] refCounts = new int[readers.size()];
+		
+		for (int i = 0; i < refCounts.length; i++) refCounts[i] = readers.get(i).getRefCount();
+		
+		return refCounts;
+	}
+	
+	@Test
+	public void searchers_cover_every_shard_unless_routed() throws Exception {
+		
+		IndexSearcher searcher = manager.acquire();
+		
+		try {
+			
+			assertEquals(shards.getCount(), getShardReaders(searcher).size());
+			assertEquals(COUNTRIES.size(), searcher.getIndexReader().numDocs());
+		}
+		finally {
+			
+			manager.release(searcher);
+		}
+		
+		searcher = manager.acquire(Collections.<CountryCode>emptyList());
+		
+		try {
+			
+			assertEquals(COUNTRIES.size(), searcher.getIndexReader().numDocs());
+		}
+		finally {
+			
+			manager.release(searcher);
+		}
+	}
+	
+	@Test
+	public void routed_searchers_only_cover_the_shards_of_their_countries() throws Exception {
+		
+		for (CountryCode country : COUNTRIES){
+			
+			IndexSearcher searcher = manager.acquire(Arrays.asList(country));
+			
+			try {
+				
+				assertEquals(countPlaces(country), searcher.getIndexReader().numDocs());
+			}
+			finally {
+				
+				manager.release(searcher);
+			}
+		}
+	}
+	
+	@Test
+	public void acquiring_and_releasing_leaves_the_reference_counts_as_they_were() throws Exception {
+		
+		IndexSearcher current = manager.acquire();
+		
+		manager.release(current);
+		
+		List<IndexReader> shardReaders = getShardReaders(current);
+		
+		int refCount = manager.getRefCount(current);
+		int[] shardRefCounts = getRefCounts(shardReaders);
+		
+		assertEquals(1, refCount);
+		
+		IndexSearcher searcher = manager.acquire();
+		IndexSearcher routed = manager.acquire(Arrays.asList(CountryCode.US));
+		
+		assertEquals(refCount + 1, manager.getRefCount(current));
+		
+		manager.release(routed);
+		manager.release(searcher);
+		
+		assertEquals(refCount, manager.getRefCount(current));
+		assertArrayEquals(shardRefCounts, getRefCounts(shardReaders));
+		
+		// A routed searcher is closed when released.
+		assertEquals(0, routed.getIndexReader().getRefCount());
+	}
+	
+	@Test
+	public void refreshing_only_reopens_the_changed_shards() throws Exception {
+		
+		IndexSearcher before = manager.acquire();
+		
+		List<IndexReader> readersBefore;
+		
+		try {
+			
+			readersBefore = getShardReaders(before);
+		}
+		finally {
+			
+			manager.release(before);
+		}
+		
+		assertTrue(manager.maybeRefresh());
+		
+		IndexSearcher unchanged = manager.acquire();
+		
+		try {
+			
+			assertSame(before, unchanged);
+		}
+		finally {
+			
+			manager.release(unchanged);
+		}
+		
+		int changed = shards.getShard(CountryCode.US);
+		
+		TestIndexes.write(
+			IndexShards.getShardDirectory(indexDir, changed), 
+			Arrays.asList(TestIndexes.place(100, "Reston", CountryCode.US, 0, 38.9, -77.3)),
+			shards.getCommitData());
+		
+		assertTrue(manager.maybeRefresh());
+		
+		IndexSearcher after = manager.acquire();
+		
+		try {
+			
+			List<IndexReader> readersAfter = getShardReaders(after);
+			
+			for (int i = 0; i < shards.getCount(); i++){
+				
+				if (i == changed) assertNotSame(readersBefore.get(i), readersAfter.get(i));
+				else assertSame(readersBefore.get(i), readersAfter.get(i));
+			}
+			
+			assertEquals(COUNTRIES.size() + 1, after.getIndexReader().numDocs());
+		}
+		finally {
+			
+			manager.release(after);
+		}
+		
+		// The old searcher was released along with its reopened shard.
+		assertEquals(0, before.getIndexReader().getRefCount());
+		assertEquals(0, readersBefore.get(changed).getRefCount());
+	}
+}
@@ -0,0 +1,171 @@
+package com.berico.clavin.resolver.impl.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexWriter;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.FeatureClass;
+import com.berico.clavin.gazetteer.FeatureCode;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * TestIndexes.java
+ * 
+ *###################################################################*/
+
+/**
+ * Helpers for tests that need a small index on disk.
+ */
+class TestIndexes {
+	
+	/**
+	 * Create an empty temporary directory.
+	 * @return Directory (remove it with delete).
+	 * @throws IOException
+	 */
+	static File createDirectory() throws IOException {
+		
+		File directory = File.createTempFile("clavin", "index");
+		
+		directory.delete();
+		directory.mkdirs();
+		
+		return directory;
+	}
+	
+	/**
+	 * Delete a file or directory (and everything in it).
+	 * @param file File or directory.
+	 */
+	static void delete(File file){
+		
+		File[] children = file.listFiles();
+		
+		if (children != null) for (File child : children) delete(child);
+		
+		file.delete();
+	}
+	
+	/**
+	 * Create a populated place.
+	 * @param id Geonames id.
+	 * @param name Name.
+	 * @param country Primary country.
+	 * @param population Population.
+	 * @param latitude Latitude.
+	 * @param longitude Longitude.
+	 * @return Place
+	 */
+	static Place place(
+			int id, String name, CountryCode country, long population, double latitude, double longitude){
+		
+		Place place = new Place();
+		
+		place.setId(id);
+		place.setName(name);
+		place.setAsciiName(name);
+		place.setAlternateNames(new ArrayList<String>());
+		place.setCenter(new LatLon(latitude, longitude));
+		place.setFeatureClass(FeatureClass.P);
+		place.setFeatureCode(FeatureCode.PPL);
+		place.setPrimaryCountryCode(country);
+		place.setAlternateCountryCodes(new ArrayList<CountryCode>());
+		place.setPopulation(population);
+		
+		return place;
+	}
+	
+	/**
+	 * Index the places (in order, in a single segment) in the directory.
+	 * @param directory Index directory.
+	 * @param places Places to index.
+	 * @throws IOException
+	 */
+	static void write(File directory, List<Place> places) throws IOException {
+		
+		write(directory, places, new HashMap<String, String>());
+	}
+	
+	/**
+	 * Index the places (in order, in a single segment) in the directory,
+	 * committing them with the user data.  Places are added to any already
+	 * in the directory.
+	 * @param directory Index directory.
+	 * @param places Places to index.
+	 * @param commitData Commit user data.
+	 * @throws IOException
+	 */
+	static void write(File directory, List<Place> places, Map<String, String> commitData) 
+			throws IOException {
+		
+		LuceneComponentsFactory factory = 
+			new LuceneComponentsFactory(directory.getPath()).initializeWriter();
+		
+		IndexWriter writer = factory.getIndexWriter();
+		
+		PlaceDocumentBuilder builder = new PlaceDocumentBuilder(
+			factory.getSpatialContext(), factory.getSpatialStrategy());
+		
+		for (Place place : places) writer.addDocument(builder.build(place));
+		
+		if (!commitData.isEmpty()) writer.setCommitData(commitData);
+		
+		writer.close();
+		
+		factory.getIndex().close();
+	}
+	
+	/**
+	 * Index the places in the shards of a sharded index, each shard
+	 * recording the layout.
+	 * @param directory Directory of the sharded index.
+	 * @param shards Layout of the shards.
+	 * @param places Places to index.
+	 * @throws IOException
+	 */
+	static void writeShards(File directory, IndexShards shards, List<Place> places) 
+			throws IOException {
+		
+		for (int i = 0; i < shards.getCount(); i++){
+			
+			List<Place> shardPlaces = new ArrayList<Place>();
+			
+			for (Place place : places){
+				
+				if (shards.getShard(place) == i) shardPlaces.add(place);
+			}
+			
+			write(IndexShards.getShardDirectory(directory, i), shardPlaces, shards.getCommitData());
+		}
+	}
+}
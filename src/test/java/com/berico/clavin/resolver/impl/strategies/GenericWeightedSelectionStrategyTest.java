@@ -0,0 +1,159 @@
+package com.berico.clavin.resolver.impl.strategies;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GenericWeightedSelectionStrategyTest.java
+ * 
+ *###################################################################*/
+
+public class GenericWeightedSelectionStrategyTest {
+	
+	/**
+	 * Weighs candidates (indexes) with a table of weights.
+	 */
+	static class TableWeigher implements Weigher<Integer, Object> {
+		
+		final double[] weights;
+		int calls = 0;
+		
+		TableWeigher(double... weights){
+			
+			this.weights = weights;
+		}
+		
+		@Override
+		public double weigh(Integer item, Object context, Options options) {
+			
+			calls++;
+			
+			return weights[item];
+		}
+	}
+	
+	/**
+	 * Weighs candidates with a table of weights, never more than the bound.
+	 */
+	static class BoundedTableWeigher extends TableWeigher implements BoundedWeigher<Integer, Object> {
+		
+		final double maxWeight;
+		
+		BoundedTableWeigher(double maxWeight, double... weights){
+			
+			super(weights);
+			
+			this.maxWeight = maxWeight;
+		}
+		
+		@Override
+		public double getMaxWeight(Object context, Options options) {
+			
+			return maxWeight;
+		}
+	}
+	
+	static Integer select(int candidates, TableWeigher... weighers){
+		
+		List<Integer> items = new ArrayList<Integer>();
+		
+		for (int i = 0; i < candidates; i++) items.add(i);
+		
+		GenericWeightedSelectionStrategy<Integer, Object> strategy = 
+			new GenericWeightedSelectionStrategy<Integer, Object>(
+				new ArrayList<Weigher<Integer, Object>>(Arrays.asList(weighers)));
+		
+		return strategy.makeSelection(items, null, new Options());
+	}
+	
+	@Test
+	public void bounded_weighers_are_skipped_for_candidates_that_cannot_win() {
+		
+		TableWeigher distance = new TableWeigher(10, 1, 9, 2);
+		BoundedTableWeigher names = new BoundedTableWeigher(3, 0, 3, 3, 3);
+		
+		assertEquals(Integer.valueOf(2), select(4, distance, names));
+		
+		// 2 couldn't be beaten by 1 or 3 (at most 4 and 5), even with a name.
+		assertEquals(4, distance.calls);
+		assertEquals(2, names.calls);
+	}
+	
+	@Test
+	public void ties_go_to_the_earlier_candidate() {
+		
+		assertEquals(Integer.valueOf(0), 
+			select(3, new TableWeigher(1, 4, 2), new BoundedTableWeigher(3, 3, 0, 2)));
+		
+		assertEquals(Integer.valueOf(1), 
+			select(3, new TableWeigher(1, 4, 4), new BoundedTableWeigher(3, 0, 0, 0)));
+	}
+	
+	@Test
+	public void nothing_is_selected_without_a_weight_above_minus_one() {
+		
+		assertNull(select(2, new TableWeigher(0, 1), new BoundedTableWeigher(-3, -3, -3)));
+	}
+	
+	@Test
+	public void pruned_selection_is_the_same_as_weighing_every_candidate() {
+		
+		Random random = new Random(42);
+		
+		for (int trial = 0; trial < 2000; trial++){
+			
+			int candidates = 1 + random.nextInt(8);
+			
+			double[] distances = new double[candidates];
+			double[] names = new double[candidates];
+			double[] others = new double[candidates];
+			
+			for (int i = 0; i < candidates; i++){
+				
+				distances[i] = random.nextInt(6) - 2;
+				names[i] = 3 * (random.nextInt(3) - 1);
+				others[i] = random.nextInt(3);
+			}
+			
+			Integer expected = select(candidates, 
+				new TableWeigher(distances), new TableWeigher(names), new TableWeigher(others));
+			
+			Integer actual = select(candidates, 
+				new TableWeigher(distances), new BoundedTableWeigher(3, names), 
+				new BoundedTableWeigher(2, others));
+			
+			assertEquals(expected, actual);
+		}
+	}
+}
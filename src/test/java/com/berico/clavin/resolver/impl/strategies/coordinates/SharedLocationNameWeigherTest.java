@@ -0,0 +1,116 @@
+package com.berico.clavin.resolver.impl.strategies.coordinates;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.LocationOccurrence;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.ResolvedCoordinate;
+import com.berico.clavin.resolver.impl.strategies.Weigher;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SharedLocationNameWeigherTest.java
+ * 
+ *###################################################################*/
+
+public class SharedLocationNameWeigherTest {
+	
+	static ResolvedCoordinate coordinateNear(String... names){
+		
+		Place place = new Place();
+		
+		place.setAlternateNames(new ArrayList<String>(Arrays.asList(names)));
+		
+		return new ResolvedCoordinate(null, place, null);
+	}
+	
+	static List<LocationOccurrence> occurrences(String... names){
+		
+		List<LocationOccurrence> occurrences = new ArrayList<LocationOccurrence>();
+		
+		for (String name : names) occurrences.add(new LocationOccurrence(name, occurrences.size()));
+		
+		return occurrences;
+	}
+	
+	@Test
+	public void a_shared_name_is_rewarded() {
+		
+		SharedLocationNameWeigher weigher = new SharedLocationNameWeigher();
+		
+		Collection<LocationOccurrence> context = occurrences("Baghdad", "Basra");
+		
+		Weigher<ResolvedCoordinate, Collection<LocationOccurrence>> prepared = 
+			weigher.prepare(context, new Options());
+		
+		ResolvedCoordinate baghdad = coordinateNear("Bagdad", "BAGHDAD");
+		
+		assertEquals(3, weigher.weigh(baghdad, context, new Options()), 0);
+		assertEquals(3, prepared.weigh(baghdad, context, new Options()), 0);
+		
+		ResolvedCoordinate mosul = coordinateNear("Mosul");
+		
+		assertEquals(0, prepared.weigh(mosul, context, new Options()), 0);
+	}
+	
+	@Test
+	public void prepared_weights_are_the_same_as_unprepared_ones() {
+		
+		SharedLocationNameWeigher weigher = new SharedLocationNameWeigher();
+		
+		String[] words = { "York", "new york", "New York", "Newark", "ark", "YORK", "New" };
+		
+		Random random = new Random(42);
+		
+		for (int test = 0; test < 500; test++){
+			
+			String[] names = new String[random.nextInt(4)];
+			
+			for (int i = 0; i < names.length; i++) names[i] = words[random.nextInt(words.length)];
+			
+			String[] alternateNames = new String[random.nextInt(5)];
+			
+			for (int i = 0; i < alternateNames.length; i++) alternateNames[i] = words[random.nextInt(words.length)];
+			
+			Collection<LocationOccurrence> context = occurrences(names);
+			
+			ResolvedCoordinate coordinate = coordinateNear(alternateNames);
+			
+			assertEquals(
+				Arrays.toString(names) + " " + Arrays.toString(alternateNames),
+				weigher.weigh(coordinate, context, new Options()),
+				weigher.prepare(context, new Options()).weigh(coordinate, context, new Options()), 0);
+		}
+	}
+}
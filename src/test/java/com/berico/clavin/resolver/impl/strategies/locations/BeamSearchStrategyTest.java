@@ -0,0 +1,125 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import static org.junit.Assert.*;
+import static com.berico.clavin.resolver.impl.strategies.locations.ContextualOptimizationStrategyTest.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.resolver.ResolvedLocation;
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * BeamSearchStrategyTest.java
+ * 
+ *###################################################################*/
+
+public class BeamSearchStrategyTest {
+	
+	@Test
+	public void candidates_that_share_a_state_are_selected() throws Exception {
+		
+		List<ResolvedLocation> selected = 
+			new BeamSearchStrategy().select(springfieldProblem(), null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void a_narrow_beam_is_corrected_by_coordinate_descent() throws Exception {
+		
+		Options options = new Options();
+		
+		BeamSearchStrategy.configureBeamWidth(options, 1);
+		
+		List<ResolvedLocation> selected = 
+			new BeamSearchStrategy().select(springfieldProblem(), null, options);
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void a_whole_document_is_resolved_in_one_window() throws Exception {
+		
+		Options options = new Options();
+		
+		ContextualOptimizationStrategy.configureMaxContextWindow(options, 300);
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		// 300 places named in both Massachusetts and England, and one only in
+		// Massachusetts; only a single window can see they're all in Massachusetts.
+		for (int i = 0; i < 100; i++) candidates.addAll(springfieldProblem().subList(1, 3));
+		
+		for (int i = 0; i < 100; i++){
+			
+			candidates.add(Arrays.asList(
+				candidate("Place" + i, CountryCode.GB, "ENG", 1000, 0, 0),
+				candidate("Place" + i, CountryCode.US, "MA", 100, 0, 0)));
+		}
+		
+		candidates.add(Arrays.asList(candidate("Boston", CountryCode.US, "MA", 617594, 0, 0)));
+		
+		List<ResolvedLocation> selected = new BeamSearchStrategy().select(candidates, null, options);
+		
+		assertEquals(301, selected.size());
+		
+		for (ResolvedLocation location : selected){
+			
+			assertEquals("MA", location.getPlace().getSuperPlaces().get(0).getId());
+		}
+	}
+	
+	@Test
+	public void locations_without_candidates_are_skipped() throws Exception {
+		
+		List<List<ResolvedLocation>> candidates = springfieldProblem();
+		
+		candidates.add(1, new ArrayList<ResolvedLocation>());
+		
+		List<ResolvedLocation> selected = 
+			new BeamSearchStrategy().select(candidates, null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void cost_orders_combinations_like_the_contextual_score() {
+		
+		// fewer distinct keys win at the same depth
+		assertTrue(BeamSearchStrategy.getCost(2, 0, 0) < BeamSearchStrategy.getCost(3, 0, 0));
+		
+		// candidates above the minimum depth cost nothing extra, except as a tie breaker
+		assertTrue(BeamSearchStrategy.getCost(3, 2, 2) < BeamSearchStrategy.getCost(3, 2, 3));
+		assertTrue(BeamSearchStrategy.getCost(3, 2, 3) < BeamSearchStrategy.getCost(4, 0, 0));
+		
+		// reaching deeper costs as much as the Contextual score's depth
+		assertTrue(BeamSearchStrategy.getCost(3, 3, 3) > BeamSearchStrategy.getCost(3, 2, 3));
+	}
+}
@@ -0,0 +1,128 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import static org.junit.Assert.*;
+import static com.berico.clavin.resolver.impl.strategies.locations.ContextualOptimizationStrategyTest.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * CandidateMatrixTest.java
+ * 
+ *###################################################################*/
+
+public class CandidateMatrixTest {
+	
+	@Test
+	public void admin1_divisions_are_interned_in_order_of_appearance() {
+		
+		CandidateMatrix matrix = new CandidateMatrix(springfieldProblem());
+		
+		// IL, MO, MA, then ENG
+		assertEquals(3, matrix.depth);
+		assertEquals(4, matrix.stateCount);
+		
+		assertEquals(0, matrix.getState(0, 0));
+		assertEquals(2, matrix.getState(0, 2));
+		assertEquals(2, matrix.getState(1, 0));
+		assertEquals(3, matrix.getState(2, 1));
+		
+		assertEquals(CountryCode.GB.ordinal(), matrix.getCountry(1, 1));
+		assertEquals(2, matrix.getLimit(1));
+	}
+	
+	@Test
+	public void admin1_codes_of_different_countries_are_different_divisions() {
+		
+		// Neighboring countries' "12" and "02" once hashed to the same key.
+		CountryCode first = CountryCode.values()[10];
+		CountryCode second = CountryCode.values()[11];
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(candidate("A", first, "12", 0, 0, 0)));
+		candidates.add(Arrays.asList(candidate("B", second, "02", 0, 0, 0)));
+		candidates.add(Arrays.asList(candidate("C", second, "02", 0, 0, 0)));
+		
+		CandidateMatrix matrix = new CandidateMatrix(candidates);
+		
+		assertEquals(2, matrix.stateCount);
+		assertFalse(matrix.getState(0, 0) == matrix.getState(1, 0));
+		assertEquals(matrix.getState(1, 0), matrix.getState(2, 0));
+	}
+	
+	@Test
+	public void resolved_and_unresolved_admin1_keys_are_distinct() {
+		
+		Place resolved = candidate("A", CountryCode.US, "MA", 0, 0, 0).getPlace();
+		Place unresolved = candidate("B", CountryCode.US, "MA", 0, 0, 0).getPlace();
+		
+		resolved.getSuperPlaces().get(0).setPlaceId(6254926);
+		
+		assertEquals("#6254926", CandidateMatrix.getAdmin1Key(resolved));
+		assertEquals("US.MA", CandidateMatrix.getAdmin1Key(unresolved));
+		assertEquals("", CandidateMatrix.getAdmin1Key(new Place()));
+	}
+	
+	@Test
+	public void distinct_countries_and_states_are_counted_as_candidates_change() {
+		
+		CandidateMatrix.DistinctCounter counter = 
+			new CandidateMatrix.DistinctCounter(new CandidateMatrix(springfieldProblem()));
+		
+		assertEquals(0, counter.getDistinct());
+		
+		// Springfield IL, Boston MA, Worcester MA
+		counter.set(0, 0);
+		counter.set(1, 0);
+		counter.set(2, 0);
+		
+		assertEquals(3, counter.getDistinct());
+		
+		// Springfield MA
+		counter.set(0, 2);
+		
+		assertEquals(2, counter.getDistinct());
+		
+		// Worcester ENG
+		counter.set(2, 1);
+		
+		assertEquals(4, counter.getDistinct());
+		
+		counter.set(2, -1);
+		
+		assertEquals(2, counter.getDistinct());
+		assertEquals(2, counter.getDistinctWith(2, 0));
+		assertEquals(4, counter.getDistinctWith(2, 1));
+	}
+}
@@ -0,0 +1,254 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.extractor.LocationOccurrence;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.LatLon;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.gazetteer.PlaceReference;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ContextualOptimizationStrategyTest.java
+ * 
+ *###################################################################*/
+
+public class ContextualOptimizationStrategyTest {
+	
+	static int nextId = 1;
+	
+	/**
+	 * Create a candidate for an occurrence of a name.
+	 */
+	static ResolvedLocation candidate(
+			String name, CountryCode country, String admin1, long population, double lat, double lon){
+		
+		Place place = new Place();
+		
+		place.setId(nextId++);
+		place.setName(name);
+		place.setPrimaryCountryCode(country);
+		place.setPopulation(population);
+		place.setCenter(new LatLon(lat, lon));
+		place.getSuperPlaces().add(new PlaceReference(admin1, admin1, true));
+		
+		return new ResolvedLocation(name, place, new LocationOccurrence(name, 0), false, 0);
+	}
+	
+	/**
+	 * "Springfield" (Illinois first, as the bigger city), "Boston" and 
+	 * "Worcester" (both only in Massachusetts).
+	 */
+	static List<List<ResolvedLocation>> springfieldProblem(){
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(
+			candidate("Springfield", CountryCode.US, "IL", 116250, 39.80172, -89.64371),
+			candidate("Springfield", CountryCode.US, "MO", 159498, 37.21533, -93.29824),
+			candidate("Springfield", CountryCode.US, "MA", 153060, 42.10148, -72.58981)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Boston", CountryCode.US, "MA", 617594, 42.35843, -71.05977),
+			candidate("Boston", CountryCode.GB, "ENG", 35124, 52.97633, -0.02664)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Worcester", CountryCode.US, "MA", 181045, 42.26259, -71.80229),
+			candidate("Worcester", CountryCode.GB, "ENG", 94797, 52.18935, -2.22001)));
+		
+		return candidates;
+	}
+	
+	static String getStates(List<ResolvedLocation> selected){
+		
+		StringBuilder states = new StringBuilder();
+		
+		for (ResolvedLocation location : selected){
+			
+			if (states.length() > 0) states.append(',');
+			
+			states.append(location.getPlace().getSuperPlaces().get(0).getId());
+		}
+		
+		return states.toString();
+	}
+	
+	@Test
+	public void combinations_are_enumerated_in_place_last_location_fastest() {
+		
+		int[] combo = new int[3];
+		int[] limits = new int[3];
+		
+		assertTrue(ContextualOptimizationStrategy.startCombos(springfieldProblem(), 3, combo, limits));
+		
+		assertArrayEquals(new int[]{ 3, 2, 2 }, limits);
+		
+		List<String> seen = new ArrayList<String>();
+		
+		int changed;
+		
+		do {
+			
+			seen.add(Arrays.toString(combo));
+			
+			changed = ContextualOptimizationStrategy.nextCombo(combo, limits);
+		}
+		while (changed >= 0);
+		
+		assertEquals(12, seen.size());
+		assertEquals("[0, 0, 0]", seen.get(0));
+		assertEquals("[0, 0, 1]", seen.get(1));
+		assertEquals("[0, 1, 0]", seen.get(2));
+		assertEquals("[2, 1, 1]", seen.get(11));
+	}
+	
+	@Test
+	public void there_are_no_combinations_if_a_location_has_no_candidates() {
+		
+		List<List<ResolvedLocation>> candidates = springfieldProblem();
+		
+		candidates.add(new ArrayList<ResolvedLocation>());
+		
+		assertFalse(ContextualOptimizationStrategy.startCombos(candidates, 3, new int[4], new int[4]));
+	}
+	
+	@Test
+	public void candidates_that_share_a_state_are_selected() throws Exception {
+		
+		List<ResolvedLocation> selected = 
+			new ContextualOptimizationStrategy().select(springfieldProblem(), null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void a_small_document_is_optimized_within_the_budget() throws Exception {
+		
+		Options options = new Options();
+		
+		ContextualOptimizationStrategy.configureMaxMillis(options, 10000);
+		
+		List<ResolvedLocation> selected = 
+			new ContextualOptimizationStrategy().select(springfieldProblem(), null, options);
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+		assertFalse(BudgetedSelection.isBudgetExceeded(selected));
+	}
+	
+	@Test
+	public void the_most_populous_candidates_are_selected_once_the_budget_runs_out() throws Exception {
+		
+		Options options = new Options();
+		
+		// a single window of 20 locations with 5 candidates each would take
+		// far longer than a millisecond to optimize
+		ContextualOptimizationStrategy.configureMaxContextWindow(options, 20);
+		ContextualOptimizationStrategy.configureMaxMillis(options, 1);
+		
+		String[] states = { "AL", "AK", "AZ", "AR", "CA" };
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		for (int i = 0; i < 40; i++){
+			
+			List<ResolvedLocation> locationCandidates = new ArrayList<ResolvedLocation>();
+			
+			for (int c = 0; c < states.length; c++){
+				
+				locationCandidates.add(candidate(
+					"Place" + i, CountryCode.US, states[(i + c) % states.length], (c == 4)? 1000 : 10, 0, 0));
+			}
+			
+			candidates.add(locationCandidates);
+		}
+		
+		List<ResolvedLocation> selected = 
+			new ContextualOptimizationStrategy().select(candidates, null, options);
+		
+		assertTrue(BudgetedSelection.isBudgetExceeded(selected));
+		assertEquals(40, selected.size());
+		
+		// the second window was never reached
+		for (int i = 20; i < 40; i++){
+			
+			assertEquals(1000, selected.get(i).getPlace().getPopulation());
+		}
+	}
+	
+	@Test
+	public void context_windows_optimized_in_parallel_are_merged_in_order() throws Exception {
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		for (int i = 0; i < 50; i++) candidates.addAll(springfieldProblem());
+		
+		Options options = new Options();
+		
+		ContextualOptimizationStrategy.configureMaxContextWindow(options, 3);
+		
+		List<ResolvedLocation> sequential = 
+			new ContextualOptimizationStrategy().select(candidates, null, options);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		
+		try {
+			
+			List<ResolvedLocation> parallel = 
+				new ContextualOptimizationStrategy(executor).select(candidates, null, options);
+			
+			assertEquals(150, parallel.size());
+			assertEquals(sequential, parallel);
+			assertFalse(BudgetedSelection.isBudgetExceeded(parallel));
+		}
+		finally {
+			
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void context_windows_are_optimized_on_the_calling_thread_if_the_executor_refuses() throws Exception {
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		executor.shutdown();
+		
+		List<ResolvedLocation> selected = 
+			new ContextualOptimizationStrategy(executor).select(springfieldProblem(), null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+}
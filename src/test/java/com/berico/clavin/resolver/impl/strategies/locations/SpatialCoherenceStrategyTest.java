@@ -0,0 +1,123 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import static org.junit.Assert.*;
+import static com.berico.clavin.resolver.impl.strategies.locations.ContextualOptimizationStrategyTest.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * SpatialCoherenceStrategyTest.java
+ * 
+ *###################################################################*/
+
+public class SpatialCoherenceStrategyTest {
+	
+	/**
+	 * "Springfield" (Illinois or Massachusetts) with "Nashua" and "Providence";
+	 * either Springfield adds a state, but only one is nearby.
+	 */
+	static List<List<ResolvedLocation>> newEnglandProblem(){
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(
+			candidate("Springfield", CountryCode.US, "IL", 116250, 39.80172, -89.64371),
+			candidate("Springfield", CountryCode.US, "MA", 153060, 42.10148, -72.58981)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Nashua", CountryCode.US, "NH", 86494, 42.76537, -71.46757)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Providence", CountryCode.US, "RI", 178042, 41.82399, -71.41283)));
+		
+		return candidates;
+	}
+	
+	@Test
+	public void candidates_that_share_a_state_are_selected() throws Exception {
+		
+		List<ResolvedLocation> selected = 
+			new SpatialCoherenceStrategy().select(springfieldProblem(), null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void nearby_candidates_are_selected() throws Exception {
+		
+		List<ResolvedLocation> selected = 
+			new SpatialCoherenceStrategy().select(newEnglandProblem(), null, new Options());
+		
+		assertEquals("MA,NH,RI", getStates(selected));
+	}
+	
+	@Test
+	public void without_the_spatial_term_the_first_candidate_is_kept() throws Exception {
+		
+		Options options = new Options();
+		
+		SpatialCoherenceStrategy.configureSpatialWeight(options, 0);
+		
+		List<ResolvedLocation> selected = 
+			new SpatialCoherenceStrategy().select(newEnglandProblem(), null, options);
+		
+		assertEquals("IL,NH,RI", getStates(selected));
+	}
+	
+	@Test
+	public void positions_are_converted_to_unit_vectors() {
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(
+			candidate("Null Island", CountryCode.US, "XX", 0, 0, 0),
+			candidate("North Pole", CountryCode.US, "XX", 0, 90, 0)));
+		
+		double[] vectors = SpatialCoherenceStrategy.getUnitVectors(
+			candidates, new CandidateMatrix(candidates, 2));
+		
+		assertArrayEquals(new double[]{ 1, 0, 0, 0, 0, 1 }, vectors, 1e-9);
+	}
+	
+	@Test
+	public void spread_is_about_the_distance_from_the_centre_per_candidate() {
+		
+		// two candidates 2000 km apart are each 1000 km from their centre
+		double angle = 2000 / SpatialCoherenceStrategy.EARTH_RADIUS_KM;
+		double length = 2 * Math.cos(angle / 2);
+		
+		assertEquals(2.0, SpatialCoherenceStrategy.getSpread(2, length), 0.01);
+		assertEquals(0.0, SpatialCoherenceStrategy.getSpread(3, 3), 1e-9);
+	}
+}
@@ -0,0 +1,148 @@
+package com.berico.clavin.resolver.impl.strategies.locations;
+
+import static org.junit.Assert.*;
+import static com.berico.clavin.resolver.impl.strategies.locations.ContextualOptimizationStrategyTest.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.berico.clavin.Options;
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.resolver.ResolvedLocation;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * VotingSelectionStrategyTest.java
+ * 
+ *###################################################################*/
+
+public class VotingSelectionStrategyTest {
+	
+	@Test
+	public void candidates_that_share_a_state_are_selected() throws Exception {
+		
+		List<ResolvedLocation> selected = 
+			new VotingSelectionStrategy().select(springfieldProblem(), null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void a_location_without_support_keeps_its_favorite_candidate() throws Exception {
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(
+			candidate("Paris", CountryCode.FR, "A8", 2138551, 48.85341, 2.3488),
+			candidate("Paris", CountryCode.US, "TX", 25171, 33.66094, -95.55551)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Lagos", CountryCode.NG, "05", 9000000, 6.45407, 3.39467)));
+		
+		List<ResolvedLocation> selected = 
+			new VotingSelectionStrategy().select(candidates, null, new Options());
+		
+		assertEquals("A8,05", getStates(selected));
+	}
+	
+	@Test
+	public void locations_without_candidates_are_skipped() throws Exception {
+		
+		List<List<ResolvedLocation>> candidates = springfieldProblem();
+		
+		candidates.add(0, new ArrayList<ResolvedLocation>());
+		
+		List<ResolvedLocation> selected = 
+			new VotingSelectionStrategy().select(candidates, null, new Options());
+		
+		assertEquals("MA,MA,MA", getStates(selected));
+	}
+	
+	@Test
+	public void each_location_casts_one_vote() {
+		
+		List<List<ResolvedLocation>> candidates = springfieldProblem();
+		
+		CandidateMatrix matrix = new CandidateMatrix(candidates, 10);
+		
+		double[] priors = VotingSelectionStrategy.getPriors(candidates, matrix);
+		
+		assertEquals(1, priors[0] + priors[1] + priors[2], 1e-9);
+		assertEquals(1, priors[10] + priors[11], 1e-9);
+		
+		// higher in the list and more populous
+		assertTrue(priors[10] > priors[11]);
+	}
+	
+	@Test
+	public void a_name_casts_a_vote_for_each_time_it_occurred() throws Exception {
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		candidates.add(Arrays.asList(
+			candidate("Arlington", CountryCode.GB, "ENG", 1000000, 51.5, -0.1),
+			candidate("Arlington", CountryCode.US, "TX", 10, 32.73569, -97.10807)));
+		
+		candidates.add(Arrays.asList(
+			candidate("Paris", CountryCode.FR, "A8", 2138551, 48.85341, 2.3488),
+			candidate("Paris", CountryCode.US, "TX", 25171, 33.66094, -95.55551)));
+		
+		// one Arlington can't outvote Paris, France...
+		assertEquals("ENG,A8", 
+			getStates(new VotingSelectionStrategy().select(candidates, null, new Options())));
+		
+		// ...but three can
+		assertEquals("ENG,TX", getStates(
+			new VotingSelectionStrategy().select(candidates, new int[]{ 3, 1 }, null, new Options())));
+		
+		CandidateMatrix matrix = new CandidateMatrix(candidates, 10);
+		
+		double[] priors = VotingSelectionStrategy.getPriors(candidates, matrix, new int[]{ 3, 1 });
+		
+		assertEquals(3, priors[0] + priors[1], 1e-9);
+		assertEquals(1, priors[10] + priors[11], 1e-9);
+	}
+	
+	@Test
+	public void multiplicity_follows_the_locations_with_candidates() {
+		
+		List<List<ResolvedLocation>> allPossibilities = springfieldProblem();
+		
+		allPossibilities.add(1, new ArrayList<ResolvedLocation>());
+		
+		List<List<ResolvedLocation>> candidates = new ArrayList<List<ResolvedLocation>>();
+		
+		int[] multiplicity = VotingSelectionStrategy.getMultiplicity(
+			allPossibilities, new int[]{ 2, 5, 3, 1 }, candidates);
+		
+		assertEquals(3, candidates.size());
+		assertEquals(2, multiplicity[0]);
+		assertEquals(3, multiplicity[1]);
+		assertEquals(1, multiplicity[2]);
+	}
+}
@@ -0,0 +1,105 @@
+package com.berico.clavin.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ExternalLineSorterTest.java
+ * 
+ *###################################################################*/
+
+public class ExternalLineSorterTest {
+
+	@Test
+	public void getKey_parses_the_integer_before_the_first_tab() {
+		
+		assertEquals(4781530, ExternalLineSorter.getKey("4781530\tReston"));
+		assertEquals(-12, ExternalLineSorter.getKey("-12"));
+		assertEquals(Integer.MIN_VALUE, ExternalLineSorter.getKey("Reston\t4781530"));
+		assertEquals(Integer.MIN_VALUE, ExternalLineSorter.getKey("\tReston"));
+		assertEquals(Integer.MIN_VALUE, ExternalLineSorter.getKey("99999999999\tToo big"));
+	}
+	
+	@Test
+	public void lines_that_fit_in_memory_are_sorted_without_spilling() throws Exception {
+		
+		ExternalLineSorter sorter = new ExternalLineSorter(null, 100);
+		
+		for (String line : Arrays.asList("3\tc", "1\ta", "2\tb")) sorter.add(line);
+		
+		assertEquals(Arrays.asList("1\ta", "2\tb", "3\tc"), readAll(sorter.sort()));
+		assertEquals(0, sorter.getRunCount());
+		
+		sorter.close();
+	}
+	
+	@Test
+	public void spilled_runs_are_merged_keeping_equal_keys_in_order() throws Exception {
+		
+		ExternalLineSorter sorter = new ExternalLineSorter(null, 3);
+		
+		List<String> expected = new ArrayList<String>();
+		
+		// keys 9..0, each twice; the second of each pair was added later.
+		for (int i = 9; i >= 0; i--) sorter.add(i + "\tfirst");
+		for (int i = 9; i >= 0; i--) sorter.add(i + "\tsecond");
+		
+		for (int i = 0; i <= 9; i++){
+			
+			expected.add(i + "\tfirst");
+			expected.add(i + "\tsecond");
+		}
+		
+		ExternalLineSorter.SortedLines sorted = sorter.sort();
+		
+		assertEquals(6, sorter.getRunCount());
+		assertEquals(20, sorter.size());
+		assertEquals(expected, readAll(sorted));
+		
+		sorter.close();
+	}
+	
+	static List<String> readAll(ExternalLineSorter.SortedLines sorted) throws Exception {
+		
+		List<String> lines = new ArrayList<String>();
+		
+		String line;
+		
+		while ((line = sorted.next()) != null){
+			
+			assertEquals(ExternalLineSorter.getKey(line), sorted.getKey());
+			
+			lines.add(line);
+		}
+		
+		return lines;
+	}
+}
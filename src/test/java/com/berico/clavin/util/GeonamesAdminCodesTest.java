@@ -0,0 +1,127 @@
+package com.berico.clavin.util;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+import com.berico.clavin.gazetteer.PlaceReference;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesAdminCodesTest.java
+ * 
+ *###################################################################*/
+
+public class GeonamesAdminCodesTest {
+
+	GeonamesAdminCodes adminCodes;
+	List<Place> places;
+	
+	@Before
+	public void setUp() throws Exception {
+		
+		adminCodes = GeonamesAdminCodes.load(
+			"./src/test/resources/gazetteers/admin1CodesSample.txt",
+			"./src/test/resources/gazetteers/admin2CodesSample.txt");
+		
+		places = new ArrayList<Place>();
+		
+		BufferedReader reader = GeonamesUtils.openGeonamesFile(
+			new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt"));
+		
+		String line;
+		
+		while ((line = reader.readLine()) != null){
+			
+			Place place = GeonamesUtils.parseFromGeoNamesRecord(line);
+			
+			adminCodes.resolve(place);
+			
+			places.add(place);
+		}
+		
+		reader.close();
+	}
+	
+	@Test
+	public void load_skips_codes_of_unknown_parents() throws Exception {
+		
+		// 5 admin1 + 3 admin2 (US.XX isn't a known admin1 division)
+		assertEquals(8, adminCodes.size());
+		
+		assertNull(GeonamesAdminCodes.load(null, null));
+	}
+	
+	@Test
+	public void resolve_sets_the_ids_and_names_of_admin1_and_admin2_divisions() {
+		
+		Place reston = places.get(0);
+		
+		PlaceReference admin1 = reston.getAdministrativeParents().get(0);
+		PlaceReference admin2 = reston.getAdministrativeParents().get(1);
+		
+		assertEquals("VA", admin1.getId());
+		assertEquals("Virginia", admin1.getName());
+		assertEquals(6254928, admin1.getPlaceId());
+		
+		assertEquals("059", admin2.getId());
+		assertEquals("Fairfax County", admin2.getName());
+		assertEquals(4758041, admin2.getPlaceId());
+		
+		assertFalse(reston.getAdministrativeParents().get(2).isResolved());
+	}
+	
+	@Test
+	public void resolve_leaves_unknown_codes_unresolved() {
+		
+		// Straßenhaus: DE.08 is known, DE.08.00 isn't
+		Place place = places.get(2);
+		
+		assertEquals(2953481, place.getAdministrativeParents().get(0).getPlaceId());
+		
+		PlaceReference admin2 = place.getAdministrativeParents().get(1);
+		
+		assertFalse(admin2.isResolved());
+		assertEquals("00", admin2.getName());
+		
+		// No Man's Land: no country
+		assertFalse(places.get(3).getAdministrativeParents().get(0).isResolved());
+	}
+	
+	@Test
+	public void getAdmin1Id_qualifies_codes_by_country() {
+		
+		assertEquals(1147745, adminCodes.getAdmin1Id(CountryCode.AF, "02"));
+		assertEquals(PlaceReference.UNRESOLVED, adminCodes.getAdmin1Id(CountryCode.US, "02"));
+	}
+}
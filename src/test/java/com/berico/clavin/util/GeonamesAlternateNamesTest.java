@@ -0,0 +1,75 @@
+package com.berico.clavin.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.AlternateName;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesAlternateNamesTest.java
+ * 
+ *###################################################################*/
+
+public class GeonamesAlternateNamesTest {
+
+	@Test
+	public void rows_are_converted_to_sort_lines_keyed_by_geonameId() {
+		
+		String sortLine = GeonamesAlternateNames.toSortLine(
+			"1561227\t2950159\tde\tBerlin\t1\t\t\t\t\t");
+		
+		assertEquals("2950159\tde\tBerlin\t1000", sortLine);
+		
+		AlternateName name = GeonamesAlternateNames.parse(sortLine);
+		
+		assertEquals("Berlin", name.getName());
+		assertEquals("de", name.getLanguage());
+		assertTrue(name.isPreferred());
+		assertFalse(name.isShortName());
+		assertFalse(name.isHistoric());
+	}
+	
+	@Test
+	public void rows_without_a_language_or_flags_are_names() {
+		
+		AlternateName name = GeonamesAlternateNames.parse(
+			GeonamesAlternateNames.toSortLine("1\t2\t\tCölln\t\t\t\t1"));
+		
+		assertEquals("Cölln", name.getName());
+		assertFalse(name.hasLanguage());
+		assertTrue(name.isHistoric());
+	}
+	
+	@Test
+	public void identifiers_are_not_names() {
+		
+		assertNull(GeonamesAlternateNames.toSortLine(
+			"1\t2950159\tlink\thttps://en.wikipedia.org/wiki/Berlin\t\t\t\t"));
+		assertNull(GeonamesAlternateNames.toSortLine("1\t2950159\tpost\t10115\t\t\t\t"));
+		assertNull(GeonamesAlternateNames.toSortLine("1\t2950159\tde"));
+	}
+}
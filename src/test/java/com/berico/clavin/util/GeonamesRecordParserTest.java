@@ -0,0 +1,109 @@
+package com.berico.clavin.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.berico.clavin.gazetteer.CountryCode;
+import com.berico.clavin.gazetteer.Place;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * GeonamesRecordParserTest.java
+ * 
+ *###################################################################*/
+
+public class GeonamesRecordParserTest {
+
+	static final String RESTON = "4781530\tReston\tReston\tReston,Рестон\t38.96872\t-77.3411\tP\tPPL\tUS\t\tVA\t059\t\t\t58404\t100\t102\tAmerica/New_York\t2011-05-14";
+	
+	static final String KABUL = "1138958\tKabul\tKabul\t\t34.52813\t69.17233\tP\tPPLC\tAF\t\t13\t\t\t\t3043532\t\t1808\tAsia/Kabul\t2012-01-13";
+	
+	@Test
+	public void parser_reuses_the_place_and_resets_it_between_records() {
+		
+		GeonamesRecordParser parser = new GeonamesRecordParser(false, true);
+		
+		Place reston = parser.parse(RESTON);
+		
+		assertEquals(Arrays.asList("Reston", "Рестон"), reston.getAlternateNames());
+		assertEquals("VA", reston.getAdministrativeParents().get(0).getName());
+		
+		Place kabul = parser.parse(KABUL);
+		
+		assertSame(reston, kabul);
+		assertEquals(1138958, kabul.getId());
+		assertEquals("Kabul", kabul.getName());
+		assertTrue(kabul.getAlternateNames().isEmpty());
+		assertEquals(CountryCode.AF, kabul.getPrimaryCountryCode());
+		assertEquals("13", kabul.getAdministrativeParents().get(0).getName());
+		assertEquals("", kabul.getAdministrativeParents().get(1).getName());
+		assertEquals(3043532, kabul.getPopulation());
+		assertEquals(34.52813, kabul.getCenter().getLatitude(), 0);
+		assertEquals(69.17233, kabul.getCenter().getLongitude(), 0);
+		assertNull(kabul.getContext());
+	}
+	
+	@Test
+	public void parser_creates_new_places_and_retains_raw_lines_when_asked() {
+		
+		GeonamesRecordParser parser = new GeonamesRecordParser(true, false);
+		
+		Place reston = parser.parse(RESTON);
+		Place kabul = parser.parse(KABUL.toCharArray(), 0, KABUL.length());
+		
+		assertNotSame(reston, kabul);
+		assertEquals(RESTON, reston.getContext());
+		assertEquals(KABUL, kabul.getContext());
+	}
+	
+	@Test
+	public void numbers_are_parsed_like_the_jdk_parses_them() {
+		
+		String[] decimals = new String[]{ "38.96872", "-77.3411", "0.1", "-0.000001", "180", "1.5E3" };
+		
+		for (String decimal : decimals){
+			
+			assertEquals(Double.parseDouble(decimal), 
+				GeonamesRecordParser.parseDouble(decimal.toCharArray(), 0, decimal.length()), 0);
+		}
+		
+		String[] longs = new String[]{ "0", "58404", "-12", "9223372036854775807" };
+		
+		for (String value : longs){
+			
+			assertEquals(Long.parseLong(value), 
+				GeonamesRecordParser.parseLong(value.toCharArray(), 0, value.length()));
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void records_without_the_admin_codes_are_rejected() {
+		
+		new GeonamesRecordParser(false, false).parse("1\tTruncated\tTruncated");
+	}
+}
@@ -5,14 +5,20 @@ import static org.junit.Assert.*;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -108,6 +114,125 @@ public class GeonamesUtilsTest {
 		
 		r.close();
 	}
-
-
+	
+	@Test
+	public void openGeonamesFile_reads_zip_and_gzip_archives() throws IOException {
+		
+		File sample = new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt");
+		
+		List<String> expected = readLines(GeonamesUtils.openGeonamesFile(sample));
+		
+		File zip = File.createTempFile("geonames", ".zip");
+		File gzip = File.createTempFile("geonames", ".txt.gz");
+		
+		try {
+			
+			ZipOutputStream zipOutput = new ZipOutputStream(new FileOutputStream(zip));
+			zipOutput.putNextEntry(new ZipEntry("readme.txt"));
+			zipOutput.write("Not a gazetteer.".getBytes("UTF-8"));
+			zipOutput.putNextEntry(new ZipEntry("GeoNamesSampleSet.txt"));
+			copy(sample, zipOutput);
+			zipOutput.close();
+			
+			GZIPOutputStream gzipOutput = new GZIPOutputStream(new FileOutputStream(gzip));
+			copy(sample, gzipOutput);
+			gzipOutput.close();
+			
+			assertEquals(expected, readLines(GeonamesUtils.openGeonamesFile(zip)));
+			assertEquals(expected, readLines(GeonamesUtils.openGeonamesFile(gzip)));
+		}
+		finally {
+			
+			zip.delete();
+			gzip.delete();
+		}
+	}
+	
+	@Test
+	public void getEncodedLength_counts_utf8_bytes_and_the_line_ending() throws IOException {
+		
+		String[] lines = { "", "Reston", "S\u00e3o Paulo", "\u6771\u4eac", "\ud800\udf48" };
+		
+		for (String line : lines)
+			assertEquals(line, (line + "\n").getBytes("UTF-8").length, GeonamesUtils.getEncodedLength(line));
+	}
+	
+	@Test
+	public void openGeonamesFile_resumes_from_an_offset() throws IOException {
+		
+		File sample = new File("./src/test/resources/gazetteers/GeoNamesSampleSet.txt");
+		
+		List<String> lines = readLines(GeonamesUtils.openGeonamesFile(sample));
+		
+		long offset = 0;
+		
+		for (int i = 0; i < 3; i++) offset += GeonamesUtils.getEncodedLength(lines.get(i));
+		
+		assertEquals(lines.subList(3, lines.size()), 
+			readLines(GeonamesUtils.openGeonamesFile(sample, offset)));
+		
+		try {
+			
+			GeonamesUtils.openGeonamesFile(sample, offset + 1);
+			
+			fail("An offset inside a line should be rejected.");
+		}
+		catch (IOException e){}
+	}
+	
+	@Test
+	public void openGeonamesFile_resumes_at_the_end_of_a_file_without_a_last_line_ending() throws IOException {
+		
+		File file = File.createTempFile("geonames", ".txt");
+		
+		try {
+			
+			OutputStream output = new FileOutputStream(file);
+			output.write("Reston\nS\u00e3o Paulo".getBytes("UTF-8"));
+			output.close();
+			
+			List<String> lines = readLines(GeonamesUtils.openGeonamesFile(file));
+			
+			assertEquals(2, lines.size());
+			
+			long offset = 0;
+			
+			for (String line : lines) offset += GeonamesUtils.getEncodedLength(line);
+			
+			// The offset counts an ending the last line doesn't have.
+			assertEquals(file.length() + 1, offset);
+			
+			assertTrue(readLines(GeonamesUtils.openGeonamesFile(file, offset)).isEmpty());
+			
+			try {
+				
+				GeonamesUtils.openGeonamesFile(file, offset + 1);
+				
+				fail("An offset past the end should be rejected.");
+			}
+			catch (IOException e){}
+		}
+		finally {
+			
+			file.delete();
+		}
+	}
+	
+	static List<String> readLines(BufferedReader reader) throws IOException {
+		
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) lines.add(line);
+		reader.close();
+		return lines;
+	}
+	
+	static void copy(File file, OutputStream output) throws IOException {
+		
+		InputStream input = new FileInputStream(file);
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) output.write(buffer, 0, read);
+		input.close();
+	}
 }
@@ -0,0 +1,105 @@
+package com.berico.clavin.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+/*#####################################################################
+ * 
+ * CLAVIN (Cartographic Location And Vicinity INdexer)
+ * ---------------------------------------------------
+ * 
+ * Copyright (C) 2012-2013 Berico Technologies
+ * http://clavin.bericotechnologies.com
+ * 
+ * ====================================================================
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * 		http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ * 
+ * ====================================================================
+ * 
+ * ZOrderCurveTest.java
+ * 
+ *###################################################################*/
+
+public class ZOrderCurveTest {
+
+	@Test
+	public void spread_interleaves_zero_bits_between_each_bit() {
+
+		assertEquals(0l, ZOrderCurve.spread(0l));
+		assertEquals(1l, ZOrderCurve.spread(1l));
+		assertEquals(4l, ZOrderCurve.spread(2l));
+		assertEquals(5l, ZOrderCurve.spread(3l));
+		assertEquals(0x1555555555555555l, ZOrderCurve.spread(0x7FFFFFFFl));
+	}
+
+	@Test
+	public void quantize_clamps_values_to_the_axis() {
+
+		assertEquals(0l, ZOrderCurve.quantize(-90d, -90d, 180d));
+		assertEquals((1l << ZOrderCurve.BITS_PER_AXIS) - 1,
+			ZOrderCurve.quantize(90d, -90d, 180d));
+		assertEquals(1l << (ZOrderCurve.BITS_PER_AXIS - 1),
+			ZOrderCurve.quantize(0d, -90d, 180d));
+	}
+
+	@Test
+	public void encode_orders_quadrants_along_the_curve() {
+
+		long southWest = ZOrderCurve.encode(-45, -90);
+		long southEast = ZOrderCurve.encode(-45, 90);
+		long northWest = ZOrderCurve.encode(45, -90);
+		long northEast = ZOrderCurve.encode(45, 90);
+
+		assertTrue(southWest < southEast);
+		assertTrue(southEast < northWest);
+		assertTrue(northWest < northEast);
+	}
+
+	@Test
+	public void sorting_by_curve_keeps_nearby_points_together() {
+
+		final double[][] points = new double[][]{
+			{ 38.9532, -77.3392 },  // Reston
+			{ 34.5553, 69.2075 },   // Kabul
+			{ 38.9586, -77.3570 },  // Reston (again)
+			{ -33.8650, 151.2094 }, // Sydney
+			{ 34.5281, 69.1723 }    // Kabul (again)
+		};
+
+		List<Integer> order = new ArrayList<Integer>();
+
+		for (int i = 0; i < points.length; i++) order.add(i);
+
+		Collections.sort(order, new Comparator<Integer>(){
+
+			@Override
+			public int compare(Integer a, Integer b) {
+
+				long za = ZOrderCurve.encode(points[a][0], points[a][1]);
+				long zb = ZOrderCurve.encode(points[b][0], points[b][1]);
+
+				return (za < zb)? -1 : ((za == zb)? 0 : 1);
+			}
+		});
+
+		assertEquals(1, Math.abs(order.indexOf(0) - order.indexOf(2)));
+		assertEquals(1, Math.abs(order.indexOf(1) - order.indexOf(4)));
+	}
+}